@@ -0,0 +1,17 @@
+package org.dataone.hashstore;
+
+/**
+ * DeleteResult is a record that contains the outcome of deleting one pid with
+ * {@link HashStore#deleteObjects} or {@link HashStore#deleteMetadata(java.util.Collection)}: the
+ * exception that {@code deleteObject} or {@code deleteMetadata} would have thrown for the pid, or
+ * null if it has been deleted.
+ */
+public record DeleteResult(String pid, Exception exception) {
+
+    /**
+     * @return True if the pid has been deleted
+     */
+    public boolean isDeleted() {
+        return exception == null;
+    }
+}
@@ -3,7 +3,12 @@ package org.dataone.hashstore;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
 
 import org.dataone.hashstore.exceptions.NonMatchingChecksumException;
 import org.dataone.hashstore.exceptions.NonMatchingObjSizeException;
@@ -41,7 +46,9 @@ public interface HashStore {
      *
      * By default, the hex digest map includes the following hash algorithms: MD5, SHA-1, SHA-256,
      * SHA-384, SHA-512 - which are the most commonly used algorithms in dataset submissions to
-     * DataONE and the Arctic Data Center. If an additional algorithm is provided, the
+     * DataONE and the Arctic Data Center. A store may be configured with its own default algorithm
+     * list instead, which always includes the store algorithm. If an additional algorithm is
+     * provided, the
      * {@code storeObject} method checks if it is supported and adds it to the hex digests dict
      * along with its corresponding hex digest. An algorithm is considered "supported" if it is
      * recognized as a valid hash algorithm in {@code java.security .MessageDigest} class.
@@ -72,6 +79,82 @@ public interface HashStore {
         throws NoSuchAlgorithmException, IOException, PidRefsFileExistsException, RuntimeException,
         InterruptedException;
 
+    /**
+     * Stores a data object from a file that is already on disk, see
+     * {@link #storeObject(InputStream, String, String, String, String, long)}. Reading from a file
+     * allows HashStore to place the data object without passing it through an InputStream: the
+     * file is copied with {@code FileChannel.transferTo}, or, when {@code consumeObject} is true
+     * and the file is on the same file system as HashStore, hard linked into place without copying
+     * any data.
+     *
+     * @param object              Path to the file to store
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest to include in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate after storing
+     * @param consumeObject       If true, HashStore takes over the file and removes it from its
+     *                            original location once stored. The file must not be modified
+     *                            afterwards. If the object fails validation, the file is left in
+     *                            place.
+     * @return ObjectMetadata object encapsulating file information
+     * @throws NoSuchAlgorithmException   When additionalAlgorithm or checksumAlgorithm is invalid
+     * @throws IOException                I/O Error when copying or linking the file, generating
+     *                                    checksums and/or moving file
+     * @throws PidRefsFileExistsException If a pid refs file already exists, meaning the pid is
+     *                                    already referencing a file.
+     * @throws RuntimeException           Thrown when there is an issue with permissions, illegal
+     *                                    arguments (ex. empty pid) or null pointers
+     * @throws InterruptedException       When tagging pid and cid process is interrupted
+     */
+    ObjectMetadata storeObject(
+        Path object, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize, boolean consumeObject)
+        throws NoSuchAlgorithmException, IOException, PidRefsFileExistsException, RuntimeException,
+        InterruptedException;
+
+    /**
+     * Opens an OutputStream to store a data object whose content is produced by the caller (ex. an
+     * archive being built), instead of being read from an InputStream, see
+     * {@link #storeObject(InputStream, String, String, String, String, long)}. The content is
+     * written to a tmp file and hashed as it arrives. Closing the stream validates the data object,
+     * moves it to its permanent address and tags it with the pid, and throws the exception that
+     * {@code storeObject} would have thrown if it cannot be stored. The pid is only claimed when
+     * the stream is closed. A {@code WritableByteChannel} can be obtained with
+     * {@code Channels.newChannel}.
+     *
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest to include in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate after storing
+     * @return OutputStream to write the data object into, which must be closed
+     * @throws NoSuchAlgorithmException When additionalAlgorithm or checksumAlgorithm is invalid
+     * @throws IOException              When the tmp file cannot be created
+     */
+    OutputStream openObjectWriter(
+        String pid, String additionalAlgorithm, String checksum, String checksumAlgorithm,
+        long objSize) throws NoSuchAlgorithmException, IOException;
+
+    /**
+     * Stores and tags many data objects in one call, see
+     * {@link #storeObject(InputStream, String, String, String, String, long)}. Each request is
+     * processed as {@code storeObject} would, but the work is organized per batch rather than per
+     * object: the objects are written to tmp files and hashed concurrently, then moved to their
+     * permanent addresses and tagged together, with the directories they need created once and
+     * the pids of each object added to its cid refs with a single update.
+     *
+     * A request that fails does not affect the others; its result holds the exception that
+     * {@code storeObject} would have thrown for it.
+     *
+     * @param requests Data objects to store, each with a pid that is unique within the batch
+     * @return One result per request, in the order of the requests
+     * @throws InterruptedException When the batch is interrupted. Pids of the batch are released
+     *                              and its tmp files are removed.
+     */
+    List<StoreObjectResult> storeObjects(Collection<StoreObjectRequest> requests)
+        throws InterruptedException;
+
     /**
      * @see #storeObject(InputStream, String, String, String, String, long)
      *
@@ -175,6 +258,72 @@ public interface HashStore {
         throws IllegalArgumentException, FileNotFoundException, IOException,
         NoSuchAlgorithmException;
 
+    /**
+     * Returns an InputStream to a range of an object from HashStore using a given persistent
+     * identifier (ex. to serve an HTTP 'Range' request). Only the requested bytes are read from
+     * objects stored as they are; compressed objects are decompressed from their start.
+     *
+     * @param pid    Authority-based identifier
+     * @param offset Offset of the first byte to read, which may be equal to the object's size
+     * @param length Number of bytes to read, or -1 to read until the end of the object. A range
+     *               extending past the end of the object ends with the object.
+     * @return InputStream of the range of the object
+     * @throws IllegalArgumentException When pid is null or empty, offset is negative or greater
+     *                                  than the object's size, or length is less than -1
+     * @throws FileNotFoundException    When requested pid has no associated object
+     * @throws IOException              I/O error when creating InputStream to object
+     * @throws NoSuchAlgorithmException When algorithm used to calculate object address is not
+     *                                  supported
+     */
+    InputStream retrieveObject(String pid, long offset, long length)
+        throws IllegalArgumentException, FileNotFoundException, IOException,
+        NoSuchAlgorithmException;
+
+    /**
+     * Transfers an object from HashStore to a channel (ex. the socket of an HTTP response) using a
+     * given persistent identifier. Objects stored as they are are transferred with
+     * {@code FileChannel.transferTo}, so the kernel can copy them without going through the heap
+     * (ex. with sendfile). Compressed objects are copied through a buffer.
+     *
+     * @param pid    Authority-based identifier
+     * @param target Channel to transfer the object to, which must be in blocking mode. It is
+     *               not closed.
+     * @return Number of bytes transferred
+     * @throws IllegalArgumentException When pid is null or empty, or target is null or is a
+     *                                  selectable channel in non-blocking mode
+     * @throws FileNotFoundException    When requested pid has no associated object
+     * @throws IOException              I/O error when reading the object or writing the target
+     * @throws NoSuchAlgorithmException When algorithm used to calculate object address is not
+     *                                  supported
+     */
+    long transferObjectTo(String pid, WritableByteChannel target)
+        throws IllegalArgumentException, FileNotFoundException, IOException,
+        NoSuchAlgorithmException;
+
+    /**
+     * Transfers a range of an object from HashStore to a channel, see
+     * {@link #transferObjectTo(String, WritableByteChannel)} and
+     * {@link #retrieveObject(String, long, long)} for how the range is interpreted.
+     *
+     * @param pid    Authority-based identifier
+     * @param offset Offset of the first byte to transfer, which may be equal to the object's size
+     * @param length Number of bytes to transfer, or -1 to transfer until the end of the object
+     * @param target Channel to transfer the range to, which must be in blocking mode. It is not
+     *               closed.
+     * @return Number of bytes transferred
+     * @throws IllegalArgumentException When pid is null or empty, target is null or is a
+     *                                  selectable channel in non-blocking mode, offset is
+     *                                  negative or greater than the object's size, or length is
+     *                                  less than -1
+     * @throws FileNotFoundException    When requested pid has no associated object
+     * @throws IOException              I/O error when reading the object or writing the target
+     * @throws NoSuchAlgorithmException When algorithm used to calculate object address is not
+     *                                  supported
+     */
+    long transferObjectTo(String pid, long offset, long length, WritableByteChannel target)
+        throws IllegalArgumentException, FileNotFoundException, IOException,
+        NoSuchAlgorithmException;
+
     /**
      * Returns an InputStream to the metadata content of a given pid and metadata namespace from
      * HashStore.
@@ -219,6 +368,23 @@ public interface HashStore {
         throws IllegalArgumentException, IOException, NoSuchAlgorithmException,
         InterruptedException;
 
+    /**
+     * Deletes many objects and their associated files in one call, see {@link #deleteObject}.
+     * Each pid is processed as {@code deleteObject} would, but the work is organized per batch
+     * rather than per pid: pids that reference the same object have their cid locked and their
+     * cid refs updated once, and the metadata directories of the pids are read concurrently.
+     *
+     * A pid that fails does not affect the others; its result holds the exception that
+     * {@code deleteObject} would have thrown for it.
+     *
+     * @param pids Authority-based identifiers, each unique within the batch
+     * @return One result per pid, in the order of the pids
+     * @throws InterruptedException When the batch is interrupted. Pids whose deletion has started
+     *                              are finished, the others are left as they are, and the pids
+     *                              of the batch are released.
+     */
+    List<DeleteResult> deleteObjects(Collection<String> pids) throws InterruptedException;
+
     /**
      * Deletes a metadata document (ex. {@code sysmeta}) permanently from HashStore using a given
      * persistent identifier and its respective metadata namespace.
@@ -249,6 +415,20 @@ public interface HashStore {
         throws IllegalArgumentException, IOException, NoSuchAlgorithmException,
         InterruptedException;
 
+    /**
+     * Deletes all metadata related to many pids in one call, see {@link #deleteMetadata(String)}.
+     * The metadata directories of the pids are read concurrently, while the metadata documents
+     * already found are deleted.
+     *
+     * A pid that fails does not affect the others; its result holds the exception that
+     * {@code deleteMetadata} would have thrown for it.
+     *
+     * @param pids Authority-based identifiers
+     * @return One result per pid, in the order of the pids
+     * @throws InterruptedException When the batch is interrupted
+     */
+    List<DeleteResult> deleteMetadata(Collection<String> pids) throws InterruptedException;
+
     /**
      * Calculates the hex digest of an object that exists in HashStore using a given persistent
      * identifier and hash algorithm.
@@ -165,11 +165,9 @@ public class HashStoreClient {
                         size = -1;
                     }
 
-                    InputStream pidObjStream = Files.newInputStream(path);
                     ObjectMetadata objInfo =
-                        hashStore.storeObject(pidObjStream, pid, additional_algo, checksum,
-                                              checksum_algo, size);
-                    pidObjStream.close();
+                        hashStore.storeObject(path, pid, additional_algo, checksum,
+                                              checksum_algo, size, false);
                     System.out.println("Object Info for pid (" + pid + "):");
                     System.out.println(objInfo.hexDigests());
 
@@ -536,13 +534,13 @@ public class HashStoreClient {
             String guid = null;
             try {
                 guid = item.get("pid");
-                InputStream objStream = Files.newInputStream(Paths.get(item.get("path")));
+                Path objPath = Paths.get(item.get("path"));
                 String algorithm = item.get("algorithm");
                 String checksum = item.get("checksum");
 
                 // Store object
                 System.out.println("Storing object for guid: " + guid);
-                hashStore.storeObject(objStream, guid, null, checksum, algorithm, -1);
+                hashStore.storeObject(objPath, guid, null, checksum, algorithm, -1, false);
 
             } catch (PidRefsFileExistsException poee) {
                 String errMsg = "Unexpected Error: " + poee.fillInStackTrace();
@@ -5,7 +5,8 @@ import java.util.Map;
 /**
  * ObjectMetadata is a record that that contains metadata about an object in the HashStore. It
  * encapsulates information about a file's authority-based/persistent identifier (pid), content
- * identifier (cid), size, and associated hash digest values.
+ * identifier (cid), size, and associated hash digest values. The hex digests include the store's
+ * default algorithms, along with any additional or checksum algorithm requested when storing.
  */
 public record ObjectMetadata(String pid, String cid, long size, Map<String, String> hexDigests) {
 
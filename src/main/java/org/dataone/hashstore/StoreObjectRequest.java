@@ -0,0 +1,37 @@
+package org.dataone.hashstore;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * StoreObjectRequest is a record that describes one data object to store with
+ * {@link HashStore#storeObjects}. The object is supplied either as an InputStream or as a path to
+ * a file on disk (see {@link #fromStream} and {@link #fromPath}), along with the same arguments
+ * taken by {@code storeObject}.
+ */
+public record StoreObjectRequest(InputStream object, Path objectPath, String pid,
+                                 String additionalAlgorithm, String checksum,
+                                 String checksumAlgorithm, long objSize, boolean consumeObject) {
+
+    /**
+     * Request to store a data object from an InputStream, which is closed once it has been read
+     */
+    public static StoreObjectRequest fromStream(
+        InputStream object, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize) {
+        return new StoreObjectRequest(
+            object, null, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize, false);
+    }
+
+    /**
+     * Request to store a data object from a file, see
+     * {@link HashStore#storeObject(Path, String, String, String, String, long, boolean)}
+     */
+    public static StoreObjectRequest fromPath(
+        Path objectPath, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize, boolean consumeObject) {
+        return new StoreObjectRequest(
+            null, objectPath, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize,
+            consumeObject);
+    }
+}
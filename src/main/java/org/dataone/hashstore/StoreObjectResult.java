@@ -0,0 +1,16 @@
+package org.dataone.hashstore;
+
+/**
+ * StoreObjectResult is a record that contains the outcome of one {@link StoreObjectRequest} from
+ * {@link HashStore#storeObjects}: either the ObjectMetadata of the stored object, or the exception
+ * that {@code storeObject} would have thrown for it.
+ */
+public record StoreObjectResult(String pid, ObjectMetadata objectMetadata, Exception exception) {
+
+    /**
+     * @return True if the object has been stored and tagged with its pid
+     */
+    public boolean isStored() {
+        return exception == null;
+    }
+}
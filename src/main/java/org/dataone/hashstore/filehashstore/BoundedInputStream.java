@@ -0,0 +1,69 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BoundedInputStream reads at most a given number of bytes from another stream, which is closed
+ * along with it. It is used to return a range of a stored file.
+ */
+final class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    /**
+     * Constructor to initialize a BoundedInputStream
+     *
+     * @param inputStream Stream to read from
+     * @param length      Maximum number of bytes to read
+     */
+    BoundedInputStream(InputStream inputStream, long length) {
+        super(inputStream);
+        FileHashStoreUtility.ensureNotNull(inputStream, "inputStream");
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int singleByte = in.read();
+        if (singleByte != -1) {
+            remaining--;
+        }
+        return singleByte;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        int bytesRead = in.read(buffer, offset, (int) Math.min(length, remaining));
+        if (bytesRead > 0) {
+            remaining -= bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
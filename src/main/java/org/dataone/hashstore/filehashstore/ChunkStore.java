@@ -0,0 +1,377 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreRefUpdateTypes;
+
+/**
+ * ChunkStore stores large data objects as a sequence of content-defined chunks (see
+ * {@link ContentDefinedChunker}), so that objects which share most of their content (ex. an
+ * appended time series, or a new version of a dataset) share the chunks holding it. Each chunk is
+ * stored once under '/objects/chunks', at the permanent address formed from its own hex digest,
+ * and the file at the permanent address of the data object becomes a chunk manifest listing the
+ * hex digest and length of each of its chunks.
+ *
+ * Every chunk has a refs file under '/refs/chunks' listing the content identifiers of the data
+ * objects made of it, in the same format as a cid refs file. A chunk is deleted along with its
+ * refs file when the last data object made of it is deleted.
+ */
+final class ChunkStore {
+    private static final Log logChunkStore = LogFactory.getLog(ChunkStore.class);
+    // Objects smaller than this are stored whole, as they are made of few chunks
+    static final long CHUNKING_THRESHOLD = 16 * 1024 * 1024;
+    private final FileHashStore fileHashStore;
+    private final Path chunkDirectory;
+    private final Path chunkRefsDirectory;
+    private final Path tmpDirectory;
+    private final int directoryDepth;
+    private final int directoryWidth;
+    private final String algorithm;
+    private final IdentifierLockManager chunkLockedDigests;
+
+    /**
+     * A chunk of a data object, as listed in its chunk manifest
+     *
+     * @param digest Hex digest of the chunk
+     * @param length Length of the chunk
+     */
+    record ManifestEntry(String digest, long length) {
+    }
+
+    /**
+     * Constructor to initialize a ChunkStore
+     *
+     * @param fileHashStore      Store the chunks belong to
+     * @param chunkDirectory     Directory to store the chunks in
+     * @param chunkRefsDirectory Directory to store the refs files of the chunks in
+     * @param tmpDirectory       Directory to write chunks into before they are moved
+     * @param directoryDepth     Depth of the permanent address of a chunk
+     * @param directoryWidth     Width of the directories of the permanent address of a chunk
+     * @param algorithm          Hash algorithm identifying the chunks
+     * @param chunkLockedDigests Locks for the hex digests of the chunks
+     */
+    ChunkStore(
+        FileHashStore fileHashStore, Path chunkDirectory, Path chunkRefsDirectory,
+        Path tmpDirectory, int directoryDepth, int directoryWidth, String algorithm,
+        IdentifierLockManager chunkLockedDigests) {
+        this.fileHashStore = fileHashStore;
+        this.chunkDirectory = chunkDirectory;
+        this.chunkRefsDirectory = chunkRefsDirectory;
+        this.tmpDirectory = tmpDirectory;
+        this.directoryDepth = directoryDepth;
+        this.directoryWidth = directoryWidth;
+        this.algorithm = algorithm;
+        this.chunkLockedDigests = chunkLockedDigests;
+    }
+
+    /**
+     * Split a tmp file holding a data object into chunks, store the chunks that are not stored
+     * yet and reference them all from the data object's content identifier
+     *
+     * @param tmpFile Tmp file holding the data object, deleted once it has been chunked
+     * @param cid     Content identifier of the data object
+     * @param codec   Codec of the store, to encode the chunks and write the manifest header
+     * @return Tmp file holding the chunk manifest of the data object
+     * @throws IOException          If a chunk or the manifest cannot be written
+     * @throws InterruptedException If interrupted while waiting for the lock of a chunk
+     */
+    File writeChunkedFile(File tmpFile, String cid, StoredFileCodec codec)
+        throws IOException, InterruptedException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException("Unable to hash chunks with algorithm: " + algorithm, nsae);
+        }
+
+        long size = Files.size(tmpFile.toPath());
+        List<ManifestEntry> manifest = new ArrayList<>();
+        try (InputStream tmpFileStream = Files.newInputStream(tmpFile.toPath())) {
+            ContentDefinedChunker chunker = new ContentDefinedChunker(tmpFileStream);
+            int chunkLength;
+            while ((chunkLength = chunker.nextChunk()) > 0) {
+                messageDigest.update(chunker.getBuffer(), 0, chunkLength);
+                String digest =
+                    DatatypeConverter.printHexBinary(messageDigest.digest()).toLowerCase();
+                storeChunk(digest, chunker.getBuffer(), chunkLength, cid, codec);
+                manifest.add(new ManifestEntry(digest, chunkLength));
+            }
+        } catch (IOException | InterruptedException e) {
+            releaseChunks(getDigests(manifest), cid);
+            throw e;
+        }
+
+        File manifestFile = FileHashStoreUtility.generateTmpFile("tmp", tmpDirectory);
+        try (OutputStream manifestStream = Files.newOutputStream(manifestFile.toPath())) {
+            StoredFileCodec.writeHeader(manifestStream, StoredFileCodec.CHUNKED_CODEC_ID, size);
+            BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(manifestStream, StandardCharsets.UTF_8));
+            for (ManifestEntry entry : manifest) {
+                writer.write(entry.digest() + " " + entry.length());
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException ioe) {
+            Files.deleteIfExists(manifestFile.toPath());
+            releaseChunks(getDigests(manifest), cid);
+            throw ioe;
+        }
+        Files.delete(tmpFile.toPath());
+        TmpFileAllocator.release(tmpFile.toPath());
+        logChunkStore.debug(
+            "Data object with cid: " + cid + " stored as " + manifest.size() + " chunks.");
+        return manifestFile;
+    }
+
+    /**
+     * Read the chunks listed in a chunk manifest
+     *
+     * @param manifestStream Stream of the chunk manifest, after its header
+     * @return Chunks of the data object, in order
+     * @throws IOException If the manifest cannot be read
+     */
+    static List<ManifestEntry> readManifest(InputStream manifestStream) throws IOException {
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(manifestStream, StandardCharsets.UTF_8));
+        List<ManifestEntry> manifest = new ArrayList<>();
+        String entry;
+        while ((entry = reader.readLine()) != null) {
+            if (!entry.isBlank()) {
+                int separator = entry.indexOf(' ');
+                manifest.add(new ManifestEntry(
+                    entry.substring(0, separator), Long.parseLong(entry.substring(separator + 1))));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Open the content of a chunked data object from a given offset. Chunks that end before the
+     * offset are skipped without being opened, and each other chunk is only opened once the
+     * previous one has been read.
+     *
+     * @param manifest Chunks of the data object, in order
+     * @param codec    Codec of the store, to decode the chunks
+     * @param offset   Offset in the data object to start reading from
+     * @return InputStream of the content of the data object, from the given offset
+     */
+    InputStream open(List<ManifestEntry> manifest, StoredFileCodec codec, long offset) {
+        Iterator<ManifestEntry> chunks = manifest.iterator();
+        List<ManifestEntry> remainingChunks = new ArrayList<>();
+        while (chunks.hasNext()) {
+            ManifestEntry chunk = chunks.next();
+            if (offset < chunk.length()) {
+                remainingChunks.add(chunk);
+                chunks.forEachRemaining(remainingChunks::add);
+                break;
+            }
+            offset -= chunk.length();
+        }
+        return new ChunkSequenceInputStream(remainingChunks.iterator(), codec, offset);
+    }
+
+    /**
+     * Transfer a range of a chunked data object to a channel, one chunk at a time. Chunks that end
+     * before the range are skipped without being opened.
+     *
+     * @param manifest Chunks of the data object, in order
+     * @param codec    Codec of the store, to transfer the chunks
+     * @param offset   Offset in the data object to start transferring from
+     * @param length   Number of bytes to transfer
+     * @param target   Channel to transfer the range to
+     * @return Number of bytes transferred
+     * @throws IOException If a chunk cannot be read, or the target cannot be written
+     */
+    long transferTo(
+        List<ManifestEntry> manifest, StoredFileCodec codec, long offset, long length,
+        WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        for (ManifestEntry chunk : manifest) {
+            if (transferred >= length) {
+                break;
+            }
+            if (offset >= chunk.length()) {
+                offset -= chunk.length();
+                continue;
+            }
+            long chunkRangeLength = Math.min(chunk.length() - offset, length - transferred);
+            transferred += codec.transferTo(
+                getChunkPath(chunk.digest()), offset, chunkRangeLength, target);
+            offset = 0;
+        }
+        return transferred;
+    }
+
+    /**
+     * Remove a data object's references to its chunks, and delete the chunks that are no longer
+     * referenced by any data object
+     *
+     * @param chunkDigests Hex digests of the chunks of the data object
+     * @param cid          Content identifier of the data object
+     * @throws IOException          If a refs file cannot be updated, or a chunk cannot be deleted
+     * @throws InterruptedException If interrupted while waiting for the lock of a chunk
+     */
+    void releaseChunks(List<String> chunkDigests, String cid)
+        throws IOException, InterruptedException {
+        List<Path> deletedPaths = new ArrayList<>();
+        for (String digest : new LinkedHashSet<>(chunkDigests)) {
+            chunkLockedDigests.lock(digest);
+            try {
+                Path chunkRefsPath = getChunkRefsPath(digest);
+                if (Files.exists(chunkRefsPath)) {
+                    fileHashStore.updateRefsFile(
+                        cid, chunkRefsPath, HashStoreRefUpdateTypes.remove);
+                }
+                if (!Files.exists(chunkRefsPath) || Files.size(chunkRefsPath) == 0) {
+                    Files.deleteIfExists(getChunkPath(digest));
+                    Files.deleteIfExists(chunkRefsPath);
+                    deletedPaths.add(getChunkPath(digest));
+                    deletedPaths.add(chunkRefsPath);
+                    logChunkStore.debug("Deleted chunk: " + digest);
+                }
+            } finally {
+                chunkLockedDigests.unlock(digest);
+            }
+        }
+        fileHashStore.commitDeletions(deletedPaths);
+    }
+
+    /**
+     * @param digest Hex digest of a chunk
+     * @return Permanent address of the chunk
+     */
+    Path getChunkPath(String digest) {
+        return chunkDirectory.resolve(
+            FileHashStoreUtility.getHierarchicalPathString(directoryDepth, directoryWidth, digest));
+    }
+
+    private Path getChunkRefsPath(String digest) {
+        return chunkRefsDirectory.resolve(
+            FileHashStoreUtility.getHierarchicalPathString(directoryDepth, directoryWidth, digest));
+    }
+
+    /**
+     * Store a chunk unless it is already stored, and reference it from a data object
+     */
+    private void storeChunk(
+        String digest, byte[] buffer, int length, String cid, StoredFileCodec codec)
+        throws IOException, InterruptedException {
+        chunkLockedDigests.lock(digest);
+        try {
+            Path chunkPath = getChunkPath(digest);
+            if (!Files.exists(chunkPath)) {
+                File chunkTmpFile = FileHashStoreUtility.generateTmpFile("tmp", tmpDirectory);
+                try {
+                    try (OutputStream chunkStream = Files.newOutputStream(chunkTmpFile.toPath())) {
+                        chunkStream.write(buffer, 0, length);
+                    }
+                    chunkTmpFile = codec.encode(chunkTmpFile);
+                    fileHashStore.move(chunkTmpFile, chunkPath.toFile(), "object");
+                } finally {
+                    Files.deleteIfExists(chunkTmpFile.toPath());
+                }
+            }
+
+            Path chunkRefsPath = getChunkRefsPath(digest);
+            if (Files.exists(chunkRefsPath)) {
+                fileHashStore.updateRefsFile(cid, chunkRefsPath, HashStoreRefUpdateTypes.add);
+            } else {
+                File chunkRefsTmpFile = fileHashStore.writeRefsFile(cid, "chunk");
+                fileHashStore.move(chunkRefsTmpFile, chunkRefsPath.toFile(), "refs");
+            }
+        } finally {
+            chunkLockedDigests.unlock(digest);
+        }
+    }
+
+    /**
+     * @param manifest Chunks of a data object
+     * @return Hex digests of the chunks, in order
+     */
+    static List<String> getDigests(List<ManifestEntry> manifest) {
+        List<String> digests = new ArrayList<>(manifest.size());
+        for (ManifestEntry entry : manifest) {
+            digests.add(entry.digest());
+        }
+        return digests;
+    }
+
+    /**
+     * Reads the chunks of a data object one after another
+     */
+    private final class ChunkSequenceInputStream extends InputStream {
+        private final Iterator<ManifestEntry> chunks;
+        private final StoredFileCodec codec;
+        private long firstChunkOffset;
+        private InputStream chunkStream;
+
+        private ChunkSequenceInputStream(
+            Iterator<ManifestEntry> chunks, StoredFileCodec codec, long firstChunkOffset) {
+            this.chunks = chunks;
+            this.codec = codec;
+            this.firstChunkOffset = firstChunkOffset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (true) {
+                if (chunkStream == null) {
+                    if (!chunks.hasNext()) {
+                        return -1;
+                    }
+                    Path chunkPath = getChunkPath(chunks.next().digest());
+                    if (firstChunkOffset > 0) {
+                        chunkStream = codec.open(chunkPath, firstChunkOffset, -1);
+                        firstChunkOffset = 0;
+                    } else {
+                        chunkStream = codec.open(chunkPath);
+                    }
+                }
+                int bytesRead = chunkStream.read(buffer, offset, length);
+                if (bytesRead != -1) {
+                    return bytesRead;
+                }
+                chunkStream.close();
+                chunkStream = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (chunkStream != null) {
+                chunkStream.close();
+                chunkStream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * ContentDefinedChunker splits a stream of data into chunks whose boundaries are determined by
+ * the data itself, using a gear rolling hash: a boundary is placed after a byte when the hash of
+ * the bytes preceding it has its top bits unset. Since a boundary only depends on the bytes just
+ * before it, inserting or removing data in one place of an object only changes the chunks around
+ * that place, and the other chunks are identical to those of the original object.
+ *
+ * Chunks are at least {@code MIN_CHUNK_SIZE} bytes (except the last one), at most
+ * {@code MAX_CHUNK_SIZE} bytes, and about {@code MIN_CHUNK_SIZE} + 1 MiB on average. The gear
+ * table is generated from a fixed seed, so that every process finds the same boundaries.
+ */
+final class ContentDefinedChunker {
+    static final int MIN_CHUNK_SIZE = 256 * 1024;
+    static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+    // A boundary is found with a probability of 1 / 2^20 per byte, ie. every 1 MiB on average
+    private static final int BOUNDARY_BITS = 20;
+    private static final long GEAR_SEED = 0x4853434443L;
+    private static final long[] GEAR = new long[256];
+    private final InputStream dataStream;
+    private final byte[] buffer = new byte[MAX_CHUNK_SIZE];
+    private int buffered = 0;
+    private int chunkLength = 0;
+    private boolean endOfStream = false;
+
+    static {
+        SplittableRandom random = new SplittableRandom(GEAR_SEED);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Constructor to initialize a ContentDefinedChunker
+     *
+     * @param dataStream Stream of data to split, it is not closed by the chunker
+     */
+    ContentDefinedChunker(InputStream dataStream) {
+        FileHashStoreUtility.ensureNotNull(dataStream, "dataStream");
+        this.dataStream = dataStream;
+    }
+
+    /**
+     * Find the next chunk, which can then be read from {@link #getBuffer()}
+     *
+     * @return Length of the next chunk, or 0 once the stream has been fully read
+     * @throws IOException If the stream cannot be read
+     */
+    int nextChunk() throws IOException {
+        // Drop the previous chunk from the buffer
+        if (chunkLength > 0) {
+            System.arraycopy(buffer, chunkLength, buffer, 0, buffered - chunkLength);
+            buffered -= chunkLength;
+        }
+        if (!endOfStream && buffered < MAX_CHUNK_SIZE) {
+            int bytesRead = dataStream.readNBytes(buffer, buffered, MAX_CHUNK_SIZE - buffered);
+            buffered += bytesRead;
+            endOfStream = buffered < MAX_CHUNK_SIZE;
+        }
+        chunkLength = findBoundary(buffer, buffered);
+        return chunkLength;
+    }
+
+    /**
+     * @return Buffer holding the chunk found by the last call to {@link #nextChunk()}, from
+     *     offset 0. The buffer is reused by the next call.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Find the end of the chunk at the start of the given data
+     *
+     * @param data   Data starting with a chunk
+     * @param length Amount of data available, which is all the remaining data when it is less
+     *               than {@code MAX_CHUNK_SIZE}
+     * @return Length of the chunk
+     */
+    static int findBoundary(byte[] data, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        int end = Math.min(length, MAX_CHUNK_SIZE);
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE; i < end; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xff];
+            if (hash >>> (Long.SIZE - BOUNDARY_BITS) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,297 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * DeletionReaper deletes the files that have been renamed for deletion (ex. a data object, its
+ * refs files or metadata documents renamed to 'file name' + '_delete_' + a UUID), in the
+ * background.
+ * Deleting a large file can take a while on some file systems, so deletes only rename files while
+ * holding the locks of their identifiers, and hand the renamed files over to the reaper. A renamed
+ * file is no longer found at its permanent address, so it does not matter when it is deleted.
+ *
+ * Files are deleted by a single thread, at most {@code maxDeletesPerSecond} per second so that
+ * mass deletions do not saturate the file system. When the reaper is created, it also looks for
+ * files renamed for deletion that were left behind (ex. by a crash) and deletes them. Only the
+ * directories that hold renamed files are walked, and only files renamed at least
+ * {@code DEFAULT_RECOVERY_MIN_AGE_MILLIS} ago are deleted: in the 'shared' lock mode, a younger
+ * file may belong to a delete still in progress in another process, which may yet restore it.
+ *
+ * Stores opened at the same (canonical) store path within a JVM share one instance.
+ */
+final class DeletionReaper {
+    private static final Log logDeletionReaper = LogFactory.getLog(DeletionReaper.class);
+    private static final Map<Path, DeletionReaper> registry = new ConcurrentHashMap<>();
+    static final String DELETE_SUFFIX = "_delete";
+    // Files deleted per second by a store's reaper
+    static final int DEFAULT_MAX_DELETES_PER_SECOND = 1000;
+    // Least age of a file renamed for deletion before it is recovered, far longer than any delete
+    static final long DEFAULT_RECOVERY_MIN_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private final int maxDeletesPerSecond;
+    private final Queue<Path> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicLong backlogSize = new AtomicLong();
+    private final AtomicBoolean reaping = new AtomicBoolean(false);
+    private final LongAdder deletedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private long windowStart;
+    private int windowDeletes;
+
+    /**
+     * Constructor to initialize a DeletionReaper. Stores use {@link #forStoreRoot(Path)} instead,
+     * so that files left behind are only looked for once per JVM.
+     *
+     * @param maxDeletesPerSecond Amount of files deleted per second
+     */
+    DeletionReaper(int maxDeletesPerSecond) {
+        if (maxDeletesPerSecond <= 0) {
+            String errMsg = "Max deletes per second must be positive: " + maxDeletesPerSecond;
+            logDeletionReaper.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    /**
+     * Get the reaper of a given store root, creating it if this is the first store opened at the
+     * given path. A new reaper looks for the files renamed for deletion in the given directories
+     * in the background, and deletes them.
+     *
+     * @param storeRoot            Root directory of a HashStore
+     * @param recoveryDirectories  Directories of the store that hold files renamed for deletion
+     * @param skippedDirectories   Subdirectories of the recovery directories not to look in (ex.
+     *                             tmp directories)
+     * @return Reaper shared by all stores opened at the given root
+     * @throws IOException If the canonical path of the store root cannot be resolved
+     */
+    static DeletionReaper forStoreRoot(
+        Path storeRoot, Collection<Path> recoveryDirectories, Collection<Path> skippedDirectories)
+        throws IOException {
+        FileHashStoreUtility.ensureNotNull(storeRoot, "storeRoot");
+        return registry.computeIfAbsent(storeRoot.toRealPath(), root -> {
+            DeletionReaper deletionReaper = new DeletionReaper(DEFAULT_MAX_DELETES_PER_SECOND);
+            deletionReaper.recoverInBackground(recoveryDirectories, skippedDirectories);
+            return deletionReaper;
+        });
+    }
+
+    /**
+     * Queue files renamed for deletion, to be deleted in the background
+     *
+     * @param deleteList Paths of the renamed files
+     */
+    void enqueue(Collection<Path> deleteList) {
+        FileHashStoreUtility.ensureNotNull(deleteList, "deleteList");
+        if (deleteList.isEmpty()) {
+            return;
+        }
+        for (Path deleteItem : deleteList) {
+            backlog.add(deleteItem);
+            backlogSize.incrementAndGet();
+        }
+        startReaping();
+    }
+
+    /**
+     * Look for the files renamed for deletion in directories (and their subdirectories), and
+     * queue the ones renamed long enough ago to be deleted
+     *
+     * @param directories        Directories to look in, which are skipped if they do not exist
+     * @param skippedDirectories Subdirectories not to look in
+     * @param minAgeMillis       Least time since a file was renamed for it to be queued
+     * @return Amount of files queued
+     * @throws IOException If a directory cannot be walked
+     */
+    int recover(
+        Collection<Path> directories, Collection<Path> skippedDirectories, long minAgeMillis)
+        throws IOException {
+        long renamedBefore = System.currentTimeMillis() - minAgeMillis;
+        List<Path> leftovers = new ArrayList<>();
+        for (Path directory : directories) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return skippedDirectories.contains(dir) ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                    if (attrs.isRegularFile() && isRenamedForDeletion(file)
+                        && getRenameTime(file, attrs).toMillis() <= renamedBefore) {
+                        leftovers.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ioe) {
+                    // Ex. deleted by another process while walking
+                    logDeletionReaper.debug("Unable to visit: " + file + ". " + ioe.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        if (!leftovers.isEmpty()) {
+            logDeletionReaper.info(
+                "Found " + leftovers.size() + " files renamed for deletion under: " + directories);
+            enqueue(leftovers);
+        }
+        return leftovers.size();
+    }
+
+    /**
+     * Files renamed for deletion end with '_delete_' and a UUID, or with '_delete' when they were
+     * renamed by an older release
+     */
+    private static boolean isRenamedForDeletion(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.endsWith(DELETE_SUFFIX) || fileName.contains(DELETE_SUFFIX + "_");
+    }
+
+    /**
+     * Get the time a file was renamed at. Renaming a file changes its status change time (ctime),
+     * but not its last modified time, which is only used where the ctime is not available.
+     */
+    private static FileTime getRenameTime(Path file, BasicFileAttributes attrs)
+        throws IOException {
+        try {
+            return (FileTime) Files.getAttribute(file, "unix:ctime");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return attrs.lastModifiedTime();
+        }
+    }
+
+    /**
+     * Wait until every queued file has been deleted (or could not be deleted)
+     *
+     * @param timeout How long to wait
+     * @param unit    Unit of the timeout
+     * @return True if the backlog is empty, false if the timeout elapsed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    boolean awaitEmptyBacklog(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (backlogSize.get() > 0) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * @return Amount of files waiting to be deleted
+     */
+    long getBacklogSize() {
+        return backlogSize.get();
+    }
+
+    /**
+     * @return Amount of files deleted
+     */
+    long getDeletedCount() {
+        return deletedCount.sum();
+    }
+
+    /**
+     * @return Amount of files that could not be deleted
+     */
+    long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    private void recoverInBackground(
+        Collection<Path> recoveryDirectories, Collection<Path> skippedDirectories) {
+        Thread recoveryThread = new Thread(() -> {
+            try {
+                recover(recoveryDirectories, skippedDirectories, DEFAULT_RECOVERY_MIN_AGE_MILLIS);
+            } catch (IOException | RuntimeException e) {
+                logDeletionReaper.warn(
+                    "Unable to look for files renamed for deletion under: " + recoveryDirectories
+                        + ". " + e.getMessage());
+            }
+        }, "hashstore-deletion-recovery");
+        recoveryThread.setDaemon(true);
+        recoveryThread.start();
+    }
+
+    private void startReaping() {
+        if (!reaping.compareAndSet(false, true)) {
+            return;
+        }
+        Thread reaperThread = new Thread(() -> {
+            try {
+                Path deleteItem;
+                while ((deleteItem = backlog.poll()) != null) {
+                    throttle();
+                    delete(deleteItem);
+                    backlogSize.decrementAndGet();
+                }
+            } catch (InterruptedException ie) {
+                logDeletionReaper.warn("Interrupted while deleting files renamed for deletion");
+            } finally {
+                reaping.set(false);
+            }
+            // Pick up files queued while the thread was finishing
+            if (!backlog.isEmpty()) {
+                startReaping();
+            }
+        }, "hashstore-deletion-reaper");
+        reaperThread.setDaemon(true);
+        reaperThread.start();
+    }
+
+    /**
+     * Wait for the next one second window once the current one has used up its deletes
+     */
+    private void throttle() throws InterruptedException {
+        long now = System.nanoTime();
+        if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+            windowStart = now;
+            windowDeletes = 0;
+        } else if (windowDeletes >= maxDeletesPerSecond) {
+            TimeUnit.NANOSECONDS.sleep(windowStart + TimeUnit.SECONDS.toNanos(1) - now);
+            windowStart = System.nanoTime();
+            windowDeletes = 0;
+        }
+        windowDeletes++;
+    }
+
+    private void delete(Path deleteItem) {
+        try {
+            // The same file may have been queued twice (ex. found while recovering)
+            Files.deleteIfExists(deleteItem);
+            deletedCount.increment();
+        } catch (IOException ioe) {
+            failedCount.increment();
+            logDeletionReaper.warn(
+                "Unable to delete file renamed for deletion: " + deleteItem + ". "
+                    + ioe.getMessage());
+        }
+    }
+}
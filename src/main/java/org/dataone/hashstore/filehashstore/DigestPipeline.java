@@ -0,0 +1,376 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * DigestPipeline calculates several hex digests over one stream of data. Data is read into a small
+ * ring of pooled chunks, and every filled chunk is handed (without being copied) to one digest
+ * worker per algorithm, so that the algorithms are calculated in parallel with each other and with
+ * the caller writing the chunk to disk. A chunk is reference counted and returns to the ring once
+ * the writer and every digest worker are done with it.
+ *
+ * Digest workers run on a shared executor bounded to the number of available processors. Each
+ * algorithm's chunks are processed in order, one at a time, and a worker task never blocks, so
+ * concurrent pipelines cannot starve each other. Small streams are not worth handing off, so
+ * chunks are digested on the calling thread until the parallel threshold has been reached.
+ *
+ * A DigestPipeline is meant to be used by a single thread.
+ */
+public class DigestPipeline implements Closeable {
+    private static final Log logDigestPipeline = LogFactory.getLog(DigestPipeline.class);
+    private static final AtomicInteger digestThreadCount = new AtomicInteger();
+    private static final ExecutorService digestExecutor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread digestThread = new Thread(
+                runnable, "hashstore-digest-" + digestThreadCount.incrementAndGet());
+            digestThread.setDaemon(true);
+            return digestThread;
+        });
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int RING_SIZE = 8;
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 1024 * 1024;
+    private final List<DigestWorker> digestWorkers = new ArrayList<>();
+    private final ArrayBlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(RING_SIZE);
+    private final long parallelThreshold;
+    private final AtomicBoolean aborted = new AtomicBoolean(false);
+    private int allocatedChunks = 0;
+    private Chunk fillingChunk;
+    private long bytesDigested = 0;
+    private boolean finished = false;
+
+    /**
+     * A pooled buffer and the number of holders that have not released it yet
+     */
+    private final class Chunk {
+        private final byte[] data = new byte[CHUNK_SIZE];
+        private final AtomicInteger references = new AtomicInteger();
+        private int length;
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                freeChunks.add(this);
+            }
+        }
+    }
+
+    /**
+     * Digests the chunks of one algorithm in order. The worker is only scheduled on the executor
+     * while it has chunks pending, and drains them without ever blocking.
+     */
+    private final class DigestWorker implements Runnable {
+        private final String algorithm;
+        private final MessageDigest messageDigest;
+        private final ConcurrentLinkedQueue<Chunk> pendingChunks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private DigestWorker(String algorithm) throws NoSuchAlgorithmException {
+            this.algorithm = algorithm;
+            messageDigest = MessageDigest.getInstance(algorithm);
+        }
+
+        private void submit(Chunk chunk) {
+            pendingChunks.add(chunk);
+            if (scheduled.compareAndSet(false, true)) {
+                digestExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Chunk chunk;
+                while ((chunk = pendingChunks.poll()) != null) {
+                    if (!aborted.get()) {
+                        messageDigest.update(chunk.data, 0, chunk.length);
+                    }
+                    chunk.release();
+                }
+                scheduled.set(false);
+                // A chunk may have been submitted after the queue was drained, but before the
+                // worker was marked as unscheduled
+            } while (!pendingChunks.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+    }
+
+    /**
+     * Constructor to initialize a DigestPipeline with the default parallel threshold
+     *
+     * @param algorithms Hash algorithms to calculate
+     * @throws NoSuchAlgorithmException If an algorithm is not supported
+     */
+    public DigestPipeline(Collection<String> algorithms) throws NoSuchAlgorithmException {
+        this(algorithms, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Constructor to initialize a DigestPipeline
+     *
+     * @param algorithms        Hash algorithms to calculate
+     * @param parallelThreshold Amount of bytes to digest on the calling thread before handing
+     *                          chunks off to the digest workers. Use {@code Long.MAX_VALUE} to
+     *                          always digest on the calling thread.
+     * @throws NoSuchAlgorithmException If an algorithm is not supported
+     */
+    public DigestPipeline(Collection<String> algorithms, long parallelThreshold)
+        throws NoSuchAlgorithmException {
+        FileHashStoreUtility.ensureNotNull(algorithms, "algorithms");
+        if (parallelThreshold < 0) {
+            String errMsg = "Parallel threshold must be >= 0. Found: " + parallelThreshold;
+            logDigestPipeline.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        this.parallelThreshold = parallelThreshold;
+        for (String algorithm : algorithms) {
+            digestWorkers.add(new DigestWorker(algorithm));
+        }
+    }
+
+    /**
+     * Read a data stream to its end, writing it to the given output stream while digesting it.
+     * Data is read directly into the pooled chunks, so it is never copied by the pipeline.
+     *
+     * @param dataStream   Stream of data to read, it is not closed by this method
+     * @param outputStream Stream to write the data to, it is not closed by this method
+     * @return Amount of bytes transferred
+     * @throws IOException          If the data cannot be read or written
+     * @throws InterruptedException If interrupted while waiting for a chunk to be released
+     */
+    public long transfer(InputStream dataStream, OutputStream outputStream)
+        throws IOException, InterruptedException {
+        ensureNotFinished();
+        flushFillingChunk();
+        long bytesTransferred = 0;
+        while (true) {
+            Chunk chunk = acquireChunk();
+            int bytesRead = dataStream.readNBytes(chunk.data, 0, CHUNK_SIZE);
+            if (bytesRead == 0) {
+                freeChunks.add(chunk);
+                return bytesTransferred;
+            }
+            chunk.length = bytesRead;
+            // Keep a reference for the writer, so the chunk is not reused before it is written
+            dispatch(chunk, 1);
+            try {
+                outputStream.write(chunk.data, 0, bytesRead);
+            } finally {
+                chunk.release();
+            }
+            bytesTransferred += bytesRead;
+        }
+    }
+
+    /**
+     * Read a data stream to its end, writing it to the given channel while digesting it. Filled
+     * chunks are held until enough of them have been read, and then written together with a single
+     * gathering write, so writes are larger than a chunk without the data being copied into another
+     * buffer.
+     *
+     * @param dataStream Stream of data to read, it is not closed by this method
+     * @param channel    Channel to write the data to, it is not closed by this method
+     * @param writeSize  Amount of bytes to gather into each write. It is rounded up to a whole
+     *                   number of chunks, and is at most {@code CHUNK_SIZE * RING_SIZE}.
+     * @return Amount of bytes transferred
+     * @throws IOException          If the data cannot be read or written
+     * @throws InterruptedException If interrupted while waiting for a chunk to be released
+     */
+    public long transfer(InputStream dataStream, GatheringByteChannel channel, int writeSize)
+        throws IOException, InterruptedException {
+        ensureNotFinished();
+        flushFillingChunk();
+        int chunksPerWrite =
+            Math.max(1, Math.min((writeSize + CHUNK_SIZE - 1) / CHUNK_SIZE, RING_SIZE));
+        Chunk[] heldChunks = new Chunk[chunksPerWrite];
+        ByteBuffer[] buffers = new ByteBuffer[chunksPerWrite];
+        int heldCount = 0;
+        long bytesTransferred = 0;
+        try {
+            while (true) {
+                Chunk chunk = acquireChunk();
+                int bytesRead = dataStream.readNBytes(chunk.data, 0, CHUNK_SIZE);
+                if (bytesRead == 0) {
+                    freeChunks.add(chunk);
+                    writeHeldChunks(channel, buffers, heldCount);
+                    return bytesTransferred;
+                }
+                chunk.length = bytesRead;
+                // Keep a reference for the writer, so the chunk is not reused before it is written
+                dispatch(chunk, 1);
+                heldChunks[heldCount] = chunk;
+                buffers[heldCount] = ByteBuffer.wrap(chunk.data, 0, bytesRead);
+                heldCount++;
+                bytesTransferred += bytesRead;
+                // A partially filled chunk means that the end of the stream has been reached
+                if (heldCount == chunksPerWrite || bytesRead < CHUNK_SIZE) {
+                    writeHeldChunks(channel, buffers, heldCount);
+                    for (int i = 0; i < heldCount; i++) {
+                        heldChunks[i].release();
+                        heldChunks[i] = null;
+                    }
+                    heldCount = 0;
+                }
+            }
+        } finally {
+            for (int i = 0; i < heldCount; i++) {
+                heldChunks[i].release();
+            }
+        }
+    }
+
+    private static void writeHeldChunks(
+        GatheringByteChannel channel, ByteBuffer[] buffers, int heldCount) throws IOException {
+        if (heldCount == 0) {
+            return;
+        }
+        while (buffers[heldCount - 1].hasRemaining()) {
+            channel.write(buffers, 0, heldCount);
+        }
+    }
+
+    /**
+     * Add data to be digested. As the given buffer may be reused by the caller, the data is copied
+     * into a pooled chunk, which is dispatched once it is full.
+     *
+     * @param buffer Data to digest
+     * @param offset Offset of the data in the buffer
+     * @param length Amount of bytes to digest
+     * @throws InterruptedException If interrupted while waiting for a chunk to be released
+     */
+    public void update(byte[] buffer, int offset, int length) throws InterruptedException {
+        ensureNotFinished();
+        while (length > 0) {
+            if (fillingChunk == null) {
+                fillingChunk = acquireChunk();
+                fillingChunk.length = 0;
+            }
+            int bytesToCopy = Math.min(length, CHUNK_SIZE - fillingChunk.length);
+            System.arraycopy(buffer, offset, fillingChunk.data, fillingChunk.length, bytesToCopy);
+            fillingChunk.length += bytesToCopy;
+            offset += bytesToCopy;
+            length -= bytesToCopy;
+            if (fillingChunk.length == CHUNK_SIZE) {
+                flushFillingChunk();
+            }
+        }
+    }
+
+    /**
+     * Wait for every chunk to be digested and get the resulting hex digests. The pipeline cannot
+     * be used afterwards.
+     *
+     * @return Map of each algorithm to the lower case hex digest of the data
+     * @throws InterruptedException If interrupted while waiting for the digest workers
+     */
+    public Map<String, String> finish() throws InterruptedException {
+        ensureNotFinished();
+        flushFillingChunk();
+        // Once every chunk is back in the ring, every digest worker is done
+        List<Chunk> returnedChunks = new ArrayList<>(allocatedChunks);
+        while (returnedChunks.size() < allocatedChunks) {
+            returnedChunks.add(freeChunks.take());
+        }
+        freeChunks.addAll(returnedChunks);
+        finished = true;
+
+        Map<String, String> hexDigests = new HashMap<>();
+        for (DigestWorker digestWorker : digestWorkers) {
+            String hexDigest =
+                DatatypeConverter.printHexBinary(digestWorker.messageDigest.digest()).toLowerCase();
+            hexDigests.put(digestWorker.algorithm, hexDigest);
+        }
+        return hexDigests;
+    }
+
+    /**
+     * Abandon the pipeline if it has not been finished. Chunks still pending are released without
+     * being digested.
+     */
+    @Override
+    public void close() {
+        if (!finished) {
+            aborted.set(true);
+            finished = true;
+        }
+    }
+
+    /**
+     * Digest a filled chunk, on the calling thread while below the parallel threshold and by the
+     * digest workers afterwards
+     *
+     * @param chunk          Chunk to digest
+     * @param heldReferences References held by the caller, to be released by the caller
+     */
+    private void dispatch(Chunk chunk, int heldReferences) {
+        bytesDigested += chunk.length;
+        if (bytesDigested <= parallelThreshold || digestWorkers.size() < 2) {
+            for (DigestWorker digestWorker : digestWorkers) {
+                digestWorker.messageDigest.update(chunk.data, 0, chunk.length);
+            }
+            if (heldReferences == 0) {
+                freeChunks.add(chunk);
+            } else {
+                chunk.references.set(heldReferences);
+            }
+            return;
+        }
+
+        chunk.references.set(digestWorkers.size() + heldReferences);
+        for (DigestWorker digestWorker : digestWorkers) {
+            digestWorker.submit(chunk);
+        }
+    }
+
+    private void flushFillingChunk() {
+        if (fillingChunk == null) {
+            return;
+        }
+        if (fillingChunk.length == 0) {
+            freeChunks.add(fillingChunk);
+        } else {
+            dispatch(fillingChunk, 0);
+        }
+        fillingChunk = null;
+    }
+
+    private Chunk acquireChunk() throws InterruptedException {
+        Chunk chunk = freeChunks.poll();
+        if (chunk != null) {
+            return chunk;
+        }
+        if (allocatedChunks < RING_SIZE) {
+            allocatedChunks++;
+            return new Chunk();
+        }
+        return freeChunks.take();
+    }
+
+    private void ensureNotFinished() {
+        if (finished) {
+            String errMsg = "DigestPipeline has already been finished or closed.";
+            logDigestPipeline.error(errMsg);
+            throw new IllegalStateException(errMsg);
+        }
+    }
+}
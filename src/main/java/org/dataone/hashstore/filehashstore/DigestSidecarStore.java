@@ -0,0 +1,132 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * DigestSidecarStore keeps the hex digests of each data object in a small sidecar file, so that
+ * a checksum that was calculated once (when the object was stored, or on a later request) is
+ * never calculated again by re-reading the object. The sidecar of a cid is found at the sharded
+ * path of the cid under '/objects/digests', and holds one 'algorithm=hexDigest' line per
+ * algorithm.
+ *
+ * Since a cid is the digest of the content of its data object, the digests of a cid never change,
+ * and sidecars are replaced atomically, so a reader either finds the previous or the new digests
+ * without holding the cid lock. Recording digests merges them with the ones already recorded, so
+ * it must be done while holding the cid lock, or two writers recording different algorithms could
+ * each replace the sidecar without the other's digests. A sidecar left behind after its data
+ * object was deleted is still correct if the object is stored again.
+ */
+final class DigestSidecarStore {
+    private static final Log logDigestSidecarStore = LogFactory.getLog(DigestSidecarStore.class);
+    private final Path digestDirectory;
+    private final Path tmpDirectory;
+    private final PathResolver pathResolver;
+
+    /**
+     * Constructor to initialize a DigestSidecarStore
+     *
+     * @param digestDirectory Directory of the sidecars
+     * @param tmpDirectory    Directory in which sidecars are written before being moved
+     * @param pathResolver    Resolves cids to their sharded paths
+     */
+    DigestSidecarStore(Path digestDirectory, Path tmpDirectory, PathResolver pathResolver) {
+        this.digestDirectory = digestDirectory;
+        this.tmpDirectory = tmpDirectory;
+        this.pathResolver = pathResolver;
+    }
+
+    /**
+     * @param cid Content identifier
+     * @return Hex digests recorded for the cid, by algorithm, which is empty if there are none
+     * @throws IOException If the sidecar cannot be read
+     */
+    Map<String, String> read(String cid) throws IOException {
+        Map<String, String> hexDigests = new TreeMap<>();
+        String sidecar;
+        try {
+            sidecar = Files.readString(getSidecarPath(cid), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException nsfe) {
+            return hexDigests;
+        }
+        for (String line : sidecar.split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                hexDigests.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return hexDigests;
+    }
+
+    /**
+     * @param cid       Content identifier
+     * @param algorithm Algorithm of the hex digest
+     * @return Recorded hex digest, or null if it has not been recorded
+     * @throws IOException If the sidecar cannot be read
+     */
+    String get(String cid, String algorithm) throws IOException {
+        return read(cid).get(algorithm);
+    }
+
+    /**
+     * Record hex digests of a cid, along with those already recorded. The sidecar is only
+     * rewritten if at least one of the hex digests is new. The caller must hold the cid lock.
+     *
+     * @param cid        Content identifier
+     * @param hexDigests Hex digests to record, by algorithm
+     * @throws IOException If the sidecar cannot be read or written
+     */
+    void record(String cid, Map<String, String> hexDigests) throws IOException {
+        Map<String, String> recordedHexDigests = read(cid);
+        if (recordedHexDigests.entrySet().containsAll(hexDigests.entrySet())) {
+            return;
+        }
+        recordedHexDigests.putAll(hexDigests);
+        StringBuilder sidecar = new StringBuilder();
+        recordedHexDigests.forEach(
+            (algorithm, hexDigest) -> sidecar.append(algorithm).append('=').append(hexDigest)
+                .append('\n'));
+
+        Path sidecarPath = getSidecarPath(cid);
+        File tmpFile = FileHashStoreUtility.generateTmpFile("digests", tmpDirectory);
+        try {
+            Files.writeString(tmpFile.toPath(), sidecar, StandardCharsets.UTF_8);
+            FileHashStoreUtility.createParentDirectories(sidecarPath);
+            Files.move(
+                tmpFile.toPath(), sidecarPath, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+            TmpFileAllocator.release(tmpFile.toPath());
+        }
+        logDigestSidecarStore.debug("Recorded hex digests for cid: " + cid);
+    }
+
+    /**
+     * Delete the sidecar of a cid, if any
+     *
+     * @param cid Content identifier
+     * @throws IOException If the sidecar cannot be deleted
+     */
+    void delete(String cid) throws IOException {
+        Files.deleteIfExists(getSidecarPath(cid));
+    }
+
+    /**
+     * @param cid Content identifier
+     * @return Path of the sidecar of the cid
+     */
+    Path getSidecarPath(String cid) {
+        return pathResolver.resolveDigest(digestDirectory, cid);
+    }
+}
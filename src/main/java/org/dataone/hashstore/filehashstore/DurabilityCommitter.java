@@ -0,0 +1,182 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreDurabilityModes;
+
+/**
+ * DurabilityCommitter flushes the files and directories written by a HashStore to disk, as
+ * determined by the store's durability mode. In 'none' mode, nothing is flushed. In 'operation'
+ * mode, the caller flushes its own files and directories before returning. In 'group' mode, the
+ * caller also flushes its own files, in parallel with every other writer, but the flushes of a
+ * directory are shared: writers mostly place files in the same few directories, and a writer that
+ * finds a directory being flushed waits for the next flush of that directory, which is run once
+ * for every writer that joined it in the meantime. Distinct directories are flushed in parallel,
+ * and no writer waits for the flush of a directory it did not ask for.
+ */
+final class DurabilityCommitter {
+    private static final Log logDurabilityCommitter = LogFactory.getLog(DurabilityCommitter.class);
+    private static final Map<Path, DirectoryFlushes> directoryFlushes = new ConcurrentHashMap<>();
+    private final HashStoreDurabilityModes durabilityMode;
+
+    /**
+     * The flush of a directory that is running, if any, and the next flush, which writers that
+     * arrive in the meantime wait for. The running flush may have started before their entries
+     * were written, so the next flush only starts once it is done.
+     */
+    private static final class DirectoryFlushes {
+        private boolean flushing = false;
+        private CompletableFuture<Void> runningFlush;
+        private CompletableFuture<Void> nextFlush;
+    }
+
+    /**
+     * Constructor to initialize a DurabilityCommitter
+     *
+     * @param durabilityMode How files and directories are flushed
+     */
+    DurabilityCommitter(HashStoreDurabilityModes durabilityMode) {
+        FileHashStoreUtility.ensureNotNull(durabilityMode, "durabilityMode");
+        this.durabilityMode = durabilityMode;
+    }
+
+    /**
+     * @return True if files and directories are flushed at all
+     */
+    boolean isEnabled() {
+        return durabilityMode != HashStoreDurabilityModes.none;
+    }
+
+    /**
+     * Flush the content and metadata of the given files and directories to disk. Flushing a
+     * directory makes the entries that have been created, renamed or removed in it durable.
+     *
+     * @param paths Files and directories to flush
+     * @throws InterruptedIOException If interrupted while waiting for a shared directory flush
+     * @throws IOException            If a file or directory cannot be flushed
+     */
+    void commit(Collection<Path> paths) throws IOException {
+        if (durabilityMode == HashStoreDurabilityModes.none || paths.isEmpty()) {
+            return;
+        }
+        for (Path path : paths) {
+            if (durabilityMode == HashStoreDurabilityModes.group && Files.isDirectory(path)) {
+                forceShared(path);
+            } else {
+                force(path);
+            }
+        }
+    }
+
+    /**
+     * Flush a directory, sharing the flush with the other writers of the directory. The caller
+     * runs the flush itself when the directory is not being flushed. Otherwise, it joins the next
+     * flush, and runs it once the running flush is done, unless another writer already has.
+     */
+    private static void forceShared(Path directory) throws IOException {
+        DirectoryFlushes flushes =
+            directoryFlushes.computeIfAbsent(directory, path -> new DirectoryFlushes());
+        CompletableFuture<Void> flush;
+        CompletableFuture<Void> runningFlush = null;
+        synchronized (flushes) {
+            if (flushes.nextFlush == null) {
+                flushes.nextFlush = new CompletableFuture<>();
+            }
+            flush = flushes.nextFlush;
+            if (flushes.flushing) {
+                runningFlush = flushes.runningFlush;
+            } else {
+                startNextFlush(flushes);
+            }
+        }
+
+        try {
+            boolean runFlush = runningFlush == null;
+            if (!runFlush) {
+                // The outcome of the running flush does not matter, the next flush runs anyway
+                runningFlush.handle((result, failure) -> null).get();
+                synchronized (flushes) {
+                    runFlush = !flushes.flushing && flushes.nextFlush == flush;
+                    if (runFlush) {
+                        startNextFlush(flushes);
+                    }
+                }
+            }
+            if (runFlush) {
+                runFlush(directory, flushes, flush);
+            }
+            flush.get();
+
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while waiting for the flush of: " + directory;
+            logDurabilityCommitter.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Mark the next flush of a directory as running. Must be called while holding its lock.
+     */
+    private static void startNextFlush(DirectoryFlushes flushes) {
+        flushes.flushing = true;
+        flushes.runningFlush = flushes.nextFlush;
+        flushes.nextFlush = null;
+    }
+
+    /**
+     * Flush a directory for every writer waiting for the given flush. The directory is marked as
+     * no longer being flushed before the writers are released, so that one of the writers
+     * waiting for the next flush can run it.
+     */
+    private static void runFlush(
+        Path directory, DirectoryFlushes flushes, CompletableFuture<Void> flush) {
+        IOException failure = null;
+        try {
+            force(directory);
+        } catch (IOException ioe) {
+            failure = ioe;
+        } catch (RuntimeException re) {
+            failure = new IOException(re);
+        }
+        synchronized (flushes) {
+            flushes.flushing = false;
+            flushes.runningFlush = null;
+            if (flushes.nextFlush == null) {
+                directoryFlushes.remove(directory, flushes);
+            }
+        }
+        if (failure == null) {
+            flush.complete(null);
+        } else {
+            flush.completeExceptionally(failure);
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ioe) {
+            logDurabilityCommitter.error("Unable to flush: " + path + ". " + ioe.getMessage());
+            throw ioe;
+        }
+    }
+}
@@ -6,9 +6,13 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileAlreadyExistsException;
@@ -22,20 +26,36 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
-import javax.xml.bind.DatatypeConverter;
-
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.DeleteResult;
 import org.dataone.hashstore.ObjectMetadata;
 import org.dataone.hashstore.HashStore;
+import org.dataone.hashstore.StoreObjectRequest;
+import org.dataone.hashstore.StoreObjectResult;
 import org.dataone.hashstore.exceptions.CidNotFoundInPidRefsFileException;
 import org.dataone.hashstore.exceptions.HashStoreRefsAlreadyExistException;
 import org.dataone.hashstore.exceptions.IdentifierNotLockedException;
@@ -56,15 +76,11 @@ import org.dataone.hashstore.exceptions.UnsupportedHashAlgorithmException;
  */
 public class FileHashStore implements HashStore {
     private static final Log logFileHashStore = LogFactory.getLog(FileHashStore.class);
-    private static final int TIME_OUT_MILLISEC = 1000;
-    private static final Collection<String> objectLockedCids = new ArrayList<>(100);
-    private static final Collection<String> objectLockedPids = new ArrayList<>(100);
-    private static final Collection<String> metadataLockedDocIds = new ArrayList<>(100);
-    private static final Collection<String> referenceLockedPids = new ArrayList<>(100);
     private final Path STORE_ROOT;
     private final int DIRECTORY_DEPTH;
     private final int DIRECTORY_WIDTH;
     private final String OBJECT_STORE_ALGORITHM;
+    private final List<String> DEFAULT_ALGO_LIST;
     private final Path OBJECT_STORE_DIRECTORY;
     private final Path OBJECT_TMP_FILE_DIRECTORY;
     private final String DEFAULT_METADATA_NAMESPACE;
@@ -74,6 +90,29 @@ public class FileHashStore implements HashStore {
     private final Path REFS_TMP_FILE_DIRECTORY;
     private final Path REFS_PID_FILE_DIRECTORY;
     private final Path REFS_CID_FILE_DIRECTORY;
+    private final Path UPLOAD_SESSION_DIRECTORY;
+    private final HashStoreLockModes STORE_LOCK_MODE;
+    private final HashStoreDedupPrecheckModes DEDUP_PRECHECK_MODE;
+    private final HashStoreDurabilityModes STORE_DURABILITY_MODE;
+    private final DurabilityCommitter durabilityCommitter;
+    private final HashStoreCompressionModes STORE_COMPRESSION_MODE;
+    private final HashStoreChunkingModes STORE_CHUNKING_MODE;
+    private final HashStorePackingModes STORE_PACKING_MODE;
+    private final HashStoreRefsModes STORE_REFS_MODE;
+    private final HashStoreRefsFormats STORE_REFS_FORMAT;
+    private final RefsBackend refsBackend;
+    private final StoredFileCodec storedFileCodec;
+    private final SegmentStore segmentStore;
+    private final PidCidCache pidCidCache;
+    private final DeletionReaper deletionReaper;
+    private final PathResolver pathResolver;
+    private final DigestSidecarStore digestSidecarStore;
+    private final IdentifierLockManager objectLockedCids;
+    private final IdentifierLockManager objectLockedPids;
+    private final IdentifierLockManager metadataLockedDocIds;
+    private final IdentifierLockManager referenceLockedPids;
+    private final Set<String> refsCompactionQueue = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refsCompacting = new AtomicBoolean(false);
 
     public static final String HASHSTORE_YAML = "hashstore.yaml";
 
@@ -81,7 +120,31 @@ public class FileHashStore implements HashStore {
         {"MD2", "MD5", "SHA-1", "SHA-256", "SHA-384", "SHA-512", "SHA-512/224", "SHA-512/256"};
 
     /**
-     * The default hash algorithms included in the ObjectMetadata when storing objects.
+     * Largest write issued to a tmp file when the size of the object being stored is known. Writes
+     * are gathered from the chunks of the digest pipeline, so no buffer is allocated for them.
+     */
+    public static final int MAX_TMP_FILE_WRITE_SIZE =
+        DigestPipeline.CHUNK_SIZE * DigestPipeline.RING_SIZE;
+
+    /**
+     * Least amount of threads used by batch deletions, which mostly wait for the file system
+     */
+    private static final int BATCH_DELETION_WORKERS = 8;
+
+    /**
+     * Shared by the batch methods of every store, which bound how many of its threads they use
+     */
+    private static final AtomicInteger batchThreadCount = new AtomicInteger();
+    private static final ExecutorService batchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread batchThread =
+            new Thread(runnable, "hashstore-batch-" + batchThreadCount.incrementAndGet());
+        batchThread.setDaemon(true);
+        return batchThread;
+    });
+
+    /**
+     * The default hash algorithms included in the ObjectMetadata when storing objects, unless a
+     * store is configured with its own default algorithm list.
      */
     protected enum DefaultHashAlgorithms {
         MD5("MD5"), SHA_1("SHA-1"), SHA_256("SHA-256"), SHA_384("SHA-384"), SHA_512("SHA-512");
@@ -108,7 +171,92 @@ public class FileHashStore implements HashStore {
      * The configuration properties for a HashStore
      */
     protected enum HashStoreProperties {
-        storePath, storeDepth, storeWidth, storeAlgorithm, storeMetadataNamespace
+        storePath, storeDepth, storeWidth, storeAlgorithm, storeMetadataNamespace,
+        storeDefaultAlgoList, storeLockMode, storeDedupPrecheck, storeDurability,
+        storeCompression, storeChunking, storePacking, storeRefs, storeRefsFormat,
+        storeUploadSessionTtl
+    }
+
+    /**
+     * How identifier locks are coordinated. With 'local' (the default), locks only coordinate the
+     * threads of a single JVM. With 'shared', locks are also claimed through lease files under
+     * '/locks' so that multiple processes can safely work on the same store directory.
+     */
+    protected enum HashStoreLockModes {
+        local, shared
+    }
+
+    /**
+     * How data objects, metadata documents and refs files are flushed to disk before a store
+     * operation returns. With 'none' (the default), nothing is flushed and recently stored files
+     * may be lost if the system crashes. With 'operation', each operation flushes its own files
+     * and directories. With 'group', concurrent operations are flushed together by a group
+     * commit, which is durable like 'operation' at a fraction of the cost under load.
+     */
+    protected enum HashStoreDurabilityModes {
+        none, operation, group
+    }
+
+    /**
+     * How data objects and metadata documents are compressed at rest. With 'none' (the default),
+     * they are stored as they are. With 'deflate', each one is compressed with {@code Deflater}
+     * when a sample of it compresses well, and stored as is otherwise. Content identifiers and hex
+     * digests are always calculated from the uncompressed content.
+     */
+    protected enum HashStoreCompressionModes {
+        none, deflate
+    }
+
+    /**
+     * How large data objects are stored. With 'none' (the default), each one is stored whole. With
+     * 'cdc', data objects of at least 16 MiB are split into content-defined chunks that are stored
+     * once under '/objects/chunks' and shared by every data object made of them, and the file at
+     * the permanent address of the data object lists its chunks.
+     */
+    protected enum HashStoreChunkingModes {
+        none, cdc
+    }
+
+    /**
+     * How small data objects are stored. With 'none' (the default), each one is stored in its own
+     * file. With 'segments', data objects of at most 64 KiB are appended to large segment files
+     * under '/objects/segments' and found through an in-memory index, which saves an inode (and
+     * often directories) per data object. Packing requires the 'local' lock mode.
+     */
+    protected enum HashStorePackingModes {
+        none, segments
+    }
+
+    /**
+     * Where the references between pids and cids are stored. With 'files' (the default), each pid
+     * and each cid has a refs file under '/refs'. With 'index', refs are stored in an embedded
+     * index under '/refs/index', which tags and resolves pids without a file per pid and per cid.
+     * The index keeps recent updates in memory, so it requires the 'local' lock mode.
+     */
+    protected enum HashStoreRefsModes {
+        files, index
+    }
+
+    /**
+     * How refs files are updated. With 'plain' (the default), a refs file is a list of refs that
+     * is rewritten through a tmp file on every update, which every HashStore client can read. With
+     * 'appendable', updates are appended to the refs file (a removed ref is a "- " tombstone) and
+     * the file is compacted once it has had many updates, see {@link RefsFile}. Only clients that
+     * understand tombstones and the '#hashstore-refs' header can read such a store.
+     */
+    protected enum HashStoreRefsFormats {
+        plain, appendable
+    }
+
+    /**
+     * Whether {@code storeObject} checks for an existing data object before writing anything, when
+     * the checksum supplied was calculated with the store algorithm (and is therefore the cid).
+     * With 'off' (the default), objects are always written to a tmp file first. With 'verify', an
+     * existing data object is re-hashed to confirm it matches its cid. With 'trust', an existing
+     * data object is assumed to be intact.
+     */
+    protected enum HashStoreDedupPrecheckModes {
+        off, verify, trust
     }
 
     /**
@@ -140,7 +288,16 @@ public class FileHashStore implements HashStore {
      * directories at the supplied store path before initializing.
      *
      * @param hashstoreProperties Properties object with the following keys: storePath, storeDepth,
-     *                            storeWidth, storeAlgorithm, storeMetadataNamespace
+     *                            storeWidth, storeAlgorithm, storeMetadataNamespace. Optional keys:
+     *                            storeDefaultAlgoList (comma separated, ex. "MD5,SHA-256"),
+     *                            storeLockMode ('local' or 'shared'), storeDurability ('none',
+     *                            'operation' or 'group'), storeCompression ('none' or 'deflate'),
+     *                            storeChunking ('none' or 'cdc'), storePacking ('none' or
+     *                            'segments'), storeRefs ('files' or 'index'), storeRefsFormat
+     *                            ('plain' or 'appendable'), storeDedupPrecheck ('off',
+     *                            'verify' or 'trust') and storeUploadSessionTtl (hours an upload
+     *                            session may be left unmodified before it is swept, 168 by
+     *                            default). The last two are not recorded in hashstore.yaml
      * @throws IllegalArgumentException Constructor arguments cannot be null, empty or less than 0
      * @throws IOException              Issue with creating directories
      * @throws NoSuchAlgorithmException Unsupported store algorithm
@@ -164,12 +321,65 @@ public class FileHashStore implements HashStore {
 
         verifyHashStoreProperties(
             storePath, storeDepth, storeWidth, storeAlgorithm, storeMetadataNamespace);
+        List<String> storeDefaultAlgoList = getStoreDefaultAlgoList(
+            storePath, storeAlgorithm,
+            hashstoreProperties.getProperty(HashStoreProperties.storeDefaultAlgoList.name()));
+        HashStoreLockModes storeLockMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeLockMode,
+            HashStoreLockModes.class, HashStoreLockModes.local);
+        HashStoreDurabilityModes storeDurabilityMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeDurability,
+            HashStoreDurabilityModes.class, HashStoreDurabilityModes.none);
+        HashStoreCompressionModes storeCompressionMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeCompression,
+            HashStoreCompressionModes.class, HashStoreCompressionModes.none);
+        HashStoreChunkingModes storeChunkingMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeChunking,
+            HashStoreChunkingModes.class, HashStoreChunkingModes.none);
+        HashStorePackingModes storePackingMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storePacking,
+            HashStorePackingModes.class, HashStorePackingModes.none);
+        if (storePackingMode != HashStorePackingModes.none
+            && storeLockMode != HashStoreLockModes.local) {
+            String errMsg = "Store packing mode: " + storePackingMode + " keeps its index in memory"
+                + " and cannot be used with store lock mode: " + storeLockMode;
+            logFileHashStore.fatal(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        HashStoreRefsModes storeRefsMode = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeRefs,
+            HashStoreRefsModes.class, HashStoreRefsModes.files);
+        if (storeRefsMode == HashStoreRefsModes.index
+            && storeLockMode != HashStoreLockModes.local) {
+            String errMsg = "Store refs mode: " + storeRefsMode + " keeps recent updates in memory"
+                + " and cannot be used with store lock mode: " + storeLockMode;
+            logFileHashStore.fatal(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        HashStoreRefsFormats storeRefsFormat = getStoreMode(
+            storePath, hashstoreProperties, HashStoreProperties.storeRefsFormat,
+            HashStoreRefsFormats.class, HashStoreRefsFormats.plain);
+        HashStoreDedupPrecheckModes dedupPrecheckMode = getDedupPrecheckMode(
+            hashstoreProperties.getProperty(HashStoreProperties.storeDedupPrecheck.name()));
+        long uploadSessionTtlMillis = getUploadSessionTtlMillis(
+            hashstoreProperties.getProperty(HashStoreProperties.storeUploadSessionTtl.name()));
 
         // HashStore configuration has been reviewed, proceed with initialization
         STORE_ROOT = storePath;
+        STORE_LOCK_MODE = storeLockMode;
+        DEDUP_PRECHECK_MODE = dedupPrecheckMode;
+        STORE_DURABILITY_MODE = storeDurabilityMode;
+        durabilityCommitter = new DurabilityCommitter(STORE_DURABILITY_MODE);
+        STORE_COMPRESSION_MODE = storeCompressionMode;
+        STORE_CHUNKING_MODE = storeChunkingMode;
+        STORE_PACKING_MODE = storePackingMode;
+        STORE_REFS_MODE = storeRefsMode;
+        STORE_REFS_FORMAT = storeRefsFormat;
         DIRECTORY_DEPTH = storeDepth;
         DIRECTORY_WIDTH = storeWidth;
         OBJECT_STORE_ALGORITHM = storeAlgorithm;
+        pathResolver = new PathResolver(DIRECTORY_DEPTH, DIRECTORY_WIDTH, OBJECT_STORE_ALGORITHM);
+        DEFAULT_ALGO_LIST = storeDefaultAlgoList;
         DEFAULT_METADATA_NAMESPACE = storeMetadataNamespace;
         OBJECT_STORE_DIRECTORY = storePath.resolve("objects");
         METADATA_STORE_DIRECTORY = storePath.resolve("metadata");
@@ -179,6 +389,9 @@ public class FileHashStore implements HashStore {
         REFS_TMP_FILE_DIRECTORY = REFS_STORE_DIRECTORY.resolve("tmp");
         REFS_PID_FILE_DIRECTORY = REFS_STORE_DIRECTORY.resolve("pids");
         REFS_CID_FILE_DIRECTORY = REFS_STORE_DIRECTORY.resolve("cids");
+        UPLOAD_SESSION_DIRECTORY = OBJECT_STORE_DIRECTORY.resolve("sessions");
+        digestSidecarStore = new DigestSidecarStore(
+            OBJECT_STORE_DIRECTORY.resolve("digests"), OBJECT_TMP_FILE_DIRECTORY, pathResolver);
 
         try {
             Files.createDirectories(OBJECT_STORE_DIRECTORY);
@@ -190,23 +403,80 @@ public class FileHashStore implements HashStore {
             Files.createDirectories(REFS_PID_FILE_DIRECTORY);
             Files.createDirectories(REFS_CID_FILE_DIRECTORY);
             logFileHashStore.debug("FileHashStore initialized");
+            // Remove tmp files left behind by processes that did not shut down gracefully
+            TmpFileAllocator.sweepInBackground(List.of(
+                OBJECT_TMP_FILE_DIRECTORY, METADATA_TMP_FILE_DIRECTORY, REFS_TMP_FILE_DIRECTORY));
+            // and upload sessions that were abandoned rather than finished
+            TmpFileAllocator.sweepSessionsInBackground(
+                UPLOAD_SESSION_DIRECTORY, uploadSessionTtlMillis);
 
         } catch (IOException ioe) {
             logFileHashStore.fatal("Failed to initialize FileHashStore - unable to create"
                                        + " directories. Exception: " + ioe.getMessage());
             throw ioe;
         }
+
+        // Stores opened at the same (canonical) store path share their identifier locks
+        FileHashStoreLocks storeLocks =
+            FileHashStoreLocks.forStoreRoot(STORE_ROOT, STORE_LOCK_MODE);
+        objectLockedCids = storeLocks.getObjectLockedCids();
+        objectLockedPids = storeLocks.getObjectLockedPids();
+        metadataLockedDocIds = storeLocks.getMetadataLockedDocIds();
+        referenceLockedPids = storeLocks.getReferenceLockedPids();
+        ChunkStore chunkStore = null;
+        if (STORE_CHUNKING_MODE == HashStoreChunkingModes.cdc) {
+            chunkStore = new ChunkStore(
+                this, OBJECT_STORE_DIRECTORY.resolve("chunks"),
+                REFS_STORE_DIRECTORY.resolve("chunks"), OBJECT_TMP_FILE_DIRECTORY,
+                DIRECTORY_DEPTH, DIRECTORY_WIDTH, OBJECT_STORE_ALGORITHM,
+                storeLocks.getChunkLockedDigests());
+        }
+        storedFileCodec = new StoredFileCodec(STORE_COMPRESSION_MODE, chunkStore);
+        segmentStore = STORE_PACKING_MODE == HashStorePackingModes.segments
+            ? SegmentStore.forStoreRoot(STORE_ROOT, OBJECT_STORE_DIRECTORY, durabilityCommitter)
+            : null;
+        if (STORE_REFS_MODE == HashStoreRefsModes.index) {
+            Path refsIndexDirectory = REFS_STORE_DIRECTORY.resolve("index");
+            refsBackend = new IndexRefsBackend(
+                RefsIndex.forStoreRoot(STORE_ROOT, refsIndexDirectory, durabilityCommitter),
+                refsIndexDirectory);
+        } else {
+            refsBackend = new FileRefsBackend(this);
+        }
+        // Pid refs files can be changed by other processes in the 'shared' lock mode
+        pidCidCache = STORE_LOCK_MODE == HashStoreLockModes.local
+            ? PidCidCache.forStoreRoot(STORE_ROOT) : new PidCidCache(0);
+        // Files are only renamed for deletion at the sharded addresses of objects, metadata
+        // documents and refs files
+        deletionReaper = DeletionReaper.forStoreRoot(
+            STORE_ROOT, List.of(OBJECT_STORE_DIRECTORY, METADATA_STORE_DIRECTORY,
+                                REFS_PID_FILE_DIRECTORY, REFS_CID_FILE_DIRECTORY),
+            List.of(OBJECT_TMP_FILE_DIRECTORY, UPLOAD_SESSION_DIRECTORY,
+                    OBJECT_STORE_DIRECTORY.resolve("chunks"),
+                    OBJECT_STORE_DIRECTORY.resolve("segments"),
+                    OBJECT_STORE_DIRECTORY.resolve("digests"), METADATA_TMP_FILE_DIRECTORY));
         logFileHashStore.debug(
             "HashStore initialized. Store Depth: " + DIRECTORY_DEPTH + ". Store Width: "
                 + DIRECTORY_WIDTH + ". Store Algorithm: " + OBJECT_STORE_ALGORITHM
-                + ". Store Metadata Namespace: " + DEFAULT_METADATA_NAMESPACE);
+                + ". Store Metadata Namespace: " + DEFAULT_METADATA_NAMESPACE
+                + ". Store Default Algorithms: " + DEFAULT_ALGO_LIST + ". Store Lock Mode: "
+                + STORE_LOCK_MODE + ". Store Durability: " + STORE_DURABILITY_MODE
+                + ". Store Compression: " + STORE_COMPRESSION_MODE + ". Store Chunking: "
+                + STORE_CHUNKING_MODE + ". Store Packing: " + STORE_PACKING_MODE
+                + ". Store Refs: " + STORE_REFS_MODE + ". Store Refs Format: "
+                + STORE_REFS_FORMAT);
 
         // Write configuration file 'hashstore.yaml' to store HashStore properties
         Path hashstoreYaml = STORE_ROOT.resolve(HASHSTORE_YAML);
         if (!Files.exists(hashstoreYaml)) {
             String hashstoreYamlContent =
                 buildHashStoreYamlString(DIRECTORY_DEPTH, DIRECTORY_WIDTH, OBJECT_STORE_ALGORITHM,
-                                         DEFAULT_METADATA_NAMESPACE);
+                                         DEFAULT_METADATA_NAMESPACE, DEFAULT_ALGO_LIST,
+                                         STORE_LOCK_MODE.name(), STORE_DURABILITY_MODE.name(),
+                                         STORE_COMPRESSION_MODE.name(),
+                                         STORE_CHUNKING_MODE.name(),
+                                         STORE_PACKING_MODE.name(), STORE_REFS_MODE.name(),
+                                         STORE_REFS_FORMAT.name());
             writeHashStoreYaml(hashstoreYamlContent);
             logFileHashStore.info("hashstore.yaml written to storePath: " + hashstoreYaml);
         } else {
@@ -296,6 +566,187 @@ public class FileHashStore implements HashStore {
         }
     }
 
+    /**
+     * Determine the default algorithm list of a HashStore, which are the hash algorithms calculated
+     * for every stored object. A default algorithm list that has been supplied must contain the
+     * same algorithms as the one recorded in an existing {@code hashstore.yaml}. The store
+     * algorithm is always included, as it forms the permanent address of data objects.
+     *
+     * @param storePath            Path where HashStore will store objects
+     * @param storeAlgorithm       Algorithm to use when calculating object addresses
+     * @param storeDefaultAlgoList Supplied comma separated algorithms, or null to use the
+     *                             configured (or default) algorithms
+     * @return Algorithms to calculate when storing objects
+     * @throws NoSuchAlgorithmException If an algorithm supplied is not supported
+     * @throws IOException              If {@code hashstore.yaml} config file cannot be
+     *                                  retrieved/opened
+     * @throws IllegalArgumentException If the algorithms differ from the configured algorithms
+     */
+    protected List<String> getStoreDefaultAlgoList(
+        Path storePath, String storeAlgorithm, String storeDefaultAlgoList)
+        throws NoSuchAlgorithmException, IOException, IllegalArgumentException {
+        List<String> existingAlgoList = null;
+        if (Files.exists(storePath.resolve(HASHSTORE_YAML))) {
+            Object configuredAlgoList = loadHashStoreYaml(storePath).get(
+                HashStoreProperties.storeDefaultAlgoList.name());
+            if (configuredAlgoList instanceof List<?> configuredAlgos) {
+                existingAlgoList = new ArrayList<>();
+                for (Object configuredAlgo : configuredAlgos) {
+                    existingAlgoList.add(String.valueOf(configuredAlgo));
+                }
+            } else {
+                existingAlgoList = getDefaultHashAlgorithmNames();
+            }
+            existingAlgoList = normalizeAlgoList(existingAlgoList, storeAlgorithm);
+        }
+        if (storeDefaultAlgoList == null) {
+            return existingAlgoList == null ? normalizeAlgoList(
+                getDefaultHashAlgorithmNames(), storeAlgorithm) : existingAlgoList;
+        }
+
+        FileHashStoreUtility.checkForNotEmptyAndValidString(
+            storeDefaultAlgoList, "storeDefaultAlgoList");
+        List<String> suppliedAlgoList = new ArrayList<>();
+        for (String algorithm : storeDefaultAlgoList.split(",")) {
+            suppliedAlgoList.add(algorithm.trim());
+        }
+        suppliedAlgoList = normalizeAlgoList(suppliedAlgoList, storeAlgorithm);
+        if (existingAlgoList != null) {
+            // The order in which the algorithms are listed is not significant
+            FileHashStoreUtility.checkObjectEquality(
+                "store default algorithm list", new HashSet<>(suppliedAlgoList),
+                new HashSet<>(existingAlgoList));
+        }
+        return suppliedAlgoList;
+    }
+
+    /**
+     * Validate a list of algorithms, drop duplicates and add the store algorithm if it is missing
+     */
+    private List<String> normalizeAlgoList(List<String> algorithms, String storeAlgorithm)
+        throws NoSuchAlgorithmException {
+        Set<String> normalizedAlgos = new LinkedHashSet<>();
+        for (String algorithm : algorithms) {
+            validateAlgorithm(algorithm);
+            normalizedAlgos.add(algorithm);
+        }
+        normalizedAlgos.add(storeAlgorithm);
+        return List.copyOf(normalizedAlgos);
+    }
+
+    private static List<String> getDefaultHashAlgorithmNames() {
+        List<String> algorithms = new ArrayList<>();
+        for (DefaultHashAlgorithms algorithm : DefaultHashAlgorithms.values()) {
+            algorithms.add(algorithm.getName());
+        }
+        return algorithms;
+    }
+
+    /**
+     * Determine one of the modes of a HashStore (ex. its lock, durability or compression mode). A
+     * mode that has been supplied must match the one recorded in an existing
+     * {@code hashstore.yaml}. Configuration files written before the mode was introduced are
+     * treated as having the default mode.
+     *
+     * @param storePath           Path where HashStore will store objects
+     * @param hashstoreProperties Supplied properties, where the mode may be absent to use the
+     *                            configured (or default) mode
+     * @param property            Property holding the mode
+     * @param modeType            Enum of the supported modes
+     * @param defaultMode         Mode of stores that do not configure it
+     * @param <E>                 Type of the mode
+     * @return Mode to initialize HashStore with
+     * @throws IOException              If {@code hashstore.yaml} config file cannot be
+     *                                  retrieved/opened
+     * @throws IllegalArgumentException If the mode is not supported or differs from the
+     *                                  configured mode
+     */
+    protected <E extends Enum<E>> E getStoreMode(
+        Path storePath, Properties hashstoreProperties, HashStoreProperties property,
+        Class<E> modeType, E defaultMode) throws IOException, IllegalArgumentException {
+        String existingStoreMode = null;
+        if (Files.exists(storePath.resolve(HASHSTORE_YAML))) {
+            existingStoreMode = (String) loadHashStoreYaml(storePath).get(property.name());
+            if (existingStoreMode == null) {
+                existingStoreMode = defaultMode.name();
+            }
+        }
+        String storeMode = hashstoreProperties.getProperty(property.name());
+        if (storeMode == null) {
+            storeMode = existingStoreMode == null ? defaultMode.name() : existingStoreMode;
+        }
+
+        // ex. 'storeRefsFormat' is described as 'store refs format'
+        String modeName = property.name().replaceAll("([A-Z])", " $1").toLowerCase();
+        E mode;
+        try {
+            mode = Enum.valueOf(modeType, storeMode);
+        } catch (IllegalArgumentException iae) {
+            String errMsg = "Value of " + modeName + ": " + storeMode + " is not supported."
+                + " Supported values: " + Arrays.toString(modeType.getEnumConstants());
+            logFileHashStore.fatal(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        if (existingStoreMode != null) {
+            FileHashStoreUtility.checkObjectEquality(modeName, storeMode, existingStoreMode);
+        }
+        return mode;
+    }
+
+    /**
+     * Determine the dedup pre-check mode of this HashStore instance. Unlike the other properties,
+     * it only affects how this instance stores objects, so it is not recorded in
+     * {@code hashstore.yaml}.
+     *
+     * @param storeDedupPrecheck Supplied mode, or null for 'off'
+     * @return Dedup pre-check mode
+     * @throws IllegalArgumentException If the mode is not supported
+     */
+    protected HashStoreDedupPrecheckModes getDedupPrecheckMode(String storeDedupPrecheck)
+        throws IllegalArgumentException {
+        if (storeDedupPrecheck == null) {
+            return HashStoreDedupPrecheckModes.off;
+        }
+        try {
+            return HashStoreDedupPrecheckModes.valueOf(storeDedupPrecheck);
+        } catch (IllegalArgumentException iae) {
+            String errMsg = "Store dedup pre-check mode: " + storeDedupPrecheck + " is not"
+                + " supported. Supported modes: "
+                + Arrays.toString(HashStoreDedupPrecheckModes.values());
+            logFileHashStore.fatal(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+    }
+
+    /**
+     * Determine how long an upload session may be left unmodified before it is swept. Like the
+     * dedup pre-check mode, it only affects this instance, so it is not recorded in
+     * {@code hashstore.yaml}.
+     *
+     * @param storeUploadSessionTtl Supplied amount of hours, or null for the default
+     * @return Amount of milliseconds
+     * @throws IllegalArgumentException If the amount of hours is not a positive integer
+     */
+    protected long getUploadSessionTtlMillis(String storeUploadSessionTtl)
+        throws IllegalArgumentException {
+        if (storeUploadSessionTtl == null) {
+            return TmpFileAllocator.DEFAULT_STALE_SESSION_MILLIS;
+        }
+        long ttlHours;
+        try {
+            ttlHours = Long.parseLong(storeUploadSessionTtl.trim());
+        } catch (NumberFormatException nfe) {
+            ttlHours = -1;
+        }
+        if (ttlHours <= 0) {
+            String errMsg = "Store upload session ttl: " + storeUploadSessionTtl + " must be a"
+                + " positive amount of hours.";
+            logFileHashStore.fatal(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        return TimeUnit.HOURS.toMillis(ttlHours);
+    }
+
     /**
      * Get the properties of HashStore from an existing 'hashstore.yaml'
      *
@@ -321,6 +772,30 @@ public class FileHashStore implements HashStore {
             hsProperties.put(
                 HashStoreProperties.storeMetadataNamespace.name(),
                 hashStoreYamlProperties.get("store_metadata_namespace"));
+            hsProperties.put(
+                HashStoreProperties.storeDefaultAlgoList.name(),
+                hashStoreYamlProperties.get("store_default_algo_list"));
+            hsProperties.put(
+                HashStoreProperties.storeLockMode.name(),
+                hashStoreYamlProperties.get("store_lock_mode"));
+            hsProperties.put(
+                HashStoreProperties.storeDurability.name(),
+                hashStoreYamlProperties.get("store_durability"));
+            hsProperties.put(
+                HashStoreProperties.storeCompression.name(),
+                hashStoreYamlProperties.get("store_compression"));
+            hsProperties.put(
+                HashStoreProperties.storeChunking.name(),
+                hashStoreYamlProperties.get("store_chunking"));
+            hsProperties.put(
+                HashStoreProperties.storePacking.name(),
+                hashStoreYamlProperties.get("store_packing"));
+            hsProperties.put(
+                HashStoreProperties.storeRefs.name(),
+                hashStoreYamlProperties.get("store_refs"));
+            hsProperties.put(
+                HashStoreProperties.storeRefsFormat.name(),
+                hashStoreYamlProperties.get("store_refs_format"));
 
         } catch (IOException ioe) {
             logFileHashStore.fatal(
@@ -359,10 +834,27 @@ public class FileHashStore implements HashStore {
      * @param storeAlgorithm         Algorithm to use to calculate the hex digest for the permanent
      *                               address of a data object
      * @param storeMetadataNamespace default formatId of hashstore metadata
+     * @param storeDefaultAlgoList   Hash algorithms calculated when storing an object
+     * @param storeLockMode          How identifier locks are coordinated ('local' or 'shared')
+     * @param storeDurability        How stored files are flushed to disk ('none', 'operation' or
+     *                               'group')
+     * @param storeCompression       How data objects and metadata documents are compressed
+     *                               ('none' or 'deflate')
+     * @param storeChunking          How large data objects are stored ('none' or 'cdc')
+     * @param storePacking           How small data objects are stored ('none' or 'segments')
+     * @param storeRefs              Where refs are stored ('files' or 'index')
+     * @param storeRefsFormat        How refs files are updated ('plain' or 'appendable')
      * @return String that representing the contents of 'hashstore.yaml'
      */
     protected String buildHashStoreYamlString(
-        int storeDepth, int storeWidth, String storeAlgorithm, String storeMetadataNamespace) {
+        int storeDepth, int storeWidth, String storeAlgorithm, String storeMetadataNamespace,
+        List<String> storeDefaultAlgoList, String storeLockMode, String storeDurability,
+        String storeCompression, String storeChunking, String storePacking, String storeRefs,
+        String storeRefsFormat) {
+        StringBuilder storeDefaultAlgoListYaml = new StringBuilder();
+        for (String algorithm : storeDefaultAlgoList) {
+            storeDefaultAlgoListYaml.append("- \"").append(algorithm).append("\"\n");
+        }
         return String.format("""
              # Default configuration variables for HashStore
 
@@ -390,12 +882,40 @@ public class FileHashStore implements HashStore {
              # The default algorithm list includes the hash algorithms calculated when storing an
              # object to disk and returned to the caller after successful storage.
              store_default_algo_list:
-             - "MD5"
-             - "SHA-1"
-             - "SHA-256"
-             - "SHA-384"
-             - "SHA-512"
-             """, storeDepth, storeWidth, storeMetadataNamespace, storeAlgorithm);
+             %s############### Locking ###############
+             # 'local' coordinates the threads of a single process. 'shared' also coordinates
+             # processes sharing this directory through lease files under '/locks'
+             store_lock_mode: "%s"
+             ############### Durability ###############
+             # 'none' does not flush stored files to disk. 'operation' flushes them before each
+             # operation returns, and 'group' flushes those of concurrent operations together
+             store_durability: "%s"
+             ############### Compression ###############
+             # 'none' stores objects and metadata as they are. 'deflate' compresses those that
+             # compress well. WARNING: DO NOT CHANGE UNLESS SETTING UP NEW HASHSTORE
+             store_compression: "%s"
+             ############### Chunking ###############
+             # 'none' stores each data object whole. 'cdc' splits data objects of 16 MiB or more
+             # into shared chunks. WARNING: DO NOT CHANGE UNLESS SETTING UP NEW HASHSTORE
+             store_chunking: "%s"
+             ############### Packing ###############
+             # 'none' stores each data object in its own file. 'segments' packs data objects of
+             # 64 KiB or less into segment files under '/objects/segments'.
+             # WARNING: DO NOT CHANGE UNLESS SETTING UP NEW HASHSTORE
+             store_packing: "%s"
+             ############### Refs ###############
+             # 'files' stores a refs file per pid and per cid under '/refs'. 'index' stores refs
+             # in an embedded index under '/refs/index'.
+             # WARNING: DO NOT CHANGE UNLESS SETTING UP NEW HASHSTORE
+             store_refs: "%s"
+             # 'plain' rewrites refs files on every update. 'appendable' appends updates to them,
+             # which only recent HashStore clients can read.
+             # WARNING: DO NOT CHANGE UNLESS SETTING UP NEW HASHSTORE
+             store_refs_format: "%s"
+             """, storeDepth, storeWidth, storeMetadataNamespace, storeAlgorithm,
+                             storeDefaultAlgoListYaml, storeLockMode, storeDurability,
+                             storeCompression, storeChunking, storePacking, storeRefs,
+                             storeRefsFormat);
     }
 
     // HashStore Public API Methods
@@ -408,149 +928,690 @@ public class FileHashStore implements HashStore {
         logFileHashStore.debug("Storing data object for pid: " + pid);
         // Validate input parameters
         FileHashStoreUtility.ensureNotNull(object, "object");
-        FileHashStoreUtility.ensureNotNull(pid, "pid");
-        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
-        // Validate algorithms if not null or empty, throws exception if not supported
-        if (additionalAlgorithm != null) {
-            FileHashStoreUtility.checkForNotEmptyAndValidString(
-                additionalAlgorithm, "additionalAlgorithm");
-            validateAlgorithm(additionalAlgorithm);
-        }
-        if (checksumAlgorithm != null) {
-            FileHashStoreUtility.checkForNotEmptyAndValidString(
-                checksumAlgorithm, "checksumAlgorithm");
-            validateAlgorithm(checksumAlgorithm);
-        }
-        if (objSize != -1) {
-            FileHashStoreUtility.checkPositive(objSize);
-        }
+        validateStoreObjectArguments(pid, additionalAlgorithm, checksumAlgorithm, objSize);
 
         try (object) {
             return syncPutObject(
-                object, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize);
+                pid, additionalAlgorithm, checksum, checksumAlgorithm,
+                () -> putObject(object, pid, additionalAlgorithm, checksum, checksumAlgorithm,
+                                objSize));
         }
         // Close stream
     }
 
-    /**
-     * Method to synchronize storing objects with FileHashStore
-     */
-    private ObjectMetadata syncPutObject(
-        InputStream object, String pid, String additionalAlgorithm, String checksum,
-        String checksumAlgorithm, long objSize)
+    @Override
+    public ObjectMetadata storeObject(
+        Path object, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize, boolean consumeObject)
         throws NoSuchAlgorithmException, IOException, RuntimeException, InterruptedException {
-        try {
-            // Lock pid for thread safety, transaction control and atomic writing
-            // An object is stored once and only once
-            synchronized (objectLockedPids) {
-                if (objectLockedPids.contains(pid)) {
-                    String errMsg = "Duplicate object request encountered for pid: " + pid
-                        + ". Already in progress.";
-                    logFileHashStore.warn(errMsg);
-                    throw new RuntimeException(errMsg);
-                }
-                logFileHashStore.debug("Synchronizing objectLockedPids for pid: " + pid);
-                objectLockedPids.add(pid);
-            }
-
-            logFileHashStore.debug(
-                "putObject() called to store pid: " + pid + ". additionalAlgorithm: "
-                    + additionalAlgorithm + ". checksum: " + checksum + ". checksumAlgorithm: "
-                    + checksumAlgorithm);
-            // Store object
-            ObjectMetadata objInfo =
-                putObject(object, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize);
-            // Tag object
-            String cid = objInfo.cid();
-            tagObject(pid, cid);
-            logFileHashStore.info(
-                "Object stored for pid: " + pid + " at " + getHashStoreDataObjectPath(pid));
-            return objInfo;
-
-        } catch (NoSuchAlgorithmException nsae) {
-            String errMsg =
-                "Unable to store object for pid: " + pid + ". NoSuchAlgorithmException: "
-                    + nsae.getMessage();
-            logFileHashStore.error(errMsg);
-            throw nsae;
+        logFileHashStore.debug("Storing data object from path: " + object + " for pid: " + pid);
+        // Validate input parameters
+        FileHashStoreUtility.ensureNotNull(object, "object");
+        validateStoreObjectArguments(pid, additionalAlgorithm, checksumAlgorithm, objSize);
+        ensureRegularFile(object);
 
-        } catch (PidRefsFileExistsException prfee) {
-            String errMsg =
-                "Unable to store object for pid: " + pid + ". PidRefsFileExistsException: "
-                    + prfee.getMessage();
-            logFileHashStore.error(errMsg);
-            throw prfee;
+        return syncPutObject(
+            pid, additionalAlgorithm, checksum, checksumAlgorithm,
+            () -> putObject(object, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize,
+                            consumeObject));
+    }
 
-        } catch (IOException ioe) {
-            // Covers AtomicMoveNotSupportedException, FileNotFoundException
-            String errMsg =
-                "Unable to store object for pid: " + pid + ". IOException: " + ioe.getMessage();
-            logFileHashStore.error(errMsg);
-            throw ioe;
+    @Override
+    public List<StoreObjectResult> storeObjects(Collection<StoreObjectRequest> requests)
+        throws InterruptedException {
+        FileHashStoreUtility.ensureNotNull(requests, "requests");
+        logFileHashStore.debug("Storing a batch of " + requests.size() + " data objects");
+        List<BatchEntry> batch = new ArrayList<>(requests.size());
+        for (StoreObjectRequest request : requests) {
+            batch.add(new BatchEntry(request));
+        }
 
-        } catch (RuntimeException re) {
-            // Covers SecurityException, IllegalArgumentException, NullPointerException
-            String errMsg = "Unable to store object for pid: " + pid + ". Runtime Exception: "
-                + re.getMessage();
-            logFileHashStore.error(errMsg);
-            throw re;
+        try {
+            // Every pid is claimed before any work begins, as with storeObject
+            for (BatchEntry entry : batch) {
+                lockBatchEntry(entry);
+            }
+            writeBatchTmpFiles(getPendingBatchEntries(batch));
+            // Objects sharing a cid (and cids sharing directories) are moved and tagged together
+            List<BatchEntry> entriesByCid = getPendingBatchEntries(batch);
+            entriesByCid.sort(Comparator.comparing(entry -> entry.cid));
+            moveBatchTmpObjects(entriesByCid);
+            tagBatchObjects(getPendingBatchEntries(entriesByCid));
+            consumeBatchObjects(getPendingBatchEntries(batch));
 
         } finally {
-            // Release lock
-            releaseObjectLockedPids(pid);
+            for (BatchEntry entry : batch) {
+                releaseBatchEntry(entry);
+            }
+        }
+
+        List<StoreObjectResult> results = new ArrayList<>(batch.size());
+        int storedObjects = 0;
+        for (BatchEntry entry : batch) {
+            if (entry.exception == null) {
+                storedObjects++;
+                results.add(new StoreObjectResult(entry.request.pid(), entry.objInfo, null));
+            } else {
+                results.add(new StoreObjectResult(entry.request.pid(), null, entry.exception));
+            }
         }
+        logFileHashStore.info(
+            "Stored " + storedObjects + " of " + batch.size() + " data objects in batch.");
+        return results;
     }
 
     /**
-     * Overload method for storeObject with just an InputStream
+     * Progress of one request within a call to {@code storeObjects}. Once an exception has been
+     * recorded, the entry is skipped by every later step.
      */
-    @Override
-    public ObjectMetadata storeObject(InputStream object)
-        throws NoSuchAlgorithmException, IOException, RuntimeException,
-        InterruptedException {
-        // 'putObject' is called directly to bypass the pid synchronization implemented to
-        // efficiently handle object store requests without a pid. This scenario occurs when
-        // metadata about the object (ex. form data including the pid, checksum, checksum
-        // algorithm, etc.) is unavailable.
-        //
-        // Note: This method does not tag the object to make it discoverable, so the client can
-        // call 'deleteIfInvalidObject' (optional) to check that the object is valid, and then
-        // 'tagObject' (required) to create the reference files needed to associate the
-        // respective pids/cids.
-        try (object) {
-            return putObject(object, "HashStoreNoPid", null, null, null, -1);
+    private static final class BatchEntry {
+        private final StoreObjectRequest request;
+        private boolean compareChecksum;
+        private boolean pidLocked = false;
+        private File tmpFile;
+        private boolean linked = false;
+        private Map<String, String> hexDigests;
+        private String cid;
+        private ObjectMetadata objInfo;
+        private Exception exception;
+
+        private BatchEntry(StoreObjectRequest request) {
+            this.request = request;
         }
-        // Close stream
     }
 
+    private static List<BatchEntry> getPendingBatchEntries(List<BatchEntry> entries) {
+        List<BatchEntry> pendingEntries = new ArrayList<>(entries.size());
+        for (BatchEntry entry : entries) {
+            if (entry.exception == null) {
+                pendingEntries.add(entry);
+            }
+        }
+        return pendingEntries;
+    }
 
-    @Override
-    public void tagObject(String pid, String cid)
-        throws IOException, NoSuchAlgorithmException,
-        InterruptedException {
-        logFileHashStore.debug("Tagging cid (" + cid + ") with pid: " + pid);
-        // Validate input parameters
-        FileHashStoreUtility.ensureNotNull(pid, "pid");
-        FileHashStoreUtility.ensureNotNull(cid, "cid");
-        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
-        FileHashStoreUtility.checkForNotEmptyAndValidString(cid, "cid");
+    private void failBatchEntry(BatchEntry entry, Exception exception) {
+        String pid = entry.request != null ? entry.request.pid() : null;
+        logFileHashStore.error(
+            "Unable to store object for pid: " + pid + " in batch. " + exception.getClass()
+                .getSimpleName() + ": " + exception.getMessage());
+        entry.exception = exception;
+    }
 
+    /**
+     * Validate a batch request and lock its pid
+     */
+    private void lockBatchEntry(BatchEntry entry) {
+        StoreObjectRequest request = entry.request;
         try {
-            // This method synchronizes the pid and cid
-            storeHashStoreRefsFiles(pid, cid);
+            FileHashStoreUtility.ensureNotNull(request, "request");
+            if ((request.object() == null) == (request.objectPath() == null)) {
+                String errMsg = "Exactly one of object or objectPath must be supplied for pid: "
+                    + request.pid();
+                logFileHashStore.error(errMsg);
+                throw new IllegalArgumentException(errMsg);
+            }
+            validateStoreObjectArguments(request.pid(), request.additionalAlgorithm(),
+                                         request.checksumAlgorithm(), request.objSize());
+            if (request.objectPath() != null) {
+                ensureRegularFile(request.objectPath());
+            }
+            entry.compareChecksum =
+                verifyChecksumParameters(request.checksum(), request.checksumAlgorithm());
 
-        } catch (HashStoreRefsAlreadyExistException hsrfae) {
-            // cid and pid has been released
-            // This exception is thrown when the pid and cid are already tagged appropriately
-            String errMsg =
-                "HashStore refs files already exist for pid " + pid + " and cid: " + cid;
-            throw new HashStoreRefsAlreadyExistException(errMsg);
+            if (!objectLockedPids.tryLock(request.pid())) {
+                String errMsg = "Duplicate object request encountered for pid: " + request.pid()
+                    + ". Already in progress.";
+                logFileHashStore.warn(errMsg);
+                throw new RuntimeException(errMsg);
+            }
+            entry.pidLocked = true;
 
-        } catch (PidRefsFileExistsException prfe) {
-            // cid and pid has been released
-            String errMsg = "pid: " + pid + " already references another cid."
-                + " A pid can only reference one cid.";
-            throw new PidRefsFileExistsException(errMsg);
+        } catch (Exception e) {
+            failBatchEntry(entry, e);
+        }
+    }
+
+    /**
+     * Write the objects of a batch to tmp files and calculate their hex digests, several objects at
+     * a time. Objects that already exist are resolved by the dedup pre-check (if enabled) instead.
+     */
+    private void writeBatchTmpFiles(List<BatchEntry> entries) throws InterruptedException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Tmp files must not be written after the batch has been cleaned up, so the writes that
+        // have started are always waited for
+        runBatchTasks(
+            entries, Runtime.getRuntime().availableProcessors(), this::writeBatchTmpFile);
+    }
+
+    /**
+     * Run a task on each of the given items on the shared batch executor, at most
+     * {@code parallelism} items at a time, and wait for every task that has started to finish.
+     * Tasks are never interrupted: if the caller is interrupted, the items that have not been
+     * started yet are skipped, and an {@code InterruptedException} is thrown once the running
+     * tasks are done. Each task records its own exceptions.
+     *
+     * @param items       Items to run the task on
+     * @param parallelism Most items to run the task on at once
+     * @param task        Task to run on each item
+     * @throws InterruptedException If the caller was interrupted, in which case some items may
+     *                              have been skipped
+     */
+    private static <T> void runBatchTasks(List<T> items, int parallelism, Consumer<T> task)
+        throws InterruptedException {
+        if (items.isEmpty()) {
+            return;
+        }
+        int workerCount = Math.min(items.size(), parallelism);
+        AtomicInteger nextItem = new AtomicInteger();
+        AtomicBoolean skipRemaining = new AtomicBoolean(false);
+        CountDownLatch workersDone = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            batchExecutor.execute(() -> {
+                try {
+                    int item;
+                    while (!skipRemaining.get() && (item = nextItem.getAndIncrement()) < items
+                        .size()) {
+                        try {
+                            task.accept(items.get(item));
+                        } catch (RuntimeException re) {
+                            logFileHashStore.error("Unexpected exception in batch task: " + re);
+                        }
+                    }
+                } finally {
+                    workersDone.countDown();
+                }
+            });
+        }
+
+        InterruptedException interrupted = null;
+        while (true) {
+            try {
+                workersDone.await();
+                break;
+            } catch (InterruptedException ie) {
+                skipRemaining.set(true);
+                interrupted = ie;
+            }
+        }
+        if (interrupted != null) {
+            throw interrupted;
+        }
+    }
+
+    private void writeBatchTmpFile(BatchEntry entry) {
+        StoreObjectRequest request = entry.request;
+        try {
+            ObjectMetadata existingObjInfo = precheckExistingObject(
+                request.pid(), request.additionalAlgorithm(), request.checksum(),
+                request.checksumAlgorithm(), request.objSize());
+            if (existingObjInfo != null) {
+                entry.objInfo = existingObjInfo;
+                entry.cid = existingObjInfo.cid();
+                return;
+            }
+
+            entry.tmpFile = FileHashStoreUtility.generateTmpFile("tmp", OBJECT_TMP_FILE_DIRECTORY);
+            if (request.object() != null) {
+                entry.hexDigests = writeToTmpFileAndGenerateChecksums(
+                    entry.tmpFile, request.object(), request.additionalAlgorithm(),
+                    request.checksumAlgorithm(), request.objSize());
+            } else {
+                entry.linked = request.consumeObject()
+                    && linkToTmpFile(request.objectPath(), entry.tmpFile);
+                entry.hexDigests = copyToTmpFileAndGenerateChecksums(
+                    entry.tmpFile, request.objectPath(), request.additionalAlgorithm(),
+                    request.checksumAlgorithm(), entry.linked);
+            }
+            entry.cid = entry.hexDigests.get(OBJECT_STORE_ALGORITHM);
+
+        } catch (Exception e) {
+            failBatchEntry(entry, e);
+        }
+    }
+
+    /**
+     * Validate the tmp files of a batch and move them to their permanent addresses. The directory
+     * of each permanent address is only checked for (and created) once per batch, and the moves
+     * into it do not check for it again.
+     */
+    private void moveBatchTmpObjects(List<BatchEntry> entriesByCid) {
+        Set<Path> objectDirectories = new HashSet<>();
+        for (BatchEntry entry : entriesByCid) {
+            if (entry.objInfo != null) {
+                // Resolved by the dedup pre-check, there is nothing to move
+                continue;
+            }
+            StoreObjectRequest request = entry.request;
+            try {
+                validateTmpObject(entry.compareChecksum, request.checksum(),
+                                  request.checksumAlgorithm(), entry.tmpFile, entry.hexDigests,
+                                  request.objSize());
+                Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, entry.cid);
+                if (!packsDataObject(entry.tmpFile)
+                    && !objectDirectories.contains(objRealPath.getParent())) {
+                    durabilityCommitter.commit(createParentDirectories(objRealPath));
+                    objectDirectories.add(objRealPath.getParent());
+                }
+                // The tmp file has been validated above
+                entry.objInfo =
+                    moveTmpObject(entry.tmpFile, request.pid(), entry.hexDigests, false, null,
+                                  null, -1, true);
+                entry.tmpFile = null;
+
+            } catch (Exception e) {
+                failBatchEntry(entry, e);
+            }
+        }
+    }
+
+    /**
+     * Tag the stored objects of a batch with their pids. The pids of a cid are added to its cid
+     * refs with a single update.
+     */
+    private void tagBatchObjects(List<BatchEntry> entriesByCid) throws InterruptedException {
+        int groupStart = 0;
+        while (groupStart < entriesByCid.size()) {
+            String cid = entriesByCid.get(groupStart).cid;
+            int groupEnd = groupStart + 1;
+            while (groupEnd < entriesByCid.size() && entriesByCid.get(groupEnd).cid.equals(cid)) {
+                groupEnd++;
+            }
+            tagBatchCid(entriesByCid.subList(groupStart, groupEnd), cid);
+            groupStart = groupEnd;
+        }
+    }
+
+    /**
+     * Tag a data object with the pids of the batch entries that stored it, see
+     * {@code storeHashStoreRefsFiles}. An entry whose pid is already tagged fails on its own,
+     * while the refs of the other entries are reverted if they cannot be written.
+     */
+    private void tagBatchCid(List<BatchEntry> entries, String cid) throws InterruptedException {
+        List<String> lockedPids = new ArrayList<>(entries.size());
+        try {
+            synchronizeObjectLockedCids(cid);
+            boolean cidRefsExist = refsBackend.hasCid(cid);
+            Map<String, BatchEntry> entriesToTag = new LinkedHashMap<>();
+            for (BatchEntry entry : entries) {
+                String pid = entry.request.pid();
+                synchronizeReferenceLockedPids(pid);
+                lockedPids.add(pid);
+                try {
+                    ensurePidNotTagged(pid, cid, cidRefsExist);
+                    entriesToTag.put(pid, entry);
+                } catch (Exception e) {
+                    failBatchEntry(entry, e);
+                }
+            }
+            if (entriesToTag.isEmpty()) {
+                return;
+            }
+
+            try {
+                refsBackend.tagAll(entriesToTag.keySet(), cid);
+            } catch (Exception e) {
+                for (Map.Entry<String, BatchEntry> entryToTag : entriesToTag.entrySet()) {
+                    failBatchEntry(entryToTag.getValue(), e);
+                    revertBatchTag(entryToTag.getKey(), cid);
+                }
+                return;
+            }
+            for (Map.Entry<String, BatchEntry> entryToTag : entriesToTag.entrySet()) {
+                String pid = entryToTag.getKey();
+                try {
+                    refsBackend.verify(pid, cid);
+                    logFileHashStore.info(
+                        "Object with cid: " + cid + " has been tagged successfully with pid: "
+                            + pid);
+                } catch (Exception e) {
+                    failBatchEntry(entryToTag.getValue(), e);
+                    revertBatchTag(pid, cid);
+                }
+            }
+
+        } catch (InterruptedException ie) {
+            for (BatchEntry entry : entries) {
+                if (entry.exception == null) {
+                    failBatchEntry(entry, ie);
+                }
+            }
+            throw ie;
+
+        } catch (Exception e) {
+            for (BatchEntry entry : entries) {
+                if (entry.exception == null) {
+                    failBatchEntry(entry, e);
+                }
+            }
+        } finally {
+            for (String pid : lockedPids) {
+                pidCidCache.invalidate(pid);
+                releaseReferenceLockedPids(pid);
+            }
+            releaseObjectLockedCids(cid);
+        }
+    }
+
+    /**
+     * Untag a pid of a batch that could not be tagged completely. The pid and cid must be locked.
+     */
+    private void revertBatchTag(String pid, String cid) {
+        try {
+            unTagObject(pid, cid);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logFileHashStore.warn("Interrupted while untagging pid: " + pid + " in batch.");
+        } catch (Exception e) {
+            logFileHashStore.warn(
+                "Unable to untag pid: " + pid + " in batch. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the objects of a batch that were to be consumed once they have been stored and tagged
+     */
+    private void consumeBatchObjects(List<BatchEntry> entries) {
+        for (BatchEntry entry : entries) {
+            String pid = entry.request.pid();
+            try {
+                if (entry.request.consumeObject()) {
+                    Files.deleteIfExists(entry.request.objectPath());
+                    logFileHashStore.debug(
+                        "Consumed object has been removed from: " + entry.request.objectPath());
+                    if (entry.linked) {
+                        setLinkedObjectPermissions(entry.cid);
+                    }
+                }
+                logFileHashStore.info(
+                    "Object stored for pid: " + pid + " at " + getHashStoreDataObjectPath(pid));
+
+            } catch (Exception e) {
+                failBatchEntry(entry, e);
+            }
+        }
+    }
+
+    /**
+     * Close the stream of a batch request, remove its tmp file if it has not been moved, and
+     * release its pid
+     */
+    private void releaseBatchEntry(BatchEntry entry) {
+        if (entry.request == null) {
+            return;
+        }
+        try {
+            if (entry.request.object() != null) {
+                entry.request.object().close();
+            }
+            if (entry.tmpFile != null) {
+                Files.deleteIfExists(entry.tmpFile.toPath());
+            }
+        } catch (IOException ioe) {
+            logFileHashStore.warn(
+                "Unable to clean up batch request for pid: " + entry.request.pid() + ". "
+                    + ioe.getMessage());
+        } finally {
+            if (entry.pidLocked) {
+                releaseObjectLockedPids(entry.request.pid());
+            }
+        }
+    }
+
+    /**
+     * Validate the arguments shared by the {@code storeObject} methods
+     */
+    private void validateStoreObjectArguments(
+        String pid, String additionalAlgorithm, String checksumAlgorithm, long objSize)
+        throws NoSuchAlgorithmException {
+        FileHashStoreUtility.ensureNotNull(pid, "pid");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
+        // Validate algorithms if not null or empty, throws exception if not supported
+        if (additionalAlgorithm != null) {
+            FileHashStoreUtility.checkForNotEmptyAndValidString(
+                additionalAlgorithm, "additionalAlgorithm");
+            validateAlgorithm(additionalAlgorithm);
+        }
+        if (checksumAlgorithm != null) {
+            FileHashStoreUtility.checkForNotEmptyAndValidString(
+                checksumAlgorithm, "checksumAlgorithm");
+            validateAlgorithm(checksumAlgorithm);
+        }
+        if (objSize != -1) {
+            FileHashStoreUtility.checkPositive(objSize);
+        }
+    }
+
+    private static void ensureRegularFile(Path object) throws FileNotFoundException {
+        if (!Files.isRegularFile(object)) {
+            String errMsg = "Object to store: " + object + " does not exist or is not a file.";
+            logFileHashStore.error(errMsg);
+            throw new FileNotFoundException(errMsg);
+        }
+    }
+
+    /**
+     * Open an upload session to store a data object that is received in parts, see
+     * {@link UploadSession}. The arguments are those of
+     * {@link #storeObject(InputStream, String, String, String, String, long)}, and are validated
+     * when the session is opened. The pid is only claimed once the session is finished.
+     *
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest to include in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate after storing
+     * @return New upload session, to be closed by the caller
+     * @throws NoSuchAlgorithmException When additionalAlgorithm or checksumAlgorithm is invalid
+     * @throws IOException              When the session cannot be created
+     */
+    public UploadSession openUploadSession(
+        String pid, String additionalAlgorithm, String checksum, String checksumAlgorithm,
+        long objSize) throws NoSuchAlgorithmException, IOException {
+        logFileHashStore.debug("Opening upload session for pid: " + pid);
+        validateStoreObjectArguments(pid, additionalAlgorithm, checksumAlgorithm, objSize);
+        verifyChecksumParameters(checksum, checksumAlgorithm);
+        return UploadSession.open(
+            this, UPLOAD_SESSION_DIRECTORY, pid, additionalAlgorithm, checksum, checksumAlgorithm,
+            objSize, getAlgorithmsToCalculate(additionalAlgorithm, checksumAlgorithm));
+    }
+
+    /**
+     * Resume an upload session (ex. after a restart) from its last committed offset, see
+     * {@link UploadSession#getCommittedOffset()}
+     *
+     * @param sessionId Identifier of the session, see {@link UploadSession#getSessionId()}
+     * @return Upload session, to be closed by the caller
+     * @throws FileNotFoundException    When the session does not exist
+     * @throws NoSuchAlgorithmException When an algorithm of the session is not supported
+     * @throws IOException              When the session cannot be read
+     */
+    public UploadSession resumeUploadSession(String sessionId)
+        throws FileNotFoundException, NoSuchAlgorithmException, IOException {
+        FileHashStoreUtility.ensureNotNull(sessionId, "sessionId");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(sessionId, "sessionId");
+        try {
+            UUID.fromString(sessionId);
+        } catch (IllegalArgumentException iae) {
+            String errMsg = "Invalid upload session id: " + sessionId;
+            logFileHashStore.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        Path sessionDirectory = UPLOAD_SESSION_DIRECTORY.resolve(sessionId);
+        if (!Files.exists(sessionDirectory.resolve(UploadSession.MANIFEST_FILE))) {
+            String errMsg = "Upload session: " + sessionId + " does not exist.";
+            logFileHashStore.error(errMsg);
+            throw new FileNotFoundException(errMsg);
+        }
+        return UploadSession.resume(this, sessionDirectory);
+    }
+
+    /**
+     * Open a writer for callers that produce the content of a data object themselves, rather than
+     * supplying an InputStream, see {@link ObjectWriter}.
+     */
+    @Override
+    public ObjectWriter openObjectWriter(
+        String pid, String additionalAlgorithm, String checksum, String checksumAlgorithm,
+        long objSize) throws NoSuchAlgorithmException, IOException {
+        logFileHashStore.debug("Opening object writer for pid: " + pid);
+        validateStoreObjectArguments(pid, additionalAlgorithm, checksumAlgorithm, objSize);
+        verifyChecksumParameters(checksum, checksumAlgorithm);
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", OBJECT_TMP_FILE_DIRECTORY);
+        return new ObjectWriter(
+            this, tmpFile, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize,
+            getAlgorithmsToCalculate(additionalAlgorithm, checksumAlgorithm));
+    }
+
+    /**
+     * Store and tag a data object that has already been written to a tmp file (by an upload
+     * session or an object writer) while its hex digests were calculated
+     *
+     * @param dataFile            File holding the data object, moved to its permanent address
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest included in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate
+     * @param hexDigests          Hex digests calculated while the data file was written
+     * @return ObjectMetadata of the stored data object
+     */
+    protected ObjectMetadata storeTmpObject(
+        File dataFile, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize, Map<String, String> hexDigests)
+        throws NoSuchAlgorithmException, IOException, InterruptedException {
+        boolean compareChecksum = verifyChecksumParameters(checksum, checksumAlgorithm);
+        return syncPutObject(
+            pid, additionalAlgorithm, checksum, checksumAlgorithm,
+            () -> moveTmpObject(dataFile, pid, hexDigests, compareChecksum, checksum,
+                                checksumAlgorithm, objSize));
+    }
+
+    /**
+     * Stores a data object once its pid has been locked, see {@code syncPutObject}
+     */
+    @FunctionalInterface
+    private interface ObjectPutter {
+        ObjectMetadata putObject()
+            throws NoSuchAlgorithmException, IOException, RuntimeException, InterruptedException;
+    }
+
+    /**
+     * Method to synchronize storing objects with FileHashStore
+     */
+    private ObjectMetadata syncPutObject(
+        String pid, String additionalAlgorithm, String checksum, String checksumAlgorithm,
+        ObjectPutter objectPutter)
+        throws NoSuchAlgorithmException, IOException, RuntimeException, InterruptedException {
+        // Lock pid for thread safety, transaction control and atomic writing
+        // An object is stored once and only once
+        if (!objectLockedPids.tryLock(pid)) {
+            String errMsg =
+                "Duplicate object request encountered for pid: " + pid + ". Already in progress.";
+            logFileHashStore.warn(errMsg);
+            throw new RuntimeException(errMsg);
+        }
+
+        try {
+            logFileHashStore.debug(
+                "putObject() called to store pid: " + pid + ". additionalAlgorithm: "
+                    + additionalAlgorithm + ". checksum: " + checksum + ". checksumAlgorithm: "
+                    + checksumAlgorithm);
+            // Store object
+            ObjectMetadata objInfo = objectPutter.putObject();
+            // Tag object
+            String cid = objInfo.cid();
+            tagObject(pid, cid);
+            logFileHashStore.info(
+                "Object stored for pid: " + pid + " at " + getHashStoreDataObjectPath(pid));
+            return objInfo;
+
+        } catch (NoSuchAlgorithmException nsae) {
+            String errMsg =
+                "Unable to store object for pid: " + pid + ". NoSuchAlgorithmException: "
+                    + nsae.getMessage();
+            logFileHashStore.error(errMsg);
+            throw nsae;
+
+        } catch (PidRefsFileExistsException prfee) {
+            String errMsg =
+                "Unable to store object for pid: " + pid + ". PidRefsFileExistsException: "
+                    + prfee.getMessage();
+            logFileHashStore.error(errMsg);
+            throw prfee;
+
+        } catch (IOException ioe) {
+            // Covers AtomicMoveNotSupportedException, FileNotFoundException
+            String errMsg =
+                "Unable to store object for pid: " + pid + ". IOException: " + ioe.getMessage();
+            logFileHashStore.error(errMsg);
+            throw ioe;
+
+        } catch (RuntimeException re) {
+            // Covers SecurityException, IllegalArgumentException, NullPointerException
+            String errMsg = "Unable to store object for pid: " + pid + ". Runtime Exception: "
+                + re.getMessage();
+            logFileHashStore.error(errMsg);
+            throw re;
+
+        } finally {
+            // Release lock
+            releaseObjectLockedPids(pid);
+        }
+    }
+
+    /**
+     * Overload method for storeObject with just an InputStream
+     */
+    @Override
+    public ObjectMetadata storeObject(InputStream object)
+        throws NoSuchAlgorithmException, IOException, RuntimeException,
+        InterruptedException {
+        // 'putObject' is called directly to bypass the pid synchronization implemented to
+        // efficiently handle object store requests without a pid. This scenario occurs when
+        // metadata about the object (ex. form data including the pid, checksum, checksum
+        // algorithm, etc.) is unavailable.
+        //
+        // Note: This method does not tag the object to make it discoverable, so the client can
+        // call 'deleteIfInvalidObject' (optional) to check that the object is valid, and then
+        // 'tagObject' (required) to create the reference files needed to associate the
+        // respective pids/cids.
+        try (object) {
+            return putObject(object, "HashStoreNoPid", null, null, null, -1);
+        }
+        // Close stream
+    }
+
+
+    @Override
+    public void tagObject(String pid, String cid)
+        throws IOException, NoSuchAlgorithmException,
+        InterruptedException {
+        logFileHashStore.debug("Tagging cid (" + cid + ") with pid: " + pid);
+        // Validate input parameters
+        FileHashStoreUtility.ensureNotNull(pid, "pid");
+        FileHashStoreUtility.ensureNotNull(cid, "cid");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(cid, "cid");
+
+        try {
+            // This method synchronizes the pid and cid
+            storeHashStoreRefsFiles(pid, cid);
+
+        } catch (HashStoreRefsAlreadyExistException hsrfae) {
+            // cid and pid has been released
+            // This exception is thrown when the pid and cid are already tagged appropriately
+            String errMsg =
+                "HashStore refs files already exist for pid " + pid + " and cid: " + cid;
+            throw new HashStoreRefsAlreadyExistException(errMsg);
+
+        } catch (PidRefsFileExistsException prfe) {
+            // cid and pid has been released
+            String errMsg = "pid: " + pid + " already references another cid."
+                + " A pid can only reference one cid.";
+            throw new PidRefsFileExistsException(errMsg);
         }
     }
 
@@ -586,8 +1647,7 @@ public class FileHashStore implements HashStore {
         throws InterruptedException, IOException, NoSuchAlgorithmException {
         // Get the metadata document id, which is the synchronization value
         String pidFormatId = pid + checkedFormatId;
-        String metadataDocId =
-            FileHashStoreUtility.getPidHexDigest(pidFormatId, OBJECT_STORE_ALGORITHM);
+        String metadataDocId = pathResolver.getHexDigest(pidFormatId);
         logFileHashStore.debug(
             "putMetadata() called to store metadata for pid: " + pid + ", with formatId: "
                 + checkedFormatId + " for metadata document: " + metadataDocId);
@@ -637,7 +1697,7 @@ public class FileHashStore implements HashStore {
 
         // Check to see if object exists
         Path objRealPath = getHashStoreDataObjectPath(pid);
-        if (!Files.exists(objRealPath)) {
+        if (!dataObjectExists(objRealPath)) {
             String errMsg =
                 "File does not exist for pid: " + pid + " with object address: " + objRealPath;
             logFileHashStore.warn(errMsg);
@@ -646,7 +1706,7 @@ public class FileHashStore implements HashStore {
 
         // Return an InputStream to read from the data object
         try {
-            InputStream objectCidInputStream = Files.newInputStream(objRealPath);
+            InputStream objectCidInputStream = openDataObject(objRealPath);
             logFileHashStore.info("Retrieved object for pid: " + pid);
             return objectCidInputStream;
 
@@ -660,6 +1720,113 @@ public class FileHashStore implements HashStore {
 
     }
 
+    @Override
+    public InputStream retrieveObject(String pid, long offset, long length)
+        throws IllegalArgumentException, IOException, NoSuchAlgorithmException {
+        logFileHashStore.debug(
+            "Retrieving InputStream to range of data object for pid: " + pid + ". Offset: "
+                + offset + ". Length: " + length);
+        // Validate input parameters
+        FileHashStoreUtility.ensureNotNull(pid, "pid");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
+
+        // The cid is only resolved once
+        Path objRealPath = getHashStoreDataObjectPath(pid);
+        long rangeLength = getRangeLength(pid, objRealPath, offset, length);
+
+        // Return an InputStream to read the range from the data object
+        try {
+            InputStream rangeInputStream = openDataObject(objRealPath, offset, rangeLength);
+            logFileHashStore.info("Retrieved range of object for pid: " + pid);
+            return rangeInputStream;
+
+        } catch (IOException ioe) {
+            String errMsg =
+                "Unexpected error when creating InputStream for range of pid: " + pid
+                    + ", IOException: " + ioe.getMessage();
+            logFileHashStore.error(errMsg);
+            throw new IOException(errMsg);
+        }
+    }
+
+    @Override
+    public long transferObjectTo(String pid, WritableByteChannel target)
+        throws IllegalArgumentException, IOException, NoSuchAlgorithmException {
+        return transferObjectTo(pid, 0, -1, target);
+    }
+
+    @Override
+    public long transferObjectTo(String pid, long offset, long length, WritableByteChannel target)
+        throws IllegalArgumentException, IOException, NoSuchAlgorithmException {
+        logFileHashStore.debug(
+            "Transferring data object for pid: " + pid + ". Offset: " + offset + ". Length: "
+                + length);
+        // Validate input parameters
+        FileHashStoreUtility.ensureNotNull(pid, "pid");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
+        FileHashStoreUtility.ensureNotNull(target, "target");
+        if (target instanceof SelectableChannel && !((SelectableChannel) target).isBlocking()) {
+            // A non-blocking target would have to be polled until it accepts the whole object
+            String errMsg = "Target channel must be in blocking mode to transfer object for pid: "
+                + pid;
+            logFileHashStore.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+
+        Path objRealPath = getHashStoreDataObjectPath(pid);
+        long rangeLength = getRangeLength(pid, objRealPath, offset, length);
+
+        long transferred;
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            // Packed data objects are small, they are read with a single positioned read
+            try (InputStream rangeStream = segmentStore.open(objRealPath, offset, rangeLength)) {
+                transferred = StoredFileCodec.copy(rangeStream, target);
+            }
+        } else {
+            transferred = storedFileCodec.transferTo(objRealPath, offset, rangeLength, target);
+        }
+        logFileHashStore.info("Transferred " + transferred + " bytes of object for pid: " + pid);
+        return transferred;
+    }
+
+    /**
+     * Validate a range of the data object of a given pid, and clip it to the end of the data
+     * object
+     *
+     * @param pid         Authority-based identifier
+     * @param objRealPath Permanent address of the data object
+     * @param offset      Offset of the range
+     * @param length      Length of the range, or -1 for a range ending with the data object
+     * @return Length of the range, once clipped to the end of the data object
+     * @throws IllegalArgumentException If offset or length is invalid, or offset is past the end
+     *                                  of the data object
+     * @throws FileNotFoundException    If the data object does not exist
+     * @throws IOException              If the size of the data object cannot be read
+     */
+    private long getRangeLength(String pid, Path objRealPath, long offset, long length)
+        throws IOException {
+        if (offset < 0 || length < -1) {
+            String errMsg = "Invalid range for pid: " + pid + ". Offset: " + offset + " must be at"
+                + " least 0 and length: " + length + " must be at least 0, or -1 (until the end).";
+            logFileHashStore.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        if (!dataObjectExists(objRealPath)) {
+            String errMsg =
+                "File does not exist for pid: " + pid + " with object address: " + objRealPath;
+            logFileHashStore.warn(errMsg);
+            throw new FileNotFoundException(errMsg);
+        }
+        long objSize = getDataObjectSize(objRealPath);
+        if (offset > objSize) {
+            String errMsg = "offset: " + offset + " is past the end of the data object for pid: "
+                + pid + ", which has a size of: " + objSize;
+            logFileHashStore.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        return length == -1 ? objSize - offset : Math.min(length, objSize - offset);
+    }
+
     @Override
     public InputStream retrieveMetadata(String pid, String formatId)
         throws IllegalArgumentException, IOException,
@@ -699,7 +1866,6 @@ public class FileHashStore implements HashStore {
         // Validate input parameters
         FileHashStoreUtility.ensureNotNull(pid, "id");
         FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "id");
-        Collection<Path> deleteList = new ArrayList<>();
 
         try {
             // Storing, deleting and untagging objects are synchronized together
@@ -719,23 +1885,13 @@ public class FileHashStore implements HashStore {
 
                 try {
                     // Proceed with comprehensive deletion - cid exists, nothing out of place
-                    Path absCidRefsPath = getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
-                    Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-
-                    // Begin deletion process
-                    updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.remove);
-                    if (Files.size(absCidRefsPath) == 0) {
-                        Path objRealPath = getHashStoreDataObjectPath(pid);
-                        deleteList.add(FileHashStoreUtility.renamePathForDeletion(objRealPath));
-                        deleteList.add(FileHashStoreUtility.renamePathForDeletion(absCidRefsPath));
+                    if (refsBackend.untag(pid, cid)) {
+                        deleteUnreferencedObject(cid);
                     } else {
                         String warnMsg = "cid referenced by pid: " + pid
                             + " is not empty (refs exist for cid). Skipping object deletion.";
                         logFileHashStore.warn(warnMsg);
                     }
-                    deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
-                    // Delete all related/relevant items with the least amount of delay
-                    FileHashStoreUtility.deleteListItems(deleteList);
                     deleteMetadata(pid);
                     logFileHashStore.info("Data file and references deleted for: " + pid);
 
@@ -747,10 +1903,7 @@ public class FileHashStore implements HashStore {
             } catch (OrphanPidRefsFileException oprfe) {
                 // `findObject` throws this exception when the cid refs file doesn't exist,
                 // so we only need to delete the pid refs file and related metadata documents
-                Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-                deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
-                // Delete items
-                FileHashStoreUtility.deleteListItems(deleteList);
+                refsBackend.deletePid(pid);
                 deleteMetadata(pid);
                 String warnMsg = "Cid refs file does not exist for pid: " + pid
                     + ". Deleted orphan pid refs file and metadata.";
@@ -759,21 +1912,15 @@ public class FileHashStore implements HashStore {
             } catch (OrphanRefsFilesException orfe) {
                 // `findObject` throws this exception when the pid and cid refs file exists,
                 // but the actual object being referenced by the pid does not exist
-                Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-                String cidRead = new String(Files.readAllBytes(absPidRefsPath));
+                String cidRead = refsBackend.getCid(pid);
 
                 try {
                     // Since we must access the cid reference file, the `cid` must be synchronized
                     synchronizeObjectLockedCids(cidRead);
 
-                    Path absCidRefsPath = getHashStoreRefsPath(cidRead, HashStoreIdTypes.cid);
-                    updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.remove);
-                    if (Files.size(absCidRefsPath) == 0) {
-                        deleteList.add(FileHashStoreUtility.renamePathForDeletion(absCidRefsPath));
+                    if (refsBackend.untag(pid, cidRead)) {
+                        refsBackend.deleteCid(cidRead);
                     }
-                    deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
-                    // Delete items
-                    FileHashStoreUtility.deleteListItems(deleteList);
                     deleteMetadata(pid);
                     String warnMsg = "Object with cid: " + cidRead
                         + " does not exist, but pid and cid reference file found for pid: " + pid
@@ -787,20 +1934,251 @@ public class FileHashStore implements HashStore {
             } catch (PidNotFoundInCidRefsFileException pnficrfe) {
                 // `findObject` throws this exception when both the pid and cid refs file exists
                 // but the pid is not found in the cid refs file.
-                Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-                deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
-                FileHashStoreUtility.deleteListItems(deleteList);
+                refsBackend.deletePid(pid);
                 deleteMetadata(pid);
                 String warnMsg = "Pid not found in expected cid refs file for pid: " + pid
                     + ". Deleted orphan pid refs file and metadata.";
                 logFileHashStore.warn(warnMsg);
             }
         } finally {
+            pidCidCache.invalidate(pid);
             // Release lock
             releaseObjectLockedPids(pid);
         }
     }
 
+    @Override
+    public List<DeleteResult> deleteObjects(Collection<String> pids) throws InterruptedException {
+        FileHashStoreUtility.ensureNotNull(pids, "pids");
+        logFileHashStore.debug("Deleting a batch of " + pids.size() + " objects");
+        List<DeleteEntry> batch = createDeleteBatch(pids);
+
+        List<DeleteEntry> unresolvedEntries = new ArrayList<>();
+        try {
+            // Pids are locked in order, so that batches running concurrently cannot deadlock
+            List<DeleteEntry> entriesByPid = getPendingDeleteEntries(batch);
+            entriesByPid.sort(Comparator.comparing(entry -> entry.pid));
+            for (DeleteEntry entry : entriesByPid) {
+                synchronizeObjectLockedPids(entry.pid);
+                entry.pidLocked = true;
+            }
+
+            runBatchDeletionStep(entriesByPid, this::resolveDeleteEntry);
+            Map<String, List<DeleteEntry>> entriesByCid = new TreeMap<>();
+            for (DeleteEntry entry : getPendingDeleteEntries(entriesByPid)) {
+                if (entry.cid == null) {
+                    // Refs that are out of place are cleaned up by deleteObject
+                    unresolvedEntries.add(entry);
+                } else {
+                    entriesByCid.computeIfAbsent(entry.cid, k -> new ArrayList<>()).add(entry);
+                }
+            }
+            // Pids that reference the same cid are untagged together
+            runBatchDeletionStep(new ArrayList<>(entriesByCid.values()), this::untagBatchEntries);
+            List<DeleteEntry> untaggedEntries = new ArrayList<>();
+            for (List<DeleteEntry> cidEntries : entriesByCid.values()) {
+                untaggedEntries.addAll(getPendingDeleteEntries(cidEntries));
+            }
+            runBatchDeletionStep(untaggedEntries, this::deleteBatchEntryMetadata);
+
+        } finally {
+            for (DeleteEntry entry : batch) {
+                if (entry.pidLocked) {
+                    pidCidCache.invalidate(entry.pid);
+                    releaseObjectLockedPids(entry.pid);
+                }
+            }
+        }
+
+        for (DeleteEntry entry : unresolvedEntries) {
+            try {
+                deleteObject(entry.pid);
+
+            } catch (InterruptedException ie) {
+                failDeleteEntry(entry, ie);
+                throw ie;
+
+            } catch (Exception e) {
+                failDeleteEntry(entry, e);
+            }
+        }
+        return getDeleteResults(batch, "objects");
+    }
+
+    /**
+     * Progress of one pid within a call to {@code deleteObjects} or {@code deleteMetadata}. Once
+     * an exception has been recorded, the entry is skipped by every later step.
+     */
+    private static final class DeleteEntry {
+        private final String pid;
+        private boolean pidLocked = false;
+        private String cid;
+        private volatile Exception exception;
+
+        private DeleteEntry(String pid) {
+            this.pid = pid;
+        }
+    }
+
+    /**
+     * Validate the pids of a batch, in which each pid must be unique
+     */
+    private List<DeleteEntry> createDeleteBatch(Collection<String> pids) {
+        List<DeleteEntry> batch = new ArrayList<>(pids.size());
+        Set<String> batchPids = new HashSet<>();
+        for (String pid : pids) {
+            DeleteEntry entry = new DeleteEntry(pid);
+            batch.add(entry);
+            try {
+                FileHashStoreUtility.ensureNotNull(pid, "pid");
+                FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
+                if (!batchPids.add(pid)) {
+                    String errMsg = "Duplicate pid: " + pid + " found in batch.";
+                    logFileHashStore.error(errMsg);
+                    throw new IllegalArgumentException(errMsg);
+                }
+            } catch (Exception e) {
+                failDeleteEntry(entry, e);
+            }
+        }
+        return batch;
+    }
+
+    private static List<DeleteEntry> getPendingDeleteEntries(List<DeleteEntry> entries) {
+        List<DeleteEntry> pendingEntries = new ArrayList<>(entries.size());
+        for (DeleteEntry entry : entries) {
+            if (entry.exception == null) {
+                pendingEntries.add(entry);
+            }
+        }
+        return pendingEntries;
+    }
+
+    private void failDeleteEntry(DeleteEntry entry, Exception exception) {
+        logFileHashStore.error(
+            "Unable to delete pid: " + entry.pid + " in batch. " + exception.getClass()
+                .getSimpleName() + ": " + exception.getMessage());
+        entry.exception = exception;
+    }
+
+    private List<DeleteResult> getDeleteResults(List<DeleteEntry> batch, String deletedItems) {
+        List<DeleteResult> results = new ArrayList<>(batch.size());
+        int deletedPids = 0;
+        for (DeleteEntry entry : batch) {
+            if (entry.exception == null) {
+                deletedPids++;
+            }
+            results.add(new DeleteResult(entry.pid, entry.exception));
+        }
+        logFileHashStore.info(
+            "Deleted " + deletedItems + " for " + deletedPids + " of " + batch.size()
+                + " pids in batch.");
+        return results;
+    }
+
+    /**
+     * Run a step of a batch deletion on each of the given items, several items at a time, see
+     * {@code runBatchTasks}. Each step records its own exceptions. Steps that have started are
+     * never interrupted (ex. in the middle of a refs file update), and are always waited for,
+     * since they must not run after the batch has released its pids.
+     */
+    private <T> void runBatchDeletionStep(List<T> items, Consumer<T> step)
+        throws InterruptedException {
+        runBatchTasks(
+            items, Math.max(BATCH_DELETION_WORKERS, Runtime.getRuntime().availableProcessors()),
+            step);
+    }
+
+    /**
+     * Find the cid of a pid of a batch. The cid is left unset if the refs of the pid are out of
+     * place, in which case the pid is deleted with {@code deleteObject}.
+     */
+    private void resolveDeleteEntry(DeleteEntry entry) {
+        try {
+            entry.cid = findObject(entry.pid).cid();
+        } catch (OrphanPidRefsFileException | OrphanRefsFilesException
+                 | PidNotFoundInCidRefsFileException e) {
+            logFileHashStore.warn(
+                "Refs of pid: " + entry.pid + " are out of place. " + e.getMessage());
+        } catch (Exception e) {
+            failDeleteEntry(entry, e);
+        }
+    }
+
+    /**
+     * Untag the pids of a batch that reference the same cid with a single update of its cid refs,
+     * and delete its data object if no other pid references it. The pids must be locked.
+     */
+    private void untagBatchEntries(List<DeleteEntry> entries) {
+        String cid = entries.get(0).cid;
+        List<String> pids = new ArrayList<>(entries.size());
+        for (DeleteEntry entry : entries) {
+            pids.add(entry.pid);
+        }
+        try {
+            synchronizeObjectLockedCids(cid);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            for (DeleteEntry entry : entries) {
+                failDeleteEntry(entry, ie);
+            }
+            return;
+        }
+        try {
+            if (refsBackend.untagAll(pids, cid)) {
+                deleteUnreferencedObject(cid);
+                logFileHashStore.info(
+                    "Data file and references deleted for " + pids.size() + " pids of cid: "
+                        + cid);
+            } else {
+                logFileHashStore.info(
+                    "Untagged " + pids.size() + " pids from cid: " + cid
+                        + ", which is still referenced. Skipping object deletion.");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            for (DeleteEntry entry : entries) {
+                failDeleteEntry(entry, ie);
+            }
+        } catch (Exception e) {
+            for (DeleteEntry entry : entries) {
+                failDeleteEntry(entry, e);
+            }
+        } finally {
+            releaseObjectLockedCids(cid);
+        }
+    }
+
+    /**
+     * Delete a data object that is no longer referenced by any pid, along with its recorded hex
+     * digests and cid refs. The cid must be locked.
+     *
+     * @param cid Content identifier
+     * @throws IOException              If the data object or its refs cannot be deleted
+     * @throws NoSuchAlgorithmException When an algorithm used to calculate a path is not supported
+     * @throws InterruptedException     If interrupted while waiting for the lock of a chunk
+     */
+    private void deleteUnreferencedObject(String cid)
+        throws IOException, NoSuchAlgorithmException, InterruptedException {
+        Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, cid);
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            segmentStore.delete(objRealPath);
+        } else {
+            // The data object is renamed before its chunks are released, so it cannot be read
+            // once its chunks may have been deleted
+            Path deletePath = FileHashStoreUtility.renamePathForDeletion(objRealPath);
+            try {
+                commitDeletions(List.of(deletePath));
+                // Release the chunks of a chunked object while the cid is locked
+                storedFileCodec.release(deletePath, cid);
+            } finally {
+                // The renamed data object is deleted in the background, without holding the locks
+                deletionReaper.enqueue(List.of(deletePath));
+            }
+        }
+        digestSidecarStore.delete(cid);
+        refsBackend.deleteCid(cid);
+    }
 
     @Override
     public void deleteIfInvalidObject(
@@ -828,14 +2206,20 @@ public class FileHashStore implements HashStore {
         if (digestFromHexDigests == null) {
             try {
                 validateAlgorithm(checksumAlgorithm);
-                // If no exceptions thrown, calculate the checksum with the given algo
-                String objRelativePath =
-                    FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                                   objCid);
-                Path pathToCidObject = OBJECT_STORE_DIRECTORY.resolve(objRelativePath);
-                try (InputStream inputStream = Files.newInputStream(pathToCidObject)) {
-                    digestFromHexDigests =
-                        FileHashStoreUtility.calculateHexDigest(inputStream, checksumAlgorithm);
+                // If no exceptions thrown, get the checksum recorded for the cid, or calculate
+                // it with the given algo
+                Path pathToCidObject = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, objCid);
+                try {
+                    digestFromHexDigests = digestSidecarStore.get(objCid, checksumAlgorithm);
+                    if (digestFromHexDigests == null) {
+                        try (InputStream inputStream = openDataObject(pathToCidObject)) {
+                            digestFromHexDigests = FileHashStoreUtility.calculateHexDigest(
+                                inputStream, checksumAlgorithm);
+                        }
+                        recordHexDigestsLocked(
+                            objCid, pathToCidObject,
+                            Map.of(checksumAlgorithm, digestFromHexDigests));
+                    }
                 } catch (IOException ioe) {
                     String errMsg =
                         "Unexpected error when calculating a checksum for cid: " + objCid
@@ -896,8 +2280,8 @@ public class FileHashStore implements HashStore {
 
         if (!metadataDocPaths.isEmpty()) {
             Collection<Path> deleteList = syncRenameMetadataDocForDeletion(metadataDocPaths);
-            // Delete all items in the list
-            FileHashStoreUtility.deleteListItems(deleteList);
+            // Renamed metadata documents are deleted in the background
+            deletionReaper.enqueue(deleteList);
         }
         logFileHashStore.info(
             "Metadata document deleted for: " + pid + " with metadata address: " + metadataDocPath);
@@ -915,23 +2299,49 @@ public class FileHashStore implements HashStore {
         FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
 
         // Get the path to the pid metadata document directory
-        String pidHexDigest = FileHashStoreUtility.getPidHexDigest(pid, OBJECT_STORE_ALGORITHM);
-        String pidRelativePath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                           pidHexDigest);
-        Path expectedPidMetadataDirectory = METADATA_STORE_DIRECTORY.resolve(pidRelativePath);
+        Path expectedPidMetadataDirectory = pathResolver.resolveId(METADATA_STORE_DIRECTORY, pid);
         // Add all metadata docs found in the metadata doc directory to a list to iterate over
         List<Path> metadataDocPaths =
             FileHashStoreUtility.getFilesFromDir(expectedPidMetadataDirectory);
 
         if (!metadataDocPaths.isEmpty()) {
             Collection<Path> deleteList = syncRenameMetadataDocForDeletion(metadataDocPaths);
-            // Delete all items in the list
-            FileHashStoreUtility.deleteListItems(deleteList);
+            // Renamed metadata documents are deleted in the background
+            deletionReaper.enqueue(deleteList);
         }
         logFileHashStore.info("All metadata documents deleted for: " + pid);
     }
 
+    @Override
+    public List<DeleteResult> deleteMetadata(Collection<String> pids)
+        throws InterruptedException {
+        FileHashStoreUtility.ensureNotNull(pids, "pids");
+        logFileHashStore.debug("Deleting all metadata documents for a batch of " + pids.size()
+                                   + " pids");
+        List<DeleteEntry> batch = createDeleteBatch(pids);
+        runBatchDeletionStep(getPendingDeleteEntries(batch), this::deleteBatchEntryMetadata);
+        return getDeleteResults(batch, "metadata documents");
+    }
+
+    /**
+     * Delete all metadata documents of a pid of a batch
+     */
+    private void deleteBatchEntryMetadata(DeleteEntry entry) {
+        try {
+            List<Path> metadataDocPaths = FileHashStoreUtility.getFilesFromDir(
+                pathResolver.resolveId(METADATA_STORE_DIRECTORY, entry.pid));
+            if (!metadataDocPaths.isEmpty()) {
+                // Renamed metadata documents are deleted in the background
+                deletionReaper.enqueue(syncRenameMetadataDocForDeletion(metadataDocPaths));
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            failDeleteEntry(entry, ie);
+        } catch (Exception e) {
+            failDeleteEntry(entry, e);
+        }
+    }
+
     /**
      * Synchronize renaming metadata documents for deletion
      *
@@ -962,16 +2372,21 @@ public class FileHashStore implements HashStore {
                     releaseMetadataLockedDocIds(metadataDocId);
                 }
             }
+            commitDeletions(metadataDocsToDelete);
         } catch (Exception ge) {
             // If there is any exception, attempt to revert the process and throw an exception
             if (!metadataDocsToDelete.isEmpty()) {
                 for (Path metadataDocToPlaceBack : metadataDocsToDelete) {
-                    Path fileNameWithDeleted = metadataDocToPlaceBack.getFileName();
-                    String metadataDocId = fileNameWithDeleted.toString().replace("_delete", "");
+                    String metadataDocId = FileHashStoreUtility.getPathBeforeDeletion(
+                        metadataDocToPlaceBack).getFileName().toString();
                     try {
                         synchronizeMetadataLockedDocIds(metadataDocId);
                         if (Files.exists(metadataDocToPlaceBack)) {
                             FileHashStoreUtility.renamePathForRestoration(metadataDocToPlaceBack);
+                        } else {
+                            logFileHashStore.error(
+                                "Metadata document renamed for deletion: " + metadataDocToPlaceBack
+                                    + " no longer exists and cannot be restored.");
                         }
                     } finally {
                         releaseMetadataLockedDocIds(metadataDocId);
@@ -999,22 +2414,39 @@ public class FileHashStore implements HashStore {
 
         // Find the content identifier
         if (algorithm.equals(OBJECT_STORE_ALGORITHM)) {
+            String cachedCid = pidCidCache.get(pid);
+            if (cachedCid != null) {
+                return cachedCid;
+            }
             ObjectInfo objInfo = findObject(pid);
             return objInfo.cid();
 
         } else {
             // Get permanent address of the pid object
-            Path objRealPath = getHashStoreDataObjectPath(pid);
-            if (!Files.exists(objRealPath)) {
+            String objectCid = getHashStoreDataObjectCid(pid);
+            Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, objectCid);
+            if (!dataObjectExists(objRealPath)) {
                 String errMsg =
                     "File does not exist for pid: " + pid + " with object address: " + objRealPath;
                 logFileHashStore.warn(errMsg);
                 throw new FileNotFoundException(errMsg);
             }
 
-            InputStream dataStream = Files.newInputStream(objRealPath);
-            String mdObjectHexDigest =
-                FileHashStoreUtility.calculateHexDigest(dataStream, algorithm);
+            // Hex digests calculated before are recorded in the digest sidecar of the cid
+            String recordedHexDigest = digestSidecarStore.get(objectCid, algorithm);
+            if (recordedHexDigest != null) {
+                logFileHashStore.info(
+                    "Hex digest found for pid: " + pid + ", with hex digest value: "
+                        + recordedHexDigest);
+                return recordedHexDigest;
+            }
+
+            String mdObjectHexDigest;
+            try (InputStream dataStream = openDataObject(objRealPath)) {
+                mdObjectHexDigest = FileHashStoreUtility.calculateHexDigest(dataStream, algorithm);
+            }
+            recordHexDigestsLocked(
+                objectCid, objRealPath, Map.of(algorithm, mdObjectHexDigest));
             logFileHashStore.info(
                 "Hex digest calculated for pid: " + pid + ", with hex digest value: "
                     + mdObjectHexDigest);
@@ -1051,28 +2483,27 @@ public class FileHashStore implements HashStore {
         FileHashStoreUtility.checkForNotEmptyAndValidString(pid, "pid");
 
         // Get path of the pid references file
-        Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
+        Path absPidRefsPath = refsBackend.getRefsPath(pid, HashStoreIdTypes.pid);
+        long cacheStamp = pidCidCache.getStamp();
+        String cid = refsBackend.getCid(pid);
 
-        if (Files.exists(absPidRefsPath)) {
-            String cid = new String(Files.readAllBytes(absPidRefsPath));
-            Path absCidRefsPath = getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
+        if (cid != null) {
+            Path absCidRefsPath = refsBackend.getRefsPath(cid, HashStoreIdTypes.cid);
 
             // Throw exception if the cid refs file doesn't exist
-            if (!Files.exists(absCidRefsPath)) {
+            if (!refsBackend.hasCid(cid)) {
                 String errMsg = "Cid refs file does not exist for cid: " + cid + " with address: "
                     + absCidRefsPath + ", but pid refs file exists.";
                 logFileHashStore.error(errMsg);
                 throw new OrphanPidRefsFileException(errMsg);
             }
             // If the pid is found in the expected cid refs file, and the object exists, return it
-            if (isStringInRefsFile(pid, absCidRefsPath)) {
+            if (refsBackend.hasPid(cid, pid)) {
                 logFileHashStore.info("cid (" + cid + ") found for pid: " + pid);
 
-                String objRelativePath =
-                    FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                                   cid);
-                Path realPath = OBJECT_STORE_DIRECTORY.resolve(objRelativePath);
-                if (Files.exists(realPath)) {
+                Path realPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, cid);
+                if (dataObjectExists(realPath)) {
+                    pidCidCache.put(pid, cid, cacheStamp);
                     // If the default system metadata exists, include it
                     Path metadataPidExpectedPath =
                         getHashStoreMetadataPath(pid, DEFAULT_METADATA_NAMESPACE);
@@ -1125,27 +2556,99 @@ public class FileHashStore implements HashStore {
      * @param objSize             Expected size of object to validate after storing
      * @return 'ObjectMetadata' object that contains the file id, size, and a checksum map based on
      *     the default algorithm list.
-     * @throws IOException                     I/O Error when writing file, generating checksums,
-     *                                         moving file or deleting tmpFile upon duplicate found
+     * @throws IOException                     I/O Error when writing file, generating checksums,
+     *                                         moving file or deleting tmpFile upon duplicate found
+     * @throws NoSuchAlgorithmException        When additionalAlgorithm or checksumAlgorithm is
+     *                                         invalid or not found
+     * @throws SecurityException               Insufficient permissions to read/access files or when
+     *                                         generating/writing to a file
+     * @throws FileNotFoundException           tmpFile not found during store
+     * @throws PidRefsFileExistsException      If the given pid already references an object
+     * @throws IllegalArgumentException        When signature values are empty (checksum, pid,
+     *                                         etc.)
+     * @throws NullPointerException            Arguments are null for pid or object
+     * @throws AtomicMoveNotSupportedException When attempting to move files across file systems
+     * @throws InterruptedException            An issue synchronizing the cid when moving object
+     */
+    protected ObjectMetadata putObject(
+        InputStream object, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize)
+        throws IOException, NoSuchAlgorithmException, SecurityException, FileNotFoundException,
+        PidRefsFileExistsException, IllegalArgumentException, NullPointerException,
+        AtomicMoveNotSupportedException, InterruptedException {
+        logFileHashStore.debug("Begin writing data object for pid: " + pid);
+        // If validation is desired, checksumAlgorithm and checksum must both be present
+        boolean compareChecksum = verifyChecksumParameters(checksum, checksumAlgorithm);
+        // Validate additional algorithm if not null or empty, throws exception if not supported
+        if (additionalAlgorithm != null) {
+            FileHashStoreUtility.checkForNotEmptyAndValidString(
+                additionalAlgorithm, "additionalAlgorithm");
+            validateAlgorithm(additionalAlgorithm);
+        }
+        if (objSize != -1) {
+            FileHashStoreUtility.checkPositive(objSize);
+        }
+        ObjectMetadata existingObjInfo =
+            precheckExistingObject(pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize);
+        if (existingObjInfo != null) {
+            return existingObjInfo;
+        }
+
+        // Generate tmp file and write to it
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", OBJECT_TMP_FILE_DIRECTORY);
+        Map<String, String> hexDigests;
+        try {
+            hexDigests = writeToTmpFileAndGenerateChecksums(tmpFile, object, additionalAlgorithm,
+                                                            checksumAlgorithm, objSize);
+        } catch (Exception ge) {
+            // If the process to write to the tmpFile is interrupted for any reason,
+            // we will delete the tmpFile.
+            Files.delete(tmpFile.toPath());
+            String errMsg = "Unexpected Exception while storing object for pid: " + pid + ". "
+                + ge.getMessage();
+            logFileHashStore.error(errMsg);
+            throw new IOException(errMsg);
+        }
+
+        return moveTmpObject(
+            tmpFile, pid, hexDigests, compareChecksum, checksum, checksumAlgorithm, objSize);
+    }
+
+    /**
+     * Stores a data object from a file on disk. The file is hard linked into the tmp directory when
+     * it may be consumed and is on the same file system as HashStore, so that the data object is
+     * placed without copying any data. Otherwise, the file is copied into the tmp directory with
+     * {@code FileChannel.transferTo}, which lets the operating system copy the data without
+     * passing it through the JVM. The hex digests are then calculated from the tmp file, so they
+     * always describe exactly what has been stored.
+     *
+     * @param object              Path to the file to store
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Optional checksum value to generate in hex digests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate after storing
+     * @param consumeObject       Whether the file may be taken over by HashStore. If so, it is
+     *                            deleted from its original location once the data object has been
+     *                            stored. It is left in place if the object fails validation.
+     * @return 'ObjectMetadata' object that contains the file id, size, and a checksum map based on
+     *     the default algorithm list.
+     * @throws IOException                     I/O Error when linking or copying the file,
+     *                                         generating checksums or moving the tmpFile
      * @throws NoSuchAlgorithmException        When additionalAlgorithm or checksumAlgorithm is
      *                                         invalid or not found
-     * @throws SecurityException               Insufficient permissions to read/access files or when
-     *                                         generating/writing to a file
-     * @throws FileNotFoundException           tmpFile not found during store
      * @throws PidRefsFileExistsException      If the given pid already references an object
-     * @throws IllegalArgumentException        When signature values are empty (checksum, pid,
-     *                                         etc.)
-     * @throws NullPointerException            Arguments are null for pid or object
      * @throws AtomicMoveNotSupportedException When attempting to move files across file systems
      * @throws InterruptedException            An issue synchronizing the cid when moving object
      */
     protected ObjectMetadata putObject(
-        InputStream object, String pid, String additionalAlgorithm, String checksum,
-        String checksumAlgorithm, long objSize)
+        Path object, String pid, String additionalAlgorithm, String checksum,
+        String checksumAlgorithm, long objSize, boolean consumeObject)
         throws IOException, NoSuchAlgorithmException, SecurityException, FileNotFoundException,
         PidRefsFileExistsException, IllegalArgumentException, NullPointerException,
         AtomicMoveNotSupportedException, InterruptedException {
-        logFileHashStore.debug("Begin writing data object for pid: " + pid);
+        logFileHashStore.debug(
+            "Begin storing data object from path: " + object + " for pid: " + pid);
         // If validation is desired, checksumAlgorithm and checksum must both be present
         boolean compareChecksum = verifyChecksumParameters(checksum, checksumAlgorithm);
         // Validate additional algorithm if not null or empty, throws exception if not supported
@@ -1157,44 +2660,284 @@ public class FileHashStore implements HashStore {
         if (objSize != -1) {
             FileHashStoreUtility.checkPositive(objSize);
         }
+        ObjectMetadata existingObjInfo =
+            precheckExistingObject(pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize);
+        if (existingObjInfo != null) {
+            if (consumeObject) {
+                Files.deleteIfExists(object);
+                logFileHashStore.debug(
+                    "Consumed duplicate object has been removed from: " + object);
+            }
+            return existingObjInfo;
+        }
 
-        // Generate tmp file and write to it
         File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", OBJECT_TMP_FILE_DIRECTORY);
+        boolean linked = false;
         Map<String, String> hexDigests;
         try {
-            hexDigests = writeToTmpFileAndGenerateChecksums(tmpFile, object, additionalAlgorithm,
-                                                            checksumAlgorithm);
+            linked = consumeObject && linkToTmpFile(object, tmpFile);
+            hexDigests = copyToTmpFileAndGenerateChecksums(
+                tmpFile, object, additionalAlgorithm, checksumAlgorithm, linked);
         } catch (Exception ge) {
-            // If the process to write to the tmpFile is interrupted for any reason,
-            // we will delete the tmpFile.
-            Files.delete(tmpFile.toPath());
-            String errMsg = "Unexpected Exception while storing object for pid: " + pid + ". "
-                + ge.getMessage();
+            Files.deleteIfExists(tmpFile.toPath());
+            String errMsg = "Unexpected Exception while storing object from path: " + object
+                + " for pid: " + pid + ". " + ge.getMessage();
             logFileHashStore.error(errMsg);
             throw new IOException(errMsg);
         }
 
+        ObjectMetadata objInfo = moveTmpObject(
+            tmpFile, pid, hexDigests, compareChecksum, checksum, checksumAlgorithm, objSize);
+        if (consumeObject) {
+            Files.deleteIfExists(object);
+            logFileHashStore.debug("Consumed object has been removed from: " + object);
+            if (linked) {
+                setLinkedObjectPermissions(objInfo.cid());
+            }
+        }
+        return objInfo;
+    }
+
+    /**
+     * When the dedup pre-check is enabled and the checksum supplied was calculated with the store
+     * algorithm, look for an existing data object at the address of that checksum, so that a
+     * duplicate object does not need to be written at all.
+     *
+     * In 'verify' mode, the existing data object is re-hashed (while its cid is locked) and its hex
+     * digests are returned. In 'trust' mode, the existing data object is not read, and the hex
+     * digests returned only include the store algorithm.
+     *
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Optional checksum value to generate in hex digests
+     * @param checksum            Value of checksum supplied
+     * @param checksumAlgorithm   Algorithm of checksum supplied
+     * @param objSize             Expected size of object, or -1
+     * @return ObjectMetadata of the existing data object, or null if the object must be stored
+     * @throws NonMatchingObjSizeException If the existing data object's size does not match
+     * @throws IOException                 If the existing data object does not match its cid
+     * @throws NoSuchAlgorithmException    If an algorithm is not supported
+     * @throws InterruptedException        When waiting for the cid lock is interrupted
+     */
+    protected ObjectMetadata precheckExistingObject(
+        String pid, String additionalAlgorithm, String checksum, String checksumAlgorithm,
+        long objSize) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        if (DEDUP_PRECHECK_MODE == HashStoreDedupPrecheckModes.off || checksum == null
+            || !OBJECT_STORE_ALGORITHM.equals(checksumAlgorithm)) {
+            return null;
+        }
+        String objectCid = checksum.toLowerCase();
+        if (!isStoreAlgorithmHexDigest(objectCid)) {
+            // The object is stored as usual, and the checksum then fails validation
+            logFileHashStore.debug(
+                "Checksum: " + checksum + " is not a " + OBJECT_STORE_ALGORITHM + " hex digest."
+                    + " Skipping the dedup pre-check for pid: " + pid);
+            return null;
+        }
+        Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, objectCid);
+        if (!dataObjectExists(objRealPath)) {
+            return null;
+        }
+
+        synchronizeObjectLockedCids(objectCid);
+        try {
+            // The object may have been deleted while waiting for the lock
+            if (!dataObjectExists(objRealPath)) {
+                return null;
+            }
+            long existingObjSize = getDataObjectSize(objRealPath);
+            if (objSize > 0 && objSize != existingObjSize) {
+                String errMsg = "objSize given is not equal to the size of the existing object"
+                    + " with cid: " + objectCid + ". ObjSize: " + objSize
+                    + ". Existing object size: " + existingObjSize;
+                logFileHashStore.error(errMsg);
+                throw new NonMatchingObjSizeException(errMsg);
+            }
+
+            Map<String, String> hexDigests;
+            if (DEDUP_PRECHECK_MODE == HashStoreDedupPrecheckModes.verify) {
+                try (InputStream objectStream = openDataObject(objRealPath)) {
+                    hexDigests = generateStreamChecksums(
+                        objectStream, objRealPath.getFileName().toString(), additionalAlgorithm,
+                        checksumAlgorithm);
+                }
+                if (!objectCid.equals(hexDigests.get(OBJECT_STORE_ALGORITHM))) {
+                    String errMsg = "Existing data object: " + objRealPath + " does not match its"
+                        + " content identifier. Calculated: "
+                        + hexDigests.get(OBJECT_STORE_ALGORITHM);
+                    logFileHashStore.fatal(errMsg);
+                    throw new IOException(errMsg);
+                }
+            } else {
+                hexDigests = new HashMap<>();
+                hexDigests.put(OBJECT_STORE_ALGORITHM, objectCid);
+            }
+            logFileHashStore.info(
+                "Data object already exists for pid: " + pid + " with cid: " + objectCid
+                    + ". Skipped writing it (dedup pre-check: " + DEDUP_PRECHECK_MODE + ").");
+            return new ObjectMetadata(pid, objectCid, existingObjSize, hexDigests);
+
+        } finally {
+            releaseObjectLockedCids(objectCid);
+        }
+    }
+
+    /**
+     * @param hexDigest Value to check
+     * @return True if the value is a lowercase hex digest of the length of the store algorithm's
+     *     digests, and can therefore be a cid
+     * @throws NoSuchAlgorithmException If the store algorithm is not supported
+     */
+    private boolean isStoreAlgorithmHexDigest(String hexDigest) throws NoSuchAlgorithmException {
+        int hexDigestLength =
+            MessageDigest.getInstance(OBJECT_STORE_ALGORITHM).getDigestLength() * 2;
+        if (hexDigest.length() != hexDigestLength) {
+            return false;
+        }
+        for (int i = 0; i < hexDigest.length(); i++) {
+            char hexChar = hexDigest.charAt(i);
+            if (!(hexChar >= '0' && hexChar <= '9') && !(hexChar >= 'a' && hexChar <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Place a file into a tmp file, unless it has already been hard linked there, and calculate
+     * the hex digests of the tmp file. The file is copied with {@code FileChannel.transferTo}, so
+     * the data does not pass through the heap while it is copied, and is then hashed through the
+     * digest pipeline's pooled chunks, most likely from the page cache.
+     */
+    private Map<String, String> copyToTmpFileAndGenerateChecksums(
+        File tmpFile, Path object, String additionalAlgorithm, String checksumAlgorithm,
+        boolean linked) throws IOException, NoSuchAlgorithmException {
+        if (!linked) {
+            FileHashStoreUtility.transferFile(object, tmpFile.toPath());
+        }
+        return generateTmpFileChecksums(tmpFile, additionalAlgorithm, checksumAlgorithm);
+    }
+
+    /**
+     * Replace an (empty) tmp file with a hard link to the given file
+     *
+     * @param object  File to link to
+     * @param tmpFile tmp file to replace
+     * @return True if the link was created, false if the file cannot be linked (ex. it is on
+     *     another file system), in which case the tmp file is left in place
+     * @throws IOException If the tmp file cannot be replaced
+     */
+    private boolean linkToTmpFile(Path object, File tmpFile) throws IOException {
+        Path tmpPath = tmpFile.toPath();
+        Files.delete(tmpPath);
+        try {
+            Files.createLink(tmpPath, object);
+        } catch (IOException | UnsupportedOperationException le) {
+            logFileHashStore.debug("Unable to hard link: " + object
+                                       + ", it will be copied instead. " + le.getMessage());
+            Files.createFile(tmpPath);
+            return false;
+        }
+        // The link shares its permissions with the consumed file, which must not be changed.
+        // They are set once the consumed file is gone, see setLinkedObjectPermissions.
+        return true;
+    }
+
+    /**
+     * Set the default permissions of a data object that was placed by hard linking a consumed
+     * file, once that file has been removed. The permissions are only set when the data object is
+     * the last link to its file, so that the permissions of a file that still exists elsewhere
+     * (ex. another consumed file that is being stored at the same time) are never changed. Packed
+     * or encoded data objects are not links, and already have the default permissions.
+     *
+     * @param cid Content identifier of the data object
+     */
+    private void setLinkedObjectPermissions(String cid) {
+        Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, cid);
+        try {
+            if (!Files.isRegularFile(objRealPath)
+                || (Integer) Files.getAttribute(objRealPath, "unix:nlink") != 1) {
+                return;
+            }
+            FileHashStoreUtility.setDefaultFilePermissions(objRealPath);
+
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException pe) {
+            logFileHashStore.warn(
+                "Unable to set permissions of linked object: " + objRealPath + ". "
+                    + pe.getMessage());
+        }
+    }
+
+    /**
+     * Determine whether a file can be placed at its permanent address as is (ex. hard linked)
+     * instead of being stored through {@code storeObject}. This is not the case when the store
+     * compresses objects and the file could be mistaken for a compressed object.
+     *
+     * @param object File to place
+     * @return True if the file can be placed as is
+     * @throws IOException If the file cannot be read
+     */
+    protected boolean canStoreAsIs(Path object) throws IOException {
+        return !storedFileCodec.requiresHeader(object);
+    }
+
+    /**
+     * Validates a tmp file that holds a data object and moves it to its permanent address, unless
+     * the data object already exists, in which case the tmp file is deleted.
+     */
+    private ObjectMetadata moveTmpObject(
+        File tmpFile, String pid, Map<String, String> hexDigests, boolean compareChecksum,
+        String checksum, String checksumAlgorithm, long objSize)
+        throws NoSuchAlgorithmException, IOException, InterruptedException {
+        return moveTmpObject(tmpFile, pid, hexDigests, compareChecksum, checksum,
+                             checksumAlgorithm, objSize, false);
+    }
+
+    /**
+     * Validates a tmp file that holds a data object and moves it to its permanent address, see
+     * {@code moveTmpObject} above
+     *
+     * @param parentDirectoriesExist True if the parent directories of the permanent address have
+     *                               already been created (and committed) by the caller
+     */
+    private ObjectMetadata moveTmpObject(
+        File tmpFile, String pid, Map<String, String> hexDigests, boolean compareChecksum,
+        String checksum, String checksumAlgorithm, long objSize, boolean parentDirectoriesExist)
+        throws NoSuchAlgorithmException, IOException, InterruptedException {
         // Validate object if checksum and checksum algorithm is passed
         validateTmpObject(
             compareChecksum, checksum, checksumAlgorithm, tmpFile, hexDigests, objSize);
 
         // Gather the elements to form the permanent address
         String objectCid = hexDigests.get(OBJECT_STORE_ALGORITHM);
-        String objRelativePath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                           objectCid);
-        Path objRealPath = OBJECT_STORE_DIRECTORY.resolve(objRelativePath);
+        Path objRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, objectCid);
 
         try {
             synchronizeObjectLockedCids(objectCid);
             // Confirm that the object does not yet exist, delete tmpFile if so
-            if (!Files.exists(objRealPath)) {
+            if (!dataObjectExists(objRealPath)) {
                 logFileHashStore.info("Storing tmpFile: " + tmpFile);
-                // Move object
+                if (packsDataObject(tmpFile)) {
+                    segmentStore.append(objRealPath, tmpFile);
+                    Files.delete(tmpFile.toPath());
+                    TmpFileAllocator.release(tmpFile.toPath());
+                    return new ObjectMetadata(
+                        pid, objectCid, segmentStore.size(objRealPath), hexDigests);
+                }
+                // Move object, compressed or chunked if the store compresses or chunks objects
                 File permFile = objRealPath.toFile();
-                move(tmpFile, permFile, "object");
+                File encodedFile = storedFileCodec.encodeObject(tmpFile, objectCid);
+                try {
+                    move(encodedFile, permFile, "object", parentDirectoriesExist);
+                } catch (IOException ioe) {
+                    storedFileCodec.release(encodedFile.toPath(), objectCid);
+                    Files.deleteIfExists(encodedFile.toPath());
+                    throw ioe;
+                }
+                recordHexDigests(objectCid, objRealPath, hexDigests);
                 logFileHashStore.debug("Successfully moved data object: " + objRealPath);
             } else {
+                // The hex digests may include an additional algorithm
+                recordHexDigests(objectCid, objRealPath, hexDigests);
                 Files.delete(tmpFile.toPath());
                 String errMsg =
                     "File already exists for pid: " + pid + ". Object address: " + objRealPath
@@ -1211,7 +2954,94 @@ public class FileHashStore implements HashStore {
             releaseObjectLockedCids(objectCid);
         }
 
-        return new ObjectMetadata(pid, objectCid, Files.size(objRealPath), hexDigests);
+        return new ObjectMetadata(pid, objectCid, getDataObjectSize(objRealPath), hexDigests);
+    }
+
+    /**
+     * @return True if a data object exists at the given permanent address, either as a file or
+     *     packed into a segment
+     */
+    private boolean dataObjectExists(Path objRealPath) {
+        return (segmentStore != null && segmentStore.contains(objRealPath))
+            || Files.exists(objRealPath);
+    }
+
+    /**
+     * Open the uncompressed content of the data object at the given permanent address
+     */
+    private InputStream openDataObject(Path objRealPath) throws IOException {
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            return segmentStore.open(objRealPath);
+        }
+        return storedFileCodec.open(objRealPath);
+    }
+
+    /**
+     * Open a range of the uncompressed content of the data object at the given permanent address
+     */
+    private InputStream openDataObject(Path objRealPath, long offset, long length)
+        throws IOException {
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            return segmentStore.open(objRealPath, offset, length);
+        }
+        return storedFileCodec.open(objRealPath, offset, length);
+    }
+
+    /**
+     * Get the uncompressed size of the data object at the given permanent address
+     */
+    private long getDataObjectSize(Path objRealPath) throws IOException {
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            return segmentStore.size(objRealPath);
+        }
+        return storedFileCodec.size(objRealPath);
+    }
+
+    /**
+     * @return True if the data object held by the given tmp file is packed into a segment
+     */
+    private boolean packsDataObject(File tmpFile) {
+        return segmentStore != null && tmpFile.length() <= SegmentStore.PACKED_OBJECT_THRESHOLD;
+    }
+
+    /**
+     * Record hex digests in the digest sidecar of a cid, unless its data object is packed into a
+     * segment (as hashing it again is cheaper than reading a sidecar). Sidecars only spare
+     * hashing a data object again, so failing to record them does not fail the calling method.
+     * The caller must hold the cid lock, see {@code recordHexDigestsLocked} otherwise.
+     */
+    private void recordHexDigests(String cid, Path objRealPath, Map<String, String> hexDigests) {
+        if (segmentStore != null && segmentStore.contains(objRealPath)) {
+            return;
+        }
+        try {
+            digestSidecarStore.record(cid, hexDigests);
+        } catch (IOException ioe) {
+            logFileHashStore.warn(
+                "Unable to record hex digests for cid: " + cid + ". " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Record hex digests in the digest sidecar of a cid while holding the cid lock, so that
+     * digests recorded at the same time by another writer (ex. for another algorithm) are not
+     * lost. Recording is skipped if interrupted while waiting for the lock.
+     */
+    private void recordHexDigestsLocked(
+        String cid, Path objRealPath, Map<String, String> hexDigests) {
+        try {
+            synchronizeObjectLockedCids(cid);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logFileHashStore.warn(
+                "Interrupted while waiting to record hex digests for cid: " + cid);
+            return;
+        }
+        try {
+            recordHexDigests(cid, objRealPath, hexDigests);
+        } finally {
+            releaseObjectLockedCids(cid);
+        }
     }
 
     /**
@@ -1322,9 +3152,18 @@ public class FileHashStore implements HashStore {
         return true;
     }
 
+    /**
+     * Get the hash algorithms that are calculated for every object stored in this HashStore
+     *
+     * @return Unmodifiable list of the store's default algorithms
+     */
+    protected List<String> getDefaultAlgoList() {
+        return DEFAULT_ALGO_LIST;
+    }
+
     /**
      * Determines if an algorithm should be generated by checking whether the algorithm supplied is
-     * included in the DefaultHashAlgorithms
+     * missing from the store's default algorithm list
      *
      * @param algorithm Algorithm to check
      * @return Boolean
@@ -1332,14 +3171,7 @@ public class FileHashStore implements HashStore {
     protected boolean shouldCalculateAlgorithm(String algorithm) {
         FileHashStoreUtility.ensureNotNull(algorithm, "algorithm");
         FileHashStoreUtility.checkForNotEmptyAndValidString(algorithm, "algorithm");
-        boolean shouldCalculateAlgorithm = true;
-        for (DefaultHashAlgorithms defAlgo : DefaultHashAlgorithms.values()) {
-            if (algorithm.equals(defAlgo.getName())) {
-                shouldCalculateAlgorithm = false;
-                break;
-            }
-        }
-        return shouldCalculateAlgorithm;
+        return !DEFAULT_ALGO_LIST.contains(algorithm);
     }
 
     /**
@@ -1382,8 +3214,10 @@ public class FileHashStore implements HashStore {
     /**
      * Write the input stream into a given file (tmpFile) and return a HashMap consisting of
      * algorithms and their respective hex digests. If an additional algorithm is supplied and
-     * supported, it and its checksum value will be included in the hex digests map. Default
-     * algorithms: MD5, SHA-1, SHA-256, SHA-384, SHA-512
+     * supported, it and its checksum value will be included in the hex digests map. The store's
+     * default algorithm list (MD5, SHA-1, SHA-256, SHA-384, SHA-512 unless configured otherwise)
+     * is always included. Hex digests are calculated by a
+     * {@code DigestPipeline}, in parallel with each other and with writing the tmpFile.
      *
      * @param tmpFile             file to write input stream data into
      * @param dataStream          input stream of data to store
@@ -1395,10 +3229,144 @@ public class FileHashStore implements HashStore {
      * @throws IOException              Issue with writing file from InputStream
      * @throws SecurityException        Unable to write to tmpFile
      * @throws FileNotFoundException    tmpFile cannot be found
+     * @throws InterruptedIOException   Interrupted while calculating hex digests
      */
     protected Map<String, String> writeToTmpFileAndGenerateChecksums(
         File tmpFile, InputStream dataStream, String additionalAlgorithm, String checksumAlgorithm)
         throws NoSuchAlgorithmException, IOException, FileNotFoundException, SecurityException {
+        return writeToTmpFileAndGenerateChecksums(
+            tmpFile, dataStream, additionalAlgorithm, checksumAlgorithm, -1);
+    }
+
+    /**
+     * Write the input stream into a given file (tmpFile) and return its hex digests, see
+     * {@code writeToTmpFileAndGenerateChecksums} without an expected size. When the size is known,
+     * the object is written through a {@code FileChannel} in large writes aligned to their own
+     * size (up to {@code MAX_TMP_FILE_WRITE_SIZE}), gathered from the chunks of the digest
+     * pipeline without being copied, so that a file system with delayed allocation
+     * (ex. XFS, ext4) can place a large object in few extents even while many objects are written
+     * at once.
+     *
+     * @param tmpFile             file to write input stream data into
+     * @param dataStream          input stream of data to store
+     * @param additionalAlgorithm additional algorithm to include in hex digest map
+     * @param checksumAlgorithm   checksum algorithm to calculate hex digest for to verifying
+     *                            object
+     * @param objSize             expected size of the object, or -1 if unknown
+     * @return A map containing the hex digests of the default algorithms
+     * @throws NoSuchAlgorithmException Unable to generate new instance of supplied algorithm
+     * @throws IOException              Issue with writing file from InputStream
+     * @throws InterruptedIOException   Interrupted while calculating hex digests
+     */
+    protected Map<String, String> writeToTmpFileAndGenerateChecksums(
+        File tmpFile, InputStream dataStream, String additionalAlgorithm, String checksumAlgorithm,
+        long objSize) throws NoSuchAlgorithmException, IOException {
+        List<String> algorithms = getAlgorithmsToCalculate(additionalAlgorithm, checksumAlgorithm);
+
+        // Write the object while its hex digests are calculated in parallel
+        Map<String, String> hexDigests;
+        try (dataStream; DigestPipeline digestPipeline = new DigestPipeline(algorithms);
+             FileChannel tmpFileChannel = FileChannel.open(
+                 tmpFile.toPath(), StandardOpenOption.WRITE)) {
+            digestPipeline.transfer(dataStream, tmpFileChannel, getTmpFileWriteSize(objSize));
+            hexDigests = digestPipeline.finish();
+
+        } catch (IOException ioe) {
+            String errMsg = "Unexpected Exception ~ " + ioe.getMessage();
+            logFileHashStore.error(errMsg);
+            throw ioe;
+
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while writing to tmpFile: " + tmpFile.getName();
+            logFileHashStore.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+        }
+        logFileHashStore.debug(
+            "Object has been written to tmpFile: " + tmpFile.getName() + ". To be moved to: "
+                + hexDigests.get(OBJECT_STORE_ALGORITHM));
+
+        return hexDigests;
+    }
+
+    /**
+     * Get the size of the writes issued to a tmp file: the size of the object rounded up to a
+     * whole number of digest chunks when it is known and at most {@code MAX_TMP_FILE_WRITE_SIZE},
+     * and a single digest chunk otherwise
+     *
+     * @param objSize Expected size of the object, or -1 if unknown
+     * @return Amount of bytes to gather into each write to the tmp file
+     */
+    protected static int getTmpFileWriteSize(long objSize) {
+        if (objSize <= DigestPipeline.CHUNK_SIZE) {
+            return DigestPipeline.CHUNK_SIZE;
+        }
+        long chunks = (objSize + DigestPipeline.CHUNK_SIZE - 1) / DigestPipeline.CHUNK_SIZE;
+        return (int) Math.min(chunks * DigestPipeline.CHUNK_SIZE, MAX_TMP_FILE_WRITE_SIZE);
+    }
+
+    /**
+     * Calculate the hex digests of a file that has already been placed in the tmp directory. The
+     * same algorithms as {@code writeToTmpFileAndGenerateChecksums} are calculated.
+     *
+     * @param tmpFile             file to calculate the hex digests of
+     * @param additionalAlgorithm additional algorithm to include in hex digest map
+     * @param checksumAlgorithm   checksum algorithm to calculate hex digest for to verifying
+     *                            object
+     * @return A map containing the hex digests of the default algorithms
+     * @throws NoSuchAlgorithmException Unable to generate new instance of supplied algorithm
+     * @throws IOException              Issue with reading the tmpFile
+     * @throws InterruptedIOException   Interrupted while calculating hex digests
+     */
+    protected Map<String, String> generateTmpFileChecksums(
+        File tmpFile, String additionalAlgorithm, String checksumAlgorithm)
+        throws NoSuchAlgorithmException, IOException {
+        try (InputStream tmpFileStream = Files.newInputStream(tmpFile.toPath())) {
+            return generateStreamChecksums(
+                tmpFileStream, tmpFile.getName(), additionalAlgorithm, checksumAlgorithm);
+        }
+    }
+
+    /**
+     * Calculate the hex digests of a stream of data, see {@code generateTmpFileChecksums}
+     *
+     * @param dataStream          stream of data to calculate the hex digests of, which is not
+     *                            closed
+     * @param dataName            name of the data to include in log messages
+     * @param additionalAlgorithm additional algorithm to include in hex digest map
+     * @param checksumAlgorithm   checksum algorithm to calculate hex digest for to verifying
+     *                            object
+     * @return A map containing the hex digests of the default algorithms
+     */
+    private Map<String, String> generateStreamChecksums(
+        InputStream dataStream, String dataName, String additionalAlgorithm,
+        String checksumAlgorithm) throws NoSuchAlgorithmException, IOException {
+        List<String> algorithms = getAlgorithmsToCalculate(additionalAlgorithm, checksumAlgorithm);
+
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms)) {
+            digestPipeline.transfer(dataStream, OutputStream.nullOutputStream());
+            hexDigests = digestPipeline.finish();
+
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while reading: " + dataName;
+            logFileHashStore.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+        }
+        logFileHashStore.debug(
+            "Checksums calculated for: " + dataName + ". Object address: "
+                + hexDigests.get(OBJECT_STORE_ALGORITHM));
+
+        return hexDigests;
+    }
+
+    /**
+     * Get the algorithms to calculate when storing an object: the store's default algorithm list,
+     * and the additional and checksum algorithms when they are not already included
+     */
+    protected List<String> getAlgorithmsToCalculate(
+        String additionalAlgorithm, String checksumAlgorithm) throws NoSuchAlgorithmException {
         // Determine whether to calculate additional or checksum algorithms
         boolean generateAddAlgo = false;
         if (additionalAlgorithm != null) {
@@ -1415,81 +3383,19 @@ public class FileHashStore implements HashStore {
             generateCsAlgo = shouldCalculateAlgorithm(checksumAlgorithm);
         }
 
-        FileOutputStream os = new FileOutputStream(tmpFile);
-        MessageDigest md5 = MessageDigest.getInstance(DefaultHashAlgorithms.MD5.getName());
-        MessageDigest sha1 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_1.getName());
-        MessageDigest sha256 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_256.getName());
-        MessageDigest sha384 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_384.getName());
-        MessageDigest sha512 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_512.getName());
-        MessageDigest additionalAlgo = null;
-        MessageDigest checksumAlgo = null;
+        List<String> algorithms = new ArrayList<>(DEFAULT_ALGO_LIST);
         if (generateAddAlgo) {
             logFileHashStore.debug(
                 "Adding additional algorithm to hex digest map, algorithm: " + additionalAlgorithm);
-            additionalAlgo = MessageDigest.getInstance(additionalAlgorithm);
+            algorithms.add(additionalAlgorithm);
         }
         if (generateCsAlgo) {
             logFileHashStore.debug(
                 "Adding checksum algorithm to hex digest map, algorithm: " + checksumAlgorithm);
-            checksumAlgo = MessageDigest.getInstance(checksumAlgorithm);
+            algorithms.add(checksumAlgorithm);
         }
 
-        // Calculate hex digests
-        try (dataStream) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = dataStream.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-                md5.update(buffer, 0, bytesRead);
-                sha1.update(buffer, 0, bytesRead);
-                sha256.update(buffer, 0, bytesRead);
-                sha384.update(buffer, 0, bytesRead);
-                sha512.update(buffer, 0, bytesRead);
-                if (generateAddAlgo) {
-                    additionalAlgo.update(buffer, 0, bytesRead);
-                }
-                if (generateCsAlgo) {
-                    checksumAlgo.update(buffer, 0, bytesRead);
-                }
-            }
-
-        } catch (IOException ioe) {
-            String errMsg = "Unexpected Exception ~ " + ioe.getMessage();
-            logFileHashStore.error(errMsg);
-            throw ioe;
-
-        } finally {
-            os.flush();
-            os.close();
-        }
-
-        // Create map of hash algorithms and corresponding hex digests
-        Map<String, String> hexDigests = new HashMap<>();
-        String md5Digest = DatatypeConverter.printHexBinary(md5.digest()).toLowerCase();
-        String sha1Digest = DatatypeConverter.printHexBinary(sha1.digest()).toLowerCase();
-        String sha256Digest = DatatypeConverter.printHexBinary(sha256.digest()).toLowerCase();
-        String sha384Digest = DatatypeConverter.printHexBinary(sha384.digest()).toLowerCase();
-        String sha512Digest = DatatypeConverter.printHexBinary(sha512.digest()).toLowerCase();
-        hexDigests.put(DefaultHashAlgorithms.MD5.getName(), md5Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_1.getName(), sha1Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_256.getName(), sha256Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_384.getName(), sha384Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_512.getName(), sha512Digest);
-        if (generateAddAlgo) {
-            String extraAlgoDigest =
-                DatatypeConverter.printHexBinary(additionalAlgo.digest()).toLowerCase();
-            hexDigests.put(additionalAlgorithm, extraAlgoDigest);
-        }
-        if (generateCsAlgo) {
-            String extraChecksumDigest =
-                DatatypeConverter.printHexBinary(checksumAlgo.digest()).toLowerCase();
-            hexDigests.put(checksumAlgorithm, extraChecksumDigest);
-        }
-        logFileHashStore.debug(
-            "Object has been written to tmpFile: " + tmpFile.getName() + ". To be moved to: "
-                + sha256Digest);
-
-        return hexDigests;
+        return algorithms;
     }
 
     /**
@@ -1506,7 +3412,24 @@ public class FileHashStore implements HashStore {
      * @throws AtomicMoveNotSupportedException When ATOMIC_MOVE is not supported (usually
      *                                         encountered when moving across file systems)
      */
-    protected void move(File source, File target, String entity)
+    protected void move(File source, File target, String entity)
+        throws IOException, SecurityException, AtomicMoveNotSupportedException,
+        FileAlreadyExistsException {
+        move(source, target, entity, false);
+    }
+
+    /**
+     * Moves an object from one location to another, see {@code move} above
+     *
+     * @param source                 File to move
+     * @param target                 Where to move the file
+     * @param entity                 Type of object to move
+     * @param parentDirectoriesExist True if the parent directories of the target have already
+     *                               been created (and committed) by the caller, so they are not
+     *                               checked for again
+     * @throws IOException Unable to create parent directory or to move the file
+     */
+    protected void move(File source, File target, String entity, boolean parentDirectoriesExist)
         throws IOException, SecurityException, AtomicMoveNotSupportedException,
         FileAlreadyExistsException {
         logFileHashStore.debug(
@@ -1520,14 +3443,24 @@ public class FileHashStore implements HashStore {
             return;
         }
 
-        // Create parent directories if they don't exist
-        FileHashStoreUtility.createParentDirectories(target.toPath());
-
-        // Move file
         Path sourceFilePath = source.toPath();
         Path targetFilePath = target.toPath();
+        // The new entry of the target, and of every directory created for it, must be flushed
+        Collection<Path> directoriesToCommit;
+        if (parentDirectoriesExist) {
+            directoriesToCommit = durabilityCommitter.isEnabled() ? List.of(
+                targetFilePath.getParent()) : List.of();
+        } else {
+            directoriesToCommit = createParentDirectories(targetFilePath);
+        }
+
+        // Move file
         try {
+            // The content must be on disk before it can be found at the target
+            durabilityCommitter.commit(List.of(sourceFilePath));
             Files.move(sourceFilePath, targetFilePath, StandardCopyOption.ATOMIC_MOVE);
+            TmpFileAllocator.release(sourceFilePath);
+            durabilityCommitter.commit(directoriesToCommit);
             logFileHashStore.debug(
                 "File moved from: " + sourceFilePath + ", to: " + targetFilePath);
 
@@ -1550,6 +3483,29 @@ public class FileHashStore implements HashStore {
         }
     }
 
+    /**
+     * Create the parent directories of a target if they don't exist
+     *
+     * @param targetFilePath Path of the target
+     * @return Directories whose entries must be committed for the target to be durable: the
+     *     parent of the target, and the parent of every directory created. Empty when the store
+     *     does not commit directories.
+     * @throws IOException Unable to create a parent directory
+     */
+    private Collection<Path> createParentDirectories(Path targetFilePath) throws IOException {
+        Collection<Path> directoriesToCommit = new LinkedHashSet<>();
+        if (durabilityCommitter.isEnabled()) {
+            Path directory = targetFilePath.getParent();
+            directoriesToCommit.add(directory);
+            while (directory.getParent() != null && !Files.exists(directory)) {
+                directory = directory.getParent();
+                directoriesToCommit.add(directory);
+            }
+        }
+        FileHashStoreUtility.createParentDirectories(targetFilePath);
+        return directoriesToCommit;
+    }
+
     /**
      * Attempt to delete an object based on the given content identifier (cid). If the object has
      * pids that references it and/or a cid refs file exists, the object will not be deleted.
@@ -1562,23 +3518,30 @@ public class FileHashStore implements HashStore {
     protected void deleteObjectByCid(String cid)
         throws IOException, NoSuchAlgorithmException, InterruptedException {
         logFileHashStore.debug("Called to delete data object with cid: " + cid);
-        // Get expected path of the cid refs file & permanent address of the actual cid
-        Path absCidRefsPath = getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
-        String objRelativePath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH, cid);
-        Path expectedRealPath = OBJECT_STORE_DIRECTORY.resolve(objRelativePath);
+        // Get the permanent address of the actual cid
+        Path expectedRealPath = pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, cid);
 
         try {
             synchronizeObjectLockedCids(cid);
-            if (Files.exists(absCidRefsPath)) {
+            if (refsBackend.hasCid(cid)) {
                 // The cid refs file exists, so the cid object cannot be deleted.
                 String warnMsg = "cid refs file still contains references, skipping deletion.";
                 logFileHashStore.warn(warnMsg);
             } else {
                 // If file exists, delete it.
-                if (Files.exists(expectedRealPath)) {
-                    Files.delete(expectedRealPath);
+                if (segmentStore != null && segmentStore.contains(expectedRealPath)) {
+                    segmentStore.delete(expectedRealPath);
+                } else if (Files.exists(expectedRealPath)) {
+                    // Renamed first, so the data object cannot be read without its chunks
+                    Path deletePath = FileHashStoreUtility.renamePathForDeletion(expectedRealPath);
+                    try {
+                        commitDeletions(List.of(deletePath));
+                        storedFileCodec.release(deletePath, cid);
+                    } finally {
+                        Files.delete(deletePath);
+                    }
                 }
+                digestSidecarStore.delete(cid);
                 String debugMsg = "Object deleted at" + expectedRealPath;
                 logFileHashStore.debug(debugMsg);
             }
@@ -1605,64 +3568,24 @@ public class FileHashStore implements HashStore {
             synchronizeObjectLockedCids(cid);
             synchronizeReferenceLockedPids(pid);
 
-            Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-            Path absCidRefsPath = getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
+            boolean cidRefsExist = refsBackend.hasCid(cid);
 
             try {
-                if (Files.exists(absPidRefsPath) && Files.exists(absCidRefsPath)) {
-                    // If both reference files exist, we confirm that reference files are where
-                    // they are expected to be and throw an exception to inform the client that
-                    // everything is in place - and include other issues for context
-                    String errMsg =
-                        "Object with cid: " + cid + " already exists and is tagged with pid: "
-                            + pid;
-                    try {
-                        verifyHashStoreRefsFiles(pid, cid, absPidRefsPath, absCidRefsPath);
-                        logFileHashStore.error(errMsg);
-                        throw new HashStoreRefsAlreadyExistException(errMsg);
-
-                    } catch (Exception e) {
-                        String revMsg = errMsg + " . " + e.getMessage();
-                        logFileHashStore.error(revMsg);
-                        throw new HashStoreRefsAlreadyExistException(revMsg);
-                    }
-                } else if (Files.exists(absPidRefsPath) && !Files.exists(absCidRefsPath)) {
-                    // If pid refs exists, the pid has already been claimed and cannot be tagged
-                    // We throw an exception immediately
-                    String errMsg = "Pid refs file already exists for pid: " + pid
-                        + ", and the associated cid refs file contains the "
-                        + "pid. A pid can only reference one cid.";
-                    logFileHashStore.error(errMsg);
-                    throw new PidRefsFileExistsException(errMsg);
-
-                } else if (!Files.exists(absPidRefsPath) && Files.exists(absCidRefsPath)) {
-                    // Get the pid refs file and verify tagging process
-                    File pidRefsTmpFile = writeRefsFile(cid, HashStoreIdTypes.pid.name());
-                    File absPathPidRefsFile = absPidRefsPath.toFile();
-                    move(pidRefsTmpFile, absPathPidRefsFile, "refs");
-                    // Only update cid refs file if pid is not in the file
-                    if (!isStringInRefsFile(pid, absCidRefsPath)) {
-                        updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.add);
-                    }
-                    verifyHashStoreRefsFiles(pid, cid, absPidRefsPath, absCidRefsPath);
+                ensurePidNotTagged(pid, cid, cidRefsExist);
+
+                // Create the pid refs, and create or update the cid refs
+                refsBackend.tag(pid, cid);
+                // Verify tagging process, this throws an exception if there's an issue
+                refsBackend.verify(pid, cid);
+                if (cidRefsExist) {
                     logFileHashStore.info("Object with cid: " + cid
                                               + " has been updated and tagged successfully with pid: "
                                               + pid);
-                    return;
+                } else {
+                    logFileHashStore.info(
+                        "Object with cid: " + cid + " has been tagged successfully with pid: "
+                            + pid);
                 }
-
-                // Get pid and cid refs files
-                File pidRefsTmpFile = writeRefsFile(cid, HashStoreIdTypes.pid.name());
-                File cidRefsTmpFile = writeRefsFile(pid, HashStoreIdTypes.cid.name());
-                // Move refs files to permanent location
-                File absPathPidRefsFile = absPidRefsPath.toFile();
-                File absPathCidRefsFile = absCidRefsPath.toFile();
-                move(pidRefsTmpFile, absPathPidRefsFile, "refs");
-                move(cidRefsTmpFile, absPathCidRefsFile, "refs");
-                // Verify tagging process, this throws an exception if there's an issue
-                verifyHashStoreRefsFiles(pid, cid, absPidRefsPath, absCidRefsPath);
-                logFileHashStore.info(
-                    "Object with cid: " + cid + " has been tagged successfully with pid: " + pid);
             } catch (HashStoreRefsAlreadyExistException | PidRefsFileExistsException hse) {
                 // These exceptions are handled by this method and should be re-thrown
                 throw hse;
@@ -1673,11 +3596,54 @@ public class FileHashStore implements HashStore {
                 throw e;
             }
         } finally {
+            pidCidCache.invalidate(pid);
             releaseObjectLockedCids(cid);
             releaseReferenceLockedPids(pid);
         }
     }
 
+    /**
+     * Confirm that a pid has not been tagged yet, so that it can be tagged with a cid. The pid and
+     * cid must be locked.
+     *
+     * @param pid          Persistent or authority-based identifier
+     * @param cid          Content identifier to tag the pid with
+     * @param cidRefsExist True if the cid has cid refs
+     * @throws HashStoreRefsAlreadyExistException If the pid has pid refs and the cid has cid refs
+     * @throws PidRefsFileExistsException         If the pid has pid refs, and the cid does not
+     * @throws NoSuchAlgorithmException           If the location of the refs cannot be calculated
+     * @throws IOException                        If the pid refs cannot be read
+     */
+    private void ensurePidNotTagged(String pid, String cid, boolean cidRefsExist)
+        throws NoSuchAlgorithmException, IOException {
+        String existingCid = refsBackend.getCid(pid);
+        if (existingCid != null && cidRefsExist) {
+            // If both reference files exist, we confirm that reference files are where
+            // they are expected to be and throw an exception to inform the client that
+            // everything is in place - and include other issues for context
+            String errMsg =
+                "Object with cid: " + cid + " already exists and is tagged with pid: " + pid;
+            try {
+                refsBackend.verify(pid, cid);
+                logFileHashStore.error(errMsg);
+                throw new HashStoreRefsAlreadyExistException(errMsg);
+
+            } catch (Exception e) {
+                String revMsg = errMsg + " . " + e.getMessage();
+                logFileHashStore.error(revMsg);
+                throw new HashStoreRefsAlreadyExistException(revMsg);
+            }
+        } else if (existingCid != null) {
+            // If pid refs exists, the pid has already been claimed and cannot be tagged
+            // We throw an exception immediately
+            String errMsg = "Pid refs file already exists for pid: " + pid
+                + ", and the associated cid refs file contains the "
+                + "pid. A pid can only reference one cid.";
+            logFileHashStore.error(errMsg);
+            throw new PidRefsFileExistsException(errMsg);
+        }
+    }
+
     /**
      * Untags a data object in HashStore by deleting the 'pid reference file' and removing the 'pid'
      * from the 'cid reference file'. This method will never delete a data object. {@code
@@ -1700,101 +3666,92 @@ public class FileHashStore implements HashStore {
         FileHashStoreUtility.ensureNotNull(cid, "cid");
         FileHashStoreUtility.checkForNotEmptyAndValidString(cid, "cid");
 
-        Collection<Path> deleteList = new ArrayList<>();
-
         // To untag a pid, the pid must be found and currently locked
         // The pid will not be released until this process is over
-        if (!referenceLockedPids.contains(pid)) {
+        if (!referenceLockedPids.isLocked(pid)) {
             String errMsg = "Cannot untag pid that is not currently locked";
             logFileHashStore.error(errMsg);
             throw new IdentifierNotLockedException(errMsg);
         }
 
-        // Before we begin the untagging process, we look for the `cid` by calling
-        // `findObject` which will throw custom exceptions if there is an issue with
-        // the reference files, which help us determine the path to proceed with.
         try {
-            ObjectInfo objInfo = findObject(pid);
-            String cidToCheck = objInfo.cid();
-            validateAndCheckCidLock(pid, cid, cidToCheck);
-
-            Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-
-            // Begin deletion process
-            markPidRefsFileForDeletion(pid, deleteList, absPidRefsPath);
-            removePidAndHandleCidDeletion(pid, cid, deleteList);
-            deleteMarkedFiles(pid, cid, deleteList);
-
-            logFileHashStore.info("Untagged pid: " + pid + " with cid: " + cid);
-
-        } catch (OrphanPidRefsFileException oprfe) {
-            // `findObject` throws this exception when the cid refs file doesn't exist,
-            // so we only need to delete the pid refs file (pid is already locked)
-            Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-            String cidToCheck = new String(Files.readAllBytes(absPidRefsPath));
-            validateAndCheckCidLock(pid, cid, cidToCheck);
-
-            // Begin deletion process
-            markPidRefsFileForDeletion(pid, deleteList, absPidRefsPath);
-            deleteMarkedFiles(pid, cid, deleteList);
-
-            String warnMsg = "Cid refs file does not exist for pid: " + pid
-                + ". Deleted orphan pid refs file.";
-            logFileHashStore.warn(warnMsg);
-
-        } catch (OrphanRefsFilesException orfe) {
-            // `findObject` throws this exception when:
-            // - the pid and cid refs file exists,
-            // - the pid is found in the cid refs file
-            // - but the actual object being referenced by the pid does not exist
-            Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-            String cidToCheck = new String(Files.readAllBytes(absPidRefsPath));
-            validateAndCheckCidLock(pid, cid, cidToCheck);
-
-            // Begin deletion process
-            markPidRefsFileForDeletion(pid, deleteList, absPidRefsPath);
-            removePidAndHandleCidDeletion(pid, cid, deleteList);
-            deleteMarkedFiles(pid, cid, deleteList);
-
-            String warnMsg = "Object with cid: " + cidToCheck
-                + " does not exist, but pid and cid reference file found for pid: " + pid
-                + ". Deleted pid and cid ref files.";
-            logFileHashStore.warn(warnMsg);
-
-        } catch (PidNotFoundInCidRefsFileException pnficrfe) {
-            // `findObject` throws this exception when both the pid and cid refs file exists
-            // but the pid is not found in the cid refs file (nothing to change here)
-            Path absPidRefsPath = getHashStoreRefsPath(pid, HashStoreIdTypes.pid);
-            String cidToCheck = new String(Files.readAllBytes(absPidRefsPath));
-            validateAndCheckCidLock(pid, cid, cidToCheck);
-
-            // Begin deletion process
-            markPidRefsFileForDeletion(pid, deleteList, absPidRefsPath);
-            deleteMarkedFiles(pid, cid, deleteList);
-
-            String warnMsg = "Pid not found in expected cid refs file for pid: " + pid
-                + ". Deleted orphan pid refs file.";
-            logFileHashStore.warn(warnMsg);
-
-        } catch (PidRefsFileNotFoundException prfnfe) {
-            // `findObject` throws this exception if the pid refs file is not found
-            // Check to see if pid is in the `cid refs file` and attempt to remove it
-
-            // Confirm that we are working on a cid that is locked
-            // If not, this means that this call is not thread safe.
-            // This `cid` will be released by the calling method.
-            if (!objectLockedCids.contains(cid)) {
-                String errMsg = "Cannot untag cid that is not currently locked";
-                logFileHashStore.error(errMsg);
-                throw new IdentifierNotLockedException(errMsg);
-            }
+            // Before we begin the untagging process, we look for the `cid` by calling
+            // `findObject` which will throw custom exceptions if there is an issue with
+            // the reference files, which help us determine the path to proceed with.
+            try {
+                ObjectInfo objInfo = findObject(pid);
+                String cidToCheck = objInfo.cid();
+                validateAndCheckCidLock(pid, cid, cidToCheck);
 
-            removePidAndHandleCidDeletion(pid, cid, deleteList);
-            deleteMarkedFiles(pid, cid, deleteList);
+                // Begin deletion process
+                untagAndHandleCidDeletion(pid, cid);
 
-            String errMsg =
-                "Pid refs file not found, removed pid from cid refs file for cid: " + cid;
-            logFileHashStore.warn(errMsg);
+                logFileHashStore.info("Untagged pid: " + pid + " with cid: " + cid);
+
+            } catch (OrphanPidRefsFileException oprfe) {
+                // `findObject` throws this exception when the cid refs file doesn't exist,
+                // so we only need to delete the pid refs file (pid is already locked)
+                String cidToCheck = refsBackend.getCid(pid);
+                validateAndCheckCidLock(pid, cid, cidToCheck);
+
+                // Begin deletion process
+                deletePidRefs(pid);
+
+                String warnMsg = "Cid refs file does not exist for pid: " + pid
+                    + ". Deleted orphan pid refs file.";
+                logFileHashStore.warn(warnMsg);
+
+            } catch (OrphanRefsFilesException orfe) {
+                // `findObject` throws this exception when:
+                // - the pid and cid refs file exists,
+                // - the pid is found in the cid refs file
+                // - but the actual object being referenced by the pid does not exist
+                String cidToCheck = refsBackend.getCid(pid);
+                validateAndCheckCidLock(pid, cid, cidToCheck);
+
+                // Begin deletion process
+                untagAndHandleCidDeletion(pid, cid);
+
+                String warnMsg = "Object with cid: " + cidToCheck
+                    + " does not exist, but pid and cid reference file found for pid: " + pid
+                    + ". Deleted pid and cid ref files.";
+                logFileHashStore.warn(warnMsg);
+
+            } catch (PidNotFoundInCidRefsFileException pnficrfe) {
+                // `findObject` throws this exception when both the pid and cid refs file exists
+                // but the pid is not found in the cid refs file (nothing to change here)
+                String cidToCheck = refsBackend.getCid(pid);
+                validateAndCheckCidLock(pid, cid, cidToCheck);
+
+                // Begin deletion process
+                deletePidRefs(pid);
+
+                String warnMsg = "Pid not found in expected cid refs file for pid: " + pid
+                    + ". Deleted orphan pid refs file.";
+                logFileHashStore.warn(warnMsg);
+
+            } catch (PidRefsFileNotFoundException prfnfe) {
+                // `findObject` throws this exception if the pid refs file is not found
+                // Check to see if pid is in the `cid refs file` and attempt to remove it
+
+                // Confirm that we are working on a cid that is locked
+                // If not, this means that this call is not thread safe.
+                // This `cid` will be released by the calling method.
+                if (!objectLockedCids.isLocked(cid)) {
+                    String errMsg = "Cannot untag cid that is not currently locked";
+                    logFileHashStore.error(errMsg);
+                    throw new IdentifierNotLockedException(errMsg);
+                }
+
+                removePidAndHandleCidDeletion(pid, cid);
+
+                String errMsg =
+                    "Pid refs file not found, removed pid from cid refs file for cid: " + cid;
+                logFileHashStore.warn(errMsg);
+            }
+        } finally {
+            // The pid refs file may have been deleted, even if untagging did not complete
+            pidCidCache.invalidate(pid);
         }
     }
 
@@ -1805,7 +3762,7 @@ public class FileHashStore implements HashStore {
      * @param cid Cid to confirm
      * @param cidToCheck Cid that was retrieved or read
      */
-    private static void validateAndCheckCidLock(String pid, String cid, String cidToCheck) {
+    private void validateAndCheckCidLock(String pid, String cid, String cidToCheck) {
         FileHashStoreUtility.ensureNotNull(cidToCheck, "cidToCheck");
         FileHashStoreUtility.checkForNotEmptyAndValidString(cidToCheck, "cidToCheck");
         // If the cid retrieved does not match, this untag request is invalid immediately
@@ -1816,7 +3773,7 @@ public class FileHashStore implements HashStore {
             logFileHashStore.error(errMsg);
             throw new IllegalArgumentException(errMsg);
 
-        } else if (!objectLockedCids.contains(cid)) {
+        } else if (!objectLockedCids.isLocked(cid)) {
             // If it matches, we must confirm that we are working on a cid that is locked
             // If not, this means that this call is not thread safe.
             // This `cid` will be released by the calling method.
@@ -1828,21 +3785,16 @@ public class FileHashStore implements HashStore {
     }
 
     /**
-     * Removes a pid from a given cid refs file (if it's found) and checks to see if the cid refs is
-     * empty before renaming this file for deletion.
+     * Removes a pid from a given cid refs file (if it's found) and deletes its pid refs file, then
+     * checks to see if the cid refs is empty before deleting it.
      *
-     * @param pid        Persistent identifier
-     * @param cid        Content Identifier
-     * @param deleteList If cid refs file needs to be deleted, list to add to
+     * @param pid Persistent identifier
+     * @param cid Content Identifier
      */
-    private void removePidAndHandleCidDeletion(
-        String pid, String cid, Collection<Path> deleteList) {
-        Path absCidRefsPath = null;
+    private void untagAndHandleCidDeletion(String pid, String cid) {
         try {
-            absCidRefsPath = getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
-            updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.remove);
-            if (Files.size(absCidRefsPath) == 0) {
-                deleteList.add(FileHashStoreUtility.renamePathForDeletion(absCidRefsPath));
+            if (refsBackend.untag(pid, cid)) {
+                refsBackend.deleteCid(cid);
             } else {
                 String infoMsg = "Cid referenced by pid: " + pid
                     + " is not empty (refs exist for cid). Skipping object " + "deletion.";
@@ -1850,46 +3802,44 @@ public class FileHashStore implements HashStore {
             }
         } catch (Exception e) {
             logFileHashStore.error(
-                "Unable to remove pid: " + pid + " from cid refs file: " + absCidRefsPath + ". "
-                    + e.getMessage());
+                "Unable to untag pid: " + pid + " from cid: " + cid + ". " + e.getMessage());
         }
     }
 
     /**
-     * Deletes all the file paths contained in a given 'deleteList'
+     * Removes a pid from a given cid refs file (if it's found) and checks to see if the cid refs is
+     * empty before deleting it.
      *
-     * @param pid Persistent identifier, used for logging
-     * @param cid Content identifier, used for logging
-     * @param deleteList List of file paths to delete
+     * @param pid Persistent identifier
+     * @param cid Content Identifier
      */
-    private static void deleteMarkedFiles(
-        String pid, String cid, Collection<Path> deleteList) {
+    private void removePidAndHandleCidDeletion(String pid, String cid) {
         try {
-            // Delete all related/relevant items with the least amount of delay
-            FileHashStoreUtility.deleteListItems(deleteList);
+            if (refsBackend.removePid(cid, pid)) {
+                refsBackend.deleteCid(cid);
+            } else {
+                String infoMsg = "Cid referenced by pid: " + pid
+                    + " is not empty (refs exist for cid). Skipping object " + "deletion.";
+                logFileHashStore.info(infoMsg);
+            }
         } catch (Exception e) {
-            logFileHashStore.error("Unable to delete list of refs files marked for deletion "
-                                      + "for request with pid: " + pid + " and cid: " + cid + ". "
-                                      + e.getMessage());
+            logFileHashStore.error(
+                "Unable to remove pid: " + pid + " from cid refs of cid: " + cid + ". "
+                    + e.getMessage());
         }
     }
 
     /**
-     * Renames a given path and adds it to a list to delete.
+     * Deletes the pid refs file of a pid
      *
-     * @param pid            Persistent identifier for exception messaging
-     * @param deleteList     List to add renamed file
-     * @param absPidRefsPath Path of file to rename for deletion
+     * @param pid Persistent identifier
      */
-    private static void markPidRefsFileForDeletion(
-        String pid, Collection<Path> deleteList, Path absPidRefsPath) {
+    private void deletePidRefs(String pid) {
         try {
-            deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
-
+            refsBackend.deletePid(pid);
         } catch (Exception e) {
             logFileHashStore.error(
-                "Unable to delete pid refs file: " + absPidRefsPath + " for pid: " + pid + "." + " "
-                    + e.getMessage());
+                "Unable to delete pid refs file for pid: " + pid + ". " + e.getMessage());
         }
     }
 
@@ -1981,19 +3931,15 @@ public class FileHashStore implements HashStore {
      * @throws IOException If unable to read the cid refs file.
      */
     protected boolean isStringInRefsFile(String ref, Path absRefsPath) throws IOException {
-        List<String> lines = Files.readAllLines(absRefsPath);
-        boolean refFoundInCidRefFiles = false;
-        for (String line : lines) {
-            if (line.equals(ref)) {
-                refFoundInCidRefFiles = true;
-                break;
-            }
-        }
-        return refFoundInCidRefFiles;
+        return RefsFile.contains(absRefsPath, ref);
     }
 
     /**
-     * Adds or removes a ref value from a refs file given an 'updateType'
+     * Adds or removes a ref value from a refs file given an 'updateType'. With the 'plain' refs
+     * format, the refs file is rewritten. With the 'appendable' refs format, the update is
+     * appended to the refs file (see {@link RefsFile}), which is compacted once it has had many
+     * updates appended to it, or once most of its refs have been removed. Cid refs files are
+     * compacted in the background, since they are locked by their cid rather than by the caller.
      *
      * @param ref         Authority-based or persistent identifier
      * @param absRefsPath Path to the refs file to update
@@ -2002,41 +3948,194 @@ public class FileHashStore implements HashStore {
      */
     protected void updateRefsFile(String ref, Path absRefsPath, HashStoreRefUpdateTypes updateType)
         throws IOException {
-        // This update process is atomic, so we first write the updated content
-        // into a temporary file before overwriting it.
-        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", REFS_TMP_FILE_DIRECTORY);
-        Path tmpFilePath = tmpFile.toPath();
+        updateRefsFile(List.of(ref), absRefsPath, updateType);
+    }
 
+    /**
+     * Adds or removes many ref values from a refs file given an 'updateType', while holding a
+     * single lock on the refs file
+     *
+     * @param refs        Authority-based or persistent identifiers
+     * @param absRefsPath Path to the refs file to update
+     * @param updateType  {@link HashStoreRefUpdateTypes}
+     * @throws IOException Issue with updating or accessing a refs file
+     */
+    protected void updateRefsFile(
+        Collection<String> refs, Path absRefsPath, HashStoreRefUpdateTypes updateType)
+        throws IOException {
+        if (STORE_REFS_FORMAT == HashStoreRefsFormats.plain) {
+            rewriteRefsFile(refs, absRefsPath, updateType);
+            return;
+        }
+        RefsFile.Summary summary = null;
         try {
             // Obtain a lock on the file before updating it
             try (FileChannel channel = FileChannel.open(absRefsPath, StandardOpenOption.READ,
                                                         StandardOpenOption.WRITE);
                  FileLock ignored = channel.lock()) {
-                Collection<String> lines = new ArrayList<>(Files.readAllLines(absRefsPath));
-
-                if (updateType.equals(HashStoreRefUpdateTypes.add)) {
-                    if (!lines.contains(ref)) { // Check for duplicates
-                        lines.add(ref);
-                        Files.write(tmpFilePath, lines, StandardOpenOption.WRITE);
-                        move(tmpFile, absRefsPath.toFile(), "refs");
+                for (String ref : refs) {
+                    RefsFile.Summary refSummary;
+                    if (updateType.equals(HashStoreRefUpdateTypes.add)) {
+                        refSummary = RefsFile.add(channel, ref);
                         logFileHashStore.debug(
-                            "Ref: " + ref + " has been added to refs file: " + absRefsPath);
+                            "Ref: " + ref + (refSummary == null ? " already exists in refs file: "
+                                : " has been added to refs file: ") + absRefsPath);
                     } else {
+                        refSummary = RefsFile.remove(channel, ref);
+                        logFileHashStore.debug(
+                            "Ref: " + ref + " has been removed from refs file: " + absRefsPath);
+                    }
+                    // The summary of the last update describes the refs file
+                    if (refSummary != null) {
+                        summary = refSummary;
+                    }
+                }
+            }
+            // The lock is automatically released when the try block exits
+            if (summary == null) {
+                return;
+            }
+            durabilityCommitter.commit(List.of(absRefsPath));
+            if (summary.hasManyAppendedLines()) {
+                compactRefsFile(absRefsPath);
+            } else if (summary.hasManyTombstones()) {
+                if (absRefsPath.startsWith(REFS_CID_FILE_DIRECTORY)) {
+                    compactCidRefsFileInBackground(absRefsPath);
+                } else {
+                    compactRefsFile(absRefsPath);
+                }
+            }
+        } catch (IOException ioe) {
+            logFileHashStore.error(ioe.getMessage());
+            throw ioe;
+        }
+    }
+
+    /**
+     * Adds or removes ref values by rewriting a refs file through a tmp file, as the 'plain' refs
+     * format requires
+     */
+    private void rewriteRefsFile(
+        Collection<String> refs, Path absRefsPath, HashStoreRefUpdateTypes updateType)
+        throws IOException {
+        // This update process is atomic, so we first write the updated content
+        // into a temporary file before overwriting it.
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", REFS_TMP_FILE_DIRECTORY);
+        try {
+            // Obtain a lock on the file before updating it
+            try (FileChannel channel = FileChannel.open(absRefsPath, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                Set<String> lines = new LinkedHashSet<>(Files.readAllLines(absRefsPath));
+                boolean updated = false;
+                for (String ref : refs) {
+                    if (updateType.equals(HashStoreRefUpdateTypes.add)) {
+                        if (lines.add(ref)) {
+                            updated = true;
+                            logFileHashStore.debug(
+                                "Ref: " + ref + " has been added to refs file: " + absRefsPath);
+                        } else {
+                            logFileHashStore.debug(
+                                "Ref: " + ref + " already exists in refs file: " + absRefsPath);
+                        }
+                    } else if (lines.remove(ref)) {
+                        updated = true;
                         logFileHashStore.debug(
-                            "Ref: " + ref + " already exists in refs file: " + absRefsPath);
+                            "Ref: " + ref + " has been removed from refs file: " + absRefsPath);
                     }
-                } else if (updateType.equals(HashStoreRefUpdateTypes.remove)) {
-                    lines.remove(ref);
-                    Files.write(tmpFilePath, lines, StandardOpenOption.WRITE);
+                }
+                if (updated) {
+                    Files.write(tmpFile.toPath(), lines, StandardOpenOption.WRITE);
                     move(tmpFile, absRefsPath.toFile(), "refs");
-                    logFileHashStore.debug(
-                        "Ref: " + ref + " has been removed from refs file: " + absRefsPath);
                 }
             }
             // The lock is automatically released when the try block exits
         } catch (IOException ioe) {
             logFileHashStore.error(ioe.getMessage());
             throw ioe;
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+            TmpFileAllocator.release(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * Rewrite a refs file with only its live refs, sorted, dropping the updates appended to it.
+     * The caller must hold the lock of the identifier of the refs file.
+     *
+     * @param absRefsPath Path to the refs file to compact
+     * @throws IOException Issue with reading or writing the refs file
+     */
+    protected void compactRefsFile(Path absRefsPath) throws IOException {
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", REFS_TMP_FILE_DIRECTORY);
+        try {
+            try (FileChannel channel = FileChannel.open(absRefsPath, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                List<String> refs = RefsFile.readRefs(channel);
+                RefsFile.writeCompacted(tmpFile.toPath(), refs);
+                move(tmpFile, absRefsPath.toFile(), "refs");
+                logFileHashStore.debug(
+                    "Compacted refs file: " + absRefsPath + " with " + refs.size() + " refs");
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+            TmpFileAllocator.release(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * Queue a cid refs file to be compacted by a background thread, which holds the cid lock
+     * while it compacts the refs file. Only one compaction thread runs at a time.
+     */
+    private void compactCidRefsFileInBackground(Path absCidRefsPath) {
+        // The cid is the path of its refs file, without the directory separators
+        String cid = REFS_CID_FILE_DIRECTORY.relativize(absCidRefsPath).toString()
+            .replace(File.separator, "");
+        refsCompactionQueue.add(cid);
+        startRefsCompaction();
+    }
+
+    private void startRefsCompaction() {
+        if (!refsCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread compactionThread = new Thread(() -> {
+            try {
+                for (String cid : refsCompactionQueue) {
+                    refsCompactionQueue.remove(cid);
+                    compactCidRefsFile(cid);
+                }
+            } finally {
+                refsCompacting.set(false);
+            }
+            // Pick up cid refs files queued while the thread was finishing
+            if (!refsCompactionQueue.isEmpty()) {
+                startRefsCompaction();
+            }
+        }, "hashstore-refs-compaction");
+        compactionThread.setDaemon(true);
+        compactionThread.start();
+    }
+
+    private void compactCidRefsFile(String cid) {
+        try {
+            synchronizeObjectLockedCids(cid);
+            try {
+                Path absCidRefsPath = pathResolver.resolveDigest(REFS_CID_FILE_DIRECTORY, cid);
+                // The refs file may have been emptied or deleted since it was queued
+                if (Files.exists(absCidRefsPath) && Files.size(absCidRefsPath) > 0) {
+                    compactRefsFile(absCidRefsPath);
+                }
+            } finally {
+                releaseObjectLockedCids(cid);
+            }
+        } catch (IOException ioe) {
+            logFileHashStore.warn(
+                "Unable to compact cid refs file for cid: " + cid + ". " + ioe.getMessage());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logFileHashStore.warn("Interrupted while compacting cid refs file for cid: " + cid);
         }
     }
 
@@ -2084,7 +4183,7 @@ public class FileHashStore implements HashStore {
                 "Tmp metadata file has been written, moving to" + " permanent location: "
                     + pathToStoredMetadata);
             File permMetadataFile = pathToStoredMetadata.toFile();
-            move(tmpMetadataFile, permMetadataFile, "metadata");
+            move(storedFileCodec.encode(tmpMetadataFile), permMetadataFile, "metadata");
         }
         logFileHashStore.debug(
             "Metadata moved successfully, permanent address: " + pathToStoredMetadata);
@@ -2133,28 +4232,98 @@ public class FileHashStore implements HashStore {
      */
     protected Path getHashStoreDataObjectPath(String abpId)
         throws NoSuchAlgorithmException, IOException {
-        // Retrieve the 'cid' from the pid refs file
-        String objectCid;
-        String hashedId = FileHashStoreUtility.getPidHexDigest(abpId, OBJECT_STORE_ALGORITHM);
-        String pidRefsFileRelativePath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                           hashedId);
-        Path pathToPidRefsFile = REFS_PID_FILE_DIRECTORY.resolve(pidRefsFileRelativePath);
-        if (!Files.exists(pathToPidRefsFile)) {
-            String errMsg =
-                "Pid Refs file does not exist for pid: " + abpId + " with object address: "
-                    + pathToPidRefsFile + ". Cannot retrieve " + "cid.";
-            logFileHashStore.warn(errMsg);
-            throw new FileNotFoundException(errMsg);
-        } else {
-            objectCid = new String(Files.readAllBytes(pathToPidRefsFile));
+        // If cid is found, return the expected real path to the data object
+        return pathResolver.resolveDigest(OBJECT_STORE_DIRECTORY, getHashStoreDataObjectCid(abpId));
+    }
+
+    /**
+     * Get the cid referenced by a pid, from the pid to cid cache or else from its pid refs file
+     *
+     * @param abpId Authority-based or persistent identifier
+     * @return Content identifier
+     * @throws FileNotFoundException    If the pid refs file does not exist
+     * @throws IOException              Issue when reading a pid refs file to retrieve a 'cid'
+     * @throws NoSuchAlgorithmException When an algorithm used to calculate a hash is not supported
+     */
+    private String getHashStoreDataObjectCid(String abpId)
+        throws IOException, NoSuchAlgorithmException {
+        // Retrieve the 'cid' from the cache, or else from the pid refs file
+        String objectCid = pidCidCache.get(abpId);
+        if (objectCid == null) {
+            long cacheStamp = pidCidCache.getStamp();
+            objectCid = refsBackend.getCid(abpId);
+            if (objectCid == null) {
+                String errMsg =
+                    "Pid Refs file does not exist for pid: " + abpId + " with object address: "
+                        + refsBackend.getRefsPath(abpId, HashStoreIdTypes.pid)
+                        + ". Cannot retrieve " + "cid.";
+                logFileHashStore.warn(errMsg);
+                throw new FileNotFoundException(errMsg);
+            }
+            pidCidCache.put(abpId, objectCid, cacheStamp);
         }
-        // If cid is found, return the expected real path to object
-        String objRelativePath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                           objectCid);
-        // Real path to the data object
-        return OBJECT_STORE_DIRECTORY.resolve(objRelativePath);
+        return objectCid;
+    }
+
+    /**
+     * Make the deletion of files (or their renaming for deletion) durable, as the store's
+     * durability mode requires, by committing the directories they were removed from. This is
+     * what {@code move} does for the files it stores, so a deletion cannot be undone by a crash.
+     *
+     * @param deletePaths Paths of the deleted files, or of the files renamed for deletion
+     * @throws IOException If a directory cannot be committed
+     */
+    protected void commitDeletions(Collection<Path> deletePaths) throws IOException {
+        if (!durabilityCommitter.isEnabled() || deletePaths.isEmpty()) {
+            return;
+        }
+        Collection<Path> directoriesToCommit = new LinkedHashSet<>();
+        for (Path deletePath : deletePaths) {
+            directoriesToCommit.add(deletePath.getParent());
+        }
+        durabilityCommitter.commit(directoriesToCommit);
+    }
+
+    /**
+     * Delete files renamed for deletion (ex. refs files) in the background
+     *
+     * @param deleteList Paths of the renamed files
+     */
+    protected void deleteInBackground(Collection<Path> deleteList) {
+        deletionReaper.enqueue(deleteList);
+    }
+
+    /**
+     * Wait until the files renamed for deletion have been deleted
+     *
+     * @param timeout How long to wait
+     * @param unit    Unit of the timeout
+     * @return True if no file is waiting to be deleted, false if the timeout elapsed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    protected boolean awaitDeletions(long timeout, TimeUnit unit) throws InterruptedException {
+        return deletionReaper.awaitEmptyBacklog(timeout, unit);
+    }
+
+    /**
+     * @return Amount of files renamed for deletion that are waiting to be deleted
+     */
+    protected long getDeletionBacklogSize() {
+        return deletionReaper.getBacklogSize();
+    }
+
+    /**
+     * @return Amount of pids resolved to their cid without reading their pid refs file
+     */
+    protected long getPidCidCacheHitCount() {
+        return pidCidCache.getHitCount();
+    }
+
+    /**
+     * @return Amount of pids that were not found in the pid to cid cache
+     */
+    protected long getPidCidCacheMissCount() {
+        return pidCidCache.getMissCount();
     }
 
     /**
@@ -2167,16 +4336,9 @@ public class FileHashStore implements HashStore {
      */
     protected Path getHashStoreMetadataPath(String abpId, String formatId)
         throws NoSuchAlgorithmException {
-        // Get the pid metadata directory
-        String hashedId = FileHashStoreUtility.getPidHexDigest(abpId, OBJECT_STORE_ALGORITHM);
-        String pidMetadataDirRelPath =
-            FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                           hashedId);
-        // The file name for the metadata document is the hash of the supplied 'pid + 'formatId'
-        String metadataDocHash =
-            FileHashStoreUtility.getPidHexDigest(abpId + formatId, OBJECT_STORE_ALGORITHM);
-        // Real path to metadata doc
-        return METADATA_STORE_DIRECTORY.resolve(pidMetadataDirRelPath).resolve(metadataDocHash);
+        // The metadata document is found in the pid metadata directory, and its file name is the
+        // hash of the supplied 'pid + 'formatId'
+        return pathResolver.resolveMetadata(METADATA_STORE_DIRECTORY, abpId, formatId);
     }
 
     /**
@@ -2204,7 +4366,7 @@ public class FileHashStore implements HashStore {
 
         // Return an InputStream to read from the metadata document
         try {
-            InputStream metadataCidInputStream = Files.newInputStream(metadataCidPath);
+            InputStream metadataCidInputStream = storedFileCodec.open(metadataCidPath);
             logFileHashStore.info(
                 "Retrieved metadata for pid: " + pid + " with formatId: " + formatId);
             return metadataCidInputStream;
@@ -2231,20 +4393,8 @@ public class FileHashStore implements HashStore {
         Path realPath;
 
         switch (refType) {
-            case pid -> {
-                String hashedId =
-                    FileHashStoreUtility.getPidHexDigest(abpcId, OBJECT_STORE_ALGORITHM);
-                String pidRelativePath =
-                    FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                                   hashedId);
-                realPath = REFS_PID_FILE_DIRECTORY.resolve(pidRelativePath);
-            }
-            case cid -> {
-                String cidRelativePath =
-                    FileHashStoreUtility.getHierarchicalPathString(DIRECTORY_DEPTH, DIRECTORY_WIDTH,
-                                                                   abpcId);
-                realPath = REFS_CID_FILE_DIRECTORY.resolve(cidRelativePath);
-            }
+            case pid -> realPath = pathResolver.resolveId(REFS_PID_FILE_DIRECTORY, abpcId);
+            case cid -> realPath = pathResolver.resolveDigest(REFS_CID_FILE_DIRECTORY, abpcId);
             default -> throw new IllegalArgumentException(
                 "Ref type must be a type of HashStoreIdTypes " + "(pid or cid)");
         }
@@ -2259,35 +4409,17 @@ public class FileHashStore implements HashStore {
      * @param pid Persistent or authority-based identifier
      * @throws InterruptedException When an issue occurs when attempting to sync the pid
      */
-    private static void synchronizeObjectLockedPids(String pid) throws InterruptedException {
-        synchronized (objectLockedPids) {
-            while (objectLockedPids.contains(pid)) {
-                try {
-                    objectLockedPids.wait(TIME_OUT_MILLISEC);
-
-                } catch (InterruptedException ie) {
-                    String errMsg =
-                        "Synchronization has been interrupted while trying to sync pid: " + pid;
-                    logFileHashStore.warn(errMsg);
-                    throw new InterruptedException(errMsg);
-                }
-            }
-            logFileHashStore.debug("Synchronizing objectLockedPids for pid: " + pid);
-            objectLockedPids.add(pid);
-        }
+    private void synchronizeObjectLockedPids(String pid) throws InterruptedException {
+        objectLockedPids.lock(pid);
     }
 
     /**
-     * Remove the given pid from 'objectLockedPids' and notify other threads
+     * Remove the given pid from 'objectLockedPids' and notify the next waiting thread
      *
      * @param pid Content identifier
      */
-    private static void releaseObjectLockedPids(String pid) {
-        synchronized (objectLockedPids) {
-            logFileHashStore.debug("Releasing objectLockedPids for pid: " + pid);
-            objectLockedPids.remove(pid);
-            objectLockedPids.notify();
-        }
+    private void releaseObjectLockedPids(String pid) {
+        objectLockedPids.unlock(pid);
     }
 
     /**
@@ -2296,39 +4428,18 @@ public class FileHashStore implements HashStore {
      * @param metadataDocId Metadata document id hash(pid+formatId)
      * @throws InterruptedException When an issue occurs when attempting to sync the metadata doc
      */
-    private static void synchronizeMetadataLockedDocIds(String metadataDocId)
+    private void synchronizeMetadataLockedDocIds(String metadataDocId)
         throws InterruptedException {
-        synchronized (metadataLockedDocIds) {
-            while (metadataLockedDocIds.contains(metadataDocId)) {
-                try {
-                    metadataLockedDocIds.wait(TIME_OUT_MILLISEC);
-
-                } catch (InterruptedException ie) {
-                    String errMsg =
-                        "Synchronization has been interrupted while trying to sync metadata doc: "
-                            + metadataDocId;
-                    logFileHashStore.error(errMsg);
-                    throw new InterruptedException(errMsg);
-                }
-            }
-            logFileHashStore.debug(
-                "Synchronizing metadataLockedDocIds for metadata doc: " + metadataDocId);
-            metadataLockedDocIds.add(metadataDocId);
-        }
+        metadataLockedDocIds.lock(metadataDocId);
     }
 
     /**
-     * Remove the given metadata doc from 'metadataLockedDocIds' and notify other threads
+     * Remove the given metadata doc from 'metadataLockedDocIds' and notify the next waiting thread
      *
      * @param metadataDocId Metadata document id hash(pid+formatId)
      */
-    private static void releaseMetadataLockedDocIds(String metadataDocId) {
-        synchronized (metadataLockedDocIds) {
-            logFileHashStore.debug(
-                "Releasing metadataLockedDocIds for metadata doc: " + metadataDocId);
-            metadataLockedDocIds.remove(metadataDocId);
-            metadataLockedDocIds.notify();
-        }
+    private void releaseMetadataLockedDocIds(String metadataDocId) {
+        metadataLockedDocIds.unlock(metadataDocId);
     }
 
     /**
@@ -2339,35 +4450,17 @@ public class FileHashStore implements HashStore {
      * @param cid Content identifier
      * @throws InterruptedException When an issue occurs when attempting to sync the pid
      */
-    protected static void synchronizeObjectLockedCids(String cid) throws InterruptedException {
-        synchronized (objectLockedCids) {
-            while (objectLockedCids.contains(cid)) {
-                try {
-                    objectLockedCids.wait(TIME_OUT_MILLISEC);
-
-                } catch (InterruptedException ie) {
-                    String errMsg =
-                        "Synchronization has been interrupted while trying to sync cid: " + cid;
-                    logFileHashStore.error(errMsg);
-                    throw new InterruptedException(errMsg);
-                }
-            }
-            logFileHashStore.debug("Synchronizing objectLockedCids for cid: " + cid);
-            objectLockedCids.add(cid);
-        }
+    protected void synchronizeObjectLockedCids(String cid) throws InterruptedException {
+        objectLockedCids.lock(cid);
     }
 
     /**
-     * Remove the given cid from 'objectLockedCids' and notify other threads
+     * Remove the given cid from 'objectLockedCids' and notify the next waiting thread
      *
      * @param cid Content identifier
      */
-    protected static void releaseObjectLockedCids(String cid) {
-        synchronized (objectLockedCids) {
-            logFileHashStore.debug("Releasing objectLockedCids for cid: " + cid);
-            objectLockedCids.remove(cid);
-            objectLockedCids.notify();
-        }
+    protected void releaseObjectLockedCids(String cid) {
+        objectLockedCids.unlock(cid);
     }
 
     /**
@@ -2378,34 +4471,16 @@ public class FileHashStore implements HashStore {
      * @param pid Persistent or authority-based identifier
      * @throws InterruptedException When an issue occurs when attempting to sync the pid
      */
-    protected static void synchronizeReferenceLockedPids(String pid) throws InterruptedException {
-        synchronized (referenceLockedPids) {
-            while (referenceLockedPids.contains(pid)) {
-                try {
-                    referenceLockedPids.wait(TIME_OUT_MILLISEC);
-
-                } catch (InterruptedException ie) {
-                    String errMsg =
-                        "Synchronization has been interrupted while trying to sync pid: " + pid;
-                    logFileHashStore.error(errMsg);
-                    throw new InterruptedException(errMsg);
-                }
-            }
-            logFileHashStore.debug("Synchronizing referenceLockedPids for pid: " + pid);
-            referenceLockedPids.add(pid);
-        }
+    protected void synchronizeReferenceLockedPids(String pid) throws InterruptedException {
+        referenceLockedPids.lock(pid);
     }
 
     /**
-     * Remove the given pid from 'referenceLockedPids' and notify other threads
+     * Remove the given pid from 'referenceLockedPids' and notify the next waiting thread
      *
      * @param pid Persistent or authority-based identifier
      */
-    protected static void releaseReferenceLockedPids(String pid) {
-        synchronized (referenceLockedPids) {
-            logFileHashStore.debug("Releasing referenceLockedPids for pid: " + pid);
-            referenceLockedPids.remove(pid);
-            referenceLockedPids.notify();
-        }
+    protected void releaseReferenceLockedPids(String pid) {
+        referenceLockedPids.unlock(pid);
     }
 }
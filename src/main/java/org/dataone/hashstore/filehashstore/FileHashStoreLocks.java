@@ -0,0 +1,134 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreLockModes;
+
+/**
+ * FileHashStoreLocks holds the identifier locks used to coordinate a single store root. Every
+ * FileHashStore (including subclasses like {@code FileHashStoreLinks}) opened on the same canonical
+ * store path within a JVM shares one instance, while stores at different paths never contend with
+ * each other. In 'shared' lock mode, the locks also claim lease files under the store's '/locks'
+ * directory so that other processes using the same store are coordinated as well.
+ */
+final class FileHashStoreLocks {
+    private static final Log logFileHashStoreLocks = LogFactory.getLog(FileHashStoreLocks.class);
+    private static final Map<Path, FileHashStoreLocks> registry = new ConcurrentHashMap<>();
+    private final Path storeRoot;
+    private final HashStoreLockModes lockMode;
+    private final IdentifierLockManager objectLockedCids;
+    private final IdentifierLockManager objectLockedPids;
+    private final IdentifierLockManager metadataLockedDocIds;
+    private final IdentifierLockManager referenceLockedPids;
+    private final IdentifierLockManager chunkLockedDigests;
+
+    private FileHashStoreLocks(Path storeRoot, HashStoreLockModes lockMode) throws IOException {
+        this.storeRoot = storeRoot;
+        this.lockMode = lockMode;
+        objectLockedCids = createLockManager("objectLockedCids", "object_cids");
+        objectLockedPids = createLockManager("objectLockedPids", "object_pids");
+        metadataLockedDocIds = createLockManager("metadataLockedDocIds", "metadata_docs");
+        referenceLockedPids = createLockManager("referenceLockedPids", "reference_pids");
+        chunkLockedDigests = createLockManager("chunkLockedDigests", "chunk_digests");
+    }
+
+    /**
+     * Get the locks for a given store root, creating them if this is the first store opened at
+     * the given path. The store root must exist, as it is resolved to its canonical (real) path so
+     * that symbolic links and relative paths to the same store share the same locks.
+     *
+     * @param storeRoot Root directory of a HashStore
+     * @param lockMode  How the locks of the store are coordinated
+     * @return Locks shared by all stores opened at the given root
+     * @throws IOException           If the canonical path of the store root cannot be resolved, or
+     *                               the lease directories cannot be created
+     * @throws IllegalStateException If the store root is already in use with another lock mode
+     */
+    static FileHashStoreLocks forStoreRoot(Path storeRoot, HashStoreLockModes lockMode)
+        throws IOException {
+        FileHashStoreUtility.ensureNotNull(storeRoot, "storeRoot");
+        FileHashStoreUtility.ensureNotNull(lockMode, "lockMode");
+        Path canonicalStoreRoot = storeRoot.toRealPath();
+        FileHashStoreLocks storeLocks;
+        try {
+            storeLocks = registry.computeIfAbsent(canonicalStoreRoot, root -> {
+                logFileHashStoreLocks.debug(
+                    "Creating " + lockMode + " identifier locks for store root: " + root);
+                try {
+                    return new FileHashStoreLocks(root, lockMode);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+
+        if (storeLocks.lockMode != lockMode) {
+            String errMsg = "Store root: " + canonicalStoreRoot + " is already in use with lock"
+                + " mode: " + storeLocks.lockMode + ". Requested lock mode: " + lockMode;
+            logFileHashStoreLocks.error(errMsg);
+            throw new IllegalStateException(errMsg);
+        }
+        return storeLocks;
+    }
+
+    private IdentifierLockManager createLockManager(String name, String leaseNamespace)
+        throws IOException {
+        IdentifierLockManager localLocks = new StripedIdentifierLockManager(name);
+        if (lockMode == HashStoreLockModes.local) {
+            return localLocks;
+        }
+        Path leaseDirectory = storeRoot.resolve("locks").resolve(leaseNamespace);
+        return new LeaseFileIdentifierLockManager(
+            name, leaseDirectory, localLocks, LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS);
+    }
+
+    /**
+     * @return Canonical path of the store root these locks coordinate
+     */
+    Path getStoreRoot() {
+        return storeRoot;
+    }
+
+    /**
+     * @return Locks for content identifiers of data objects and their cid refs files
+     */
+    IdentifierLockManager getObjectLockedCids() {
+        return objectLockedCids;
+    }
+
+    /**
+     * @return Locks for pids that are being stored or deleted
+     */
+    IdentifierLockManager getObjectLockedPids() {
+        return objectLockedPids;
+    }
+
+    /**
+     * @return Locks for metadata documents, identified by hash(pid+formatId)
+     */
+    IdentifierLockManager getMetadataLockedDocIds() {
+        return metadataLockedDocIds;
+    }
+
+    /**
+     * @return Locks for pids that are being tagged or untagged
+     */
+    IdentifierLockManager getReferenceLockedPids() {
+        return referenceLockedPids;
+    }
+
+    /**
+     * @return Locks for hex digests of chunks and their refs files
+     */
+    IdentifierLockManager getChunkLockedDigests() {
+        return chunkLockedDigests;
+    }
+}
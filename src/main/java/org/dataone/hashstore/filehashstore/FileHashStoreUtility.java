@@ -3,10 +3,12 @@ package org.dataone.hashstore.filehashstore;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
@@ -14,6 +16,7 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -22,8 +25,8 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 import javax.xml.bind.DatatypeConverter;
@@ -171,10 +174,13 @@ public class FileHashStoreUtility {
     }
 
     /**
-     * Rename the given path to the 'file name' + '_delete'
+     * Rename the given path to the 'file name' + '_delete_' + a random UUID. Files renamed for
+     * deletion are deleted in the background, so every rename gets its own name: a delete queued
+     * earlier for the same file name never removes a file renamed by a later delete, which may
+     * still have to restore it.
      *
-     * @param pathToRename The path to the file to be renamed with '_delete'
-     * @return Path to the file with '_delete' appended
+     * @param pathToRename The path to the file to be renamed with '_delete_'
+     * @return Path to the file with '_delete_' and a random UUID appended
      * @throws IOException Issue with renaming the given file path
      */
     public static Path renamePathForDeletion(Path pathToRename) throws IOException {
@@ -185,7 +191,8 @@ public class FileHashStoreUtility {
         }
         Path parentPath = pathToRename.getParent();
         Path fileName = pathToRename.getFileName();
-        String newFileName = fileName.toString() + "_delete";
+        String newFileName =
+            fileName.toString() + DeletionReaper.DELETE_SUFFIX + "_" + UUID.randomUUID();
 
         Path deletePath = parentPath.resolve(newFileName);
         Files.move(pathToRename, deletePath, StandardCopyOption.ATOMIC_MOVE);
@@ -193,7 +200,8 @@ public class FileHashStoreUtility {
     }
 
     /**
-     * Rename the given path slated for deletion by replacing '_delete' with ""
+     * Rename the given path slated for deletion back to its original name, see
+     * {@code getPathBeforeDeletion}
      *
      * @param pathToRename The path to the file to revert deletion
      * @throws IOException Issue with renaming the given file path
@@ -204,14 +212,26 @@ public class FileHashStoreUtility {
             String errMsg = "Given path to file: " + pathToRename + " does not exist.";
             throw new FileNotFoundException(errMsg);
         }
-        Path parentPath = pathToRename.getParent();
-        Path fileName = pathToRename.getFileName();
-        String newFileName = fileName.toString().replace("_delete", "");
-
-        Path restorePath = parentPath.resolve(newFileName);
+        Path restorePath = getPathBeforeDeletion(pathToRename);
         Files.move(pathToRename, restorePath, StandardCopyOption.ATOMIC_MOVE);
     }
 
+    /**
+     * Get the original path of a file renamed for deletion, by removing '_delete' and whatever
+     * follows it from its file name
+     *
+     * @param deletePath Path of the file renamed for deletion
+     * @return Path of the file before it was renamed
+     */
+    public static Path getPathBeforeDeletion(Path deletePath) {
+        String fileName = deletePath.getFileName().toString();
+        int suffixIndex = fileName.lastIndexOf(DeletionReaper.DELETE_SUFFIX);
+        if (suffixIndex < 0) {
+            return deletePath;
+        }
+        return deletePath.resolveSibling(fileName.substring(0, suffixIndex));
+    }
+
     /**
      * Delete all paths found in the given List<Path> object.
      *
@@ -308,32 +328,15 @@ public class FileHashStoreUtility {
      * @return String
      */
     public static String getHierarchicalPathString(int depth, int width, String digest) {
-        Collection<String> tokens = new ArrayList<>();
-        int digestLength = digest.length();
-        for (int i = 0; i < depth; i++) {
-            int start = i * width;
-            int end = Math.min((i + 1) * width, digestLength);
-            tokens.add(digest.substring(start, end));
-        }
-
-        if (depth * width < digestLength) {
-            tokens.add(digest.substring(depth * width));
-        }
-
-        Collection<String> stringArray = new ArrayList<>();
-        for (String str : tokens) {
-            if (!str.trim().isEmpty()) {
-                stringArray.add(str);
-            }
-        }
-        // stringShard
-        return String.join("/", stringArray);
+        char[] stringShard = new char[digest.length() + depth];
+        return new String(stringShard, 0, PathResolver.shard(depth, width, digest, stringShard));
     }
 
     /**
      * Creates an empty/temporary file in a given location. This temporary file has the default
      * permissions of 'rw- r-- ---'  (owner read/write, and group read). If this file is not
-     * moved, it will be deleted upon JVM gracefully exiting or shutting down.
+     * moved, it will be deleted upon JVM gracefully exiting or shutting down, or by the sweep of
+     * stale tmp files when a store is next opened.
      *
      * @param prefix    string to prepend before tmp file
      * @param directory location to create tmp file
@@ -343,23 +346,55 @@ public class FileHashStoreUtility {
      */
     public static File generateTmpFile(String prefix, Path directory)
         throws IOException, SecurityException {
-        Random rand = new Random();
-        int randomNumber = rand.nextInt(1000000);
-        String newPrefix = prefix + "-" + System.currentTimeMillis() + randomNumber;
-
-        Path newTmpPath = Files.createTempFile(directory, newPrefix, null);
-        File newTmpFile = newTmpPath.toFile();
+        return TmpFileAllocator.allocate(prefix, directory);
+    }
 
-        // Set default file permissions 'rw- r-- ---'
+    /**
+     * Set the default permissions of HashStore files: 'rw- r-- ---' (owner read/write, and group
+     * read)
+     *
+     * @param path File to set the permissions of
+     * @throws IOException                   Issue with setting the permissions
+     * @throws UnsupportedOperationException If the file system does not support POSIX permissions
+     */
+    public static void setDefaultFilePermissions(Path path) throws IOException {
         final Set<PosixFilePermission> permissions = new HashSet<>();
         permissions.add(PosixFilePermission.OWNER_READ);
         permissions.add(PosixFilePermission.OWNER_WRITE);
         permissions.add(PosixFilePermission.GROUP_READ);
-        Files.setPosixFilePermissions(newTmpPath, permissions);
-        // Mark tmp file to be cleaned up if it runs into an issue
-        newTmpFile.deleteOnExit();
+        Files.setPosixFilePermissions(path, permissions);
+    }
 
-        return newTmpFile;
+    /**
+     * Copy the content of a file into an existing (empty) file with {@code FileChannel.transferTo},
+     * which lets the operating system copy the data without passing it through the JVM's heap.
+     *
+     * @param source File to copy from
+     * @param target File to copy into
+     * @return Amount of bytes copied
+     * @throws EOFException If the source is truncated while it is being copied
+     * @throws IOException  Issue with reading the source or writing the target
+     */
+    public static long transferFile(Path source, Path target) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(
+                 target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = sourceChannel.size();
+            long position = 0;
+            while (position < size) {
+                long transferred =
+                    sourceChannel.transferTo(position, size - position, targetChannel);
+                if (transferred <= 0) {
+                    // The source has been truncated, transferTo would keep returning nothing
+                    String errMsg = "Source file: " + source + " ended after " + position
+                        + " bytes while being copied. Expected size: " + size;
+                    log.error(errMsg);
+                    throw new EOFException(errMsg);
+                }
+                position += transferred;
+            }
+            return position;
+        }
     }
 
     /**
@@ -0,0 +1,150 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreIdTypes;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreRefUpdateTypes;
+
+/**
+ * FileRefsBackend stores refs as files: the pid refs file of a pid (under '/refs/pids', at the
+ * sharded path of the hash of the pid) holds the cid it references, and the cid refs file of a cid
+ * (under '/refs/cids', at the sharded path of the cid) lists the pids that reference it (see
+ * {@link RefsFile}). Files are written through FileHashStore, so that they are moved into place
+ * and flushed as the store's durability mode requires.
+ */
+final class FileRefsBackend implements RefsBackend {
+    private final FileHashStore fileHashStore;
+
+    /**
+     * Constructor to initialize a FileRefsBackend
+     *
+     * @param fileHashStore Store whose refs files are read and written
+     */
+    FileRefsBackend(FileHashStore fileHashStore) {
+        this.fileHashStore = fileHashStore;
+    }
+
+    @Override
+    public String getCid(String pid) throws IOException, NoSuchAlgorithmException {
+        Path absPidRefsPath = getRefsPath(pid, HashStoreIdTypes.pid);
+        if (!Files.exists(absPidRefsPath)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(absPidRefsPath));
+    }
+
+    @Override
+    public boolean hasCid(String cid) throws NoSuchAlgorithmException {
+        return Files.exists(getRefsPath(cid, HashStoreIdTypes.cid));
+    }
+
+    @Override
+    public boolean hasPid(String cid, String pid) throws IOException, NoSuchAlgorithmException {
+        return fileHashStore.isStringInRefsFile(pid, getRefsPath(cid, HashStoreIdTypes.cid));
+    }
+
+    @Override
+    public void tag(String pid, String cid) throws IOException, NoSuchAlgorithmException {
+        Path absCidRefsPath = getRefsPath(cid, HashStoreIdTypes.cid);
+        File pidRefsTmpFile = fileHashStore.writeRefsFile(cid, HashStoreIdTypes.pid.name());
+        fileHashStore.move(
+            pidRefsTmpFile, getRefsPath(pid, HashStoreIdTypes.pid).toFile(), "refs");
+        if (Files.exists(absCidRefsPath)) {
+            // Duplicates are not added to the cid refs file
+            fileHashStore.updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.add);
+        } else {
+            File cidRefsTmpFile = fileHashStore.writeRefsFile(pid, HashStoreIdTypes.cid.name());
+            fileHashStore.move(cidRefsTmpFile, absCidRefsPath.toFile(), "refs");
+        }
+    }
+
+    @Override
+    public void tagAll(Collection<String> pids, String cid)
+        throws IOException, NoSuchAlgorithmException {
+        Path absCidRefsPath = getRefsPath(cid, HashStoreIdTypes.cid);
+        for (String pid : pids) {
+            File pidRefsTmpFile = fileHashStore.writeRefsFile(cid, HashStoreIdTypes.pid.name());
+            fileHashStore.move(
+                pidRefsTmpFile, getRefsPath(pid, HashStoreIdTypes.pid).toFile(), "refs");
+        }
+        if (!Files.exists(absCidRefsPath)) {
+            File cidRefsTmpFile = fileHashStore.writeRefsFile(
+                pids.iterator().next(), HashStoreIdTypes.cid.name());
+            fileHashStore.move(cidRefsTmpFile, absCidRefsPath.toFile(), "refs");
+        }
+        // Duplicates (including the pid the cid refs file may have been created with) are not
+        // added to the cid refs file
+        fileHashStore.updateRefsFile(pids, absCidRefsPath, HashStoreRefUpdateTypes.add);
+    }
+
+    @Override
+    public void verify(String pid, String cid) throws IOException, NoSuchAlgorithmException {
+        fileHashStore.verifyHashStoreRefsFiles(
+            pid, cid, getRefsPath(pid, HashStoreIdTypes.pid),
+            getRefsPath(cid, HashStoreIdTypes.cid));
+    }
+
+    @Override
+    public boolean untag(String pid, String cid) throws IOException, NoSuchAlgorithmException {
+        boolean unreferenced = removePid(cid, pid);
+        deletePid(pid);
+        return unreferenced;
+    }
+
+    @Override
+    public boolean untagAll(Collection<String> pids, String cid)
+        throws IOException, NoSuchAlgorithmException {
+        Path absCidRefsPath = getRefsPath(cid, HashStoreIdTypes.cid);
+        fileHashStore.updateRefsFile(pids, absCidRefsPath, HashStoreRefUpdateTypes.remove);
+        List<Path> deleteList = new ArrayList<>(pids.size());
+        for (String pid : pids) {
+            Path absPidRefsPath = getRefsPath(pid, HashStoreIdTypes.pid);
+            if (Files.exists(absPidRefsPath)) {
+                deleteList.add(FileHashStoreUtility.renamePathForDeletion(absPidRefsPath));
+            }
+        }
+        fileHashStore.commitDeletions(deleteList);
+        fileHashStore.deleteInBackground(deleteList);
+        return Files.size(absCidRefsPath) == 0;
+    }
+
+    @Override
+    public boolean removePid(String cid, String pid) throws IOException, NoSuchAlgorithmException {
+        Path absCidRefsPath = getRefsPath(cid, HashStoreIdTypes.cid);
+        fileHashStore.updateRefsFile(pid, absCidRefsPath, HashStoreRefUpdateTypes.remove);
+        // The cid refs file is emptied when its last pid is removed
+        return Files.size(absCidRefsPath) == 0;
+    }
+
+    @Override
+    public void deletePid(String pid) throws IOException, NoSuchAlgorithmException {
+        deleteRefsFile(getRefsPath(pid, HashStoreIdTypes.pid));
+    }
+
+    @Override
+    public void deleteCid(String cid) throws IOException, NoSuchAlgorithmException {
+        deleteRefsFile(getRefsPath(cid, HashStoreIdTypes.cid));
+    }
+
+    @Override
+    public Path getRefsPath(String id, HashStoreIdTypes idType) throws NoSuchAlgorithmException {
+        return fileHashStore.getHashStoreRefsPath(id, idType);
+    }
+
+    private void deleteRefsFile(Path absRefsPath) throws IOException {
+        if (Files.exists(absRefsPath)) {
+            // Refs files are renamed, then deleted in the background like data objects
+            List<Path> deleteList =
+                List.of(FileHashStoreUtility.renamePathForDeletion(absRefsPath));
+            fileHashStore.commitDeletions(deleteList);
+            fileHashStore.deleteInBackground(deleteList);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.dataone.hashstore.filehashstore;
+
+/**
+ * An IdentifierLockManager coordinates exclusive access to HashStore identifiers (ex. a 'pid', a
+ * 'cid' or a metadata document id). A lock on an identifier is not bound to the thread that
+ * acquired it and is not re-entrant - a second request to lock an identifier that is already
+ * locked will wait (or fail, for {@code tryLock}) until the identifier has been released.
+ */
+public interface IdentifierLockManager {
+
+    /**
+     * Lock the given identifier, waiting until it has been released if it is currently locked.
+     * Waiting requests for the same identifier are granted in the order that they arrived.
+     *
+     * @param id Identifier to lock
+     * @throws InterruptedException When the calling thread is interrupted while waiting
+     */
+    void lock(String id) throws InterruptedException;
+
+    /**
+     * Lock the given identifier only if it is not currently locked or being waited on.
+     *
+     * @param id Identifier to lock
+     * @return True if the identifier has been locked by this call, false otherwise
+     */
+    boolean tryLock(String id);
+
+    /**
+     * Release the given identifier and hand it to the next waiting request (if any).
+     *
+     * @param id Identifier to release
+     * @return True if the identifier was locked and has been released, false if it was not locked
+     */
+    boolean unlock(String id);
+
+    /**
+     * Checks whether the given identifier is currently locked
+     *
+     * @param id Identifier to check
+     * @return True if the identifier is locked
+     */
+    boolean isLocked(String id);
+}
@@ -0,0 +1,154 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.exceptions.CidNotFoundInPidRefsFileException;
+import org.dataone.hashstore.exceptions.PidNotFoundInCidRefsFileException;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreIdTypes;
+
+/**
+ * IndexRefsBackend stores refs in a {@link RefsIndex} under '/refs/index', instead of a file per
+ * pid and per cid. The pid refs of a pid are the key {@code "pid\n" + pid}, whose value is the cid,
+ * and each pid found in the cid refs of a cid is the key {@code "cid\n" + cid + "\n" + pid}, so
+ * the pids of a cid are found with a single prefix scan. Identifiers cannot contain whitespace, so
+ * keys cannot be confused with each other. Tagging and untagging a pid update both keys in a
+ * single batch, so they are never left half done by a crash.
+ */
+final class IndexRefsBackend implements RefsBackend {
+    private static final Log logIndexRefsBackend = LogFactory.getLog(IndexRefsBackend.class);
+    private static final String PID_KEY_PREFIX = "pid\n";
+    private static final String CID_KEY_PREFIX = "cid\n";
+    private final RefsIndex refsIndex;
+    private final Path indexDirectory;
+
+    /**
+     * Constructor to initialize an IndexRefsBackend
+     *
+     * @param refsIndex      Index holding the refs
+     * @param indexDirectory Directory of the index
+     */
+    IndexRefsBackend(RefsIndex refsIndex, Path indexDirectory) {
+        this.refsIndex = refsIndex;
+        this.indexDirectory = indexDirectory;
+    }
+
+    @Override
+    public String getCid(String pid) throws IOException {
+        return refsIndex.get(PID_KEY_PREFIX + pid);
+    }
+
+    @Override
+    public boolean hasCid(String cid) throws IOException {
+        return !refsIndex.scan(getCidKeyPrefix(cid)).isEmpty();
+    }
+
+    @Override
+    public boolean hasPid(String cid, String pid) throws IOException {
+        return refsIndex.get(getCidKeyPrefix(cid) + pid) != null;
+    }
+
+    @Override
+    public void tag(String pid, String cid) throws IOException {
+        refsIndex.write(Map.of(PID_KEY_PREFIX + pid, cid, getCidKeyPrefix(cid) + pid, ""));
+        logIndexRefsBackend.debug("Tagged pid: " + pid + " with cid: " + cid);
+    }
+
+    @Override
+    public void tagAll(Collection<String> pids, String cid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        for (String pid : pids) {
+            updates.put(PID_KEY_PREFIX + pid, cid);
+            updates.put(getCidKeyPrefix(cid) + pid, "");
+        }
+        refsIndex.write(updates);
+        logIndexRefsBackend.debug("Tagged " + pids.size() + " pids with cid: " + cid);
+    }
+
+    @Override
+    public void verify(String pid, String cid) throws IOException {
+        if (!hasCid(cid)) {
+            String errMsg = "Cid refs are missing from: " + indexDirectory + " for pid: " + pid;
+            logIndexRefsBackend.error(errMsg);
+            throw new FileNotFoundException(errMsg);
+        }
+        String cidRead = getCid(pid);
+        if (cidRead == null) {
+            String errMsg = "Pid refs are missing from: " + indexDirectory + " for cid: " + cid;
+            logIndexRefsBackend.error(errMsg);
+            throw new FileNotFoundException(errMsg);
+        }
+        if (!cidRead.equals(cid)) {
+            String errMsg = "Unexpected cid: " + cidRead + " found in pid refs of pid: " + pid
+                + ". Expected cid: " + cid;
+            logIndexRefsBackend.error(errMsg);
+            throw new CidNotFoundInPidRefsFileException(errMsg);
+        }
+        if (!hasPid(cid, pid)) {
+            String errMsg = "Missing expected pid: " + pid + " in cid refs of cid: " + cid;
+            logIndexRefsBackend.error(errMsg);
+            throw new PidNotFoundInCidRefsFileException(errMsg);
+        }
+    }
+
+    @Override
+    public boolean untag(String pid, String cid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        updates.put(getCidKeyPrefix(cid) + pid, null);
+        updates.put(PID_KEY_PREFIX + pid, null);
+        refsIndex.write(updates);
+        logIndexRefsBackend.debug("Untagged pid: " + pid + " from cid: " + cid);
+        return !hasCid(cid);
+    }
+
+    @Override
+    public boolean untagAll(Collection<String> pids, String cid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        for (String pid : pids) {
+            updates.put(getCidKeyPrefix(cid) + pid, null);
+            updates.put(PID_KEY_PREFIX + pid, null);
+        }
+        refsIndex.write(updates);
+        logIndexRefsBackend.debug("Untagged " + pids.size() + " pids from cid: " + cid);
+        return !hasCid(cid);
+    }
+
+    @Override
+    public boolean removePid(String cid, String pid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        updates.put(getCidKeyPrefix(cid) + pid, null);
+        refsIndex.write(updates);
+        return !hasCid(cid);
+    }
+
+    @Override
+    public void deletePid(String pid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        updates.put(PID_KEY_PREFIX + pid, null);
+        refsIndex.write(updates);
+    }
+
+    @Override
+    public void deleteCid(String cid) throws IOException {
+        Map<String, String> updates = new HashMap<>();
+        for (String cidKey : refsIndex.scan(getCidKeyPrefix(cid)).keySet()) {
+            updates.put(cidKey, null);
+        }
+        refsIndex.write(updates);
+    }
+
+    @Override
+    public Path getRefsPath(String id, HashStoreIdTypes idType) {
+        return indexDirectory;
+    }
+
+    private static String getCidKeyPrefix(String cid) {
+        return CID_KEY_PREFIX + cid + "\n";
+    }
+}
@@ -0,0 +1,371 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * LeaseFileIdentifierLockManager is an {@link IdentifierLockManager} that coordinates identifiers
+ * across every process that shares a store directory. Threads within this JVM are first ordered by
+ * an in-memory lock manager, and the thread that holds an identifier then claims a lease file for
+ * it in the given lease directory. Lease files are created atomically ({@code CREATE_NEW}) and
+ * deleted when the identifier is released.
+ *
+ * A lease is renewed in the background while it is held. If a process dies while holding a lease,
+ * the lease stops being renewed and is broken by the next process that finds it older than the
+ * lease duration. Leases are only deleted (released or broken) while holding a short-lived break
+ * lock, so a process breaking a stale lease never deletes a lease that was claimed after it found
+ * the stale one.
+ */
+public class LeaseFileIdentifierLockManager implements IdentifierLockManager {
+    private static final Log logLeaseLockManager =
+        LogFactory.getLog(LeaseFileIdentifierLockManager.class);
+    private static final ScheduledExecutorService leaseRenewer =
+        Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread renewer = new Thread(runnable, "hashstore-lease-renewer");
+            renewer.setDaemon(true);
+            return renewer;
+        });
+    public static final long DEFAULT_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MIN_POLL_MILLIS = 5;
+    private static final long MAX_POLL_MILLIS = 100;
+    private final String name;
+    private final Path leaseDirectory;
+    private final IdentifierLockManager localLocks;
+    private final long leaseMillis;
+    private final String ownerToken;
+    private final Map<String, Path> heldLeases = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor to initialize a LeaseFileIdentifierLockManager
+     *
+     * @param name           Name of the identifiers being locked, used for logging
+     * @param leaseDirectory Directory shared by all processes to hold lease files
+     * @param localLocks     Lock manager that orders the threads of this JVM
+     * @param leaseMillis    Duration after which an un-renewed lease is considered stale
+     * @throws IOException If the lease directory cannot be created
+     */
+    public LeaseFileIdentifierLockManager(
+        String name, Path leaseDirectory, IdentifierLockManager localLocks, long leaseMillis)
+        throws IOException {
+        FileHashStoreUtility.ensureNotNull(name, "name");
+        FileHashStoreUtility.ensureNotNull(leaseDirectory, "leaseDirectory");
+        FileHashStoreUtility.ensureNotNull(localLocks, "localLocks");
+        FileHashStoreUtility.checkPositive(leaseMillis);
+        this.name = name;
+        this.leaseDirectory = leaseDirectory;
+        this.localLocks = localLocks;
+        this.leaseMillis = leaseMillis;
+        ownerToken = ProcessHandle.current().pid() + "-" + UUID.randomUUID();
+        Files.createDirectories(leaseDirectory);
+
+        // Renew often enough that a live lease never looks stale to another process
+        long renewMillis = Math.max(1, leaseMillis / 3);
+        leaseRenewer.scheduleWithFixedDelay(
+            this::renewHeldLeases, renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void lock(String id) throws InterruptedException {
+        localLocks.lock(id);
+        try {
+            long pollMillis = MIN_POLL_MILLIS;
+            while (!tryAcquireLease(id)) {
+                Thread.sleep(pollMillis);
+                pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+            }
+
+        } catch (InterruptedException ie) {
+            localLocks.unlock(id);
+            String errMsg =
+                "Synchronization has been interrupted while waiting for the lease of " + name + ": "
+                    + id;
+            logLeaseLockManager.warn(errMsg);
+            throw new InterruptedException(errMsg);
+
+        } catch (RuntimeException re) {
+            localLocks.unlock(id);
+            throw re;
+        }
+    }
+
+    @Override
+    public boolean tryLock(String id) {
+        if (!localLocks.tryLock(id)) {
+            return false;
+        }
+        boolean leaseAcquired = false;
+        try {
+            leaseAcquired = tryAcquireLease(id);
+            return leaseAcquired;
+
+        } finally {
+            if (!leaseAcquired) {
+                localLocks.unlock(id);
+            }
+        }
+    }
+
+    @Override
+    public boolean unlock(String id) {
+        if (!localLocks.isLocked(id)) {
+            return localLocks.unlock(id);
+        }
+        releaseLease(id);
+        return localLocks.unlock(id);
+    }
+
+    @Override
+    public boolean isLocked(String id) {
+        return localLocks.isLocked(id);
+    }
+
+    /**
+     * Attempt to create the lease file for an identifier, breaking it first if it is stale
+     *
+     * @param id Identifier to claim
+     * @return True if this process now holds the lease
+     * @throws IllegalStateException If the lease file cannot be created or inspected
+     */
+    private boolean tryAcquireLease(String id) {
+        Path leasePath = getLeasePath(id);
+        String leaseContent = ownerToken + "\n" + id + "\n";
+        try {
+            Files.write(leasePath, leaseContent.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            heldLeases.put(id, leasePath);
+            logLeaseLockManager.debug("Lease acquired for " + name + ": " + id);
+            return true;
+
+        } catch (FileAlreadyExistsException faee) {
+            breakLeaseIfStale(id, leasePath);
+            return false;
+
+        } catch (IOException ioe) {
+            String errMsg =
+                "Unable to create lease file: " + leasePath + " for " + name + ": " + id + ". "
+                    + ioe.getMessage();
+            logLeaseLockManager.error(errMsg);
+            throw new IllegalStateException(errMsg, ioe);
+        }
+    }
+
+    /**
+     * Break the lease of an identifier if it has not been renewed within the lease duration
+     */
+    private void breakLeaseIfStale(String id, Path leasePath) {
+        try {
+            String staleOwner = readLeaseOwner(leasePath);
+            if (getLeaseAge(leasePath) <= leaseMillis) {
+                return;
+            }
+            breakLease(id, leasePath, staleOwner);
+
+        } catch (NoSuchFileException nsfe) {
+            // The lease was released or broken by another process in the meantime
+            logLeaseLockManager.debug("Lease already released for " + name + ": " + id);
+
+        } catch (IOException ioe) {
+            logLeaseLockManager.warn(
+                "Unable to inspect lease: " + leasePath + " for " + name + ": " + id + ". "
+                    + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Break a lease that has been found stale. Leases are only ever deleted while holding the
+     * break lock of their identifier (a {@code CREATE_NEW} file next to the lease), and a new
+     * lease can only be created once the old one is gone. So while the break lock is held, the
+     * lease file checked here is the one that gets deleted: it is checked again, and only deleted
+     * if it still belongs to the stale owner and has still not been renewed.
+     *
+     * @param id         Identifier of the lease
+     * @param leasePath  Path of the lease file
+     * @param staleOwner Owner of the lease when it was found stale
+     * @return True if the stale lease has been broken, false if it has been renewed or replaced
+     *     in the meantime, or another process is busy with it
+     * @throws IOException If the lease cannot be inspected or deleted
+     */
+    boolean breakLease(String id, Path leasePath, String staleOwner) throws IOException {
+        Path breakLockPath = getBreakLockPath(leasePath);
+        if (!tryLockBreak(breakLockPath)) {
+            return false;
+        }
+        try {
+            long leaseAge = getLeaseAge(leasePath);
+            if (leaseAge <= leaseMillis || !staleOwner.equals(readLeaseOwner(leasePath))) {
+                logLeaseLockManager.debug(
+                    "Lease for " + name + ": " + id + " was renewed or claimed before it could"
+                        + " be broken.");
+                return false;
+            }
+            Files.delete(leasePath);
+            logLeaseLockManager.warn(
+                "Broke stale lease of " + staleOwner + " for " + name + ": " + id
+                    + " (not renewed for " + leaseAge + " ms)");
+            return true;
+
+        } finally {
+            Files.deleteIfExists(breakLockPath);
+        }
+    }
+
+    /**
+     * Claim the break lock of a lease. A break lock left behind by a process that died while
+     * holding it (it is only ever held for a few file operations) is deleted once it is older than
+     * the lease duration, so that the lease can be broken on a later attempt.
+     *
+     * @param breakLockPath Path of the break lock
+     * @return True if the break lock is now held by the caller
+     * @throws IOException If the break lock cannot be created or inspected
+     */
+    private boolean tryLockBreak(Path breakLockPath) throws IOException {
+        try {
+            Files.write(breakLockPath, ownerToken.getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return true;
+
+        } catch (FileAlreadyExistsException faee) {
+            try {
+                if (getLeaseAge(breakLockPath) > leaseMillis) {
+                    Files.deleteIfExists(breakLockPath);
+                    logLeaseLockManager.warn("Deleted stale break lock: " + breakLockPath);
+                }
+            } catch (NoSuchFileException nsfe) {
+                // The break lock was released in the meantime
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Delete the lease file of an identifier, as long as it still belongs to this process. The
+     * break lock is held while doing so, as a process breaking the lease at the same time could
+     * otherwise delete the next owner's lease.
+     */
+    private void releaseLease(String id) {
+        Path leasePath = heldLeases.remove(id);
+        if (leasePath == null) {
+            return;
+        }
+        Path breakLockPath = getBreakLockPath(leasePath);
+        boolean interrupted = false;
+        try {
+            // Unlocking cannot be interrupted, so an interrupt is only restored once released
+            long pollMillis = MIN_POLL_MILLIS;
+            while (!tryLockBreak(breakLockPath)) {
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+                pollMillis = Math.min(pollMillis * 2, MAX_POLL_MILLIS);
+            }
+            try {
+                if (ownerToken.equals(readLeaseOwner(leasePath))) {
+                    Files.delete(leasePath);
+                    logLeaseLockManager.debug("Lease released for " + name + ": " + id);
+                } else {
+                    logLeaseLockManager.error(
+                        "Lease for " + name + ": " + id + " was broken by another process while"
+                            + " it was held. Leaving the new owner's lease in place.");
+                }
+            } finally {
+                Files.deleteIfExists(breakLockPath);
+            }
+
+        } catch (NoSuchFileException nsfe) {
+            logLeaseLockManager.error(
+                "Lease for " + name + ": " + id + " was broken by another process while it was"
+                    + " held.");
+
+        } catch (IOException ioe) {
+            logLeaseLockManager.error(
+                "Unable to release lease: " + leasePath + " for " + name + ": " + id + ". "
+                    + ioe.getMessage());
+
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Touch every lease held by this process so that other processes do not consider it stale.
+     * A lease that now belongs to another process (as it was broken) is left as it is.
+     */
+    private void renewHeldLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Map.Entry<String, Path> heldLease : heldLeases.entrySet()) {
+            try {
+                if (ownerToken.equals(readLeaseOwner(heldLease.getValue()))) {
+                    Files.setLastModifiedTime(heldLease.getValue(), now);
+                } else {
+                    logLeaseLockManager.error(
+                        "Lease for " + name + ": " + heldLease.getKey() + " was broken by another"
+                            + " process while it was held. It is no longer renewed.");
+                }
+            } catch (NoSuchFileException nsfe) {
+                logLeaseLockManager.error(
+                    "Lease for " + name + ": " + heldLease.getKey() + " was broken by another"
+                        + " process while it was held. It is no longer renewed.");
+            } catch (IOException ioe) {
+                logLeaseLockManager.warn(
+                    "Unable to renew lease for " + name + ": " + heldLease.getKey() + ". "
+                        + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Owner token written on the first line of a lease file
+     */
+    private static String readLeaseOwner(Path leasePath) throws IOException {
+        String leaseContent = Files.readString(leasePath, StandardCharsets.UTF_8);
+        int ownerEnd = leaseContent.indexOf('\n');
+        return ownerEnd < 0 ? leaseContent : leaseContent.substring(0, ownerEnd);
+    }
+
+    /**
+     * @return Time since a lease file was last renewed, in milliseconds
+     */
+    private static long getLeaseAge(Path leasePath) throws IOException {
+        return System.currentTimeMillis() - Files.getLastModifiedTime(leasePath).toMillis();
+    }
+
+    /**
+     * @return Path of the break lock that guards the deletion of a lease file
+     */
+    private static Path getBreakLockPath(Path leasePath) {
+        return leasePath.resolveSibling(leasePath.getFileName() + ".breaking");
+    }
+
+    /**
+     * Lease files are named after the hash of the identifier, since identifiers may contain
+     * characters that are not valid in file names.
+     */
+    private Path getLeasePath(String id) {
+        try {
+            return leaseDirectory.resolve(FileHashStoreUtility.getPidHexDigest(id, "SHA-256"));
+        } catch (NoSuchAlgorithmException nsae) {
+            // SHA-256 is required to be supported by every Java platform
+            throw new IllegalStateException(nsae);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.ObjectMetadata;
+
+/**
+ * ObjectWriter stores a data object that is generated by the caller rather than read from an
+ * InputStream. Bytes written to it go to a tmp file and are hashed as they arrive, so the data
+ * object is never buffered in memory or read back. Callers that produce data into a
+ * {@code WritableByteChannel} can wrap the writer with {@code Channels.newChannel}.
+ *
+ * Closing the writer validates the data object, moves it to its permanent address and tags it with
+ * its pid, exactly as {@code storeObject} does, and throws the same exceptions. The pid is only
+ * claimed on close, so another caller may store the same pid while the data object is being
+ * written. If writing fails or {@link #abort()} is called, the tmp file is discarded and nothing is
+ * stored. An ObjectWriter must only be used by one thread at a time.
+ */
+public class ObjectWriter extends OutputStream {
+    private static final Log logObjectWriter = LogFactory.getLog(ObjectWriter.class);
+    private final FileHashStore fileHashStore;
+    private final File tmpFile;
+    private final String pid;
+    private final String additionalAlgorithm;
+    private final String checksum;
+    private final String checksumAlgorithm;
+    private final long objSize;
+    private final OutputStream tmpFileStream;
+    private final DigestPipeline digestPipeline;
+    private final byte[] singleByte = new byte[1];
+    private ObjectMetadata objectMetadata;
+    private boolean closed = false;
+
+    /**
+     * Constructor to initialize an ObjectWriter, see {@link FileHashStore#openObjectWriter}
+     *
+     * @param fileHashStore       Store to store the data object into
+     * @param tmpFile             Tmp file to write the data object into
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest to include in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate, or -1
+     * @param algorithms          Hash algorithms to calculate
+     * @throws NoSuchAlgorithmException If an algorithm is not supported
+     * @throws IOException              If the tmp file cannot be opened
+     */
+    ObjectWriter(
+        FileHashStore fileHashStore, File tmpFile, String pid, String additionalAlgorithm,
+        String checksum, String checksumAlgorithm, long objSize, Collection<String> algorithms)
+        throws NoSuchAlgorithmException, IOException {
+        this.fileHashStore = fileHashStore;
+        this.tmpFile = tmpFile;
+        this.pid = pid;
+        this.additionalAlgorithm = additionalAlgorithm;
+        this.checksum = checksum;
+        this.checksumAlgorithm = checksumAlgorithm;
+        this.objSize = objSize;
+        try {
+            digestPipeline = new DigestPipeline(algorithms);
+            tmpFileStream = new BufferedOutputStream(
+                new FileOutputStream(tmpFile), DigestPipeline.CHUNK_SIZE);
+        } catch (NoSuchAlgorithmException | IOException | RuntimeException e) {
+            Files.deleteIfExists(tmpFile.toPath());
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        ensureOpen();
+        try {
+            tmpFileStream.write(buffer, offset, length);
+            digestPipeline.update(buffer, offset, length);
+
+        } catch (InterruptedException ie) {
+            abort();
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while writing object for pid: " + pid;
+            logObjectWriter.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+
+        } catch (IOException | RuntimeException e) {
+            abort();
+            logObjectWriter.error(
+                "Unable to write object for pid: " + pid + ". " + e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        tmpFileStream.flush();
+    }
+
+    /**
+     * Store the written data object and tag it with the writer's pid, see
+     * {@link FileHashStore#storeObject(java.io.InputStream, String, String, String, String, long)}.
+     * The tmp file is discarded if the data object cannot be stored. Closing a writer that is
+     * already closed or aborted has no effect.
+     *
+     * @throws InterruptedIOException When storing the data object is interrupted
+     * @throws IOException            When the data object cannot be written, moved or tagged
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            tmpFileStream.close();
+            Map<String, String> hexDigests = digestPipeline.finish();
+            objectMetadata = fileHashStore.storeTmpObject(
+                tmpFile, pid, additionalAlgorithm, checksum, checksumAlgorithm, objSize,
+                hexDigests);
+
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while storing object for pid: " + pid;
+            logObjectWriter.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+
+        } catch (NoSuchAlgorithmException nsae) {
+            String errMsg = "Unable to store object for pid: " + pid + ". " + nsae.getMessage();
+            logObjectWriter.error(errMsg);
+            throw new IOException(errMsg, nsae);
+
+        } finally {
+            digestPipeline.close();
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     * Discard everything written so far without storing it. Aborting a writer that is already
+     * closed or aborted has no effect.
+     *
+     * @throws IOException If the tmp file cannot be deleted
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            tmpFileStream.close();
+        } finally {
+            digestPipeline.close();
+            Files.deleteIfExists(tmpFile.toPath());
+            logObjectWriter.info("Object writer aborted for pid: " + pid);
+        }
+    }
+
+    /**
+     * @return ObjectMetadata of the stored data object, or null if the writer has not been closed
+     * or the data object could not be stored
+     */
+    public ObjectMetadata getObjectMetadata() {
+        return objectMetadata;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            String errMsg = "Object writer for pid: " + pid + " has been closed.";
+            logObjectWriter.error(errMsg);
+            throw new IOException(errMsg);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * PathResolver resolves pids, cids and metadata documents to their sharded paths in a store,
+ * without allocating more than the resulting strings and paths. Each thread hashes identifiers
+ * with its own pooled MessageDigest, encodes the digests to hex and shards them into reusable
+ * char buffers, and remembers the digests of the last few identifiers it hashed, since a single
+ * call (ex. {@code deleteObject}) typically resolves the same pid several times.
+ */
+public final class PathResolver {
+    private static final Log logPathResolver = LogFactory.getLog(PathResolver.class);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Identifiers whose digest is remembered by each thread
+    private static final int MEMO_SIZE = 4;
+    private final int depth;
+    private final int width;
+    private final String algorithm;
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * Digest, buffers and remembered digests of one thread
+     */
+    private static final class Scratch {
+        private final MessageDigest messageDigest;
+        private final char[] hexBuffer;
+        private final char[] pathBuffer;
+        private final String[] memoIds = new String[MEMO_SIZE];
+        private final String[] memoHexDigests = new String[MEMO_SIZE];
+        private int nextMemo = 0;
+
+        private Scratch(MessageDigest messageDigest, int depth) {
+            this.messageDigest = messageDigest;
+            this.hexBuffer = new char[messageDigest.getDigestLength() * 2];
+            this.pathBuffer = new char[hexBuffer.length + depth];
+        }
+    }
+
+    /**
+     * Constructor to initialize a PathResolver
+     *
+     * @param depth     Number of directories a digest is sharded into
+     * @param width     Width of each directory
+     * @param algorithm Algorithm used to hash pids and metadata document ids
+     * @throws NoSuchAlgorithmException If the algorithm is not supported
+     */
+    public PathResolver(int depth, int width, String algorithm) throws NoSuchAlgorithmException {
+        FileHashStoreUtility.ensureNotNull(algorithm, "algorithm");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(algorithm, "algorithm");
+        // Fail now rather than on the first identifier resolved by each thread
+        MessageDigest.getInstance(algorithm);
+        this.depth = depth;
+        this.width = width;
+        this.algorithm = algorithm;
+        this.scratch = ThreadLocal.withInitial(() -> {
+            try {
+                return new Scratch(MessageDigest.getInstance(this.algorithm), this.depth);
+            } catch (NoSuchAlgorithmException nsae) {
+                String errMsg = "Algorithm: " + this.algorithm + " is no longer available.";
+                logPathResolver.error(errMsg);
+                throw new IllegalStateException(errMsg, nsae);
+            }
+        });
+    }
+
+    /**
+     * Get the hex digest of an identifier, as {@link FileHashStoreUtility#getPidHexDigest} does
+     *
+     * @param id Pid, or pid and formatId of a metadata document
+     * @return Lowercase hex digest of the identifier
+     * @throws IllegalArgumentException If the identifier is null, empty or contains whitespace
+     */
+    public String getHexDigest(String id) {
+        FileHashStoreUtility.ensureNotNull(id, "id");
+        FileHashStoreUtility.checkForNotEmptyAndValidString(id, "id");
+        Scratch threadScratch = scratch.get();
+        for (int i = 0; i < MEMO_SIZE; i++) {
+            if (id.equals(threadScratch.memoIds[i])) {
+                return threadScratch.memoHexDigests[i];
+            }
+        }
+
+        byte[] digest = threadScratch.messageDigest.digest(id.getBytes(StandardCharsets.UTF_8));
+        char[] hexBuffer = threadScratch.hexBuffer;
+        for (int i = 0; i < digest.length; i++) {
+            hexBuffer[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hexBuffer[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        String hexDigest = new String(hexBuffer, 0, digest.length * 2);
+
+        threadScratch.memoIds[threadScratch.nextMemo] = id;
+        threadScratch.memoHexDigests[threadScratch.nextMemo] = hexDigest;
+        threadScratch.nextMemo = (threadScratch.nextMemo + 1) % MEMO_SIZE;
+        return hexDigest;
+    }
+
+    /**
+     * Get the sharded path of a digest (ex. a cid) in a directory
+     *
+     * @param directory Directory of the sharded paths
+     * @param digest    Digest to shard
+     * @return Path of the digest
+     */
+    public Path resolveDigest(Path directory, String digest) {
+        char[] pathBuffer = scratch.get().pathBuffer;
+        if (pathBuffer.length < digest.length() + depth) {
+            pathBuffer = new char[digest.length() + depth];
+        }
+        int length = shard(depth, width, digest, pathBuffer);
+        return directory.resolve(new String(pathBuffer, 0, length));
+    }
+
+    /**
+     * Get the sharded path of the digest of an identifier (ex. a pid) in a directory
+     *
+     * @param directory Directory of the sharded paths
+     * @param id        Identifier to hash and shard
+     * @return Path of the identifier
+     */
+    public Path resolveId(Path directory, String id) {
+        return resolveDigest(directory, getHexDigest(id));
+    }
+
+    /**
+     * Get the path of a metadata document, which is named after the digest of its pid and formatId
+     * in the sharded directory of its pid
+     *
+     * @param directory Metadata directory
+     * @param pid       Persistent or authority-based identifier
+     * @param formatId  Metadata formatId or namespace
+     * @return Path of the metadata document
+     */
+    public Path resolveMetadata(Path directory, String pid, String formatId) {
+        return resolveId(directory, pid).resolve(getHexDigest(pid + formatId));
+    }
+
+    /**
+     * Divide a digest into {@code depth} tokens of {@code width} characters followed by the rest
+     * of the digest, delimited by '/', skipping blank tokens
+     *
+     * @param depth  Number of directories
+     * @param width  Width of each directory
+     * @param digest Digest to shard
+     * @param out    Buffer of at least {@code digest.length() + depth} characters
+     * @return Length of the sharded digest in the buffer
+     */
+    static int shard(int depth, int width, String digest, char[] out) {
+        int digestLength = digest.length();
+        int length = 0;
+        int start = 0;
+        for (int i = 0; i <= depth && start < digestLength; i++) {
+            int end = i < depth ? Math.min(start + width, digestLength) : digestLength;
+            if (!isBlank(digest, start, end)) {
+                if (length > 0) {
+                    out[length++] = '/';
+                }
+                digest.getChars(start, end, out, length);
+                length += end - start;
+            }
+            start = end;
+        }
+        return length;
+    }
+
+    private static boolean isBlank(String string, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (string.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
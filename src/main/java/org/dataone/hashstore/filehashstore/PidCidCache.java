@@ -0,0 +1,164 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * PidCidCache holds the cid found in the pid refs file of recently resolved pids, so that
+ * resolving a hot pid to the permanent address of its data object does not hash the pid, stat
+ * and read its pid refs file every time. A hit does not touch the file system.
+ *
+ * The cache holds at most {@code maxEntries} pids; once full, arbitrary entries are evicted to
+ * make room. Entries are invalidated whenever a pid refs file is created or deleted. A lookup
+ * that misses records the cache's stamp before reading the pid refs file, and its result is only
+ * cached if no entry was invalidated in the meantime, so that a pid refs file read just before it
+ * was deleted is never cached after the invalidation.
+ *
+ * Stores opened at the same (canonical) store path within a JVM share one instance, so that a pid
+ * untagged or deleted through one of them is invalidated for all of them. As pid refs files can be
+ * changed by other processes in the 'shared' lock mode, the cache is disabled in that mode.
+ */
+final class PidCidCache {
+    private static final Log logPidCidCache = LogFactory.getLog(PidCidCache.class);
+    private static final Map<Path, PidCidCache> registry = new ConcurrentHashMap<>();
+    // Pids resolved by a store, about 200 bytes each
+    static final int DEFAULT_MAX_ENTRIES = 100_000;
+    private final int maxEntries;
+    private final Map<String, String> cidsByPid = new ConcurrentHashMap<>();
+    private final AtomicLong stamp = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Constructor to initialize a PidCidCache. Stores use {@link #forStoreRoot(Path)} instead, so
+     * that pids are invalidated for every store opened at the same root.
+     *
+     * @param maxEntries Amount of pids cached, the cache is disabled when 0
+     */
+    PidCidCache(int maxEntries) {
+        if (maxEntries < 0) {
+            String errMsg = "Max entries cannot be negative: " + maxEntries;
+            logPidCidCache.error(errMsg);
+            throw new IllegalArgumentException(errMsg);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get the cache of a given store root, creating it if this is the first store opened at the
+     * given path.
+     *
+     * @param storeRoot Root directory of a HashStore
+     * @return Cache shared by all stores opened at the given root
+     * @throws IOException If the canonical path of the store root cannot be resolved
+     */
+    static PidCidCache forStoreRoot(Path storeRoot) throws IOException {
+        FileHashStoreUtility.ensureNotNull(storeRoot, "storeRoot");
+        return registry.computeIfAbsent(
+            storeRoot.toRealPath(), root -> new PidCidCache(DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * @param pid Persistent or authority-based identifier
+     * @return Cid found in the pid refs file of the given pid, or null if it is not cached
+     */
+    String get(String pid) {
+        String cid = maxEntries == 0 ? null : cidsByPid.get(pid);
+        if (cid == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return cid;
+    }
+
+    /**
+     * @return Stamp to record before reading a pid refs file, to be passed to
+     *     {@link #put(String, String, long)}
+     */
+    long getStamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Cache the cid found in the pid refs file of a pid, unless an entry was invalidated since the
+     * given stamp was recorded
+     *
+     * @param pid       Persistent or authority-based identifier
+     * @param cid       Content identifier found in the pid refs file
+     * @param readStamp Stamp recorded before the pid refs file was read
+     */
+    void put(String pid, String cid, long readStamp) {
+        if (maxEntries == 0 || stamp.get() != readStamp) {
+            return;
+        }
+        if (cidsByPid.size() >= maxEntries) {
+            evict();
+        }
+        cidsByPid.put(pid, cid);
+        // An invalidation may have happened after the stamp was checked, in which case the
+        // invalidated entry may be the one just cached
+        if (stamp.get() != readStamp) {
+            cidsByPid.remove(pid, cid);
+        }
+    }
+
+    /**
+     * Invalidate a pid, whose pid refs file is about to be (or has been) created or deleted
+     *
+     * @param pid Persistent or authority-based identifier
+     */
+    void invalidate(String pid) {
+        stamp.incrementAndGet();
+        cidsByPid.remove(pid);
+    }
+
+    /**
+     * @return Amount of lookups that found their pid in the cache
+     */
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return Amount of lookups that did not find their pid in the cache
+     */
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return Amount of pids evicted to make room for others
+     */
+    long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return Amount of pids currently cached
+     */
+    int size() {
+        return cidsByPid.size();
+    }
+
+    /**
+     * Evict arbitrary entries until there is room for one more pid
+     */
+    private void evict() {
+        Iterator<String> pids = cidsByPid.keySet().iterator();
+        while (cidsByPid.size() >= maxEntries && pids.hasNext()) {
+            pids.next();
+            pids.remove();
+            evictionCount.increment();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+import org.dataone.hashstore.exceptions.CidNotFoundInPidRefsFileException;
+import org.dataone.hashstore.exceptions.PidNotFoundInCidRefsFileException;
+
+/**
+ * RefsBackend holds the references between pids and cids: the cid that each pid references (its
+ * 'pid refs'), and the pids that reference each cid (its 'cid refs'). FileHashStore coordinates
+ * access to refs with its identifier locks, so callers must hold the locks of the pids and cids
+ * whose refs they read or update.
+ *
+ * With the 'files' refs mode (the default), refs are stored in a file per pid and per cid under
+ * '/refs' ({@link FileRefsBackend}). With the 'index' refs mode, they are stored in an embedded
+ * index under '/refs/index' ({@link IndexRefsBackend}).
+ */
+interface RefsBackend {
+
+    /**
+     * @param pid Persistent or authority-based identifier
+     * @return Cid referenced by the pid, or null if the pid has no pid refs
+     * @throws IOException              If the pid refs cannot be read
+     * @throws NoSuchAlgorithmException If the location of the pid refs cannot be calculated
+     */
+    String getCid(String pid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * @param cid Content identifier
+     * @return True if the cid has cid refs
+     * @throws IOException              If the cid refs cannot be read
+     * @throws NoSuchAlgorithmException If the location of the cid refs cannot be calculated
+     */
+    boolean hasCid(String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * @param cid Content identifier
+     * @param pid Persistent or authority-based identifier
+     * @return True if the pid is found in the cid refs of the cid
+     * @throws IOException              If the cid refs cannot be read
+     * @throws NoSuchAlgorithmException If the location of the cid refs cannot be calculated
+     */
+    boolean hasPid(String cid, String pid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Create the pid refs of a pid, and add the pid to the cid refs of a cid (creating them if
+     * needed). The pid must not have pid refs yet.
+     *
+     * @param pid Persistent or authority-based identifier
+     * @param cid Content identifier
+     * @throws IOException              If the refs cannot be written
+     * @throws NoSuchAlgorithmException If the location of the refs cannot be calculated
+     */
+    void tag(String pid, String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Create the pid refs of many pids, and add the pids to the cid refs of a cid with a single
+     * update (creating them if needed). The pids must not have pid refs yet.
+     *
+     * @param pids Persistent or authority-based identifiers to reference the cid
+     * @param cid  Content identifier
+     * @throws IOException              If the refs cannot be written
+     * @throws NoSuchAlgorithmException If the location of the refs cannot be calculated
+     */
+    void tagAll(Collection<String> pids, String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Confirm that a pid references a cid, and that the pid is found in the cid refs of the cid
+     *
+     * @param pid Persistent or authority-based identifier
+     * @param cid Content identifier
+     * @throws FileNotFoundException             If the pid refs or cid refs are missing
+     * @throws CidNotFoundInPidRefsFileException If the pid references another cid
+     * @throws PidNotFoundInCidRefsFileException If the pid is not found in the cid refs
+     * @throws IOException                       If the refs cannot be read
+     * @throws NoSuchAlgorithmException          If the location of the refs cannot be calculated
+     */
+    void verify(String pid, String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Remove the pid from the cid refs of a cid, then delete the pid refs of the pid
+     *
+     * @param pid Persistent or authority-based identifier
+     * @param cid Content identifier
+     * @return True if no pid references the cid anymore, in which case the cid refs can be
+     *     deleted with {@link #deleteCid(String)}
+     * @throws IOException              If the refs cannot be updated
+     * @throws NoSuchAlgorithmException If the location of the refs cannot be calculated
+     */
+    boolean untag(String pid, String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Remove many pids from the cid refs of a cid with a single update, then delete the pid refs
+     * of each pid
+     *
+     * @param pids Persistent or authority-based identifiers referencing the cid
+     * @param cid  Content identifier
+     * @return True if no pid references the cid anymore, in which case the cid refs can be
+     *     deleted with {@link #deleteCid(String)}
+     * @throws IOException              If the refs cannot be updated
+     * @throws NoSuchAlgorithmException If the location of the refs cannot be calculated
+     */
+    boolean untagAll(Collection<String> pids, String cid)
+        throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Remove a pid from the cid refs of a cid, if it is found there
+     *
+     * @param cid Content identifier
+     * @param pid Persistent or authority-based identifier
+     * @return True if no pid references the cid anymore
+     * @throws IOException              If the cid refs cannot be updated
+     * @throws NoSuchAlgorithmException If the location of the cid refs cannot be calculated
+     */
+    boolean removePid(String cid, String pid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Delete the pid refs of a pid, if any
+     *
+     * @param pid Persistent or authority-based identifier
+     * @throws IOException              If the pid refs cannot be deleted
+     * @throws NoSuchAlgorithmException If the location of the pid refs cannot be calculated
+     */
+    void deletePid(String pid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Delete the cid refs of a cid, if any
+     *
+     * @param cid Content identifier
+     * @throws IOException              If the cid refs cannot be deleted
+     * @throws NoSuchAlgorithmException If the location of the cid refs cannot be calculated
+     */
+    void deleteCid(String cid) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * @param id     Persistent, authority-based or content identifier
+     * @param idType {@link FileHashStore.HashStoreIdTypes}
+     * @return Path where the refs of the identifier are stored
+     * @throws NoSuchAlgorithmException If the location of the refs cannot be calculated
+     */
+    Path getRefsPath(String id, FileHashStore.HashStoreIdTypes idType)
+        throws NoSuchAlgorithmException;
+}
@@ -0,0 +1,326 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * RefsFile reads refs files (ex. cid refs files), and updates them without rewriting them in
+ * stores with the 'appendable' refs format. A refs file is a list of lines: a line holding a ref
+ * adds the ref, and a line holding {@code "- "} followed by a ref (a tombstone) removes it. Adding
+ * or removing a ref appends a single line, so that tagging a cid referenced by many pids no longer
+ * rewrites the whole file every time.
+ *
+ * Refs files written before tombstones existed are lists of refs, and are read as is. Once many
+ * lines have been appended, or enough of them are tombstones, a refs file is compacted: its live
+ * refs are sorted and written to a new file. If there are many of them, the new file starts with
+ * an index header ({@code "#hashstore-refs sorted=<bytes> refs=<count>"}), which allows looking
+ * up a ref in the sorted section with a binary search instead of reading the whole file. Refs
+ * cannot contain whitespace, so neither a tombstone nor the header can be mistaken for a ref.
+ *
+ * Callers must hold the lock of the identifier whose refs file is read or updated.
+ */
+final class RefsFile {
+    static final String HEADER_PREFIX = "#hashstore-refs ";
+    static final String TOMBSTONE_PREFIX = "- ";
+    // Compacted refs files with at least this many refs start with an index header
+    static final int INDEXED_REFS_THRESHOLD = 64;
+    // A refs file is compacted once this many lines have been appended since it was written
+    static final int MAX_APPENDED_LINES = 1024;
+    // A refs file is compacted once this fraction of its refs are removed...
+    static final double COMPACTION_RATIO = 0.5;
+    // ... and it holds at least this many tombstones
+    static final int MIN_COMPACTED_TOMBSTONES = 16;
+    private static final int READ_SIZE = 1024;
+
+    private RefsFile() {
+    }
+
+    /**
+     * Live refs, tombstones and lines appended since a refs file was written
+     */
+    record Summary(int liveRefs, int tombstones, int appendedLines) {
+        /**
+         * @return True if the refs file has enough tombstones to be compacted
+         */
+        boolean hasManyTombstones() {
+            return tombstones >= MIN_COMPACTED_TOMBSTONES
+                && tombstones > (liveRefs + tombstones) * COMPACTION_RATIO;
+        }
+
+        /**
+         * @return True if the refs file has had too many lines appended to be read efficiently
+         */
+        boolean hasManyAppendedLines() {
+            return appendedLines > MAX_APPENDED_LINES;
+        }
+    }
+
+    /**
+     * Layout of a refs file: its sorted section (if it has an index header), and the lines
+     * appended after it, in order
+     */
+    private record Layout(long sortedStart, long sortedEnd, int sortedRefs,
+                          List<String> appendedLines) {
+        Summary summarize() {
+            int adds = 0;
+            int tombstones = 0;
+            for (String line : appendedLines) {
+                if (line.startsWith(TOMBSTONE_PREFIX)) {
+                    tombstones++;
+                } else {
+                    adds++;
+                }
+            }
+            // Refs are only added when absent and removed when present
+            return new Summary(sortedRefs + adds - tombstones, tombstones, appendedLines.size());
+        }
+    }
+
+    /**
+     * @param channel Channel of the refs file
+     * @param ref     Ref to look up
+     * @return True if the ref is in the refs file
+     * @throws IOException If the refs file cannot be read
+     */
+    static boolean contains(FileChannel channel, String ref) throws IOException {
+        return contains(channel, readLayout(channel), ref);
+    }
+
+    /**
+     * @param refsPath Path of a refs file
+     * @param ref      Ref to look up
+     * @return True if the ref is in the refs file
+     * @throws IOException If the refs file cannot be read
+     */
+    static boolean contains(Path refsPath, String ref) throws IOException {
+        try (FileChannel channel = FileChannel.open(refsPath)) {
+            return contains(channel, ref);
+        }
+    }
+
+    /**
+     * Add a ref to a refs file, unless it is already there
+     *
+     * @param channel Channel of the refs file, opened for reading and writing
+     * @param ref     Ref to add
+     * @return Summary of the refs file after the update, or null if the ref was already there
+     * @throws IOException If the refs file cannot be read or written
+     */
+    static Summary add(FileChannel channel, String ref) throws IOException {
+        Layout layout = readLayout(channel);
+        if (contains(channel, layout, ref)) {
+            return null;
+        }
+        append(channel, ref);
+        layout.appendedLines().add(ref);
+        return layout.summarize();
+    }
+
+    /**
+     * Remove a ref from a refs file, if it is there. The refs file is emptied when its last ref
+     * is removed.
+     *
+     * @param channel Channel of the refs file, opened for reading and writing
+     * @param ref     Ref to remove
+     * @return Summary of the refs file after the update, or null if the ref was not there
+     * @throws IOException If the refs file cannot be read or written
+     */
+    static Summary remove(FileChannel channel, String ref) throws IOException {
+        Layout layout = readLayout(channel);
+        if (!contains(channel, layout, ref)) {
+            return null;
+        }
+        if (layout.summarize().liveRefs() <= 1) {
+            channel.truncate(0);
+            return new Summary(0, 0, 0);
+        }
+        append(channel, TOMBSTONE_PREFIX + ref);
+        layout.appendedLines().add(TOMBSTONE_PREFIX + ref);
+        return layout.summarize();
+    }
+
+    /**
+     * @param channel Channel of the refs file
+     * @return Live refs of the refs file, sorted
+     * @throws IOException If the refs file cannot be read
+     */
+    static List<String> readRefs(FileChannel channel) throws IOException {
+        Layout layout = readLayout(channel);
+        TreeSet<String> refs = new TreeSet<>(
+            splitLines(read(channel, layout.sortedStart(), layout.sortedEnd())));
+        for (String line : layout.appendedLines()) {
+            if (line.startsWith(TOMBSTONE_PREFIX)) {
+                refs.remove(line.substring(TOMBSTONE_PREFIX.length()));
+            } else {
+                refs.add(line);
+            }
+        }
+        return new ArrayList<>(refs);
+    }
+
+    /**
+     * Write the compacted content of a refs file holding the given refs
+     *
+     * @param tmpPath Path of the file to write, which replaces the refs file once written
+     * @param refs    Sorted live refs
+     * @throws IOException If the file cannot be written
+     */
+    static void writeCompacted(Path tmpPath, List<String> refs) throws IOException {
+        StringBuilder sortedSection = new StringBuilder();
+        for (String ref : refs) {
+            sortedSection.append(ref).append('\n');
+        }
+        String header = "";
+        if (refs.size() >= INDEXED_REFS_THRESHOLD) {
+            int sortedBytes = sortedSection.toString().getBytes(StandardCharsets.UTF_8).length;
+            header = HEADER_PREFIX + "sorted=" + sortedBytes + " refs=" + refs.size() + "\n";
+        }
+        Files.writeString(tmpPath, header + sortedSection, StandardCharsets.UTF_8);
+    }
+
+    private static boolean contains(FileChannel channel, Layout layout, String ref)
+        throws IOException {
+        // The last appended line about the ref decides
+        String tombstone = TOMBSTONE_PREFIX + ref;
+        List<String> appendedLines = layout.appendedLines();
+        for (int i = appendedLines.size() - 1; i >= 0; i--) {
+            String line = appendedLines.get(i);
+            if (line.equals(ref)) {
+                return true;
+            } else if (line.equals(tombstone)) {
+                return false;
+            }
+        }
+        return binarySearch(channel, layout.sortedStart(), layout.sortedEnd(), ref);
+    }
+
+    private static boolean binarySearch(FileChannel channel, long start, long end, String ref)
+        throws IOException {
+        long low = start;
+        long high = end;
+        while (low < high) {
+            long lineStart = findLineStart(channel, low, (low + high) >>> 1);
+            byte[] lineBytes = readLine(channel, lineStart, high);
+            int comparison = new String(lineBytes, StandardCharsets.UTF_8).compareTo(ref);
+            if (comparison == 0) {
+                return true;
+            } else if (comparison < 0) {
+                low = lineStart + lineBytes.length + 1;
+            } else {
+                high = lineStart;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the start of the line holding the byte at the given position, no earlier than low
+     */
+    private static long findLineStart(FileChannel channel, long low, long position)
+        throws IOException {
+        long lineStart = position;
+        while (lineStart > low) {
+            long readStart = Math.max(low, lineStart - READ_SIZE);
+            byte[] bytes = read(channel, readStart, lineStart);
+            for (int i = bytes.length - 1; i >= 0; i--) {
+                if (bytes[i] == '\n') {
+                    return readStart + i + 1;
+                }
+            }
+            lineStart = readStart;
+        }
+        return low;
+    }
+
+    /**
+     * Read the line starting at the given position, without its line feed
+     */
+    private static byte[] readLine(FileChannel channel, long lineStart, long end)
+        throws IOException {
+        long readEnd = lineStart;
+        while (readEnd < end) {
+            readEnd = Math.min(end, readEnd + READ_SIZE);
+            byte[] bytes = read(channel, lineStart, readEnd);
+            for (int i = Math.max(0, bytes.length - READ_SIZE); i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    byte[] line = new byte[i];
+                    System.arraycopy(bytes, 0, line, 0, i);
+                    return line;
+                }
+            }
+        }
+        return read(channel, lineStart, end);
+    }
+
+    private static Layout readLayout(FileChannel channel) throws IOException {
+        long size = channel.size();
+        byte[] firstBytes = read(channel, 0, Math.min(size, READ_SIZE));
+        String firstLine = new String(firstBytes, StandardCharsets.UTF_8);
+        if (!firstLine.startsWith(HEADER_PREFIX) || firstLine.indexOf('\n') < 0) {
+            // Without an index header, every line is an appended line
+            return new Layout(0, 0, 0, splitLines(read(channel, 0, size)));
+        }
+        String header = firstLine.substring(0, firstLine.indexOf('\n'));
+        Map<String, Long> fields = new LinkedHashMap<>();
+        for (String field : header.substring(HEADER_PREFIX.length()).split(" ")) {
+            int separator = field.indexOf('=');
+            if (separator > 0) {
+                fields.put(
+                    field.substring(0, separator), Long.parseLong(field.substring(separator + 1)));
+            }
+        }
+        Long sortedBytes = fields.get("sorted");
+        Long sortedRefs = fields.get("refs");
+        long sortedStart = header.getBytes(StandardCharsets.UTF_8).length + 1;
+        if (sortedBytes == null || sortedRefs == null || sortedStart + sortedBytes > size) {
+            throw new IOException("Invalid refs file header: " + header);
+        }
+        long sortedEnd = sortedStart + sortedBytes;
+        return new Layout(sortedStart, sortedEnd, sortedRefs.intValue(),
+                          splitLines(read(channel, sortedEnd, size)));
+    }
+
+    private static void append(FileChannel channel, String line) throws IOException {
+        long size = channel.size();
+        // Refs files written with a single ref do not end with a line feed
+        boolean endsWithLineFeed = size == 0 || read(channel, size - 1, size)[0] == '\n';
+        String record = (endsWithLineFeed ? "" : "\n") + line + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        long position = size;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static List<String> splitLines(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] read(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        long position = start;
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) {
+                break;
+            }
+            position += bytesRead;
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,733 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * RefsIndex is an embedded log-structured merge index from keys to values (both strings), kept in
+ * a single directory. It holds the refs of a store with the 'index' refs mode (see
+ * {@link IndexRefsBackend}).
+ *
+ * Keys are updated in batches. A batch is appended to a write-ahead log as a single checksummed
+ * record, so after a crash either all of its updates are replayed or none are, and then applied
+ * to an in-memory sorted table (the memtable). Once the memtable holds enough keys, it is written
+ * to an immutable sorted table file and the log is emptied. A lookup checks the memtable, then the
+ * tables from the newest to the oldest, reading at most one block of each table: the block is
+ * found through a sparse index of every 128th key of the table, which is held in memory. Deleted
+ * keys are kept as tombstones until the tables are merged, which happens in the background once
+ * there are more than four tables.
+ *
+ * The tables in use are listed, from the newest to the oldest, in a manifest that is replaced
+ * atomically, so a table left behind by a flush or a merge that did not complete is deleted when
+ * the index is opened. As the memtable is held in memory, stores opened at the same (canonical)
+ * store path within a JVM share one instance, and the index cannot be used with the 'shared' lock
+ * mode.
+ */
+final class RefsIndex {
+    private static final Log logRefsIndex = LogFactory.getLog(RefsIndex.class);
+    private static final Map<Path, RefsIndex> registry = new ConcurrentHashMap<>();
+    // The memtable is written to a table once it holds this many keys
+    static final int DEFAULT_MEMTABLE_SIZE = 100_000;
+    // Tables are merged once there are more than this many
+    static final int MAX_TABLES = 4;
+    // Every n-th key of a table is held in memory to find the block holding a key
+    static final int INDEX_INTERVAL = 128;
+    static final String WAL_NAME = "wal.log";
+    static final String MANIFEST_NAME = "manifest";
+    static final String TABLE_SUFFIX = ".sst";
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final long TABLE_MAGIC = 0x6873696478746162L;
+    // Position of the sparse index, number of keys in it, magic number
+    private static final int TABLE_FOOTER_LENGTH = 8 + 4 + 8;
+    // Length of the batch, checksum of the batch
+    private static final int WAL_HEADER_LENGTH = 4 + 4;
+    private final Path indexDirectory;
+    private final Path walPath;
+    private final DurabilityCommitter durabilityCommitter;
+    private final int memtableSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong nextTableId = new AtomicLong();
+    private final AtomicBoolean merging = new AtomicBoolean(false);
+    private final FileChannel wal;
+    private TreeMap<String, Entry> memtable = new TreeMap<>();
+    // Newest first
+    private List<Table> tables = new ArrayList<>();
+    private long walSize;
+
+    /**
+     * Value of a key, which is null if the key was deleted (a tombstone)
+     */
+    private record Entry(String value) {
+        boolean isDeleted() {
+            return value == null;
+        }
+    }
+
+    /**
+     * An immutable sorted table file, along with its sparse index
+     */
+    private static final class Table {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final long dataLength;
+        private final String[] indexKeys;
+        private final long[] indexPositions;
+
+        private Table(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size < TABLE_FOOTER_LENGTH) {
+                channel.close();
+                throw new IOException("Table is too short: " + path);
+            }
+            ByteBuffer footer = read(channel, size - TABLE_FOOTER_LENGTH, TABLE_FOOTER_LENGTH);
+            dataLength = footer.getLong();
+            int indexCount = footer.getInt();
+            if (footer.getLong() != TABLE_MAGIC || dataLength < 0
+                || dataLength > size - TABLE_FOOTER_LENGTH) {
+                channel.close();
+                throw new IOException("Invalid table footer: " + path);
+            }
+            ByteBuffer index = read(
+                channel, dataLength, (int) (size - TABLE_FOOTER_LENGTH - dataLength));
+            indexKeys = new String[indexCount];
+            indexPositions = new long[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                indexKeys[i] = readString(index);
+                indexPositions[i] = index.getLong();
+            }
+        }
+
+        /**
+         * @return Entry of the key, or null if the table does not hold the key
+         */
+        private Entry get(String key) throws IOException {
+            int block = floorBlock(key);
+            if (block < 0) {
+                return null;
+            }
+            ByteBuffer records = readBlock(block);
+            while (records.hasRemaining()) {
+                byte type = records.get();
+                String recordKey = readString(records);
+                String value = type == PUT ? readString(records) : null;
+                int comparison = recordKey.compareTo(key);
+                if (comparison == 0) {
+                    return new Entry(value);
+                } else if (comparison > 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Add the entries of the keys starting with the prefix to the given map
+         */
+        private void scan(String prefix, Map<String, Entry> entries) throws IOException {
+            for (int block = Math.max(0, floorBlock(prefix)); block < indexKeys.length; block++) {
+                ByteBuffer records = readBlock(block);
+                while (records.hasRemaining()) {
+                    byte type = records.get();
+                    String recordKey = readString(records);
+                    String value = type == PUT ? readString(records) : null;
+                    if (recordKey.startsWith(prefix)) {
+                        entries.put(recordKey, new Entry(value));
+                    } else if (recordKey.compareTo(prefix) > 0) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return Index of the last block whose first key is at most the given key, or -1
+         */
+        private int floorBlock(String key) {
+            int low = 0;
+            int high = indexKeys.length - 1;
+            int floor = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (indexKeys[middle].compareTo(key) <= 0) {
+                    floor = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return floor;
+        }
+
+        private ByteBuffer readBlock(int block) throws IOException {
+            long end = block + 1 < indexPositions.length ? indexPositions[block + 1] : dataLength;
+            return read(channel, indexPositions[block], (int) (end - indexPositions[block]));
+        }
+    }
+
+    /**
+     * Reads the records of a table in order, for merging
+     */
+    private static final class TableCursor implements Closeable {
+        private final int rank;
+        private final DataInputStream records;
+        private final long dataLength;
+        private long position;
+        private String key;
+        private Entry entry;
+
+        private TableCursor(Table table, int rank) throws IOException {
+            this.rank = rank;
+            this.dataLength = table.dataLength;
+            this.records = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(table.path), 64 * 1024));
+        }
+
+        /**
+         * @return True if the cursor moved to the next record, false at the end of the table
+         */
+        private boolean next() throws IOException {
+            if (position >= dataLength) {
+                return false;
+            }
+            byte type = records.readByte();
+            byte[] keyBytes = new byte[records.readInt()];
+            records.readFully(keyBytes);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            position += 1 + 4 + keyBytes.length;
+            String value = null;
+            if (type == PUT) {
+                byte[] valueBytes = new byte[records.readInt()];
+                records.readFully(valueBytes);
+                value = new String(valueBytes, StandardCharsets.UTF_8);
+                position += 4 + valueBytes.length;
+            }
+            entry = new Entry(value);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+        }
+    }
+
+    /**
+     * Writes the records of a table in key order, followed by its sparse index and footer
+     */
+    private static final class TableWriter implements Closeable {
+        private final DataOutputStream records;
+        private final List<String> indexKeys = new ArrayList<>();
+        private final List<Long> indexPositions = new ArrayList<>();
+        private long position;
+        private long count;
+
+        private TableWriter(Path path) throws IOException {
+            this.records = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+        }
+
+        private void add(String key, Entry entry) throws IOException {
+            if (count++ % INDEX_INTERVAL == 0) {
+                indexKeys.add(key);
+                indexPositions.add(position);
+            }
+            records.writeByte(entry.isDeleted() ? DELETE : PUT);
+            position += 1 + writeString(records, key);
+            if (!entry.isDeleted()) {
+                position += writeString(records, entry.value());
+            }
+        }
+
+        private void finish() throws IOException {
+            for (int i = 0; i < indexKeys.size(); i++) {
+                writeString(records, indexKeys.get(i));
+                records.writeLong(indexPositions.get(i));
+            }
+            records.writeLong(position);
+            records.writeInt(indexKeys.size());
+            records.writeLong(TABLE_MAGIC);
+            records.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.close();
+        }
+    }
+
+    /**
+     * Constructor to initialize a RefsIndex, which opens the tables of its manifest and replays
+     * its write-ahead log. Stores use {@link #forStoreRoot(Path, Path, DurabilityCommitter)}
+     * instead, so that an index directory is only opened once per JVM.
+     *
+     * @param indexDirectory      Directory of the index
+     * @param durabilityCommitter Flushes the log and tables to disk as the store's durability
+     *                            mode requires
+     * @param memtableSize        Number of keys at which the memtable is written to a table
+     * @throws IOException If the index cannot be opened or its log cannot be replayed
+     */
+    RefsIndex(Path indexDirectory, DurabilityCommitter durabilityCommitter, int memtableSize)
+        throws IOException {
+        this.indexDirectory = indexDirectory;
+        this.walPath = indexDirectory.resolve(WAL_NAME);
+        this.durabilityCommitter = durabilityCommitter;
+        this.memtableSize = memtableSize;
+        Files.createDirectories(indexDirectory);
+        loadTables();
+        wal = FileChannel.open(
+            walPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        replayWal();
+        logRefsIndex.debug(
+            "Opened refs index: " + indexDirectory + " with " + tables.size() + " tables and "
+                + memtable.size() + " keys replayed from its log");
+        if (tables.size() > MAX_TABLES) {
+            mergeInBackground();
+        }
+    }
+
+    /**
+     * Get the refs index of a given store root, opening it if this is the first store opened at
+     * the given path.
+     *
+     * @param storeRoot           Root directory of a HashStore
+     * @param indexDirectory      Directory of the index
+     * @param durabilityCommitter Flushes the log and tables to disk as the store's durability
+     *                            mode requires
+     * @return Refs index shared by all stores opened at the given root
+     * @throws IOException If the index cannot be opened
+     */
+    static RefsIndex forStoreRoot(
+        Path storeRoot, Path indexDirectory, DurabilityCommitter durabilityCommitter)
+        throws IOException {
+        FileHashStoreUtility.ensureNotNull(storeRoot, "storeRoot");
+        FileHashStoreUtility.ensureNotNull(indexDirectory, "indexDirectory");
+        try {
+            return registry.computeIfAbsent(storeRoot.toRealPath(), root -> {
+                logRefsIndex.debug("Opening refs index for store root: " + root);
+                try {
+                    return new RefsIndex(
+                        indexDirectory, durabilityCommitter, DEFAULT_MEMTABLE_SIZE);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * @param key Key to look up
+     * @return Value of the key, or null if the key is not in the index
+     * @throws IOException If a table cannot be read
+     */
+    String get(String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = memtable.get(key);
+            for (int i = 0; entry == null && i < tables.size(); i++) {
+                entry = tables.get(i).get(key);
+            }
+            return entry == null ? null : entry.value();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param prefix Prefix of the keys to look up
+     * @return Keys starting with the prefix and their values, in key order
+     * @throws IOException If a table cannot be read
+     */
+    SortedMap<String, String> scan(String prefix) throws IOException {
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            // Newer entries replace older ones
+            for (int i = tables.size() - 1; i >= 0; i--) {
+                tables.get(i).scan(prefix, entries);
+            }
+            for (Map.Entry<String, Entry> memtableEntry : memtable.tailMap(prefix, true)
+                .entrySet()) {
+                if (!memtableEntry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                entries.put(memtableEntry.getKey(), memtableEntry.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        SortedMap<String, String> values = new TreeMap<>();
+        entries.forEach((key, entry) -> {
+            if (!entry.isDeleted()) {
+                values.put(key, entry.value());
+            }
+        });
+        return values;
+    }
+
+    /**
+     * Apply a batch of updates atomically: after a crash, either all of them are found or none
+     * are. The caller must hold the locks of the identifiers of the keys.
+     *
+     * @param updates Values of the keys to put, or null for the keys to delete
+     * @throws IOException If the log or a table cannot be written
+     */
+    void write(Map<String, String> updates) throws IOException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        byte[] batch = encodeBatch(updates);
+        boolean mergeNeeded;
+        lock.writeLock().lock();
+        try {
+            appendToWal(batch);
+            updates.forEach((key, value) -> memtable.put(key, new Entry(value)));
+            if (memtable.size() >= memtableSize) {
+                flush();
+            }
+            mergeNeeded = tables.size() > MAX_TABLES;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        durabilityCommitter.commit(List.of(walPath));
+        if (mergeNeeded) {
+            mergeInBackground();
+        }
+    }
+
+    /**
+     * Merge all the tables into one, dropping deleted keys. Tables written while the merge is in
+     * progress are kept as they are.
+     *
+     * @throws IOException If a table cannot be read or written
+     */
+    synchronized void merge() throws IOException {
+        List<Table> mergedTables;
+        lock.readLock().lock();
+        try {
+            mergedTables = new ArrayList<>(tables);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (mergedTables.size() <= 1) {
+            return;
+        }
+        // The merged tables are the oldest tables, so tombstones no longer hide anything
+        Table merged = writeTable(mergedTables);
+
+        lock.writeLock().lock();
+        try {
+            // Tables are only added at the front, by flushes
+            List<Table> newTables =
+                new ArrayList<>(tables.subList(0, tables.size() - mergedTables.size()));
+            if (merged != null) {
+                newTables.add(merged);
+            }
+            writeManifest(newTables);
+            tables = newTables;
+            for (Table table : mergedTables) {
+                table.channel.close();
+                Files.deleteIfExists(table.path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logRefsIndex.debug(
+            "Merged " + mergedTables.size() + " tables of refs index: " + indexDirectory);
+    }
+
+    /**
+     * @return Number of table files
+     */
+    int getTableCount() {
+        lock.readLock().lock();
+        try {
+            return tables.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void mergeInBackground() {
+        if (!merging.compareAndSet(false, true)) {
+            return;
+        }
+        Thread mergeThread = new Thread(() -> {
+            try {
+                merge();
+            } catch (IOException ioe) {
+                logRefsIndex.warn("Unable to merge refs index tables. " + ioe.getMessage());
+            } finally {
+                merging.set(false);
+            }
+        }, "hashstore-refs-index-merge");
+        mergeThread.setDaemon(true);
+        mergeThread.start();
+    }
+
+    /**
+     * Write the memtable to a new table and empty the log. The caller must hold the write lock.
+     */
+    private void flush() throws IOException {
+        long tableId = nextTableId.getAndIncrement();
+        Path tablePath = getTablePath(tableId);
+        try (TableWriter writer = new TableWriter(tablePath)) {
+            for (Map.Entry<String, Entry> memtableEntry : memtable.entrySet()) {
+                writer.add(memtableEntry.getKey(), memtableEntry.getValue());
+            }
+            writer.finish();
+        }
+        durabilityCommitter.commit(List.of(tablePath));
+        List<Table> newTables = new ArrayList<>();
+        newTables.add(new Table(tableId, tablePath));
+        newTables.addAll(tables);
+        writeManifest(newTables);
+        tables = newTables;
+        memtable = new TreeMap<>();
+        wal.truncate(0);
+        walSize = 0;
+        logRefsIndex.debug("Flushed refs index memtable to table: " + tablePath);
+    }
+
+    /**
+     * Merge tables (newest first) into a new table, or return null if no key is left
+     */
+    private Table writeTable(List<Table> mergedTables) throws IOException {
+        long tableId = nextTableId.getAndIncrement();
+        Path tablePath = getTablePath(tableId);
+        List<TableCursor> cursors = new ArrayList<>();
+        PriorityQueue<TableCursor> queue = new PriorityQueue<>(
+            Comparator.comparing((TableCursor cursor) -> cursor.key)
+                .thenComparingInt(cursor -> cursor.rank));
+        boolean written = false;
+        try (TableWriter writer = new TableWriter(tablePath)) {
+            for (int rank = 0; rank < mergedTables.size(); rank++) {
+                TableCursor cursor = new TableCursor(mergedTables.get(rank), rank);
+                cursors.add(cursor);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            while (!queue.isEmpty()) {
+                // The newest table holding the key comes first
+                TableCursor newest = queue.poll();
+                String key = newest.key;
+                if (!newest.entry.isDeleted()) {
+                    writer.add(key, newest.entry);
+                    written = true;
+                }
+                if (newest.next()) {
+                    queue.add(newest);
+                }
+                while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                    TableCursor older = queue.poll();
+                    if (older.next()) {
+                        queue.add(older);
+                    }
+                }
+            }
+            writer.finish();
+        } finally {
+            for (TableCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+        if (!written) {
+            Files.delete(tablePath);
+            return null;
+        }
+        durabilityCommitter.commit(List.of(tablePath));
+        return new Table(tableId, tablePath);
+    }
+
+    private void writeManifest(List<Table> newTables) throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (Table table : newTables) {
+            manifest.append(table.id).append('\n');
+        }
+        Path manifestPath = indexDirectory.resolve(MANIFEST_NAME);
+        Path manifestTmpPath = indexDirectory.resolve(MANIFEST_NAME + ".tmp");
+        Files.writeString(manifestTmpPath, manifest, StandardCharsets.UTF_8);
+        durabilityCommitter.commit(List.of(manifestTmpPath));
+        Files.move(
+            manifestTmpPath, manifestPath, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        durabilityCommitter.commit(List.of(indexDirectory));
+    }
+
+    /**
+     * Open the tables listed in the manifest, and delete the tables that are not listed
+     */
+    private void loadTables() throws IOException {
+        List<Long> tableIds = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(indexDirectory.resolve(MANIFEST_NAME))) {
+                if (!line.isBlank()) {
+                    tableIds.add(Long.parseLong(line.trim()));
+                }
+            }
+        } catch (NoSuchFileException nsfe) {
+            logRefsIndex.debug("No manifest found in refs index: " + indexDirectory);
+        }
+        Set<Path> tablePaths = new HashSet<>();
+        for (long tableId : tableIds) {
+            Path tablePath = getTablePath(tableId);
+            tables.add(new Table(tableId, tablePath));
+            tablePaths.add(tablePath);
+            nextTableId.set(Math.max(nextTableId.get(), tableId + 1));
+        }
+        try (Stream<Path> paths = Files.list(indexDirectory)) {
+            for (Path path : paths.toList()) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TABLE_SUFFIX) && !tablePaths.contains(path)) {
+                    logRefsIndex.warn("Deleting refs index table not in manifest: " + path);
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the batches of the log to the memtable. A batch that is incomplete or does not match
+     * its checksum ends the log, and is truncated: it is where a crash leaves a partially
+     * written batch.
+     */
+    private void replayWal() throws IOException {
+        long size = wal.size();
+        long position = 0;
+        while (position < size) {
+            byte[] batch = null;
+            if (size - position >= WAL_HEADER_LENGTH) {
+                ByteBuffer header = read(wal, position, WAL_HEADER_LENGTH);
+                int batchLength = header.getInt();
+                int checksum = header.getInt();
+                if (batchLength >= 0 && batchLength <= size - position - WAL_HEADER_LENGTH) {
+                    batch = read(wal, position + WAL_HEADER_LENGTH, batchLength).array();
+                    CRC32 crc = new CRC32();
+                    crc.update(batch);
+                    if ((int) crc.getValue() != checksum) {
+                        batch = null;
+                    }
+                }
+            }
+            if (batch == null) {
+                logRefsIndex.warn(
+                    "Incomplete or corrupt batch at position: " + position + " of refs index log: "
+                        + walPath + ". Ignoring the rest of the log.");
+                wal.truncate(position);
+                break;
+            }
+            decodeBatch(batch);
+            position += WAL_HEADER_LENGTH + batch.length;
+        }
+        walSize = position;
+    }
+
+    private void appendToWal(byte[] batch) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(batch);
+        ByteBuffer record = ByteBuffer.allocate(WAL_HEADER_LENGTH + batch.length);
+        record.putInt(batch.length).putInt((int) crc.getValue()).put(batch).flip();
+        long position = walSize;
+        while (record.hasRemaining()) {
+            position += wal.write(record, position);
+        }
+        walSize = position;
+    }
+
+    private static byte[] encodeBatch(Map<String, String> updates) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        try (DataOutputStream batchStream = new DataOutputStream(batch)) {
+            batchStream.writeInt(updates.size());
+            for (Map.Entry<String, String> update : updates.entrySet()) {
+                batchStream.writeByte(update.getValue() == null ? DELETE : PUT);
+                writeString(batchStream, update.getKey());
+                if (update.getValue() != null) {
+                    writeString(batchStream, update.getValue());
+                }
+            }
+        }
+        return batch.toByteArray();
+    }
+
+    private void decodeBatch(byte[] batch) {
+        ByteBuffer updates = ByteBuffer.wrap(batch);
+        int count = updates.getInt();
+        for (int i = 0; i < count; i++) {
+            byte type = updates.get();
+            String key = readString(updates);
+            memtable.put(key, new Entry(type == PUT ? readString(updates) : null));
+        }
+    }
+
+    private Path getTablePath(long tableId) {
+        return indexDirectory.resolve(String.format("%012d", tableId) + TABLE_SUFFIX);
+    }
+
+    private static int writeString(DataOutputStream stream, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        stream.writeInt(bytes.length);
+        stream.write(bytes);
+        return 4 + bytes.length;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead == -1) {
+                throw new EOFException("Unexpected end of file at position: " + position);
+            }
+            position += bytesRead;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
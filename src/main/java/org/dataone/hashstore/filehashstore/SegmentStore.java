@@ -0,0 +1,625 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * SegmentStore packs small data objects into large, append-only segment files under
+ * '/objects/segments', instead of storing each one in its own file and sharded directories. A
+ * packed data object is stored with a single append to the active segment, and read back with a
+ * single positioned read, through an in-memory index from its permanent address to its location.
+ *
+ * Segments are logs of records: storing a data object appends a 'put' record holding its
+ * permanent address and content, and deleting it appends a 'delete' record (tombstone). The index
+ * is rebuilt by replaying the segments in order when the store is opened, and a record that was
+ * only partially written before a crash is truncated from the end of the last segment. A corrupt
+ * record in any other segment hides the rest of that segment, which is then left untouched (and
+ * never compacted) so that the data objects it holds can still be recovered by hand. Once
+ * enough of a segment is taken by deleted data objects and tombstones, it is compacted in the
+ * background: its live records are appended to the active segment and the segment is deleted.
+ *
+ * Each segment is read and appended to through one channel shared by every thread. A thread that
+ * is interrupted while using it closes the channel for everyone, so a closed channel is reopened
+ * (unless its segment has been compacted) and the read or append is retried.
+ *
+ * As the index is held in memory, stores opened at the same (canonical) store path within a JVM
+ * share one instance, and packing cannot be used with the 'shared' lock mode.
+ */
+final class SegmentStore {
+    private static final Log logSegmentStore = LogFactory.getLog(SegmentStore.class);
+    private static final Map<Path, SegmentStore> registry = new ConcurrentHashMap<>();
+    // Data objects up to this size are packed into segments
+    static final int PACKED_OBJECT_THRESHOLD = 64 * 1024;
+    // A segment is no longer appended to once it reaches this size
+    static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    // A segment is compacted once this fraction of it is taken by deleted records
+    static final double COMPACTION_RATIO = 0.5;
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final byte PUT_RECORD = 1;
+    private static final byte DELETE_RECORD = 2;
+    // Record type, length of the address, length of the content
+    private static final int RECORD_HEADER_LENGTH = 1 + 2 + 4;
+    private static final int RECORD_CRC_LENGTH = 4;
+    private final Path segmentDirectory;
+    private final Path objectDirectory;
+    private final DurabilityCommitter durabilityCommitter;
+    private final long segmentSize;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private volatile Segment activeSegment;
+
+    /**
+     * Location of the content of a packed data object
+     */
+    private record Location(long segmentId, long recordPosition, int recordLength,
+                            int contentLength) {
+        long contentPosition(int addressLength) {
+            return recordPosition + RECORD_HEADER_LENGTH + addressLength;
+        }
+    }
+
+    /**
+     * A segment file, along with the number of its bytes taken by deleted records
+     */
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final AtomicLong deadBytes = new AtomicLong();
+        private volatile FileChannel channel;
+        private volatile long size;
+        // Set when the segment holds a corrupt record, after which it is never compacted
+        private volatile boolean corrupt;
+        // Set once the segment has been compacted, after which its channel is not reopened
+        private volatile boolean retired;
+
+        private Segment(long id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = openChannel(path);
+            this.size = channel.size();
+        }
+
+        /**
+         * Reopen the channel of the segment if it has been closed (ex. by an interrupted thread)
+         *
+         * @return True if the channel is open, false if the segment has been compacted
+         * @throws IOException If the segment cannot be opened
+         */
+        private synchronized boolean reopen() throws IOException {
+            if (retired) {
+                return false;
+            }
+            if (!channel.isOpen()) {
+                channel = openChannel(path);
+                logSegmentStore.debug("Reopened the closed channel of segment: " + path);
+            }
+            return true;
+        }
+
+        private synchronized void retire() throws IOException {
+            retired = true;
+            channel.close();
+        }
+
+        private static FileChannel openChannel(Path path) throws IOException {
+            return FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Receives the records of a segment as it is scanned
+     */
+    private interface RecordVisitor {
+        void visit(byte type, String address, byte[] content, Location location)
+            throws IOException;
+    }
+
+    /**
+     * Constructor to initialize a SegmentStore, which replays the existing segments. Stores use
+     * {@link #forStoreRoot(Path, Path, DurabilityCommitter)} instead, so that a segment directory
+     * is only opened once per JVM.
+     *
+     * @param segmentDirectory    Directory of the segment files
+     * @param objectDirectory     Directory of the permanent addresses of data objects
+     * @param durabilityCommitter Flushes segments to disk as the store's durability mode requires
+     * @param segmentSize         Size at which a segment is no longer appended to
+     * @throws IOException If the segments cannot be opened or replayed
+     */
+    SegmentStore(
+        Path segmentDirectory, Path objectDirectory, DurabilityCommitter durabilityCommitter,
+        long segmentSize) throws IOException {
+        this.segmentDirectory = segmentDirectory;
+        this.objectDirectory = objectDirectory;
+        this.durabilityCommitter = durabilityCommitter;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(segmentDirectory);
+        loadSegments();
+    }
+
+    /**
+     * Get the segment store of a given store root, opening it (and replaying its segments) if
+     * this is the first store opened at the given path.
+     *
+     * @param storeRoot           Root directory of a HashStore
+     * @param objectDirectory     Directory of the permanent addresses of data objects
+     * @param durabilityCommitter Flushes segments to disk as the store's durability mode requires
+     * @return Segment store shared by all stores opened at the given root
+     * @throws IOException If the segments cannot be opened or replayed
+     */
+    static SegmentStore forStoreRoot(
+        Path storeRoot, Path objectDirectory, DurabilityCommitter durabilityCommitter)
+        throws IOException {
+        FileHashStoreUtility.ensureNotNull(storeRoot, "storeRoot");
+        FileHashStoreUtility.ensureNotNull(objectDirectory, "objectDirectory");
+        try {
+            return registry.computeIfAbsent(storeRoot.toRealPath(), root -> {
+                logSegmentStore.debug("Opening segment store for store root: " + root);
+                try {
+                    return new SegmentStore(
+                        objectDirectory.resolve("segments"), objectDirectory, durabilityCommitter,
+                        DEFAULT_SEGMENT_SIZE);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * @param address Permanent address of a data object
+     * @return True if the data object is packed into a segment
+     */
+    boolean contains(Path address) {
+        return index.containsKey(getKey(address));
+    }
+
+    /**
+     * @param address Permanent address of a packed data object
+     * @return Size of the data object
+     * @throws FileNotFoundException If the data object is not packed into a segment
+     */
+    long size(Path address) throws FileNotFoundException {
+        return getLocation(getKey(address)).contentLength();
+    }
+
+    /**
+     * Read a packed data object with a single positioned read
+     *
+     * @param address Permanent address of a packed data object
+     * @return InputStream of the content of the data object
+     * @throws FileNotFoundException If the data object is not packed into a segment
+     * @throws IOException           If the segment cannot be read
+     */
+    InputStream open(Path address) throws IOException {
+        return open(address, 0, -1);
+    }
+
+    /**
+     * Read a range of a packed data object with a single positioned read
+     *
+     * @param address Permanent address of a packed data object
+     * @param offset  Offset in the data object to start reading from
+     * @param length  Number of bytes to read, or -1 to read until the end of the data object
+     * @return InputStream of the range of the data object
+     * @throws FileNotFoundException If the data object is not packed into a segment
+     * @throws IOException           If the segment cannot be read
+     */
+    InputStream open(Path address, long offset, long length) throws IOException {
+        String key = getKey(address);
+        int addressLength = key.getBytes(StandardCharsets.UTF_8).length;
+        // A segment may be compacted (and closed) after its location was looked up, in which case
+        // the data object has been moved to the active segment
+        for (int attempt = 0; ; attempt++) {
+            Location location = getLocation(key);
+            Segment segment = segments.get(location.segmentId());
+            long rangeOffset = Math.min(offset, location.contentLength());
+            long rangeLength = location.contentLength() - rangeOffset;
+            if (length >= 0) {
+                rangeLength = Math.min(length, rangeLength);
+            }
+            try {
+                if (segment == null) {
+                    throw new ClosedChannelException();
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) rangeLength);
+                readFully(segment, content, location.contentPosition(addressLength) + rangeOffset);
+                return new ByteArrayInputStream(content.array());
+
+            } catch (ClosedByInterruptException cbie) {
+                throw cbie;
+
+            } catch (ClosedChannelException cce) {
+                if (attempt >= 2) {
+                    throw new IOException(
+                        "Unable to read packed data object: " + address + ", its segment was"
+                            + " compacted while it was being read.", cce);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pack a data object into the active segment with a single append. The caller must hold the
+     * lock of the data object's content identifier.
+     *
+     * @param address Permanent address of the data object
+     * @param tmpFile Tmp file holding the content of the data object, which is left in place
+     * @throws IOException If the tmp file cannot be read, or the segment cannot be written
+     */
+    void append(Path address, File tmpFile) throws IOException {
+        byte[] content = Files.readAllBytes(tmpFile.toPath());
+        if (content.length > PACKED_OBJECT_THRESHOLD) {
+            throw new IllegalArgumentException(
+                "Data object of size: " + content.length + " is too large to be packed.");
+        }
+        String key = getKey(address);
+        Segment segment;
+        appendLock.lock();
+        try {
+            Location location = appendRecord(PUT_RECORD, key, content);
+            Location previous = index.put(key, location);
+            if (previous != null) {
+                addDeadBytes(previous.segmentId(), previous.recordLength());
+            }
+            segment = activeSegment;
+        } finally {
+            appendLock.unlock();
+        }
+        durabilityCommitter.commit(List.of(segment.path));
+        logSegmentStore.debug("Packed data object: " + key + " into segment: " + segment.path);
+    }
+
+    /**
+     * Delete a packed data object by appending a tombstone for it. The caller must hold the lock
+     * of the data object's content identifier.
+     *
+     * @param address Permanent address of a packed data object
+     * @throws FileNotFoundException If the data object is not packed into a segment
+     * @throws IOException           If the tombstone cannot be written
+     */
+    void delete(Path address) throws IOException {
+        String key = getKey(address);
+        Segment segment;
+        appendLock.lock();
+        try {
+            Location location = getLocation(key);
+            Location tombstone = appendRecord(DELETE_RECORD, key, new byte[0]);
+            index.remove(key);
+            addDeadBytes(location.segmentId(), location.recordLength());
+            addDeadBytes(tombstone.segmentId(), tombstone.recordLength());
+            segment = activeSegment;
+        } finally {
+            appendLock.unlock();
+        }
+        durabilityCommitter.commit(List.of(segment.path));
+        logSegmentStore.debug("Deleted packed data object: " + key);
+        compactInBackground();
+    }
+
+    /**
+     * @return Number of data objects packed into segments
+     */
+    int getPackedObjectCount() {
+        return index.size();
+    }
+
+    /**
+     * @return Number of segment files
+     */
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Compact every segment (other than the active one) that is mostly taken by deleted records.
+     * Live data objects are appended to the active segment before the segment is deleted.
+     *
+     * @throws IOException If a segment cannot be read or deleted
+     */
+    synchronized void compact() throws IOException {
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment != activeSegment && !segment.corrupt && segment.size > 0
+                && segment.deadBytes.get() >= segment.size * COMPACTION_RATIO) {
+                compactSegment(segment);
+            }
+        }
+    }
+
+    private void compactInBackground() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread compactionThread = new Thread(() -> {
+            try {
+                compact();
+            } catch (IOException ioe) {
+                logSegmentStore.warn("Unable to compact segments. " + ioe.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        }, "hashstore-segment-compaction");
+        compactionThread.setDaemon(true);
+        compactionThread.start();
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        List<Segment> flushedSegments = new ArrayList<>();
+        scanSegment(segment, false, (type, address, content, location) -> {
+            appendLock.lock();
+            try {
+                if (type == PUT_RECORD && location.equals(index.get(address))) {
+                    index.put(address, appendRecord(PUT_RECORD, address, content));
+                    flushedSegments.add(activeSegment);
+                } else if (type == DELETE_RECORD && !index.containsKey(address)
+                    && segments.firstKey() < segment.id) {
+                    // The tombstone still hides a put record in an older segment
+                    Location tombstone = appendRecord(DELETE_RECORD, address, content);
+                    addDeadBytes(tombstone.segmentId(), tombstone.recordLength());
+                    flushedSegments.add(activeSegment);
+                }
+            } finally {
+                appendLock.unlock();
+            }
+        });
+        List<Path> pathsToCommit = new ArrayList<>();
+        for (Segment flushedSegment : flushedSegments) {
+            if (!pathsToCommit.contains(flushedSegment.path)) {
+                pathsToCommit.add(flushedSegment.path);
+            }
+        }
+        durabilityCommitter.commit(pathsToCommit);
+        if (segment.corrupt) {
+            // Its records that could be read have been moved, but the rest must be kept
+            return;
+        }
+
+        appendLock.lock();
+        try {
+            segments.remove(segment.id);
+            segment.retire();
+            Files.delete(segment.path);
+        } finally {
+            appendLock.unlock();
+        }
+        durabilityCommitter.commit(List.of(segmentDirectory));
+        logSegmentStore.debug("Compacted segment: " + segment.path);
+    }
+
+    /**
+     * Append a record to the active segment, rolling over to a new segment once it is full. The
+     * caller must hold the append lock.
+     */
+    private Location appendRecord(byte type, String key, byte[] content) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength =
+            RECORD_HEADER_LENGTH + keyBytes.length + content.length + RECORD_CRC_LENGTH;
+        if (activeSegment.size > 0 && activeSegment.size + recordLength > segmentSize) {
+            activeSegment = openSegment(activeSegment.id + 1);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.put(type).putShort((short) keyBytes.length).putInt(content.length);
+        record.put(keyBytes).put(content);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, recordLength - RECORD_CRC_LENGTH);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long position = activeSegment.size;
+        for (int attempt = 0; record.hasRemaining(); ) {
+            try {
+                position += activeSegment.channel.write(record, position);
+            } catch (ClosedByInterruptException cbie) {
+                // The size of the segment has not moved, so the next record overwrites this one
+                activeSegment.reopen();
+                throw cbie;
+            } catch (ClosedChannelException cce) {
+                if (++attempt > 2 || !activeSegment.reopen()) {
+                    throw cce;
+                }
+                record.rewind();
+                position = activeSegment.size;
+            }
+        }
+        Location location =
+            new Location(activeSegment.id, activeSegment.size, recordLength, content.length);
+        activeSegment.size = position;
+        return location;
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        Path segmentPath = segmentDirectory.resolve(String.format("%012d", id) + SEGMENT_SUFFIX);
+        Segment segment = new Segment(id, segmentPath);
+        segments.put(id, segment);
+        durabilityCommitter.commit(List.of(segmentDirectory));
+        return segment;
+    }
+
+    /**
+     * Replay the segments in order to rebuild the index
+     */
+    private void loadSegments() throws IOException {
+        List<Long> segmentIds = new ArrayList<>();
+        try (Stream<Path> segmentPaths = Files.list(segmentDirectory)) {
+            segmentPaths.map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .forEach(name -> segmentIds.add(
+                    Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        Collections.sort(segmentIds);
+        long lastSegmentId = segmentIds.isEmpty() ? -1 : segmentIds.get(segmentIds.size() - 1);
+        for (long segmentId : segmentIds) {
+            Segment segment = openSegment(segmentId);
+            scanSegment(segment, segmentId == lastSegmentId, (type, address, content, location) -> {
+                Location previous =
+                    type == PUT_RECORD ? index.put(address, location) : index.remove(address);
+                if (previous != null) {
+                    addDeadBytes(previous.segmentId(), previous.recordLength());
+                }
+                if (type == DELETE_RECORD) {
+                    segment.deadBytes.addAndGet(location.recordLength());
+                }
+            });
+        }
+        activeSegment = segments.isEmpty() ? openSegment(0) : segments.lastEntry().getValue();
+        logSegmentStore.debug(
+            "Loaded " + index.size() + " packed data objects from " + segments.size()
+                + " segments in: " + segmentDirectory);
+        compactInBackground();
+    }
+
+    /**
+     * Read the records of a segment in order. A record that is incomplete or does not match its
+     * checksum ends the segment. It is truncated from the last segment, which is where a crash
+     * leaves a partially written record, and any other segment is marked as corrupt instead.
+     */
+    private void scanSegment(Segment segment, boolean lastSegment, RecordVisitor visitor)
+        throws IOException {
+        long position = 0;
+        long size = segment.size;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        while (position < size) {
+            Location location = null;
+            byte type = 0;
+            String address = null;
+            byte[] content = null;
+            try {
+                header.clear();
+                readFully(segment, header, position);
+                header.flip();
+                type = header.get();
+                int keyLength = Short.toUnsignedInt(header.getShort());
+                int contentLength = header.getInt();
+                if ((type == PUT_RECORD || type == DELETE_RECORD) && contentLength >= 0
+                    && contentLength <= PACKED_OBJECT_THRESHOLD) {
+                    int recordLength =
+                        RECORD_HEADER_LENGTH + keyLength + contentLength + RECORD_CRC_LENGTH;
+                    ByteBuffer record = ByteBuffer.allocate(recordLength);
+                    readFully(segment, record, position);
+                    CRC32 crc = new CRC32();
+                    crc.update(record.array(), 0, recordLength - RECORD_CRC_LENGTH);
+                    if ((int) crc.getValue() == record.getInt(recordLength - RECORD_CRC_LENGTH)) {
+                        address = new String(
+                            record.array(), RECORD_HEADER_LENGTH, keyLength,
+                            StandardCharsets.UTF_8);
+                        int contentOffset = RECORD_HEADER_LENGTH + keyLength;
+                        content = new byte[contentLength];
+                        System.arraycopy(
+                            record.array(), contentOffset, content, 0, contentLength);
+                        location =
+                            new Location(segment.id, position, recordLength, contentLength);
+                    }
+                }
+            } catch (EOFException eofe) {
+                location = null;
+            }
+
+            if (location == null) {
+                if (lastSegment) {
+                    logSegmentStore.warn(
+                        "Incomplete or corrupt record at position: " + position + " of segment: "
+                            + segment.path + ". Truncating the rest of the segment.");
+                    segment.channel.truncate(position);
+                    segment.size = position;
+                } else {
+                    logSegmentStore.error(
+                        "Corrupt record at position: " + position + " of segment: " + segment.path
+                            + ". The rest of the segment is ignored, and the segment will not be"
+                            + " compacted.");
+                    segment.corrupt = true;
+                }
+                return;
+            }
+            visitor.visit(type, address, content, location);
+            position += location.recordLength();
+        }
+    }
+
+    private Location getLocation(String key) throws FileNotFoundException {
+        Location location = index.get(key);
+        if (location == null) {
+            throw new FileNotFoundException("No packed data object at: " + key);
+        }
+        return location;
+    }
+
+    private void addDeadBytes(long segmentId, int recordLength) {
+        Segment segment = segments.get(segmentId);
+        if (segment != null) {
+            segment.deadBytes.addAndGet(recordLength);
+        }
+    }
+
+    private String getKey(Path address) {
+        return objectDirectory.relativize(address).toString();
+    }
+
+    /**
+     * Read from a segment, reopening its channel if it has been closed by an interrupted thread.
+     * A thread that is interrupted itself gets a {@code ClosedByInterruptException}, and a closed
+     * channel that cannot be reopened (as its segment has been compacted) throws a
+     * {@code ClosedChannelException}.
+     */
+    private static void readFully(Segment segment, ByteBuffer buffer, long position)
+        throws IOException {
+        int start = buffer.position();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                readFully(segment.channel, buffer, position);
+                return;
+            } catch (ClosedByInterruptException cbie) {
+                segment.reopen();
+                throw cbie;
+            } catch (ClosedChannelException cce) {
+                if (attempt >= 2 || !segment.reopen()) {
+                    throw cce;
+                }
+                buffer.position(start);
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead == -1) {
+                throw new EOFException("Unexpected end of segment at position: " + position);
+            }
+            position += bytesRead;
+        }
+    }
+}
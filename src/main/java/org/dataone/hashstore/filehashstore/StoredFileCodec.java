@@ -0,0 +1,502 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreCompressionModes;
+
+/**
+ * StoredFileCodec compresses data objects and metadata documents before they are moved to their
+ * permanent address, and decompresses them as they are read back, as determined by the store's
+ * compression mode. Content identifiers and hex digests are always calculated from the
+ * uncompressed bytes, so compression is invisible to HashStore clients.
+ *
+ * Compression is decided per file: a sample of the file is compressed first, and files that do
+ * not compress well (ex. images, or NetCDF files that are already compressed) are stored as they
+ * are, without paying for their compression again when they are read. A compressed file starts
+ * with a header made of a magic number, the id of the codec it was compressed with and its
+ * uncompressed size. A file stored as is only has a header (with the 'raw' codec id) if it
+ * happens to start with the magic number itself, so that it cannot be mistaken for a compressed
+ * file. Another codec can be supported by adding a compression mode and a codec id for it.
+ *
+ * When the store chunks large data objects (see {@link ChunkStore}), the file at the permanent
+ * address of a chunked data object is a chunk manifest, with a header holding the 'chunked' codec
+ * id and the uncompressed size of the data object. Its chunks are compressed like any other file.
+ */
+final class StoredFileCodec {
+    private static final Log logStoredFileCodec = LogFactory.getLog(StoredFileCodec.class);
+    static final byte[] MAGIC =
+        {(byte) 0x89, 'H', 'S', 'C', '\r', '\n', (byte) 0x1A, '\n'};
+    static final int HEADER_LENGTH = MAGIC.length + 1 + Long.BYTES;
+    static final byte RAW_CODEC_ID = 0;
+    static final byte DEFLATE_CODEC_ID = 1;
+    static final byte CHUNKED_CODEC_ID = 2;
+    // Files smaller than this are not worth the header and the inflater
+    static final int MIN_COMPRESSIBLE_SIZE = 512;
+    static final int SAMPLE_SIZE = 256 * 1024;
+    // A file is only stored compressed if it shrinks to at most this fraction of its size
+    static final double MAX_COMPRESSION_RATIO = 0.9;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final HashStoreCompressionModes compressionMode;
+    private final ChunkStore chunkStore;
+
+    /**
+     * Constructor to initialize a StoredFileCodec
+     *
+     * @param compressionMode How stored files are compressed
+     * @param chunkStore      Chunk store to store large data objects in, or null if they are
+     *                        stored whole
+     */
+    StoredFileCodec(HashStoreCompressionModes compressionMode, ChunkStore chunkStore) {
+        FileHashStoreUtility.ensureNotNull(compressionMode, "compressionMode");
+        this.compressionMode = compressionMode;
+        this.chunkStore = chunkStore;
+    }
+
+    /**
+     * @return True if stored files may be compressed or chunked
+     */
+    boolean isEnabled() {
+        return compressionMode != HashStoreCompressionModes.none || chunkStore != null;
+    }
+
+    /**
+     * Prepare a tmp file holding a data object to be moved to its permanent address. A large data
+     * object is chunked if the store chunks data objects, and it is otherwise encoded like any
+     * other file, see {@link #encode(File)}.
+     *
+     * @param tmpFile Tmp file holding the uncompressed data object
+     * @param cid     Content identifier of the data object
+     * @return Tmp file to move to the permanent address, see {@link #encode(File)}
+     * @throws IOException          If the tmp file cannot be read, or the new tmp file or chunks
+     *                              cannot be written
+     * @throws InterruptedException If interrupted while waiting for the lock of a chunk
+     */
+    File encodeObject(File tmpFile, String cid) throws IOException, InterruptedException {
+        if (chunkStore != null && Files.size(tmpFile.toPath()) >= ChunkStore.CHUNKING_THRESHOLD) {
+            return chunkStore.writeChunkedFile(tmpFile, cid, this);
+        }
+        return encode(tmpFile);
+    }
+
+    /**
+     * Release what a data object holds besides the file at its permanent address, which is the
+     * chunks of a chunked data object. This must be called once that file has been renamed for
+     * deletion, so it cannot be read while its chunks are released, and before it is deleted.
+     *
+     * @param storedObject File of the data object, renamed for deletion
+     * @param cid          Content identifier of the data object
+     * @throws IOException          If the chunks cannot be released
+     * @throws InterruptedException If interrupted while waiting for the lock of a chunk
+     */
+    void release(Path storedObject, String cid) throws IOException, InterruptedException {
+        if (chunkStore == null || !Files.exists(storedObject)) {
+            return;
+        }
+        try (InputStream storedStream = Files.newInputStream(storedObject)) {
+            byte[] header = storedStream.readNBytes(HEADER_LENGTH);
+            if (header.length == HEADER_LENGTH && Arrays.equals(
+                header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                && header[MAGIC.length] == CHUNKED_CODEC_ID) {
+                chunkStore.releaseChunks(
+                    ChunkStore.getDigests(ChunkStore.readManifest(storedStream)), cid);
+            }
+        }
+    }
+
+    /**
+     * Prepare a tmp file to be moved to its permanent address. If the tmp file compresses well,
+     * it is replaced by a compressed tmp file in the same directory, and it is otherwise kept as
+     * is (unless it has to be given a header, see {@link StoredFileCodec}).
+     *
+     * @param tmpFile Tmp file holding the uncompressed content
+     * @return Tmp file to move to the permanent address, which is either the given tmp file or a
+     *     new tmp file (in which case the given tmp file has been deleted)
+     * @throws IOException If the tmp file cannot be read or the new tmp file cannot be written
+     */
+    File encode(File tmpFile) throws IOException {
+        if (!isEnabled()) {
+            return tmpFile;
+        }
+        Path tmpPath = tmpFile.toPath();
+        long size = Files.size(tmpPath);
+        if (compressionMode != HashStoreCompressionModes.none && size >= MIN_COMPRESSIBLE_SIZE
+            && isCompressible(tmpPath, size)) {
+            File compressedFile = writeEncodedFile(tmpPath, size, DEFLATE_CODEC_ID);
+            long compressedSize = Files.size(compressedFile.toPath());
+            if (compressedSize <= size * MAX_COMPRESSION_RATIO) {
+                Files.delete(tmpPath);
+                TmpFileAllocator.release(tmpPath);
+                logStoredFileCodec.debug(
+                    "Compressed tmp file: " + tmpFile + " from " + size + " to " + compressedSize
+                        + " bytes.");
+                return compressedFile;
+            }
+            Files.delete(compressedFile.toPath());
+        }
+
+        if (startsWithMagic(tmpPath)) {
+            File rawFile = writeEncodedFile(tmpPath, size, RAW_CODEC_ID);
+            Files.delete(tmpPath);
+            TmpFileAllocator.release(tmpPath);
+            return rawFile;
+        }
+        return tmpFile;
+    }
+
+    /**
+     * Open a stored file to read its uncompressed content
+     *
+     * @param storedFile Data object or metadata document at its permanent address
+     * @return InputStream of the uncompressed content
+     * @throws IOException If the stored file cannot be opened, or its header is invalid
+     */
+    InputStream open(Path storedFile) throws IOException {
+        InputStream storedStream = Files.newInputStream(storedFile);
+        if (!isEnabled()) {
+            return storedStream;
+        }
+        try {
+            BufferedInputStream bufferedStream = new BufferedInputStream(storedStream, BUFFER_SIZE);
+            bufferedStream.mark(HEADER_LENGTH);
+            byte[] magic = bufferedStream.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                bufferedStream.reset();
+                return bufferedStream;
+            }
+
+            DataInputStream headerStream = new DataInputStream(bufferedStream);
+            byte codecId = headerStream.readByte();
+            headerStream.readLong();
+            return switch (codecId) {
+                case RAW_CODEC_ID -> bufferedStream;
+                case DEFLATE_CODEC_ID -> newInflaterInputStream(bufferedStream);
+                case CHUNKED_CODEC_ID -> openChunkedFile(bufferedStream, storedFile, 0);
+                default -> throw new IOException(
+                    "Unknown codec id: " + codecId + " in stored file: " + storedFile);
+            };
+
+        } catch (IOException ioe) {
+            storedStream.close();
+            logStoredFileCodec.error(
+                "Unable to open stored file: " + storedFile + ". " + ioe.getMessage());
+            throw ioe;
+        }
+    }
+
+    /**
+     * Open a range of the uncompressed content of a stored file. Files stored as they are are read
+     * from the start of the range with positioned reads, and chunked files only open the chunks
+     * holding the range. Compressed files have to be decompressed from their start.
+     *
+     * @param storedFile Data object or metadata document at its permanent address
+     * @param offset     Offset in the uncompressed content to start reading from
+     * @param length     Number of bytes to read, or -1 to read until the end of the content
+     * @return InputStream of the range of the uncompressed content
+     * @throws IOException If the stored file cannot be opened, or its header is invalid
+     */
+    InputStream open(Path storedFile, long offset, long length) throws IOException {
+        long rawContentOffset = getRawContentOffset(storedFile);
+        InputStream rangeStream;
+        if (rawContentOffset >= 0) {
+            FileChannel storedChannel = FileChannel.open(storedFile, StandardOpenOption.READ);
+            storedChannel.position(rawContentOffset + offset);
+            rangeStream = Channels.newInputStream(storedChannel);
+
+        } else if (readCodecId(storedFile) == CHUNKED_CODEC_ID) {
+            InputStream manifestStream = Files.newInputStream(storedFile);
+            manifestStream.skipNBytes(HEADER_LENGTH);
+            rangeStream = openChunkedFile(manifestStream, storedFile, offset);
+
+        } else {
+            rangeStream = open(storedFile);
+            try {
+                rangeStream.skipNBytes(offset);
+            } catch (IOException ioe) {
+                rangeStream.close();
+                throw ioe;
+            }
+        }
+        return length < 0 ? rangeStream : new BoundedInputStream(rangeStream, length);
+    }
+
+    /**
+     * Transfer a range of the uncompressed content of a stored file to a channel. Content stored
+     * as it is (including chunks stored as they are) is transferred with
+     * {@code FileChannel.transferTo}, which lets the kernel copy it without going through the
+     * heap (ex. with sendfile when the target is a socket). Compressed content is copied through a
+     * buffer.
+     *
+     * @param storedFile Data object or metadata document at its permanent address
+     * @param offset     Offset in the uncompressed content to start transferring from
+     * @param length     Number of bytes to transfer, which must not extend past the content
+     * @param target     Channel to transfer the content to, which must be in blocking mode
+     * @return Number of bytes transferred
+     * @throws IOException If the stored file cannot be read, or the target cannot be written
+     */
+    long transferTo(Path storedFile, long offset, long length, WritableByteChannel target)
+        throws IOException {
+        long rawContentOffset = getRawContentOffset(storedFile);
+        if (rawContentOffset >= 0) {
+            try (FileChannel storedChannel = FileChannel.open(
+                storedFile, StandardOpenOption.READ)) {
+                return transferFully(storedChannel, rawContentOffset + offset, length, target);
+            }
+        }
+        if (readCodecId(storedFile) == CHUNKED_CODEC_ID && chunkStore != null) {
+            List<ChunkStore.ManifestEntry> manifest;
+            try (InputStream manifestStream = Files.newInputStream(storedFile)) {
+                manifestStream.skipNBytes(HEADER_LENGTH);
+                manifest = ChunkStore.readManifest(manifestStream);
+            }
+            return chunkStore.transferTo(manifest, this, offset, length, target);
+        }
+        try (InputStream rangeStream = open(storedFile, offset, length)) {
+            return copy(rangeStream, target);
+        }
+    }
+
+    /**
+     * Transfer a region of a file channel to a target channel, until the whole region has been
+     * transferred
+     *
+     * @param source   Channel to transfer from
+     * @param position Position of the region in the source channel
+     * @param length   Length of the region
+     * @param target   Channel to transfer to, which must be in blocking mode
+     * @return Number of bytes transferred
+     * @throws IOException If the region cannot be read or written, or the target accepts no bytes
+     */
+    static long transferFully(
+        FileChannel source, long position, long length, WritableByteChannel target)
+        throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            long bytesTransferred =
+                source.transferTo(position + transferred, length - transferred, target);
+            if (bytesTransferred <= 0) {
+                if (position + transferred >= source.size()) {
+                    throw new EOFException(
+                        "Unexpected end of file at position: " + (position + transferred));
+                }
+                // A blocking target accepts some bytes on every write, retrying would only spin
+                String errMsg = "Target channel accepted no bytes at position: " + (position
+                    + transferred) + ". It may not be in blocking mode.";
+                logStoredFileCodec.error(errMsg);
+                throw new IOException(errMsg);
+            }
+            transferred += bytesTransferred;
+        }
+        return transferred;
+    }
+
+    /**
+     * Copy a stream to a channel through a buffer
+     *
+     * @param source Stream to copy
+     * @param target Channel to copy to
+     * @return Number of bytes copied
+     * @throws IOException If the stream cannot be read, or the channel cannot be written
+     */
+    static long copy(InputStream source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long copied = 0;
+        int bytesRead;
+        while ((bytesRead = source.read(buffer.array())) != -1) {
+            buffer.position(0).limit(bytesRead);
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            copied += bytesRead;
+        }
+        return copied;
+    }
+
+    /**
+     * Get where the content of a stored file starts, if it is stored as it is (uncompressed and
+     * whole), so that it can be read or transferred directly from the file
+     *
+     * @param storedFile Data object or metadata document at its permanent address
+     * @return Offset of the content in the stored file, or -1 if the content is compressed or
+     *     chunked
+     * @throws IOException If the stored file cannot be read
+     */
+    long getRawContentOffset(Path storedFile) throws IOException {
+        int codecId = readCodecId(storedFile);
+        if (codecId == -1) {
+            return 0;
+        }
+        return codecId == RAW_CODEC_ID ? HEADER_LENGTH : -1;
+    }
+
+    /**
+     * @return Codec id in the header of a stored file, or -1 if the file has no header
+     */
+    private int readCodecId(Path storedFile) throws IOException {
+        if (!isEnabled()) {
+            return -1;
+        }
+        byte[] header;
+        try (InputStream storedStream = Files.newInputStream(storedFile)) {
+            header = storedStream.readNBytes(MAGIC.length + 1);
+        }
+        if (header.length < MAGIC.length + 1 || !Arrays.equals(
+            header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return -1;
+        }
+        return header[MAGIC.length];
+    }
+
+    /**
+     * Get the uncompressed size of a stored file
+     *
+     * @param storedFile Data object or metadata document at its permanent address
+     * @return Size of the uncompressed content
+     * @throws IOException If the stored file cannot be read
+     */
+    long size(Path storedFile) throws IOException {
+        if (!isEnabled()) {
+            return Files.size(storedFile);
+        }
+        byte[] header;
+        try (InputStream storedStream = Files.newInputStream(storedFile)) {
+            header = storedStream.readNBytes(HEADER_LENGTH);
+        }
+        if (header.length < HEADER_LENGTH || !Arrays.equals(
+            header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return Files.size(storedFile);
+        }
+        return ByteBuffer.wrap(header).getLong(MAGIC.length + 1);
+    }
+
+    /**
+     * Write the header of a file with a header
+     *
+     * @param outputStream Stream to write the header into, at the start of the file
+     * @param codecId      Id of the codec the file is encoded with
+     * @param size         Uncompressed size of the file
+     * @throws IOException If the header cannot be written
+     */
+    static void writeHeader(OutputStream outputStream, byte codecId, long size)
+        throws IOException {
+        DataOutputStream headerStream = new DataOutputStream(outputStream);
+        headerStream.write(MAGIC);
+        headerStream.writeByte(codecId);
+        headerStream.writeLong(size);
+        headerStream.flush();
+    }
+
+    private InputStream openChunkedFile(InputStream manifestStream, Path storedFile, long offset)
+        throws IOException {
+        if (chunkStore == null) {
+            throw new IOException("Stored file: " + storedFile
+                                      + " is chunked, but the store does not chunk objects.");
+        }
+        try (manifestStream) {
+            return chunkStore.open(ChunkStore.readManifest(manifestStream), this, offset);
+        }
+    }
+
+    /**
+     * Compress a sample of a file to estimate how well the whole file compresses
+     */
+    private static boolean isCompressible(Path file, long size) throws IOException {
+        byte[] sample;
+        try (InputStream fileStream = Files.newInputStream(file)) {
+            sample = fileStream.readNBytes((int) Math.min(size, SAMPLE_SIZE));
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] output = new byte[BUFFER_SIZE];
+            long compressedSize = 0;
+            while (!deflater.finished()) {
+                compressedSize += deflater.deflate(output);
+            }
+            return compressedSize <= sample.length * MAX_COMPRESSION_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return True if the given file could be mistaken for a file with a header, meaning it
+     *     cannot be placed at its permanent address as is
+     * @throws IOException If the file cannot be read
+     */
+    boolean requiresHeader(Path file) throws IOException {
+        return isEnabled() && startsWithMagic(file);
+    }
+
+    private static boolean startsWithMagic(Path file) throws IOException {
+        try (InputStream fileStream = Files.newInputStream(file)) {
+            return Arrays.equals(fileStream.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    /**
+     * Write a file, preceded by its header, into a new tmp file in the same directory
+     */
+    private static File writeEncodedFile(Path file, long size, byte codecId) throws IOException {
+        File encodedFile = FileHashStoreUtility.generateTmpFile("tmp", file.getParent());
+        try (InputStream fileStream = Files.newInputStream(file);
+             OutputStream encodedStream = Files.newOutputStream(encodedFile.toPath())) {
+            writeHeader(encodedStream, codecId, size);
+            if (codecId == DEFLATE_CODEC_ID) {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                try {
+                    DeflaterOutputStream deflaterStream =
+                        new DeflaterOutputStream(encodedStream, deflater, BUFFER_SIZE);
+                    fileStream.transferTo(deflaterStream);
+                    deflaterStream.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                fileStream.transferTo(encodedStream);
+            }
+        } catch (IOException ioe) {
+            Files.deleteIfExists(encodedFile.toPath());
+            logStoredFileCodec.error(
+                "Unable to encode tmp file: " + file + ". " + ioe.getMessage());
+            throw ioe;
+        }
+        return encodedFile;
+    }
+
+    private static InputStream newInflaterInputStream(InputStream compressedStream) {
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(compressedStream, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+}
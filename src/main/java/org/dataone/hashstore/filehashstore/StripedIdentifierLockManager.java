@@ -0,0 +1,184 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * StripedIdentifierLockManager is the default in-memory {@link IdentifierLockManager}. Identifiers
+ * are spread across a fixed number of stripes (based on the identifier's hash code) so that
+ * unrelated identifiers rarely contend on the same monitor. Each locked identifier keeps its own
+ * FIFO queue of waiters, and releasing an identifier signals only the waiter at the head of that
+ * identifier's queue.
+ */
+public class StripedIdentifierLockManager implements IdentifierLockManager {
+    private static final Log logLockManager = LogFactory.getLog(StripedIdentifierLockManager.class);
+    public static final int DEFAULT_STRIPES = 64;
+    private final String name;
+    private final Stripe[] stripes;
+
+    /**
+     * A stripe guards the lock state of every identifier that hashes to it
+     */
+    private static final class Stripe {
+        private final ReentrantLock monitor = new ReentrantLock();
+        private final Map<String, IdentifierState> identifiers = new HashMap<>();
+    }
+
+    /**
+     * Lock state of a single identifier: whether it is held, and who is waiting for it
+     */
+    private static final class IdentifierState {
+        private boolean held;
+        private final ArrayDeque<Condition> waiters = new ArrayDeque<>();
+    }
+
+    /**
+     * Constructor to initialize a StripedIdentifierLockManager with the default amount of stripes
+     *
+     * @param name Name of the identifiers being locked, used for logging
+     */
+    public StripedIdentifierLockManager(String name) {
+        this(name, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor to initialize a StripedIdentifierLockManager
+     *
+     * @param name        Name of the identifiers being locked, used for logging
+     * @param stripeCount Number of stripes to spread identifiers across, must be > 0
+     */
+    public StripedIdentifierLockManager(String name, int stripeCount) {
+        FileHashStoreUtility.ensureNotNull(name, "name");
+        FileHashStoreUtility.checkPositive(stripeCount);
+        this.name = name;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public void lock(String id) throws InterruptedException {
+        FileHashStoreUtility.ensureNotNull(id, "id");
+        Stripe stripe = getStripe(id);
+        stripe.monitor.lock();
+        try {
+            IdentifierState state =
+                stripe.identifiers.computeIfAbsent(id, k -> new IdentifierState());
+            if (!state.held && state.waiters.isEmpty()) {
+                state.held = true;
+                logLockManager.debug("Synchronizing " + name + " for: " + id);
+                return;
+            }
+
+            // Wait in line, only the waiter at the head of the queue is ever signalled
+            Condition turn = stripe.monitor.newCondition();
+            state.waiters.addLast(turn);
+            try {
+                while (state.held || state.waiters.peekFirst() != turn) {
+                    turn.await();
+                }
+            } catch (InterruptedException ie) {
+                state.waiters.remove(turn);
+                if (!state.held) {
+                    // We may have been signalled before the interrupt was noticed, so pass the
+                    // turn on to the next waiter (or clean up) to avoid stranding the queue
+                    handOff(stripe, id, state);
+                }
+                String errMsg =
+                    "Synchronization has been interrupted while trying to sync " + name + ": " + id;
+                logLockManager.warn(errMsg);
+                throw new InterruptedException(errMsg);
+            }
+            state.waiters.removeFirst();
+            state.held = true;
+            logLockManager.debug("Synchronizing " + name + " for: " + id);
+
+        } finally {
+            stripe.monitor.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryLock(String id) {
+        FileHashStoreUtility.ensureNotNull(id, "id");
+        Stripe stripe = getStripe(id);
+        stripe.monitor.lock();
+        try {
+            IdentifierState state = stripe.identifiers.get(id);
+            if (state != null) {
+                return false;
+            }
+            state = new IdentifierState();
+            state.held = true;
+            stripe.identifiers.put(id, state);
+            logLockManager.debug("Synchronizing " + name + " for: " + id);
+            return true;
+
+        } finally {
+            stripe.monitor.unlock();
+        }
+    }
+
+    @Override
+    public boolean unlock(String id) {
+        FileHashStoreUtility.ensureNotNull(id, "id");
+        Stripe stripe = getStripe(id);
+        stripe.monitor.lock();
+        try {
+            IdentifierState state = stripe.identifiers.get(id);
+            if (state == null || !state.held) {
+                logLockManager.debug("Release requested for " + name + ": " + id
+                                         + ", but it is not locked.");
+                return false;
+            }
+            logLockManager.debug("Releasing " + name + " for: " + id);
+            state.held = false;
+            handOff(stripe, id, state);
+            return true;
+
+        } finally {
+            stripe.monitor.unlock();
+        }
+    }
+
+    @Override
+    public boolean isLocked(String id) {
+        FileHashStoreUtility.ensureNotNull(id, "id");
+        Stripe stripe = getStripe(id);
+        stripe.monitor.lock();
+        try {
+            IdentifierState state = stripe.identifiers.get(id);
+            return state != null && state.held;
+
+        } finally {
+            stripe.monitor.unlock();
+        }
+    }
+
+    /**
+     * Wake the next waiter of a released identifier, or forget the identifier if nobody is
+     * waiting. Must be called while holding the stripe's monitor.
+     */
+    private static void handOff(Stripe stripe, String id, IdentifierState state) {
+        Condition next = state.waiters.peekFirst();
+        if (next == null) {
+            stripe.identifiers.remove(id);
+        } else {
+            next.signal();
+        }
+    }
+
+    private Stripe getStripe(String id) {
+        int hash = id.hashCode();
+        // Spread the higher bits so that similar identifiers do not cluster on one stripe
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+}
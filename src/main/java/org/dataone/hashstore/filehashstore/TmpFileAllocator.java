@@ -0,0 +1,281 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * TmpFileAllocator creates the tmp files that HashStore writes objects, metadata and refs into
+ * before moving them to their permanent addresses. Tmp files are created with their permissions in
+ * a single call, and the ones that are still in use are tracked in a bounded set: tracking ends
+ * when a tmp file is moved, and tmp files that have been deleted are pruned whenever the set fills
+ * up. Tmp files that are still tracked when the JVM shuts down are deleted.
+ *
+ * Tmp files left behind by a process that did not shut down gracefully are removed by a sweep of
+ * the tmp directories, which runs in the background once per directory when a store is opened.
+ * Upload sessions that were opened but never finished are swept in the same way, once none of
+ * their files have been modified for longer than the store's upload session ttl.
+ */
+final class TmpFileAllocator {
+    private static final Log logTmpFileAllocator = LogFactory.getLog(TmpFileAllocator.class);
+    private static final FileAttribute<Set<PosixFilePermission>> DEFAULT_FILE_ATTRIBUTE =
+        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-r-----"));
+    static final int MAX_TRACKED_TMP_FILES = 10000;
+    static final long DEFAULT_STALE_TMP_MILLIS = TimeUnit.HOURS.toMillis(24);
+    static final long DEFAULT_STALE_SESSION_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final Set<Path> liveTmpFiles = ConcurrentHashMap.newKeySet();
+    private static final Set<Path> sweptDirectories = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean pruning = new AtomicBoolean(false);
+
+    static {
+        Thread cleanupThread =
+            new Thread(TmpFileAllocator::deleteLiveTmpFiles, "hashstore-tmp-cleanup");
+        Runtime.getRuntime().addShutdownHook(cleanupThread);
+    }
+
+    private TmpFileAllocator() {
+    }
+
+    /**
+     * Create an empty tmp file with the default permissions of 'rw- r-- ---' (owner read/write,
+     * and group read), and track it until it is moved or deleted.
+     *
+     * @param prefix    String to prepend before the tmp file's name
+     * @param directory Location to create the tmp file in
+     * @return Tmp file ready to write into
+     * @throws IOException Issue with creating the tmp file
+     */
+    static File allocate(String prefix, Path directory) throws IOException {
+        Path tmpPath = Files.createTempFile(directory, prefix + "-", null, DEFAULT_FILE_ATTRIBUTE);
+        if (liveTmpFiles.size() >= MAX_TRACKED_TMP_FILES) {
+            pruneLiveTmpFiles();
+        }
+        if (liveTmpFiles.size() < MAX_TRACKED_TMP_FILES) {
+            liveTmpFiles.add(tmpPath);
+        } else {
+            logTmpFileAllocator.debug(
+                "Too many tmp files in use, " + tmpPath + " will not be tracked.");
+        }
+        return tmpPath.toFile();
+    }
+
+    /**
+     * Stop tracking a tmp file that has been moved to its permanent address
+     *
+     * @param tmpPath Former path of the tmp file
+     */
+    static void release(Path tmpPath) {
+        liveTmpFiles.remove(tmpPath);
+    }
+
+    /**
+     * @return Amount of tmp files currently tracked
+     */
+    static int getLiveTmpFileCount() {
+        return liveTmpFiles.size();
+    }
+
+    /**
+     * Sweep the given tmp directories in the background, unless they have already been swept by
+     * this JVM
+     *
+     * @param tmpDirectories Tmp directories of a store
+     */
+    static void sweepInBackground(Collection<Path> tmpDirectories) {
+        List<Path> directoriesToSweep = tmpDirectories.stream()
+            .filter(directory -> sweptDirectories.add(directory.toAbsolutePath().normalize()))
+            .toList();
+        if (directoriesToSweep.isEmpty()) {
+            return;
+        }
+        Thread sweeperThread = new Thread(
+            () -> sweep(directoriesToSweep, DEFAULT_STALE_TMP_MILLIS), "hashstore-tmp-sweeper");
+        sweeperThread.setDaemon(true);
+        sweeperThread.start();
+    }
+
+    /**
+     * Delete the tmp files in the given directories that have not changed for a while and are not
+     * in use by this JVM. Staleness is judged by the status change time (ctime) where available:
+     * tmp files that are still being written change as they are written, and a consumed file that
+     * is hard linked into a tmp directory keeps its own last modified time, but its ctime is
+     * updated by the link. Tmp files that are still linked elsewhere are never swept either, as
+     * they are being stored (or their source is still in place).
+     *
+     * @param tmpDirectories Tmp directories to sweep
+     * @param staleMillis    How long a tmp file must have been left unmodified to be deleted
+     * @return Amount of tmp files deleted
+     */
+    static int sweep(Collection<Path> tmpDirectories, long staleMillis) {
+        long staleBefore = System.currentTimeMillis() - staleMillis;
+        int deletedTmpFiles = 0;
+        for (Path tmpDirectory : tmpDirectories) {
+            try (DirectoryStream<Path> tmpFiles = Files.newDirectoryStream(tmpDirectory)) {
+                for (Path tmpFile : tmpFiles) {
+                    try {
+                        if (!liveTmpFiles.contains(tmpFile) && Files.isRegularFile(tmpFile)
+                            && !isLinkedElsewhere(tmpFile)
+                            && getChangeTime(tmpFile).toMillis() < staleBefore
+                            && Files.deleteIfExists(tmpFile)) {
+                            deletedTmpFiles++;
+                        }
+                    } catch (IOException ioe) {
+                        logTmpFileAllocator.warn(
+                            "Unable to sweep tmp file: " + tmpFile + ". " + ioe.getMessage());
+                    }
+                }
+            } catch (IOException ioe) {
+                logTmpFileAllocator.warn(
+                    "Unable to sweep tmp directory: " + tmpDirectory + ". " + ioe.getMessage());
+            }
+        }
+        if (deletedTmpFiles > 0) {
+            logTmpFileAllocator.info(
+                "Swept " + deletedTmpFiles + " stale tmp files from: " + tmpDirectories);
+        }
+        return deletedTmpFiles;
+    }
+
+    /**
+     * Get the time a file last changed, which includes being linked. The last modified time is
+     * only used where the ctime is not available.
+     */
+    private static FileTime getChangeTime(Path file) throws IOException {
+        try {
+            return (FileTime) Files.getAttribute(file, "unix:ctime");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return Files.getLastModifiedTime(file);
+        }
+    }
+
+    /**
+     * @return True if the file has other hard links, where the link count is available
+     */
+    private static boolean isLinkedElsewhere(Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink") > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sweep the upload sessions in the given directory in the background, unless it has already
+     * been swept by this JVM
+     *
+     * @param sessionDirectory Directory holding a store's upload sessions
+     * @param staleMillis      How long a session must have been left unmodified to be deleted
+     */
+    static void sweepSessionsInBackground(Path sessionDirectory, long staleMillis) {
+        if (!sweptDirectories.add(sessionDirectory.toAbsolutePath().normalize())) {
+            return;
+        }
+        Thread sweeperThread = new Thread(
+            () -> sweepSessions(sessionDirectory, staleMillis), "hashstore-session-sweeper");
+        sweeperThread.setDaemon(true);
+        sweeperThread.start();
+    }
+
+    /**
+     * Delete the upload sessions in the given directory whose files have not been modified for a
+     * while. Every appended part updates a session's data file and manifest, so a session that is
+     * still receiving parts is never old enough to be swept.
+     *
+     * @param sessionDirectory Directory holding a store's upload sessions
+     * @param staleMillis      How long a session must have been left unmodified to be deleted
+     * @return Amount of sessions deleted
+     */
+    static int sweepSessions(Path sessionDirectory, long staleMillis) {
+        if (!Files.isDirectory(sessionDirectory)) {
+            return 0;
+        }
+        long staleBefore = System.currentTimeMillis() - staleMillis;
+        int deletedSessions = 0;
+        try (DirectoryStream<Path> sessions = Files.newDirectoryStream(sessionDirectory)) {
+            for (Path session : sessions) {
+                try {
+                    if (Files.isDirectory(session) && isSessionStale(session, staleBefore)) {
+                        deleteSession(session);
+                        deletedSessions++;
+                    }
+                } catch (IOException ioe) {
+                    logTmpFileAllocator.warn(
+                        "Unable to sweep upload session: " + session + ". " + ioe.getMessage());
+                }
+            }
+        } catch (IOException ioe) {
+            logTmpFileAllocator.warn(
+                "Unable to sweep session directory: " + sessionDirectory + ". "
+                    + ioe.getMessage());
+        }
+        if (deletedSessions > 0) {
+            logTmpFileAllocator.info(
+                "Swept " + deletedSessions + " stale upload sessions from: " + sessionDirectory);
+        }
+        return deletedSessions;
+    }
+
+    private static boolean isSessionStale(Path session, long staleBefore) throws IOException {
+        if (Files.getLastModifiedTime(session).toMillis() >= staleBefore) {
+            return false;
+        }
+        try (DirectoryStream<Path> sessionFiles = Files.newDirectoryStream(session)) {
+            for (Path sessionFile : sessionFiles) {
+                if (Files.getLastModifiedTime(sessionFile).toMillis() >= staleBefore) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void deleteSession(Path session) throws IOException {
+        try (DirectoryStream<Path> sessionFiles = Files.newDirectoryStream(session)) {
+            for (Path sessionFile : sessionFiles) {
+                Files.deleteIfExists(sessionFile);
+            }
+        }
+        Files.deleteIfExists(session);
+    }
+
+    /**
+     * Forget the tmp files that no longer exist, which is the case for tmp files deleted (rather
+     * than moved) by HashStore
+     */
+    private static void pruneLiveTmpFiles() {
+        if (!pruning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            liveTmpFiles.removeIf(tmpPath -> !Files.exists(tmpPath));
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    private static void deleteLiveTmpFiles() {
+        for (Path tmpPath : liveTmpFiles) {
+            try {
+                Files.deleteIfExists(tmpPath);
+            } catch (IOException ioe) {
+                logTmpFileAllocator.warn(
+                    "Unable to delete tmp file: " + tmpPath + " on shutdown. " + ioe.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package org.dataone.hashstore.filehashstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dataone.hashstore.ObjectMetadata;
+import org.dataone.hashstore.exceptions.NonMatchingChecksumException;
+import org.dataone.hashstore.exceptions.NonMatchingObjSizeException;
+
+/**
+ * UploadSession stores a data object that is received in parts, possibly over several processes.
+ * Each part is appended to the session's data file and flushed to disk, after which the session's
+ * committed offset is checkpointed in its manifest. If a process stops part way through an upload,
+ * the session can be resumed (see {@link FileHashStore#resumeUploadSession(String)}) from its last
+ * committed offset, and only the remaining parts need to be transferred again.
+ *
+ * Java does not expose the internal state of a {@code MessageDigest}, so the hex digests of the
+ * committed parts are not stored in the checkpoint. Instead, a resumed session re-reads its data
+ * file once to restore them, which runs at local disk speed.
+ *
+ * Once every part has been appended, {@link #finish()} validates the data object, moves it to its
+ * permanent address and tags it with its pid, exactly as {@code storeObject} does. If finishing
+ * fails for a reason other than the data object being invalid (ex. the pid is busy), the session
+ * is kept so that it can be resumed and finished again, but no further parts can be appended to
+ * it. A session must only be used by one thread (and one process) at a time.
+ */
+public class UploadSession implements Closeable {
+    private static final Log logUploadSession = LogFactory.getLog(UploadSession.class);
+    static final String DATA_FILE = "data";
+    static final String MANIFEST_FILE = "session.properties";
+    // Link to the data file that is handed over to the store when the session is finished
+    static final String FINISH_FILE = "data.finish";
+    private final FileHashStore fileHashStore;
+    private final Path sessionDirectory;
+    private final Path dataFile;
+    private final Properties manifest;
+    private final String pid;
+    private final String additionalAlgorithm;
+    private final String checksum;
+    private final String checksumAlgorithm;
+    private final long objSize;
+    private final FileChannel dataChannel;
+    private final DigestPipeline digestPipeline;
+    private long committedOffset;
+    private boolean finishing;
+    private boolean closed = false;
+
+    private UploadSession(
+        FileHashStore fileHashStore, Path sessionDirectory, Properties manifest,
+        Collection<String> algorithms) throws IOException, NoSuchAlgorithmException {
+        this.fileHashStore = fileHashStore;
+        this.sessionDirectory = sessionDirectory;
+        this.manifest = manifest;
+        dataFile = sessionDirectory.resolve(DATA_FILE);
+        pid = manifest.getProperty("pid");
+        additionalAlgorithm = manifest.getProperty("additionalAlgorithm");
+        checksum = manifest.getProperty("checksum");
+        checksumAlgorithm = manifest.getProperty("checksumAlgorithm");
+        objSize = Long.parseLong(manifest.getProperty("objSize"));
+        committedOffset = Long.parseLong(manifest.getProperty("committedOffset"));
+        finishing = Boolean.parseBoolean(manifest.getProperty("finishing"));
+        digestPipeline = new DigestPipeline(algorithms);
+        dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dataChannel.position(committedOffset);
+    }
+
+    /**
+     * Create a new upload session
+     *
+     * @param fileHashStore       Store to finish the session into
+     * @param sessionsDirectory   Directory holding the upload sessions of the store
+     * @param pid                 Authority-based identifier
+     * @param additionalAlgorithm Additional hex digest to include in hexDigests
+     * @param checksum            Value of checksum to validate against
+     * @param checksumAlgorithm   Algorithm of checksum submitted
+     * @param objSize             Expected size of object to validate, or -1
+     * @param algorithms          Hash algorithms to calculate
+     * @return Upload session with nothing committed yet
+     * @throws IOException              If the session cannot be created
+     * @throws NoSuchAlgorithmException If an algorithm is not supported
+     */
+    static UploadSession open(
+        FileHashStore fileHashStore, Path sessionsDirectory, String pid,
+        String additionalAlgorithm, String checksum, String checksumAlgorithm, long objSize,
+        Collection<String> algorithms) throws IOException, NoSuchAlgorithmException {
+        Path sessionDirectory = sessionsDirectory.resolve(UUID.randomUUID().toString());
+        Files.createDirectories(sessionDirectory);
+        Path dataFile = Files.createFile(sessionDirectory.resolve(DATA_FILE));
+        FileHashStoreUtility.setDefaultFilePermissions(dataFile);
+
+        Properties manifest = new Properties();
+        manifest.setProperty("pid", pid);
+        if (additionalAlgorithm != null) {
+            manifest.setProperty("additionalAlgorithm", additionalAlgorithm);
+        }
+        if (checksum != null) {
+            manifest.setProperty("checksum", checksum);
+        }
+        if (checksumAlgorithm != null) {
+            manifest.setProperty("checksumAlgorithm", checksumAlgorithm);
+        }
+        manifest.setProperty("objSize", String.valueOf(objSize));
+        manifest.setProperty("committedOffset", "0");
+        writeManifest(sessionDirectory, manifest);
+        force(sessionsDirectory);
+
+        logUploadSession.info(
+            "Upload session: " + sessionDirectory.getFileName() + " opened for pid: " + pid);
+        return new UploadSession(fileHashStore, sessionDirectory, manifest, algorithms);
+    }
+
+    /**
+     * Resume an upload session from its last committed offset. Anything appended after that offset
+     * is discarded, and the hex digests of the committed data are restored by re-reading it.
+     *
+     * @param fileHashStore    Store to finish the session into
+     * @param sessionDirectory Directory of the session
+     * @return Upload session ready to append the part following its committed offset
+     * @throws IOException              If the session cannot be read
+     * @throws NoSuchAlgorithmException If an algorithm is not supported
+     */
+    static UploadSession resume(FileHashStore fileHashStore, Path sessionDirectory)
+        throws IOException, NoSuchAlgorithmException {
+        Properties manifest = new Properties();
+        try (InputStream manifestStream = Files.newInputStream(
+            sessionDirectory.resolve(MANIFEST_FILE))) {
+            manifest.load(manifestStream);
+        }
+        Collection<String> algorithms = fileHashStore.getAlgorithmsToCalculate(
+            manifest.getProperty("additionalAlgorithm"),
+            manifest.getProperty("checksumAlgorithm"));
+        UploadSession uploadSession =
+            new UploadSession(fileHashStore, sessionDirectory, manifest, algorithms);
+
+        try {
+            uploadSession.dataChannel.truncate(uploadSession.committedOffset);
+            // Restore the hex digests of the committed parts
+            try (InputStream committedData = Files.newInputStream(uploadSession.dataFile)) {
+                long restoredBytes = uploadSession.digestPipeline.transfer(
+                    committedData, OutputStream.nullOutputStream());
+                if (restoredBytes != uploadSession.committedOffset) {
+                    String errMsg = "Upload session: " + sessionDirectory.getFileName()
+                        + " is missing data. Committed offset: " + uploadSession.committedOffset
+                        + ". Data found: " + restoredBytes;
+                    logUploadSession.error(errMsg);
+                    throw new IOException(errMsg);
+                }
+            }
+
+        } catch (InterruptedException ie) {
+            uploadSession.close();
+            Thread.currentThread().interrupt();
+            String errMsg =
+                "Interrupted while resuming upload session: " + sessionDirectory.getFileName();
+            logUploadSession.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+
+        } catch (IOException ioe) {
+            uploadSession.close();
+            throw ioe;
+        }
+
+        logUploadSession.info(
+            "Upload session: " + sessionDirectory.getFileName() + " resumed for pid: "
+                + uploadSession.pid + " at offset: " + uploadSession.committedOffset);
+        return uploadSession;
+    }
+
+    /**
+     * @return Identifier to resume this session with
+     */
+    public String getSessionId() {
+        return sessionDirectory.getFileName().toString();
+    }
+
+    /**
+     * @return Authority-based identifier the data object will be tagged with
+     */
+    public String getPid() {
+        return pid;
+    }
+
+    /**
+     * @return Amount of bytes that have been appended and flushed to disk
+     */
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * Append the next part of the data object. The part is flushed to disk and the session's
+     * committed offset is checkpointed before this method returns. If the part cannot be appended
+     * completely, the session is closed and must be resumed to continue from the last committed
+     * offset.
+     *
+     * @param part Stream of the part, closed once it has been read
+     * @return Committed offset, including the part
+     * @throws IOException If the part cannot be read or written
+     */
+    public long appendPart(InputStream part) throws IOException {
+        ensureOpen();
+        FileHashStoreUtility.ensureNotNull(part, "part");
+        if (finishing) {
+            // The data file may already share its content with a stored data object
+            String errMsg = "Upload session: " + getSessionId() + " has already been finished"
+                + " once. It can only be finished again or aborted.";
+            logUploadSession.error(errMsg);
+            throw new IllegalStateException(errMsg);
+        }
+        try (part) {
+            // Closing the stream would close the data channel
+            OutputStream dataStream = Channels.newOutputStream(dataChannel);
+            long bytesAppended = digestPipeline.transfer(part, dataStream);
+            dataChannel.force(false);
+            committedOffset += bytesAppended;
+            manifest.setProperty("committedOffset", String.valueOf(committedOffset));
+            writeManifest(sessionDirectory, manifest);
+            logUploadSession.debug(
+                "Appended " + bytesAppended + " bytes to upload session: " + getSessionId()
+                    + ". Committed offset: " + committedOffset);
+            return committedOffset;
+
+        } catch (InterruptedException ie) {
+            close();
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while appending to upload session: " + getSessionId();
+            logUploadSession.error(errMsg);
+            throw new InterruptedIOException(errMsg);
+
+        } catch (IOException ioe) {
+            close();
+            String errMsg = "Unable to append to upload session: " + getSessionId()
+                + ". It can be resumed from offset: " + committedOffset + ". " + ioe.getMessage();
+            logUploadSession.error(errMsg);
+            throw new IOException(errMsg, ioe);
+        }
+    }
+
+    /**
+     * Store the uploaded data object and tag it with the session's pid, see
+     * {@link FileHashStore#storeObject(InputStream, String, String, String, String, long)}. The
+     * session is removed once the data object is stored, or when it fails validation. When it
+     * cannot be stored for another reason (ex. the pid is busy, or the data object cannot be moved
+     * or tagged), the session is kept and can be resumed to be finished again.
+     *
+     * @return ObjectMetadata of the stored data object
+     * @throws NoSuchAlgorithmException When an algorithm is not supported
+     * @throws IOException              When the data object cannot be validated, moved or tagged
+     * @throws InterruptedException     When storing the data object is interrupted
+     */
+    public ObjectMetadata finish()
+        throws NoSuchAlgorithmException, IOException, InterruptedException {
+        ensureOpen();
+        Map<String, String> hexDigests = digestPipeline.finish();
+        if (!finishing) {
+            finishing = true;
+            manifest.setProperty("finishing", "true");
+            writeManifest(sessionDirectory, manifest);
+        }
+        close();
+
+        // The store moves the file it is given, so it is given a link to keep the data file
+        Path finishFile = sessionDirectory.resolve(FINISH_FILE);
+        Files.deleteIfExists(finishFile);
+        try {
+            Files.createLink(finishFile, dataFile);
+        } catch (IOException | UnsupportedOperationException le) {
+            logUploadSession.debug("Unable to link the data file of upload session: "
+                                       + getSessionId() + ", it will be copied instead. "
+                                       + le.getMessage());
+            Files.createFile(finishFile);
+            FileHashStoreUtility.transferFile(dataFile, finishFile);
+        }
+
+        boolean keepSession = true;
+        try {
+            ObjectMetadata objInfo = fileHashStore.storeTmpObject(
+                finishFile.toFile(), pid, additionalAlgorithm, checksum, checksumAlgorithm,
+                objSize, hexDigests);
+            keepSession = false;
+            return objInfo;
+
+        } catch (NonMatchingChecksumException | NonMatchingObjSizeException nme) {
+            // The data object will never be valid, so there is nothing left to resume
+            keepSession = false;
+            throw nme;
+
+        } finally {
+            if (keepSession) {
+                Files.deleteIfExists(finishFile);
+                logUploadSession.warn(
+                    "Unable to finish upload session: " + getSessionId() + " for pid: " + pid
+                        + ". It has been kept, and can be resumed to be finished again.");
+            } else {
+                deleteSessionDirectory();
+            }
+        }
+    }
+
+    /**
+     * Abandon the session and delete everything that has been uploaded
+     *
+     * @throws IOException If the session cannot be deleted
+     */
+    public void abort() throws IOException {
+        close();
+        deleteSessionDirectory();
+        logUploadSession.info("Upload session: " + getSessionId() + " aborted for pid: " + pid);
+    }
+
+    /**
+     * Release the session's resources. The session is kept on disk, so that it can be resumed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            digestPipeline.close();
+            dataChannel.close();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            String errMsg = "Upload session: " + getSessionId() + " has been closed.";
+            logUploadSession.error(errMsg);
+            throw new IllegalStateException(errMsg);
+        }
+    }
+
+    private void deleteSessionDirectory() throws IOException {
+        if (!Files.exists(sessionDirectory)) {
+            return;
+        }
+        try (Stream<Path> sessionFiles = Files.list(sessionDirectory)) {
+            for (Path sessionFile : sessionFiles.toList()) {
+                Files.deleteIfExists(sessionFile);
+            }
+        }
+        Files.deleteIfExists(sessionDirectory);
+    }
+
+    /**
+     * Replace the manifest of a session atomically, once the new manifest is on disk
+     */
+    private static void writeManifest(Path sessionDirectory, Properties manifest)
+        throws IOException {
+        Path manifestTmpFile = sessionDirectory.resolve(MANIFEST_FILE + ".tmp");
+        try (OutputStream manifestStream = Files.newOutputStream(manifestTmpFile)) {
+            manifest.store(manifestStream, "HashStore upload session");
+        }
+        force(manifestTmpFile);
+        Files.move(manifestTmpFile, sessionDirectory.resolve(MANIFEST_FILE),
+                   StandardCopyOption.ATOMIC_MOVE);
+        force(sessionDirectory);
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
@@ -4,20 +4,22 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dataone.hashstore.ObjectMetadata;
 import org.dataone.hashstore.exceptions.NonMatchingChecksumException;
+import org.dataone.hashstore.filehashstore.DigestPipeline;
 import org.dataone.hashstore.filehashstore.FileHashStore;
 import org.dataone.hashstore.filehashstore.FileHashStoreUtility;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -104,6 +106,13 @@ public class FileHashStoreLinks extends FileHashStore {
                 throw new NonMatchingChecksumException(errMsg, hexDigests);
             }
 
+            if (!canStoreAsIs(filePath)) {
+                logFileHashStoreLinks.info(
+                    "Data object for pid: " + pid + " cannot be hard linked as is, storing a"
+                        + " copy instead.");
+                return storeObject(filePath, pid, null, checksum, checksumAlgorithm, -1, false);
+            }
+
             // Gather the elements to form the permanent address
             String objectCid = hexDigests.get(OBJECT_STORE_ALGORITHM);
             String objRelativePath =
@@ -127,7 +136,7 @@ public class FileHashStoreLinks extends FileHashStore {
                 "Hard link has been created for pid:" + pid + " with cid: " + objectCid
                     + ", and has been tagged");
 
-            return new ObjectMetadata(pid, objectCid, Files.size(objHardLinkPath), hexDigests);
+            return new ObjectMetadata(pid, objectCid, Files.size(filePath), hexDigests);
 
         }
     }
@@ -148,8 +157,8 @@ public class FileHashStoreLinks extends FileHashStore {
     /**
      * Get a HashMap consisting of algorithms and their respective hex digests for a given data
      * stream. If an additional algorithm is supplied and supported, it and its checksum value will
-     * be included in the hex digests map. Default algorithms: MD5, SHA-1, SHA-256, SHA-384,
-     * SHA-512
+     * be included in the hex digests map. The store's default algorithm list (MD5, SHA-1, SHA-256,
+     * SHA-384, SHA-512 unless configured otherwise) is always included.
      *
      * @param dataStream          input stream of data to store
      * @param additionalAlgorithm additional algorithm to include in hex digest map
@@ -169,55 +178,28 @@ public class FileHashStoreLinks extends FileHashStore {
             generateAddAlgo = shouldCalculateAlgorithm(additionalAlgorithm);
         }
 
-        MessageDigest md5 = MessageDigest.getInstance(DefaultHashAlgorithms.MD5.getName());
-        MessageDigest sha1 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_1.getName());
-        MessageDigest sha256 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_256.getName());
-        MessageDigest sha384 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_384.getName());
-        MessageDigest sha512 = MessageDigest.getInstance(DefaultHashAlgorithms.SHA_512.getName());
-        MessageDigest additionalAlgo = null;
+        List<String> algorithms = new ArrayList<>(getDefaultAlgoList());
         if (generateAddAlgo) {
             logFileHashStoreLinks.debug(
                 "Adding additional algorithm to hex digest map, algorithm: " + additionalAlgorithm);
-            additionalAlgo = MessageDigest.getInstance(additionalAlgorithm);
+            algorithms.add(additionalAlgorithm);
         }
         // Calculate hex digests
-        try (dataStream) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = dataStream.read(buffer)) != -1) {
-                md5.update(buffer, 0, bytesRead);
-                sha1.update(buffer, 0, bytesRead);
-                sha256.update(buffer, 0, bytesRead);
-                sha384.update(buffer, 0, bytesRead);
-                sha512.update(buffer, 0, bytesRead);
-                if (generateAddAlgo) {
-                    additionalAlgo.update(buffer, 0, bytesRead);
-                }
-            }
+        Map<String, String> hexDigests;
+        try (dataStream; DigestPipeline digestPipeline = new DigestPipeline(algorithms)) {
+            digestPipeline.transfer(dataStream, OutputStream.nullOutputStream());
+            hexDigests = digestPipeline.finish();
 
         } catch (IOException ioe) {
             String errMsg = "Unexpected Exception ~ " + ioe.getMessage();
             logFileHashStoreLinks.error(errMsg);
             throw ioe;
 
-        }
-
-        // Create map of hash algorithms and corresponding hex digests
-        Map<String, String> hexDigests = new HashMap<>();
-        String md5Digest = DatatypeConverter.printHexBinary(md5.digest()).toLowerCase();
-        String sha1Digest = DatatypeConverter.printHexBinary(sha1.digest()).toLowerCase();
-        String sha256Digest = DatatypeConverter.printHexBinary(sha256.digest()).toLowerCase();
-        String sha384Digest = DatatypeConverter.printHexBinary(sha384.digest()).toLowerCase();
-        String sha512Digest = DatatypeConverter.printHexBinary(sha512.digest()).toLowerCase();
-        hexDigests.put(DefaultHashAlgorithms.MD5.getName(), md5Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_1.getName(), sha1Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_256.getName(), sha256Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_384.getName(), sha384Digest);
-        hexDigests.put(DefaultHashAlgorithms.SHA_512.getName(), sha512Digest);
-        if (generateAddAlgo) {
-            String extraAlgoDigest =
-                DatatypeConverter.printHexBinary(additionalAlgo.digest()).toLowerCase();
-            hexDigests.put(additionalAlgorithm, extraAlgoDigest);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            String errMsg = "Interrupted while calculating checksums.";
+            logFileHashStoreLinks.error(errMsg);
+            throw new InterruptedIOException(errMsg);
         }
         logFileHashStoreLinks.debug("Checksums have been calculated.");
 
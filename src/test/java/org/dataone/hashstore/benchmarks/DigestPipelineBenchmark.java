@@ -0,0 +1,104 @@
+package org.dataone.hashstore.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.dataone.hashstore.filehashstore.DigestPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares calculating the default HashStore algorithms (plus one additional algorithm) one after
+ * another on the writing thread with calculating them through the parallel DigestPipeline, for a
+ * single object written either to memory or to a tmp file.
+ *
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.dataone.hashstore.benchmarks.DigestPipelineBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DigestPipelineBenchmark {
+    private static final List<String> algorithms =
+        List.of("MD5", "SHA-1", "SHA-256", "SHA-384", "SHA-512", "SHA-512/256");
+
+    @Param({"268435456"})
+    public int objectSize;
+
+    @Param({"memory", "file"})
+    public String target;
+
+    private byte[] object;
+    private Path tmpFile;
+
+    @Setup(Level.Trial)
+    public void generateObject() throws IOException {
+        object = new byte[objectSize];
+        new Random(42).nextBytes(object);
+        tmpFile = Files.createTempFile("digest-pipeline-benchmark", ".tmp");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTmpFile() throws IOException {
+        Files.deleteIfExists(tmpFile);
+    }
+
+    /**
+     * Every chunk is digested on the writing thread, as writeToTmpFileAndGenerateChecksums
+     * previously did
+     */
+    @Benchmark
+    public Map<String, String> serialDigests()
+        throws IOException, InterruptedException, NoSuchAlgorithmException {
+        return storeObject(Long.MAX_VALUE);
+    }
+
+    /**
+     * Chunks are digested by one worker per algorithm, overlapped with the write
+     */
+    @Benchmark
+    public Map<String, String> parallelDigests()
+        throws IOException, InterruptedException, NoSuchAlgorithmException {
+        return storeObject(DigestPipeline.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    private Map<String, String> storeObject(long parallelThreshold)
+        throws IOException, InterruptedException, NoSuchAlgorithmException {
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms, parallelThreshold);
+             OutputStream outputStream = target.equals("file") ? Files.newOutputStream(tmpFile)
+                 : OutputStream.nullOutputStream()) {
+            digestPipeline.transfer(new ByteArrayInputStream(object), outputStream);
+            return digestPipeline.finish();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DigestPipelineBenchmark.class.getSimpleName())
+                       .build()).run();
+    }
+}
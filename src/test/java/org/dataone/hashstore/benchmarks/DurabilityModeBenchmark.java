@@ -0,0 +1,113 @@
+package org.dataone.hashstore.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.dataone.hashstore.HashStore;
+import org.dataone.hashstore.HashStoreFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Stores small objects from several threads at once with each durability mode, to compare the
+ * throughput of flushing every operation on its own ('operation') with flushing the directories
+ * of concurrent operations together ('group'). 'none' is the upper bound. Every object is
+ * distinct, so each operation writes and flushes a new object, pid refs and cid refs file.
+ *
+ * Flushing is close to free on tmpfs, so set {@code -Dhashstore.benchmark.dir} to a directory on
+ * the (disk backed) file system being evaluated.
+ *
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.dataone.hashstore.benchmarks.DurabilityModeBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Threads(16)
+@Fork(1)
+public class DurabilityModeBenchmark {
+    @Param({"4096"})
+    public int objectSize;
+
+    @Param({"none", "operation", "group"})
+    public String durabilityMode;
+
+    private final AtomicLong objectCount = new AtomicLong();
+    private byte[] object;
+    private Path storeDirectory;
+    private HashStore hashStore;
+
+    @Setup(Level.Trial)
+    public void openStore() throws Exception {
+        object = new byte[objectSize];
+        new Random(42).nextBytes(object);
+        String directory = System.getProperty("hashstore.benchmark.dir");
+        storeDirectory = directory == null ? Files.createTempDirectory("durability-mode")
+            : Files.createTempDirectory(Path.of(directory), "durability-mode");
+
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", storeDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeDurability", durabilityMode);
+        hashStore = HashStoreFactory.getHashStore(
+            "org.dataone.hashstore.filehashstore.FileHashStore", storeProperties);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        try (Stream<Path> storeFiles = Files.walk(storeDirectory)) {
+            for (Path storeFile : storeFiles.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(storeFile);
+            }
+        }
+    }
+
+    /**
+     * Store and tag one new object. The object is made distinct by its first eight bytes.
+     */
+    @Benchmark
+    public String storeObject() throws Exception {
+        long objectNumber = objectCount.incrementAndGet();
+        byte[] distinctObject = object.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            distinctObject[i] = (byte) (objectNumber >>> (8 * i));
+        }
+        return hashStore.storeObject(
+            new ByteArrayInputStream(distinctObject), "dou.durability." + objectNumber, null,
+            null, null, -1).cid();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DurabilityModeBenchmark.class.getSimpleName())
+                       .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package org.dataone.hashstore.benchmarks;
+
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import org.dataone.hashstore.filehashstore.FileHashStoreUtility;
+import org.dataone.hashstore.filehashstore.PathResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares resolving the paths touched when deleting an object (pid refs file, cid refs file,
+ * data object and system metadata document) the way FileHashStore did with FileHashStoreUtility,
+ * getting a new MessageDigest for every hash and hashing the pid once per path, and with
+ * PathResolver, which uses pooled digests and buffers and hashes the pid only once.
+ *
+ * Allocations per resolve are reported by the GC profiler as {@code gc.alloc.rate.norm}.
+ *
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.dataone.hashstore.benchmarks.PathResolverBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PathResolverBenchmark {
+    private static final String ALGORITHM = "SHA-256";
+    private static final String FORMAT_ID =
+        "https://ns.dataone.org/service/types/v2.0#SystemMetadata";
+    private static final Path STORE_ROOT = Path.of("/var/metacat/hashstore");
+    private static final Path PID_REFS_DIRECTORY = STORE_ROOT.resolve("refs/pids");
+    private static final Path CID_REFS_DIRECTORY = STORE_ROOT.resolve("refs/cids");
+    private static final Path OBJECT_DIRECTORY = STORE_ROOT.resolve("objects");
+    private static final Path METADATA_DIRECTORY = STORE_ROOT.resolve("metadata");
+
+    @Param({"utility", "resolver"})
+    public String resolveMode;
+
+    private PathResolver pathResolver;
+    private String cid;
+    private int pidIndex = 0;
+
+    @Setup(Level.Trial)
+    public void createResolver() throws NoSuchAlgorithmException {
+        pathResolver = new PathResolver(3, 2, ALGORITHM);
+        cid = FileHashStoreUtility.getPidHexDigest("object.content", ALGORITHM);
+    }
+
+    /**
+     * Resolve the paths of a different pid each time, so that its digest is not already
+     * remembered from an earlier invocation
+     */
+    @Benchmark
+    public int resolveDeletePaths() throws NoSuchAlgorithmException {
+        String pid = "doi:10.18739/A2901ZH2M." + (pidIndex++ & 0xffff);
+        if (resolveMode.equals("utility")) {
+            return resolveWithUtility(pid);
+        }
+        return pathResolver.resolveId(PID_REFS_DIRECTORY, pid).hashCode()
+            + pathResolver.resolveDigest(CID_REFS_DIRECTORY, cid).hashCode()
+            + pathResolver.resolveDigest(OBJECT_DIRECTORY, cid).hashCode()
+            + pathResolver.resolveMetadata(METADATA_DIRECTORY, pid, FORMAT_ID).hashCode();
+    }
+
+    private int resolveWithUtility(String pid) throws NoSuchAlgorithmException {
+        String pidHexDigest = FileHashStoreUtility.getPidHexDigest(pid, ALGORITHM);
+        String pidPath = FileHashStoreUtility.getHierarchicalPathString(3, 2, pidHexDigest);
+        // getHashStoreMetadataPath hashed and sharded the pid again
+        String metadataPidPath = FileHashStoreUtility.getHierarchicalPathString(
+            3, 2, FileHashStoreUtility.getPidHexDigest(pid, ALGORITHM));
+        String metadataDocHash = FileHashStoreUtility.getPidHexDigest(pid + FORMAT_ID, ALGORITHM);
+        return PID_REFS_DIRECTORY.resolve(pidPath).hashCode()
+            + CID_REFS_DIRECTORY.resolve(
+            FileHashStoreUtility.getHierarchicalPathString(3, 2, cid)).hashCode()
+            + OBJECT_DIRECTORY.resolve(
+            FileHashStoreUtility.getHierarchicalPathString(3, 2, cid)).hashCode()
+            + METADATA_DIRECTORY.resolve(metadataPidPath).resolve(metadataDocHash).hashCode();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PathResolverBenchmark.class.getSimpleName())
+                       .addProfiler("gc").build()).run();
+    }
+}
@@ -0,0 +1,171 @@
+package org.dataone.hashstore.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.dataone.hashstore.filehashstore.DigestPipeline;
+import org.dataone.hashstore.filehashstore.FileHashStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Writes several objects at once to tmp files, the way concurrent {@code storeObject} calls do,
+ * and measures how fast they can be read back sequentially afterwards. Objects are written either
+ * in single digest chunks (as tmp files were written before their size was taken into account),
+ * in large writes sized from the object's size (as {@code writeToTmpFileAndGenerateChecksums} now
+ * does), or in large writes after extending the file to its final size with
+ * {@code RandomAccessFile.setLength}.
+ *
+ * Read-back throughput only reflects the on-disk layout of the objects when they are not served
+ * from the page cache, so set {@code -Dhashstore.benchmark.dir} to a directory on the file system
+ * being evaluated, use objects whose total size exceeds the machine's memory, or drop the page
+ * cache between iterations ({@code echo 3 > /proc/sys/vm/drop_caches}). The number of extents of
+ * each object can be inspected with {@code filefrag} or {@code xfs_bmap}.
+ *
+ * Run with: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.dataone.hashstore.benchmarks.TmpFileLayoutBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TmpFileLayoutBenchmark {
+    @Param({"268435456"})
+    public int objectSize;
+
+    @Param({"16"})
+    public int concurrentWriters;
+
+    @Param({"chunked", "sized", "setLength"})
+    public String writeMode;
+
+    private byte[] object;
+    private Path benchmarkDirectory;
+    private List<Path> objectFiles;
+
+    @Setup(Level.Trial)
+    public void generateObject() throws IOException {
+        object = new byte[objectSize];
+        new Random(42).nextBytes(object);
+        String directory = System.getProperty("hashstore.benchmark.dir");
+        benchmarkDirectory = directory == null ? Files.createTempDirectory("tmp-file-layout")
+            : Files.createTempDirectory(Path.of(directory), "tmp-file-layout");
+    }
+
+    @Setup(Level.Iteration)
+    public void writeObjects() throws Exception {
+        objectFiles = new ArrayList<>();
+        ExecutorService writers = Executors.newFixedThreadPool(concurrentWriters);
+        try {
+            List<Future<Path>> writtenObjects = new ArrayList<>();
+            for (int i = 0; i < concurrentWriters; i++) {
+                writtenObjects.add(writers.submit(this::writeObject));
+            }
+            for (Future<Path> writtenObject : writtenObjects) {
+                objectFiles.add(writtenObject.get());
+            }
+        } finally {
+            writers.shutdown();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteObjects() throws IOException {
+        for (Path objectFile : objectFiles) {
+            Files.deleteIfExists(objectFile);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBenchmarkDirectory() throws IOException {
+        try (Stream<Path> leftovers = Files.list(benchmarkDirectory)) {
+            for (Path leftover : leftovers.toList()) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        Files.deleteIfExists(benchmarkDirectory);
+    }
+
+    /**
+     * Read every object back in full, one after another
+     */
+    @Benchmark
+    public long readBack() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        long bytesRead = 0;
+        for (Path objectFile : objectFiles) {
+            try (FileChannel channel = FileChannel.open(objectFile, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(buffer)) != -1) {
+                    bytesRead += read;
+                    buffer.clear();
+                }
+            }
+        }
+        return bytesRead;
+    }
+
+    private Path writeObject() throws IOException {
+        Path objectFile = Files.createTempFile(benchmarkDirectory, "object", ".tmp");
+        int writeSize = writeMode.equals("chunked") ? DigestPipeline.CHUNK_SIZE
+            : Math.min(objectSize, FileHashStore.MAX_TMP_FILE_WRITE_SIZE);
+        if (writeMode.equals("setLength")) {
+            try (RandomAccessFile file = new RandomAccessFile(objectFile.toFile(), "rw")) {
+                file.setLength(objectSize);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(objectFile, StandardOpenOption.WRITE);
+             OutputStream outputStream = Channels.newOutputStream(channel)) {
+            // Digest chunks are handed over one at a time, as DigestPipeline.transfer does
+            byte[] writeBuffer = new byte[writeSize];
+            int buffered = 0;
+            for (int offset = 0; offset < objectSize; offset += DigestPipeline.CHUNK_SIZE) {
+                int length = Math.min(DigestPipeline.CHUNK_SIZE, objectSize - offset);
+                System.arraycopy(object, offset, writeBuffer, buffered, length);
+                buffered += length;
+                if (buffered == writeSize) {
+                    outputStream.write(writeBuffer, 0, buffered);
+                    buffered = 0;
+                }
+            }
+            outputStream.write(writeBuffer, 0, buffered);
+        }
+        return objectFile;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TmpFileLayoutBenchmark.class.getSimpleName())
+                       .build()).run();
+    }
+}
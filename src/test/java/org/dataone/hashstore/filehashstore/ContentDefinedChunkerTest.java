@@ -0,0 +1,80 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for ContentDefinedChunker
+ */
+public class ContentDefinedChunkerTest {
+
+    /**
+     * Check that chunks cover the whole stream and respect the minimum and maximum chunk sizes
+     */
+    @Test
+    public void nextChunk_sizes() throws Exception {
+        byte[] data = new byte[12 * 1024 * 1024 + 123];
+        new Random(42).nextBytes(data);
+
+        List<byte[]> chunks = chunk(data);
+
+        int total = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= ContentDefinedChunker.MAX_CHUNK_SIZE);
+            if (i < chunks.size() - 1) {
+                assertTrue(length >= ContentDefinedChunker.MIN_CHUNK_SIZE);
+            }
+            assertTrue(Arrays.equals(
+                Arrays.copyOfRange(data, total, total + length), chunks.get(i)));
+            total += length;
+        }
+        assertEquals(data.length, total);
+    }
+
+    /**
+     * Check that data inserted in the middle of a stream only changes the chunks around it
+     */
+    @Test
+    public void nextChunk_insertion() throws Exception {
+        byte[] data = new byte[12 * 1024 * 1024];
+        new Random(7).nextBytes(data);
+        byte[] insertedData = new byte[data.length + 10];
+        System.arraycopy(data, 0, insertedData, 0, data.length / 2);
+        System.arraycopy(
+            data, data.length / 2, insertedData, data.length / 2 + 10, data.length / 2);
+
+        List<String> chunks = getFingerprints(chunk(data));
+        List<String> insertedChunks = getFingerprints(chunk(insertedData));
+
+        long sharedChunks = insertedChunks.stream().filter(chunks::contains).count();
+        assertTrue(chunks.size() > 2);
+        assertTrue(sharedChunks >= chunks.size() - 2);
+    }
+
+    private static List<byte[]> chunk(byte[] data) throws Exception {
+        ContentDefinedChunker chunker = new ContentDefinedChunker(new ByteArrayInputStream(data));
+        List<byte[]> chunks = new ArrayList<>();
+        int chunkLength;
+        while ((chunkLength = chunker.nextChunk()) > 0) {
+            chunks.add(Arrays.copyOf(chunker.getBuffer(), chunkLength));
+        }
+        return chunks;
+    }
+
+    private static List<String> getFingerprints(List<byte[]> chunks) {
+        List<String> fingerprints = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            fingerprints.add(Integer.toHexString(Arrays.hashCode(chunk)) + ":" + chunk.length);
+        }
+        return fingerprints;
+    }
+}
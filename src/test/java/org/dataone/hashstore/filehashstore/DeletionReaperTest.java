@@ -0,0 +1,123 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for DeletionReaper
+ */
+public class DeletionReaperTest {
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that queued files are deleted in the background, no faster than the rate limit
+     */
+    @Test
+    public void enqueue() throws Exception {
+        DeletionReaper deletionReaper = new DeletionReaper(10);
+        List<Path> deleteList = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            deleteList.add(Files.createFile(tempFolder.resolve("object" + i + "_delete")));
+        }
+
+        long start = System.nanoTime();
+        deletionReaper.enqueue(deleteList);
+        assertTrue(deletionReaper.awaitEmptyBacklog(1, TimeUnit.MINUTES));
+
+        // The last 5 files wait for the next one second window
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(0, deletionReaper.getBacklogSize());
+        assertEquals(15, deletionReaper.getDeletedCount());
+        assertEquals(0, deletionReaper.getFailedCount());
+        for (Path deleteItem : deleteList) {
+            assertFalse(Files.exists(deleteItem));
+        }
+    }
+
+    /**
+     * Check that files renamed for deletion that were left behind are found and deleted, and that
+     * other files, and the files of skipped directories, are left as they are
+     */
+    @Test
+    public void recover() throws Exception {
+        DeletionReaper deletionReaper = new DeletionReaper(1000);
+        Path shardDirectory = Files.createDirectories(tempFolder.resolve("objects/94/f9/b6"));
+        Path leftover = Files.createFile(shardDirectory.resolve("c88f1f458e_delete"));
+        Path object = Files.createFile(shardDirectory.resolve("d41d8cd98f"));
+        Path renamedLeftover = FileHashStoreUtility.renamePathForDeletion(
+            Files.createFile(shardDirectory.resolve("a1b2c3d4e5")));
+        Path tmpDirectory = Files.createDirectories(tempFolder.resolve("objects/tmp"));
+        Path tmpFile = Files.createFile(tmpDirectory.resolve("tmp123_delete"));
+
+        assertEquals(2, deletionReaper.recover(
+            List.of(tempFolder.resolve("objects"), tempFolder.resolve("missing")),
+            List.of(tmpDirectory), 0));
+        assertTrue(deletionReaper.awaitEmptyBacklog(1, TimeUnit.MINUTES));
+
+        assertFalse(Files.exists(leftover));
+        assertFalse(Files.exists(renamedLeftover));
+        assertTrue(Files.exists(object));
+        assertTrue(Files.exists(tmpFile));
+    }
+
+    /**
+     * Check that reaping a file renamed for deletion does not remove a file of the same name that
+     * was renamed for deletion later, which its delete may still restore
+     */
+    @Test
+    public void enqueue_laterRenameOfSameFile() throws Exception {
+        DeletionReaper deletionReaper = new DeletionReaper(1000);
+        Path object = tempFolder.resolve("c88f1f458e");
+        Path firstDeletePath = FileHashStoreUtility.renamePathForDeletion(Files.createFile(object));
+        Path secondDeletePath =
+            FileHashStoreUtility.renamePathForDeletion(Files.createFile(object));
+        assertNotEquals(firstDeletePath, secondDeletePath);
+
+        deletionReaper.enqueue(List.of(firstDeletePath));
+        assertTrue(deletionReaper.awaitEmptyBacklog(1, TimeUnit.MINUTES));
+
+        assertFalse(Files.exists(firstDeletePath));
+        FileHashStoreUtility.renamePathForRestoration(secondDeletePath);
+        assertTrue(Files.exists(object));
+    }
+
+    /**
+     * Check that files renamed for deletion recently are left for the delete (possibly of another
+     * process) that renamed them
+     */
+    @Test
+    public void recover_recentlyRenamed() throws Exception {
+        DeletionReaper deletionReaper = new DeletionReaper(1000);
+        Path shardDirectory = Files.createDirectories(tempFolder.resolve("objects/94/f9/b6"));
+        Path object = Files.createFile(shardDirectory.resolve("c88f1f458e"));
+        Path leftover = FileHashStoreUtility.renamePathForDeletion(object);
+
+        assertEquals(0, deletionReaper.recover(
+            List.of(tempFolder), List.of(), DeletionReaper.DEFAULT_RECOVERY_MIN_AGE_MILLIS));
+        assertTrue(Files.exists(leftover));
+    }
+
+    /**
+     * Check that the rate limit must be positive
+     */
+    @Test
+    public void deletionReaper_invalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new DeletionReaper(0));
+    }
+}
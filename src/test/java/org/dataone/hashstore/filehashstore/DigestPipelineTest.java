@@ -0,0 +1,195 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for DigestPipeline
+ */
+public class DigestPipelineTest {
+    private static final List<String> algorithms =
+        List.of("MD5", "SHA-1", "SHA-256", "SHA-384", "SHA-512", "MD2");
+
+    /**
+     * Check that the hex digests calculated in parallel match those calculated one at a time, and
+     * that the data is transferred as is
+     */
+    @Test
+    public void transfer_parallelDigests() throws Exception {
+        // Not a multiple of the chunk size, so the last chunk is partially filled
+        byte[] data = generateData(3 * 1024 * 1024 + 123);
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms, 0)) {
+            long bytesTransferred =
+                digestPipeline.transfer(new ByteArrayInputStream(data), transferred);
+            hexDigests = digestPipeline.finish();
+            assertEquals(data.length, bytesTransferred);
+        }
+
+        assertArrayEquals(data, transferred.toByteArray());
+        for (String algorithm : algorithms) {
+            assertEquals(getHexDigest(algorithm, data), hexDigests.get(algorithm));
+        }
+    }
+
+    /**
+     * Check that data transferred to a channel is written as is with gathered writes, each at most
+     * the write size requested
+     */
+    @Test
+    public void transfer_channelGatheredWrites() throws Exception {
+        byte[] data = generateData(DigestPipeline.CHUNK_SIZE * DigestPipeline.RING_SIZE * 3 + 5);
+        int writeSize = DigestPipeline.CHUNK_SIZE * 3;
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        List<Long> writeSizes = new ArrayList<>();
+        WritableByteChannel outputChannel = Channels.newChannel(transferred);
+        GatheringByteChannel gatheringChannel = new GatheringByteChannel() {
+            @Override
+            public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+                long bytesWritten = 0;
+                for (int i = offset; i < offset + length; i++) {
+                    bytesWritten += outputChannel.write(srcs[i]);
+                }
+                writeSizes.add(bytesWritten);
+                return bytesWritten;
+            }
+
+            @Override
+            public long write(ByteBuffer[] srcs) throws IOException {
+                return write(srcs, 0, srcs.length);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return (int) write(new ByteBuffer[] {src});
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms, 0)) {
+            long bytesTransferred = digestPipeline.transfer(
+                new ByteArrayInputStream(data), gatheringChannel, writeSize);
+            hexDigests = digestPipeline.finish();
+            assertEquals(data.length, bytesTransferred);
+        }
+
+        assertArrayEquals(data, transferred.toByteArray());
+        assertEquals((data.length + writeSize - 1) / writeSize, writeSizes.size());
+        assertEquals(writeSize, (long) writeSizes.get(0));
+        for (String algorithm : algorithms) {
+            assertEquals(getHexDigest(algorithm, data), hexDigests.get(algorithm));
+        }
+    }
+
+    /**
+     * Check that the hex digests are accurate when switching from digesting on the calling thread
+     * to digesting in parallel part way through a stream
+     */
+    @Test
+    public void transfer_belowAndAboveParallelThreshold() throws Exception {
+        byte[] data = generateData(DigestPipeline.CHUNK_SIZE * 20);
+
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(
+            algorithms, DigestPipeline.CHUNK_SIZE * 5L)) {
+            digestPipeline.transfer(
+                new ByteArrayInputStream(data), OutputStream.nullOutputStream());
+            hexDigests = digestPipeline.finish();
+        }
+
+        for (String algorithm : algorithms) {
+            assertEquals(getHexDigest(algorithm, data), hexDigests.get(algorithm));
+        }
+    }
+
+    /**
+     * Check that data pushed in small pieces with update is digested accurately
+     */
+    @Test
+    public void update_smallPieces() throws Exception {
+        // More chunks than the ring holds, so chunks must be recycled
+        byte[] data =
+            generateData(DigestPipeline.CHUNK_SIZE * DigestPipeline.RING_SIZE * 3 + 7);
+
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms, 0)) {
+            for (int offset = 0; offset < data.length; offset += 1000) {
+                digestPipeline.update(data, offset, Math.min(1000, data.length - offset));
+            }
+            hexDigests = digestPipeline.finish();
+        }
+
+        for (String algorithm : algorithms) {
+            assertEquals(getHexDigest(algorithm, data), hexDigests.get(algorithm));
+        }
+    }
+
+    /**
+     * Check that an empty stream produces the hex digests of no data
+     */
+    @Test
+    public void transfer_emptyStream() throws Exception {
+        Map<String, String> hexDigests;
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms)) {
+            digestPipeline.transfer(
+                new ByteArrayInputStream(new byte[0]), OutputStream.nullOutputStream());
+            hexDigests = digestPipeline.finish();
+        }
+
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", hexDigests.get("MD5"));
+    }
+
+    /**
+     * Check that a pipeline cannot be used after it has been finished
+     */
+    @Test
+    public void finish_alreadyFinished() throws Exception {
+        try (DigestPipeline digestPipeline = new DigestPipeline(algorithms)) {
+            digestPipeline.finish();
+            assertThrows(IllegalStateException.class, digestPipeline::finish);
+            assertThrows(
+                IllegalStateException.class, () -> digestPipeline.update(new byte[1], 0, 1));
+        }
+    }
+
+    private static byte[] generateData(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String getHexDigest(String algorithm, byte[] data) throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
+        return DatatypeConverter.printHexBinary(messageDigest.digest(data)).toLowerCase();
+    }
+}
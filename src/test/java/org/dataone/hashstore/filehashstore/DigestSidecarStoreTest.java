@@ -0,0 +1,58 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for DigestSidecarStore
+ */
+public class DigestSidecarStoreTest {
+    private static final String CID =
+        "4d198171eef969d553d4c9537b1811a7b078f9a3804fc978a761bc014c05972c";
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that hex digests recorded at different times are all found, and that the sidecar is
+     * deleted with its cid
+     */
+    @Test
+    public void record_merge() throws Exception {
+        Path tmpDirectory = Files.createDirectories(tempFolder.resolve("objects/tmp"));
+        DigestSidecarStore digestSidecarStore = new DigestSidecarStore(
+            tempFolder.resolve("objects/digests"), tmpDirectory,
+            new PathResolver(3, 2, "SHA-256"));
+        assertNull(digestSidecarStore.get(CID, "MD5"));
+
+        digestSidecarStore.record(
+            CID, Map.of("MD5", "db91c910a3202478c8def1071c54aae5", "SHA-256", CID));
+        digestSidecarStore.record(CID, Map.of("MD2", "b33c730ac5e36b2b886a9cd14552f42e"));
+
+        assertEquals(Map.of("MD2", "b33c730ac5e36b2b886a9cd14552f42e", "MD5",
+                            "db91c910a3202478c8def1071c54aae5", "SHA-256", CID),
+                     digestSidecarStore.read(CID));
+        assertTrue(Files.exists(tempFolder.resolve("objects/digests/4d/19/81").resolve(
+            CID.substring(6))));
+        try (Stream<Path> tmpFiles = Files.list(tmpDirectory)) {
+            assertEquals(0, tmpFiles.count());
+        }
+
+        digestSidecarStore.delete(CID);
+        assertFalse(Files.exists(digestSidecarStore.getSidecarPath(CID)));
+        assertNull(digestSidecarStore.get(CID, "MD2"));
+    }
+}
@@ -0,0 +1,73 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreDurabilityModes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for DurabilityCommitter
+ */
+public class DurabilityCommitterTest {
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that concurrent writers sharing a directory are all released by group commits
+     */
+    @Test
+    public void commit_groupConcurrentWriters() throws Exception {
+        DurabilityCommitter committer = new DurabilityCommitter(HashStoreDurabilityModes.group);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Path file = Files.writeString(tempFolder.resolve("file" + i), "data" + i);
+            futures.add(executorService.submit(() -> {
+                committer.commit(List.of(file, tempFolder));
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+    }
+
+    /**
+     * Check that a writer whose file cannot be flushed receives the exception, without affecting
+     * the other writers
+     */
+    @Test
+    public void commit_groupMissingFile() throws Exception {
+        DurabilityCommitter committer = new DurabilityCommitter(HashStoreDurabilityModes.group);
+        assertThrows(
+            IOException.class, () -> committer.commit(List.of(tempFolder.resolve("missing"))));
+        committer.commit(List.of(tempFolder));
+    }
+
+    /**
+     * Check that files are flushed directly in 'operation' mode, and not at all in 'none' mode
+     */
+    @Test
+    public void commit_operationAndNone() throws Exception {
+        Path missingFile = tempFolder.resolve("missing");
+        assertThrows(IOException.class,
+                     () -> new DurabilityCommitter(HashStoreDurabilityModes.operation).commit(
+                         List.of(missingFile)));
+        new DurabilityCommitter(HashStoreDurabilityModes.none).commit(List.of(missingFile));
+    }
+}
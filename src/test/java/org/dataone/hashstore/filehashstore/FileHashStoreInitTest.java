@@ -1,20 +1,38 @@
 package org.dataone.hashstore.filehashstore;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.dataone.hashstore.HashStore;
+import org.dataone.hashstore.ObjectMetadata;
+import org.dataone.hashstore.exceptions.PidRefsFileNotFoundException;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreIdTypes;
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreRefUpdateTypes;
 import org.dataone.hashstore.testdata.TestDataHarness;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -155,6 +173,26 @@ public class FileHashStoreInitTest {
         });
     }
 
+    /**
+     * Test constructor upload session ttl that is not a positive amount of hours
+     */
+    @Test
+    public void constructor_illegalUploadSessionTtlArg() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeUploadSessionTtl", "0");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
     /**
      * Test constructor empty algorithm property value throws exception
      */
@@ -442,4 +480,684 @@ public class FileHashStoreInitTest {
             new FileHashStore(storeProperties);
         });
     }
+
+    /**
+     * Check that a store initialized in 'shared' lock mode records the mode and creates the lease
+     * directories
+     */
+    @Test
+    public void testStoreLockMode_shared() throws Exception {
+        Path sharedStoreDirectory = rootDirectory.resolve("shared");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", sharedStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeLockMode", "shared");
+
+        FileHashStore sharedHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            sharedHashStore.loadHashStoreYaml(sharedStoreDirectory);
+        assertEquals("shared", hsProperties.get("storeLockMode"));
+        assertTrue(Files.isDirectory(sharedStoreDirectory.resolve("locks/object_cids")));
+
+        // Leases are released once an object has been stored
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+            sharedHashStore.storeObject(dataStream, pid, null, null, null, -1);
+        }
+        try (Stream<Path> leases = Files.walk(sharedStoreDirectory.resolve("locks"))) {
+            assertTrue(leases.noneMatch(Files::isRegularFile));
+        }
+
+        // The lock mode is picked up from 'hashstore.yaml' when it is not supplied
+        storeProperties.remove("storeLockMode");
+        new FileHashStore(storeProperties);
+    }
+
+    /**
+     * Check that a store defaults to 'local' lock mode and does not create lease directories
+     */
+    @Test
+    public void testStoreLockMode_defaultLocal() throws Exception {
+        HashMap<String, Object> hsProperties = fileHashStore.loadHashStoreYaml(rootDirectory);
+        assertEquals("local", hsProperties.get("storeLockMode"));
+        assertFalse(Files.exists(rootDirectory.resolve("locks")));
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the lock mode is different when
+     * instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffLockMode() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeLockMode", "shared");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Test constructor with an unsupported lock mode
+     */
+    @Test
+    public void constructor_unsupportedLockMode() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.resolve("other").toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeLockMode", "global");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that a store in 'group' durability mode records the mode in 'hashstore.yaml' and
+     * stores objects and metadata from concurrent threads
+     */
+    @Test
+    public void testStoreDurability_group() throws Exception {
+        Path durableStoreDirectory = rootDirectory.resolve("durable");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", durableStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeDurability", "group");
+
+        FileHashStore durableHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            durableHashStore.loadHashStoreYaml(durableStoreDirectory);
+        assertEquals("group", hsProperties.get("storeDurability"));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        List<Future<?>> futures = new ArrayList<>();
+        for (String pid : testData.pidList) {
+            futures.add(executorService.submit(() -> {
+                String pidFormatted = pid.replace("/", "_");
+                try (InputStream dataStream = Files.newInputStream(
+                    testData.getTestFile(pidFormatted));
+                     InputStream metadataStream = Files.newInputStream(
+                         testData.getTestFile(pidFormatted + ".xml"))) {
+                    durableHashStore.storeObject(dataStream, pid, null, null, null, -1);
+                    durableHashStore.storeMetadata(metadataStream, pid);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        for (String pid : testData.pidList) {
+            assertEquals(testData.pidData.get(pid).get("sha256"),
+                         durableHashStore.findObject(pid).cid());
+        }
+
+        // Deletions are committed as well
+        Path objRealPath = durableHashStore.getHashStoreDataObjectPath(testData.pidList[0]);
+        durableHashStore.deleteObject(testData.pidList[0]);
+        assertFalse(Files.exists(objRealPath));
+        assertThrows(PidRefsFileNotFoundException.class,
+                     () -> durableHashStore.findObject(testData.pidList[0]));
+
+        // The durability mode is picked up from 'hashstore.yaml' when it is not supplied
+        storeProperties.remove("storeDurability");
+        new FileHashStore(storeProperties);
+    }
+
+    /**
+     * Check that a store defaults to 'none' durability mode
+     */
+    @Test
+    public void testStoreDurability_defaultNone() throws Exception {
+        HashMap<String, Object> hsProperties = fileHashStore.loadHashStoreYaml(rootDirectory);
+        assertEquals("none", hsProperties.get("storeDurability"));
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the durability mode is different
+     * when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffDurability() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeDurability", "operation");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Test constructor with an unsupported durability mode
+     */
+    @Test
+    public void constructor_unsupportedDurability() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.resolve("other").toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeDurability", "always");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that a store configured with 'deflate' compression compresses the objects and metadata
+     * that compress well, and returns their uncompressed content, size and hex digests
+     */
+    @Test
+    public void testStoreCompression_deflate() throws Exception {
+        Path compressedStoreDirectory = rootDirectory.resolve("compressed");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", compressedStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeCompression", "deflate");
+
+        FileHashStore compressedHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            compressedHashStore.loadHashStoreYaml(compressedStoreDirectory);
+        assertEquals("deflate", hsProperties.get("storeCompression"));
+
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+            Path testMetadataFile = testData.getTestFile(pidFormatted + ".xml");
+            ObjectMetadata objInfo;
+            try (InputStream dataStream = Files.newInputStream(testDataFile);
+                 InputStream metadataStream = Files.newInputStream(testMetadataFile)) {
+                objInfo = compressedHashStore.storeObject(dataStream, pid, null, null, null, -1);
+                compressedHashStore.storeMetadata(metadataStream, pid);
+            }
+
+            assertEquals(testData.pidData.get(pid).get("sha256"), objInfo.cid());
+            assertEquals(Files.size(testDataFile), objInfo.size());
+            assertEquals(testData.pidData.get(pid).get("md2"),
+                         compressedHashStore.getHexDigest(pid, "MD2"));
+            try (InputStream objectStream = compressedHashStore.retrieveObject(pid);
+                 InputStream metadataStream = compressedHashStore.retrieveMetadata(pid)) {
+                assertTrue(Arrays.equals(
+                    Files.readAllBytes(testDataFile), objectStream.readAllBytes()));
+                assertTrue(Arrays.equals(
+                    Files.readAllBytes(testMetadataFile), metadataStream.readAllBytes()));
+            }
+            ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+            compressedHashStore.transferObjectTo(pid, Channels.newChannel(transferred));
+            assertTrue(Arrays.equals(Files.readAllBytes(testDataFile), transferred.toByteArray()));
+        }
+
+        // Every metadata document compresses well
+        String pid = testData.pidList[0];
+        Path storedMetadataPath = compressedHashStore.getHashStoreMetadataPath(
+            pid, "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        assertTrue(Files.size(storedMetadataPath) < Files.size(
+            testData.getTestFile(pid.replace("/", "_") + ".xml")));
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the compression mode is
+     * different when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffCompression() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeCompression", "deflate");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that large data objects sharing most of their content share the chunks holding it,
+     * are read back whole, and that chunks are only deleted along with the last object using them
+     */
+    @Test
+    public void testStoreChunking_cdc() throws Exception {
+        Path chunkedStoreDirectory = rootDirectory.resolve("chunked");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", chunkedStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeChunking", "cdc");
+
+        FileHashStore chunkedHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            chunkedHashStore.loadHashStoreYaml(chunkedStoreDirectory);
+        assertEquals("cdc", hsProperties.get("storeChunking"));
+
+        // The second object is the first one with a few bytes inserted in the middle
+        byte[] firstObject = new byte[20 * 1024 * 1024];
+        new Random(42).nextBytes(firstObject);
+        byte[] secondObject = new byte[firstObject.length + 100];
+        System.arraycopy(firstObject, 0, secondObject, 0, firstObject.length / 2);
+        System.arraycopy(firstObject, firstObject.length / 2, secondObject,
+                         firstObject.length / 2 + 100, firstObject.length / 2);
+
+        Path chunkDirectory = chunkedStoreDirectory.resolve("objects/chunks");
+        chunkedHashStore.storeObject(new ByteArrayInputStream(firstObject), "first", null, null,
+                                     null, -1);
+        long firstChunkCount = countFiles(chunkDirectory);
+        ObjectMetadata objInfo = chunkedHashStore.storeObject(
+            new ByteArrayInputStream(secondObject), "second", null, null, null, -1);
+        assertTrue(firstChunkCount > 1);
+        assertTrue(countFiles(chunkDirectory) - firstChunkCount <= 3);
+
+        assertEquals(secondObject.length, objInfo.size());
+        assertTrue(Files.size(chunkedHashStore.getHashStoreDataObjectPath("second")) < 4096);
+        try (InputStream objectStream = chunkedHashStore.retrieveObject("second")) {
+            assertTrue(Arrays.equals(secondObject, objectStream.readAllBytes()));
+        }
+        assertEquals(objInfo.hexDigests().get("MD5"),
+                     chunkedHashStore.getHexDigest("second", "MD5"));
+        // A range read only opens the chunks holding the range
+        int offset = secondObject.length - ContentDefinedChunker.MAX_CHUNK_SIZE - 10;
+        try (InputStream rangeStream = chunkedHashStore.retrieveObject("second", offset, -1)) {
+            assertTrue(Arrays.equals(Arrays.copyOfRange(secondObject, offset, secondObject.length),
+                                     rangeStream.readAllBytes()));
+        }
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        chunkedHashStore.transferObjectTo("second", offset, -1, Channels.newChannel(transferred));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(secondObject, offset, secondObject.length),
+                                 transferred.toByteArray()));
+
+        chunkedHashStore.deleteObject("first");
+        try (InputStream objectStream = chunkedHashStore.retrieveObject("second")) {
+            assertTrue(Arrays.equals(secondObject, objectStream.readAllBytes()));
+        }
+        chunkedHashStore.deleteObject("second");
+        assertEquals(0, countFiles(chunkDirectory));
+        assertEquals(0, countFiles(chunkedStoreDirectory.resolve("refs/chunks")));
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the chunking mode is different
+     * when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffChunking() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeChunking", "cdc");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that small data objects are packed into segments (with no file at their permanent
+     * address), can be retrieved, hashed and deleted, and that larger ones are stored as files
+     */
+    @Test
+    public void testStorePacking_segments() throws Exception {
+        Path packedStoreDirectory = rootDirectory.resolve("packed");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", packedStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storePacking", "segments");
+
+        FileHashStore packedHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            packedHashStore.loadHashStoreYaml(packedStoreDirectory);
+        assertEquals("segments", hsProperties.get("storePacking"));
+
+        byte[] smallObject = "site,date,temperature\nBRW,2024-01-01,-27.5\n".getBytes();
+        byte[] largeObject = new byte[SegmentStore.PACKED_OBJECT_THRESHOLD + 1];
+        new Random(42).nextBytes(largeObject);
+        ObjectMetadata smallObjInfo = packedHashStore.storeObject(
+            new ByteArrayInputStream(smallObject), "small", null, null, null, -1);
+        packedHashStore.storeObject(
+            new ByteArrayInputStream(largeObject), "large", null, null, null, -1);
+
+        assertEquals(smallObject.length, smallObjInfo.size());
+        assertFalse(Files.exists(packedHashStore.getHashStoreDataObjectPath("small")));
+        assertTrue(Files.exists(packedHashStore.getHashStoreDataObjectPath("large")));
+        assertEquals(smallObjInfo.cid(), packedHashStore.findObject("small").cid());
+        assertEquals(smallObjInfo.hexDigests().get("MD5"),
+                     packedHashStore.getHexDigest("small", "MD5"));
+        try (InputStream smallStream = packedHashStore.retrieveObject("small");
+             InputStream largeStream = packedHashStore.retrieveObject("large")) {
+            assertTrue(Arrays.equals(smallObject, smallStream.readAllBytes()));
+            assertTrue(Arrays.equals(largeObject, largeStream.readAllBytes()));
+        }
+        try (InputStream rangeStream = packedHashStore.retrieveObject("small", 22, 3)) {
+            assertTrue(Arrays.equals("BRW".getBytes(), rangeStream.readAllBytes()));
+        }
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        packedHashStore.transferObjectTo("small", 22, 3, Channels.newChannel(transferred));
+        assertTrue(Arrays.equals("BRW".getBytes(), transferred.toByteArray()));
+
+        // A store opened at the same path shares the packed data objects
+        FileHashStore reopenedHashStore = new FileHashStore(storeProperties);
+        try (InputStream smallStream = reopenedHashStore.retrieveObject("small")) {
+            assertTrue(Arrays.equals(smallObject, smallStream.readAllBytes()));
+        }
+
+        packedHashStore.deleteObject("small");
+        assertThrows(PidRefsFileNotFoundException.class,
+                     () -> packedHashStore.findObject("small"));
+        ObjectMetadata restoredObjInfo = packedHashStore.storeObject(
+            new ByteArrayInputStream(smallObject), "small", null, null, null, -1);
+        assertEquals(smallObjInfo.cid(), restoredObjInfo.cid());
+    }
+
+    /**
+     * Check that packing cannot be combined with the 'shared' lock mode
+     */
+    @Test
+    public void testStorePacking_sharedLockMode() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty(
+                "storePath", rootDirectory.resolve("packedshared").toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storePacking", "segments");
+            storeProperties.setProperty("storeLockMode", "shared");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that a store with the 'index' refs mode tags, finds and untags objects without refs
+     * files, and that a store reopened at the same path finds the same refs
+     */
+    @Test
+    public void testStoreRefs_index() throws Exception {
+        Path indexedStoreDirectory = rootDirectory.resolve("indexed");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", indexedStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeRefs", "index");
+
+        FileHashStore indexedHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            indexedHashStore.loadHashStoreYaml(indexedStoreDirectory);
+        assertEquals("index", hsProperties.get("storeRefs"));
+
+        byte[] object = "site,date,temperature\nBRW,2024-01-01,-27.5\n".getBytes();
+        ObjectMetadata objInfo = indexedHashStore.storeObject(
+            new ByteArrayInputStream(object), "dou.test.1", null, null, null, -1);
+        indexedHashStore.tagObject("dou.test.2", objInfo.cid());
+        assertFalse(Files.exists(
+            indexedHashStore.getHashStoreRefsPath("dou.test.1", HashStoreIdTypes.pid)));
+        assertFalse(Files.exists(
+            indexedHashStore.getHashStoreRefsPath(objInfo.cid(), HashStoreIdTypes.cid)));
+        assertEquals(objInfo.cid(), indexedHashStore.findObject("dou.test.2").cid());
+
+        // A store opened at the same path shares the refs index
+        FileHashStore reopenedHashStore = new FileHashStore(storeProperties);
+        assertEquals(objInfo.cid(), reopenedHashStore.findObject("dou.test.1").cid());
+
+        reopenedHashStore.deleteObject("dou.test.1");
+        assertThrows(PidRefsFileNotFoundException.class,
+                     () -> reopenedHashStore.findObject("dou.test.1"));
+        try (InputStream objStream = reopenedHashStore.retrieveObject("dou.test.2")) {
+            assertTrue(Arrays.equals(object, objStream.readAllBytes()));
+        }
+        Path objPath = reopenedHashStore.getHashStoreDataObjectPath("dou.test.2");
+        assertTrue(reopenedHashStore.deleteObjects(List.of("dou.test.2")).get(0).isDeleted());
+        assertFalse(Files.exists(objPath));
+        assertThrows(PidRefsFileNotFoundException.class,
+                     () -> reopenedHashStore.findObject("dou.test.2"));
+    }
+
+    /**
+     * Check that the 'index' refs mode cannot be combined with the 'shared' lock mode
+     */
+    @Test
+    public void testStoreRefs_sharedLockMode() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty(
+                "storePath", rootDirectory.resolve("indexedshared").toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeRefs", "index");
+            storeProperties.setProperty("storeLockMode", "shared");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that cid refs files are rewritten by default, and that updates are only appended to
+     * them (as tombstones for removed pids) in a store with the 'appendable' refs format
+     */
+    @Test
+    public void testStoreRefsFormat() throws Exception {
+        String cid = "abcdef123456789";
+        Path cidRefsPath = fileHashStore.getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
+        fileHashStore.tagObject("dou.test.1", cid);
+        fileHashStore.tagObject("dou.test.2", cid);
+        fileHashStore.updateRefsFile("dou.test.1", cidRefsPath, HashStoreRefUpdateTypes.remove);
+        assertEquals(List.of("dou.test.2"), Files.readAllLines(cidRefsPath));
+        assertEquals("plain", fileHashStore.loadHashStoreYaml(rootDirectory)
+            .get("storeRefsFormat"));
+
+        Path appendableStoreDirectory = rootDirectory.resolve("appendable");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", appendableStoreDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        storeProperties.setProperty("storeRefsFormat", "appendable");
+
+        FileHashStore appendableHashStore = new FileHashStore(storeProperties);
+        assertEquals("appendable", appendableHashStore.loadHashStoreYaml(appendableStoreDirectory)
+            .get("storeRefsFormat"));
+        Path appendableCidRefsPath =
+            appendableHashStore.getHashStoreRefsPath(cid, HashStoreIdTypes.cid);
+        appendableHashStore.tagObject("dou.test.1", cid);
+        appendableHashStore.tagObject("dou.test.2", cid);
+        appendableHashStore.updateRefsFile(
+            "dou.test.1", appendableCidRefsPath, HashStoreRefUpdateTypes.remove);
+        assertEquals(List.of("dou.test.1", "dou.test.2", "- dou.test.1"),
+                     Files.readAllLines(appendableCidRefsPath));
+        assertFalse(appendableHashStore.isStringInRefsFile("dou.test.1", appendableCidRefsPath));
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the refs format is different
+     * when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffRefsFormat() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeRefsFormat", "appendable");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the packing mode is different
+     * when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffPacking() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storePacking", "segments");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Check that a store configured with its own default algorithm list only calculates those
+     * algorithms (plus the store algorithm), and records them in 'hashstore.yaml'
+     */
+    @Test
+    public void testStoreDefaultAlgoList() throws Exception {
+        Path storeDirectory = rootDirectory.resolve("twoalgos");
+        Properties storeProperties = new Properties();
+        storeProperties.setProperty("storePath", storeDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        // The store algorithm is added when it is not listed
+        storeProperties.setProperty("storeDefaultAlgoList", "MD5");
+
+        FileHashStore twoAlgoHashStore = new FileHashStore(storeProperties);
+        HashMap<String, Object> hsProperties =
+            twoAlgoHashStore.loadHashStoreYaml(storeDirectory);
+        assertEquals(List.of("MD5", "SHA-256"), hsProperties.get("storeDefaultAlgoList"));
+
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+            ObjectMetadata objInfo =
+                twoAlgoHashStore.storeObject(dataStream, pid, "SHA-512", null, null, -1);
+            Map<String, String> hexDigests = objInfo.hexDigests();
+            assertEquals(Set.of("MD5", "SHA-256", "SHA-512"), hexDigests.keySet());
+            assertEquals(testData.pidData.get(pid).get("md5"), hexDigests.get("MD5"));
+            assertEquals(testData.pidData.get(pid).get("sha256"), hexDigests.get("SHA-256"));
+            assertEquals(testData.pidData.get(pid).get("sha512"), hexDigests.get("SHA-512"));
+        }
+
+        // The list is picked up from 'hashstore.yaml' when it is not supplied
+        storeProperties.remove("storeDefaultAlgoList");
+        assertEquals(
+            List.of("MD5", "SHA-256"), new FileHashStore(storeProperties).getDefaultAlgoList());
+    }
+
+    /**
+     * Test existing configuration file will raise exception when the default algorithm list is
+     * different when instantiating FileHashStore
+     */
+    @Test
+    public void testExistingHashStoreConfiguration_diffDefaultAlgoList() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeDefaultAlgoList", "MD5,SHA-256");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    /**
+     * Test constructor with an unsupported algorithm in the default algorithm list
+     */
+    @Test
+    public void constructor_unsupportedDefaultAlgoList() {
+        assertThrows(NoSuchAlgorithmException.class, () -> {
+            Properties storeProperties = new Properties();
+            storeProperties.setProperty("storePath", rootDirectory.resolve("other").toString());
+            storeProperties.setProperty("storeDepth", "3");
+            storeProperties.setProperty("storeWidth", "2");
+            storeProperties.setProperty("storeAlgorithm", "SHA-256");
+            storeProperties.setProperty(
+                "storeMetadataNamespace",
+                "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+            storeProperties.setProperty("storeDefaultAlgoList", "MD5,SM3");
+
+            new FileHashStore(storeProperties);
+        });
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
 }
@@ -3,24 +3,32 @@ package org.dataone.hashstore.filehashstore;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.Pipe;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -28,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -36,8 +45,11 @@ import java.util.stream.Stream;
 
 import javax.xml.bind.DatatypeConverter;
 
+import org.dataone.hashstore.DeleteResult;
 import org.dataone.hashstore.HashStoreRunnable;
 import org.dataone.hashstore.ObjectMetadata;
+import org.dataone.hashstore.StoreObjectRequest;
+import org.dataone.hashstore.StoreObjectResult;
 import org.dataone.hashstore.exceptions.HashStoreRefsAlreadyExistException;
 import org.dataone.hashstore.exceptions.MissingHexDigestsException;
 import org.dataone.hashstore.exceptions.NonMatchingChecksumException;
@@ -165,6 +177,402 @@ public class FileHashStoreInterfaceTest {
         }
     }
 
+    /**
+     * Check that storing an object from a path copies it into HashStore and leaves the source file
+     * in place
+     */
+    @Test
+    public void storeObject_path() throws Exception {
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+
+            ObjectMetadata objInfo =
+                fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+            assertEquals(testData.pidData.get(pid).get("sha256"), objInfo.cid());
+            assertEquals(testData.pidData.get(pid).get("md5"), objInfo.hexDigests().get("MD5"));
+            assertEquals(
+                Long.parseLong(testData.pidData.get(pid).get("size")), objInfo.size());
+            assertTrue(Files.exists(testDataFile));
+            Path objCidAbsPath = fileHashStore.getHashStoreDataObjectPath(pid);
+            assertEquals(-1L, Files.mismatch(testDataFile, objCidAbsPath));
+        }
+    }
+
+    /**
+     * Check that storing an object from a path that may be consumed moves it into HashStore with
+     * the default permissions, and removes the source file
+     */
+    @Test
+    public void storeObject_pathConsumeObject() throws Exception {
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path sourceFile = tempFolder.resolve(pidFormatted);
+            Files.copy(testData.getTestFile(pidFormatted), sourceFile);
+
+            String sha256 = testData.pidData.get(pid).get("sha256");
+            ObjectMetadata objInfo =
+                fileHashStore.storeObject(sourceFile, pid, "SHA-512/224", sha256, "SHA-256", -1,
+                                          true);
+
+            assertEquals(sha256, objInfo.cid());
+            assertEquals(
+                testData.pidData.get(pid).get("sha512-224"),
+                objInfo.hexDigests().get("SHA-512/224"));
+            assertFalse(Files.exists(sourceFile));
+            Path objCidAbsPath = fileHashStore.getHashStoreDataObjectPath(pid);
+            assertEquals(-1L, Files.mismatch(testData.getTestFile(pidFormatted), objCidAbsPath));
+            Set<PosixFilePermission> actualPermissions =
+                Files.readAttributes(objCidAbsPath, PosixFileAttributes.class).permissions();
+            assertEquals(
+                Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                       PosixFilePermission.GROUP_READ), actualPermissions);
+        }
+    }
+
+    /**
+     * Check that a file that may be consumed is left in place, with its own permissions, when it
+     * fails validation
+     */
+    @Test
+    public void storeObject_pathConsumeObject_invalidChecksum() throws Exception {
+        String pid = "jtao.1700.1";
+        Path sourceFile = tempFolder.resolve(pid);
+        Files.copy(testData.getTestFile(pid), sourceFile);
+        Set<PosixFilePermission> sourcePermissions = PosixFilePermissions.fromString("rw-rw-r--");
+        Files.setPosixFilePermissions(sourceFile, sourcePermissions);
+
+        assertThrows(
+            NonMatchingChecksumException.class,
+            () -> fileHashStore.storeObject(sourceFile, pid, null, "0bad", "SHA-256", -1, true));
+
+        assertTrue(Files.exists(sourceFile));
+        assertEquals(-1L, Files.mismatch(testData.getTestFile(pid), sourceFile));
+        assertEquals(sourcePermissions, Files.getPosixFilePermissions(sourceFile));
+        File[] tmpFiles = rootDirectory.resolve("objects/tmp").toFile().listFiles();
+        assertNotNull(tmpFiles);
+        assertEquals(0, tmpFiles.length);
+    }
+
+    /**
+     * Check that storing an object from a path that does not exist throws an exception
+     */
+    @Test
+    public void storeObject_pathNotFound() {
+        assertThrows(
+            FileNotFoundException.class,
+            () -> fileHashStore.storeObject(tempFolder.resolve("missing.bin"), "dou.test.1", null,
+                                            null, null, -1, false));
+    }
+
+    /**
+     * Check that with the 'trust' dedup pre-check, a duplicate object whose cid is supplied as its
+     * checksum is tagged without its stream being read or a tmp file being written
+     */
+    @Test
+    public void storeObject_dedupPrecheckTrust() throws Exception {
+        FileHashStore dedupFileHashStore = getDedupPrecheckFileHashStore("trust");
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+            String objectCid = testData.pidData.get(pid).get("sha256");
+            fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+            String duplicatePid = pid + ".duplicate";
+            ObjectMetadata objInfo = dedupFileHashStore.storeObject(
+                getUnreadableStream(), duplicatePid, null, objectCid, "SHA-256", -1);
+
+            assertEquals(objectCid, objInfo.cid());
+            assertEquals(Files.size(testDataFile), objInfo.size());
+            assertEquals(Map.of("SHA-256", objectCid), objInfo.hexDigests());
+            assertEquals(objectCid, dedupFileHashStore.findObject(duplicatePid).cid());
+        }
+
+        try (Stream<Path> tmpFiles = Files.list(rootDirectory.resolve("objects/tmp"))) {
+            assertTrue(tmpFiles.findAny().isEmpty());
+        }
+    }
+
+    /**
+     * Check that with the 'verify' dedup pre-check, the hex digests of a duplicate object are
+     * calculated from the existing data object rather than the stream supplied
+     */
+    @Test
+    public void storeObject_dedupPrecheckVerify() throws Exception {
+        FileHashStore dedupFileHashStore = getDedupPrecheckFileHashStore("verify");
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+            String objectCid = testData.pidData.get(pid).get("sha256");
+            fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+            ObjectMetadata objInfo = dedupFileHashStore.storeObject(
+                getUnreadableStream(), pid + ".duplicate", null, objectCid, "SHA-256", -1);
+
+            Map<String, String> hexDigests = objInfo.hexDigests();
+            assertEquals(testData.pidData.get(pid).get("md5"), hexDigests.get("MD5"));
+            assertEquals(testData.pidData.get(pid).get("sha1"), hexDigests.get("SHA-1"));
+            assertEquals(objectCid, hexDigests.get("SHA-256"));
+            assertEquals(testData.pidData.get(pid).get("sha384"), hexDigests.get("SHA-384"));
+            assertEquals(testData.pidData.get(pid).get("sha512"), hexDigests.get("SHA-512"));
+        }
+    }
+
+    /**
+     * Check that the 'verify' dedup pre-check refuses to tag an existing data object that no
+     * longer matches its cid
+     */
+    @Test
+    public void storeObject_dedupPrecheckVerify_corruptObject() throws Exception {
+        FileHashStore dedupFileHashStore = getDedupPrecheckFileHashStore("verify");
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String objectCid = testData.pidData.get(pid).get("sha256");
+        fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+        Path objRealPath = fileHashStore.getHashStoreDataObjectPath(pid);
+        Files.writeString(objRealPath, "corrupted");
+
+        assertThrows(IOException.class, () -> dedupFileHashStore.storeObject(
+            getUnreadableStream(), pid + ".duplicate", null, objectCid, "SHA-256", -1));
+        assertThrows(FileNotFoundException.class,
+                     () -> dedupFileHashStore.findObject(pid + ".duplicate"));
+    }
+
+    /**
+     * Check that the 'trust' dedup pre-check does not tag a pid to an existing data object when
+     * the checksum supplied is not a hex digest, even if it resolves to the object's path
+     */
+    @Test
+    public void storeObject_dedupPrecheckTrust_invalidChecksum() throws Exception {
+        FileHashStore dedupFileHashStore = getDedupPrecheckFileHashStore("trust");
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String objectCid = testData.pidData.get(pid).get("sha256");
+        fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+        assertThrows(IOException.class, () -> dedupFileHashStore.storeObject(
+            getUnreadableStream(), pid + ".duplicate", null, objectCid + "/", "SHA-256", -1));
+        assertThrows(FileNotFoundException.class,
+                     () -> dedupFileHashStore.findObject(pid + ".duplicate"));
+    }
+
+    /**
+     * Check that the dedup pre-check still stores an object that does not exist yet
+     */
+    @Test
+    public void storeObject_dedupPrecheckTrust_newObject() throws Exception {
+        FileHashStore dedupFileHashStore = getDedupPrecheckFileHashStore("trust");
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String objectCid = testData.pidData.get(pid).get("sha256");
+
+        try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+            ObjectMetadata objInfo =
+                dedupFileHashStore.storeObject(dataStream, pid, null, objectCid, "SHA-256", -1);
+            assertEquals(objectCid, objInfo.cid());
+            assertEquals(testData.pidData.get(pid).get("md5"), objInfo.hexDigests().get("MD5"));
+        }
+        assertTrue(Files.exists(fileHashStore.getHashStoreDataObjectPath(pid)));
+    }
+
+    private FileHashStore getDedupPrecheckFileHashStore(String dedupPrecheckMode)
+        throws Exception {
+        Properties storeProperties = new Properties();
+        storeProperties.putAll(fhsProperties);
+        storeProperties.setProperty("storeDedupPrecheck", dedupPrecheckMode);
+        return new FileHashStore(storeProperties);
+    }
+
+    private static InputStream getUnreadableStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Duplicate object stream should not be read.");
+            }
+        };
+    }
+
+    /**
+     * Check that storeObjects stores and tags every object of a batch, from streams and paths,
+     * and returns the results in the order of the requests
+     */
+    @Test
+    public void storeObjects() throws Exception {
+        List<StoreObjectRequest> requests = new ArrayList<>();
+        boolean fromPath = false;
+        for (String pid : testData.pidList) {
+            Path testDataFile = testData.getTestFile(pid.replace("/", "_"));
+            if (fromPath) {
+                requests.add(
+                    StoreObjectRequest.fromPath(testDataFile, pid, "MD2", null, null, -1, false));
+            } else {
+                requests.add(StoreObjectRequest.fromStream(
+                    Files.newInputStream(testDataFile), pid, "MD2", null, null, -1));
+            }
+            fromPath = !fromPath;
+        }
+
+        List<StoreObjectResult> results = fileHashStore.storeObjects(requests);
+
+        assertEquals(testData.pidList.length, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            String pid = testData.pidList[i];
+            StoreObjectResult result = results.get(i);
+            assertTrue(result.isStored());
+            assertEquals(pid, result.pid());
+            String objectCid = testData.pidData.get(pid).get("sha256");
+            assertEquals(objectCid, result.objectMetadata().cid());
+            assertEquals(testData.pidData.get(pid).get("md2"),
+                         result.objectMetadata().hexDigests().get("MD2"));
+            assertEquals(Long.parseLong(testData.pidData.get(pid).get("size")),
+                         result.objectMetadata().size());
+            assertEquals(objectCid, fileHashStore.findObject(pid).cid());
+        }
+    }
+
+    /**
+     * Check that the pids of a batch that store the same object are all added to its cid refs
+     */
+    @Test
+    public void storeObjects_sharedCid() throws Exception {
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String objectCid = testData.pidData.get(pid).get("sha256");
+        fileHashStore.storeObject(testDataFile, pid, null, null, null, -1, false);
+
+        List<StoreObjectRequest> requests = new ArrayList<>();
+        List<String> batchPids = List.of("dou.test.shared.1", "dou.test.shared.2", pid);
+        for (String batchPid : batchPids) {
+            requests.add(
+                StoreObjectRequest.fromPath(testDataFile, batchPid, null, null, null, -1, false));
+        }
+
+        List<StoreObjectResult> results = fileHashStore.storeObjects(requests);
+
+        assertTrue(results.get(0).isStored());
+        assertTrue(results.get(1).isStored());
+        // The pid is already tagged
+        assertTrue(results.get(2).exception() instanceof IOException);
+        Path cidRefsPath =
+            fileHashStore.getHashStoreRefsPath(objectCid, FileHashStore.HashStoreIdTypes.cid);
+        for (String batchPid : batchPids) {
+            assertEquals(objectCid, fileHashStore.findObject(batchPid).cid());
+            assertTrue(fileHashStore.isStringInRefsFile(batchPid, cidRefsPath));
+        }
+        assertEquals(3, Files.readAllLines(cidRefsPath).size());
+    }
+
+    /**
+     * Check that requests of a batch that cannot be stored fail on their own, without leaving tmp
+     * files behind or preventing the other requests from being stored
+     */
+    @Test
+    public void storeObjects_failedRequests() throws Exception {
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String taggedPid = "dou.test.tagged";
+        fileHashStore.storeObject(testDataFile, taggedPid, null, null, null, -1, false);
+
+        List<StoreObjectRequest> requests = new ArrayList<>();
+        requests.add(StoreObjectRequest.fromPath(testDataFile, pid, null, null, null, -1, false));
+        requests.add(
+            StoreObjectRequest.fromPath(testDataFile, pid, null, null, null, -1, false));
+        requests.add(StoreObjectRequest.fromPath(
+            testDataFile, "dou.test.badchecksum", null, "abc123", "SHA-256", -1, false));
+        requests.add(
+            StoreObjectRequest.fromPath(testDataFile, taggedPid, null, null, null, -1, false));
+        requests.add(StoreObjectRequest.fromPath(
+            tempFolder.resolve("missing.bin"), "dou.test.missing", null, null, null, -1, false));
+
+        List<StoreObjectResult> results = fileHashStore.storeObjects(requests);
+
+        assertTrue(results.get(0).isStored());
+        assertTrue(results.get(1).exception() instanceof RuntimeException);
+        assertTrue(results.get(2).exception() instanceof NonMatchingChecksumException);
+        // The pid is already tagged
+        assertTrue(results.get(3).exception() instanceof IOException);
+        assertTrue(results.get(4).exception() instanceof FileNotFoundException);
+        assertEquals(testData.pidData.get(pid).get("sha256"), fileHashStore.findObject(pid).cid());
+        assertThrows(FileNotFoundException.class,
+                     () -> fileHashStore.findObject("dou.test.badchecksum"));
+        try (Stream<Path> tmpFiles = Files.list(rootDirectory.resolve("objects/tmp"))) {
+            assertTrue(tmpFiles.findAny().isEmpty());
+        }
+    }
+
+    /**
+     * Check that an object written through an object writer in small pieces is stored and tagged
+     * when the writer is closed
+     */
+    @Test
+    public void openObjectWriter() throws Exception {
+        for (String pid : testData.pidList) {
+            byte[] testDataBytes =
+                Files.readAllBytes(testData.getTestFile(pid.replace("/", "_")));
+            String sha256 = testData.pidData.get(pid).get("sha256");
+            long objSize = Long.parseLong(testData.pidData.get(pid).get("size"));
+
+            ObjectWriter objectWriter =
+                fileHashStore.openObjectWriter(pid, "MD2", sha256, "SHA-256", objSize);
+            try (objectWriter) {
+                for (int offset = 0; offset < testDataBytes.length; offset += 1000) {
+                    objectWriter.write(
+                        testDataBytes, offset, Math.min(1000, testDataBytes.length - offset));
+                }
+                objectWriter.write(new byte[0]);
+            }
+
+            ObjectMetadata objInfo = objectWriter.getObjectMetadata();
+            assertEquals(sha256, objInfo.cid());
+            assertEquals(objSize, objInfo.size());
+            assertEquals(testData.pidData.get(pid).get("md2"), objInfo.hexDigests().get("MD2"));
+            assertEquals(sha256, fileHashStore.findObject(pid).cid());
+        }
+    }
+
+    /**
+     * Check that closing an object writer whose object does not match the given checksum throws
+     * an exception and leaves no tmp file behind
+     */
+    @Test
+    public void openObjectWriter_nonMatchingChecksum() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] testDataBytes = Files.readAllBytes(testData.getTestFile(pid));
+
+        ObjectWriter objectWriter =
+            fileHashStore.openObjectWriter(pid, null, "abc123", "SHA-256", -1);
+        objectWriter.write(testDataBytes);
+        assertThrows(NonMatchingChecksumException.class, objectWriter::close);
+
+        assertNull(objectWriter.getObjectMetadata());
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.findObject(pid));
+        try (Stream<Path> tmpFiles = Files.list(rootDirectory.resolve("objects/tmp"))) {
+            assertTrue(tmpFiles.findAny().isEmpty());
+        }
+    }
+
+    /**
+     * Check that an aborted object writer stores nothing and cannot be written to afterwards
+     */
+    @Test
+    public void openObjectWriter_abort() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] testDataBytes = Files.readAllBytes(testData.getTestFile(pid));
+
+        ObjectWriter objectWriter = fileHashStore.openObjectWriter(pid, null, null, null, -1);
+        objectWriter.write(testDataBytes);
+        objectWriter.abort();
+        objectWriter.close();
+
+        assertThrows(IOException.class, () -> objectWriter.write(1));
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.findObject(pid));
+        try (Stream<Path> tmpFiles = Files.list(rootDirectory.resolve("objects/tmp"))) {
+            assertTrue(tmpFiles.findAny().isEmpty());
+        }
+    }
+
     /**
      * Check that data object stored contains the correct permission settings 'rw- r-- ---'
      */
@@ -1438,6 +1846,122 @@ public class FileHashStoreInterfaceTest {
             FileNotFoundException.class, () -> fileHashStore.retrieveObject("dou.2023.hs.1"));
     }
 
+    /**
+     * Check that retrieveObject with a range returns the bytes of that range, ending with the
+     * data object if the range extends past it
+     */
+    @Test
+    public void retrieveObject_range() throws Exception {
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+            try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+                fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+            }
+            byte[] content = Files.readAllBytes(testDataFile);
+            int offset = content.length / 3;
+
+            try (InputStream rangeStream = fileHashStore.retrieveObject(pid, offset, 100)) {
+                assertTrue(Arrays.equals(
+                    Arrays.copyOfRange(content, offset, offset + 100), rangeStream.readAllBytes()));
+            }
+            try (InputStream rangeStream = fileHashStore.retrieveObject(pid, offset, -1)) {
+                assertTrue(Arrays.equals(Arrays.copyOfRange(content, offset, content.length),
+                                         rangeStream.readAllBytes()));
+            }
+            try (InputStream rangeStream = fileHashStore.retrieveObject(
+                pid, content.length - 10, 100)) {
+                assertEquals(10, rangeStream.readAllBytes().length);
+            }
+            try (InputStream rangeStream = fileHashStore.retrieveObject(pid, content.length, -1)) {
+                assertEquals(0, rangeStream.readAllBytes().length);
+            }
+        }
+    }
+
+    /**
+     * Check that retrieveObject throws exception when the range is invalid or starts past the
+     * end of the data object
+     */
+    @Test
+    public void retrieveObject_rangeInvalid() throws Exception {
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+            fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+        }
+
+        assertThrows(
+            IllegalArgumentException.class, () -> fileHashStore.retrieveObject(pid, -1, 10));
+        assertThrows(
+            IllegalArgumentException.class, () -> fileHashStore.retrieveObject(pid, 0, -2));
+        assertThrows(IllegalArgumentException.class,
+                     () -> fileHashStore.retrieveObject(pid, Files.size(testDataFile) + 1, 10));
+    }
+
+    /**
+     * Check that transferObjectTo transfers the whole data object to a file channel
+     */
+    @Test
+    public void transferObjectTo() throws Exception {
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+            try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+                fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+            }
+
+            Path targetPath = tempFolder.resolve(pidFormatted + ".transferred");
+            try (FileChannel target = FileChannel.open(
+                targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                assertEquals(
+                    Files.size(testDataFile), fileHashStore.transferObjectTo(pid, target));
+            }
+            assertTrue(Arrays.equals(
+                Files.readAllBytes(testDataFile), Files.readAllBytes(targetPath)));
+        }
+    }
+
+    /**
+     * Check that transferObjectTo with a range only transfers the bytes of that range
+     */
+    @Test
+    public void transferObjectTo_range() throws Exception {
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+            fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+        }
+        byte[] content = Files.readAllBytes(testDataFile);
+
+        ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        assertEquals(100, fileHashStore.transferObjectTo(
+            pid, 1000, 100, Channels.newChannel(transferred)));
+        assertTrue(Arrays.equals(
+            Arrays.copyOfRange(content, 1000, 1100), transferred.toByteArray()));
+
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.transferObjectTo(
+            "pid.whose.object.does.not.exist", Channels.newChannel(transferred)));
+        assertThrows(IllegalArgumentException.class,
+                     () -> fileHashStore.transferObjectTo(pid, null));
+    }
+
+    /**
+     * Check that transferObjectTo refuses a target in non-blocking mode rather than polling it
+     */
+    @Test
+    public void transferObjectTo_nonBlockingTarget() throws Exception {
+        String pid = "jtao.1700.1";
+        fileHashStore.storeObject(testData.getTestFile(pid), pid, null, null, null, -1, false);
+
+        Pipe pipe = Pipe.open();
+        try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel ignored = pipe.source()) {
+            sink.configureBlocking(false);
+            assertThrows(IllegalArgumentException.class,
+                         () -> fileHashStore.transferObjectTo(pid, sink));
+        }
+    }
+
     /**
      * Check that retrieveObject InputStream content is correct
      */
@@ -2002,6 +2526,8 @@ public class FileHashStoreInterfaceTest {
 
         executorService.shutdown();
         executorService.awaitTermination(1, TimeUnit.MINUTES);
+        // Renamed files are deleted in the background
+        assertTrue(fileHashStore.awaitDeletions(1, TimeUnit.MINUTES));
 
         Path storePath = Paths.get(fhsProperties.getProperty("storePath"));
         // Check that no objects exist
@@ -2020,6 +2546,54 @@ public class FileHashStoreInterfaceTest {
         assertEquals(0, cidRefFiles.size());
     }
 
+    /**
+     * Check that deleteObjects deletes the objects, refs files and metadata of a batch of pids,
+     * including pids that share a cid, and reports the pids that cannot be deleted
+     */
+    @Test
+    public void deleteObjects() throws Exception {
+        String pid = "jtao.1700.1";
+        Path testDataFile = testData.getTestFile(pid);
+        String sharedCid = fileHashStore.storeObject(
+            testDataFile, pid, null, null, null, -1, false).cid();
+        fileHashStore.tagObject("dou.test.shared.1", sharedCid);
+        fileHashStore.tagObject("dou.test.shared.2", sharedCid);
+        String keptPid = "dou.test.kept";
+        fileHashStore.tagObject(keptPid, sharedCid);
+        try (InputStream metadataStream = Files.newInputStream(testData.getTestFile(
+            "jtao.1700.1.xml"))) {
+            fileHashStore.storeMetadata(metadataStream, pid, null);
+        }
+
+        List<DeleteResult> results = fileHashStore.deleteObjects(
+            List.of(pid, "dou.test.shared.1", "dou.test.shared.2", "dou.test.shared.1",
+                    "dou.test.missing"));
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isDeleted());
+        assertTrue(results.get(1).isDeleted());
+        assertTrue(results.get(2).isDeleted());
+        assertTrue(results.get(3).exception() instanceof IllegalArgumentException);
+        assertTrue(results.get(4).exception() instanceof FileNotFoundException);
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.findObject(pid));
+        String storeFormatId = (String) fhsProperties.get("storeMetadataNamespace");
+        assertFalse(Files.exists(fileHashStore.getHashStoreMetadataPath(pid, storeFormatId)));
+        // The object is still referenced by a pid that is not in the batch
+        Path cidRefsPath = fileHashStore.getHashStoreRefsPath(
+            sharedCid, FileHashStore.HashStoreIdTypes.cid);
+        assertTrue(fileHashStore.isStringInRefsFile(keptPid, cidRefsPath));
+        assertFalse(fileHashStore.isStringInRefsFile("dou.test.shared.1", cidRefsPath));
+        assertEquals(sharedCid, fileHashStore.findObject(keptPid).cid());
+
+        assertTrue(fileHashStore.deleteObjects(List.of(keptPid)).get(0).isDeleted());
+        assertTrue(fileHashStore.awaitDeletions(1, TimeUnit.MINUTES));
+        Path storePath = Paths.get(fhsProperties.getProperty("storePath"));
+        assertEquals(0, FileHashStoreUtility.getFilesFromDir(storePath.resolve("objects")).size());
+        assertEquals(
+            0, FileHashStoreUtility.getFilesFromDir(storePath.resolve("refs/cids")).size());
+        assertEquals(
+            0, FileHashStoreUtility.getFilesFromDir(storePath.resolve("refs/pids")).size());
+    }
 
     /**
      * Confirm that deleteMetadata deletes metadata and empty sub directories
@@ -2105,6 +2679,41 @@ public class FileHashStoreInterfaceTest {
         fileHashStore.deleteMetadata("dou.2023.hashstore.1", formatId);
     }
 
+    /**
+     * Check that deleteMetadata deletes all metadata stored for a batch of pids, and reports the
+     * pids that are invalid
+     */
+    @Test
+    public void deleteMetadata_batch() throws Exception {
+        String storeFormatId = (String) fhsProperties.get("storeMetadataNamespace");
+        List<String> pids = new ArrayList<>();
+        for (String pid : testData.pidList) {
+            Path testMetaDataFile = testData.getTestFile(pid.replace("/", "_") + ".xml");
+            try (InputStream metadataStream = Files.newInputStream(testMetaDataFile)) {
+                fileHashStore.storeMetadata(metadataStream, pid, null);
+            }
+            try (InputStream metadataStream = Files.newInputStream(testMetaDataFile)) {
+                fileHashStore.storeMetadata(metadataStream, pid, "ns.type.2");
+            }
+            pids.add(pid);
+        }
+        pids.add("dou.test.nometadata");
+        pids.add("dou test invalid");
+
+        List<DeleteResult> results = fileHashStore.deleteMetadata(pids);
+
+        assertEquals(pids.size(), results.size());
+        for (int i = 0; i < testData.pidList.length; i++) {
+            String pid = testData.pidList[i];
+            assertTrue(results.get(i).isDeleted());
+            assertEquals(pid, results.get(i).pid());
+            assertFalse(Files.exists(fileHashStore.getHashStoreMetadataPath(pid, storeFormatId)));
+            assertFalse(Files.exists(fileHashStore.getHashStoreMetadataPath(pid, "ns.type.2")));
+        }
+        assertTrue(results.get(pids.size() - 2).isDeleted());
+        assertTrue(results.get(pids.size() - 1).exception() instanceof IllegalArgumentException);
+    }
+
     /**
      * Confirm that deleteMetadata throws exception when pid is null
      */
@@ -2195,6 +2804,80 @@ public class FileHashStoreInterfaceTest {
         }
     }
 
+    /**
+     * Confirm getHexDigest serves the checksums calculated when storing an object, and those it
+     * calculated before, from the digest sidecar of the object without reading it again
+     */
+    @Test
+    public void getHexDigest_recordedDigest() throws Exception {
+        for (String pid : testData.pidList) {
+            String pidFormatted = pid.replace("/", "_");
+            Path testDataFile = testData.getTestFile(pidFormatted);
+
+            try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+                fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+            }
+            String md2Digest = fileHashStore.getHexDigest(pid, "MD2");
+            assertEquals(testData.pidData.get(pid).get("md2"), md2Digest);
+
+            // Overwrite the object, which must not be read to get its checksums
+            Path objRealPath = fileHashStore.getHashStoreDataObjectPath(pid);
+            Files.write(objRealPath, "corrupted".getBytes());
+            assertEquals(testData.pidData.get(pid).get("md5"),
+                         fileHashStore.getHexDigest(pid, "MD5"));
+            assertEquals(md2Digest, fileHashStore.getHexDigest(pid, "MD2"));
+
+            String cid = testData.pidData.get(pid).get("sha256");
+            Path sidecarPath = rootDirectory.resolve("objects/digests")
+                .resolve(FileHashStoreUtility.getHierarchicalPathString(3, 2, cid));
+            assertTrue(Files.exists(sidecarPath));
+            fileHashStore.deleteObject(pid);
+            assertFalse(Files.exists(sidecarPath));
+        }
+    }
+
+    /**
+     * Confirm that checksums calculated at the same time for different algorithms are all
+     * recorded in the digest sidecar of the object
+     */
+    @Test
+    public void getHexDigest_concurrentAlgorithms() throws Exception {
+        List<String> algorithms = List.of("MD2", "SHA-512/224", "SHA-512/256");
+        ExecutorService executorService = Executors.newFixedThreadPool(algorithms.size());
+        try {
+            for (String pid : testData.pidList) {
+                String pidFormatted = pid.replace("/", "_");
+                Path testDataFile = testData.getTestFile(pidFormatted);
+
+                try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+                    fileHashStore.storeObject(dataStream, pid, null, null, null, -1);
+                }
+                CyclicBarrier start = new CyclicBarrier(algorithms.size());
+                List<Future<String>> futures = new ArrayList<>();
+                for (String algorithm : algorithms) {
+                    futures.add(executorService.submit(() -> {
+                        start.await(10, TimeUnit.SECONDS);
+                        return fileHashStore.getHexDigest(pid, algorithm);
+                    }));
+                }
+                for (Future<String> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+
+                String cid = testData.pidData.get(pid).get("sha256");
+                Path sidecarPath = rootDirectory.resolve("objects/digests")
+                    .resolve(FileHashStoreUtility.getHierarchicalPathString(3, 2, cid));
+                String sidecar = Files.readString(sidecarPath);
+                assertTrue(sidecar.contains("MD2=" + testData.pidData.get(pid).get("md2")));
+                assertTrue(sidecar.contains(
+                    "SHA-512/224=" + testData.pidData.get(pid).get("sha512-224")));
+                assertTrue(sidecar.contains("SHA-512/256=" + futures.get(2).get()));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
     /**
      * Confirm getHexDigest throws exception when file is not found
      */
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -873,6 +874,39 @@ public class FileHashStoreProtectedTest {
         }
     }
 
+    /**
+     * Check that an object whose size is known is written in full, with the expected hex digests
+     */
+    @Test
+    public void writeToTmpFileAndGenerateChecksums_objSize() throws Exception {
+        for (String pid : testData.pidList) {
+            File newTmpFile = generateTemporaryFile();
+            Path testDataFile = testData.getTestFile(pid.replace("/", "_"));
+            long objSize = Long.parseLong(testData.pidData.get(pid).get("size"));
+
+            try (InputStream dataStream = Files.newInputStream(testDataFile)) {
+                Map<String, String> hexDigests = fileHashStore.writeToTmpFileAndGenerateChecksums(
+                    newTmpFile, dataStream, null, null, objSize);
+                assertEquals(testData.pidData.get(pid).get("sha256"), hexDigests.get("SHA-256"));
+            }
+            assertEquals(objSize, Files.size(newTmpFile.toPath()));
+            assertEquals(-1, Files.mismatch(testDataFile, newTmpFile.toPath()));
+        }
+    }
+
+    /**
+     * Check that tmp file writes are a whole number of digest chunks, up to the maximum write size
+     */
+    @Test
+    public void getTmpFileWriteSize() {
+        int chunkSize = DigestPipeline.CHUNK_SIZE;
+        assertEquals(chunkSize, FileHashStore.getTmpFileWriteSize(-1));
+        assertEquals(chunkSize, FileHashStore.getTmpFileWriteSize(10));
+        assertEquals(chunkSize * 2, FileHashStore.getTmpFileWriteSize(chunkSize + 1));
+        assertEquals(FileHashStore.MAX_TMP_FILE_WRITE_SIZE,
+                     FileHashStore.getTmpFileWriteSize(1024L * 1024 * 1024 * 10));
+    }
+
     /**
      * Check that additional algorithm is generated when supplied
      */
@@ -1389,10 +1423,10 @@ public class FileHashStoreProtectedTest {
             }
             String cid = objInfo.cid();
 
-            FileHashStore.synchronizeReferenceLockedPids(pid);
+            fileHashStore.synchronizeReferenceLockedPids(pid);
             assertThrows(IdentifierNotLockedException.class,
                          () -> fileHashStore.unTagObject(pid, cid));
-            FileHashStore.releaseReferenceLockedPids(pid);
+            fileHashStore.releaseReferenceLockedPids(pid);
         }
     }
 
@@ -1462,7 +1496,8 @@ public class FileHashStoreProtectedTest {
         assertFalse(Files.exists(absPidRefsPath));
         assertTrue(Files.exists(absCidRefsPath));
 
-        // Confirm number of reference files
+        // Confirm number of reference files, once the renamed files are deleted
+        assertTrue(fileHashStore.awaitDeletions(1, TimeUnit.MINUTES));
         Path storePath = Paths.get(fhsProperties.getProperty("storePath"));
         List<Path> pidRefsFiles =
             FileHashStoreUtility.getFilesFromDir(storePath.resolve("refs" + "/pids"));
@@ -1507,7 +1542,8 @@ public class FileHashStoreProtectedTest {
                     fileHashStore.getHashStoreRefsPath(pid, FileHashStore.HashStoreIdTypes.pid);
                 assertFalse(Files.exists(absPidRefsPath));
 
-                // Confirm number of reference files
+                // Confirm number of reference files, once the renamed files are deleted
+                assertTrue(fileHashStore.awaitDeletions(1, TimeUnit.MINUTES));
                 Path storePath = Paths.get(fhsProperties.getProperty("storePath"));
                 List<Path> pidRefsFiles =
                     FileHashStoreUtility.getFilesFromDir(storePath.resolve("refs" + "/pids"));
@@ -1884,6 +1920,28 @@ public class FileHashStoreProtectedTest {
         assertEquals(0, Files.size(cidRefsFilePath));
     }
 
+    /**
+     * Check that compactRefsFile leaves only the pids still referencing the cid, sorted, and that
+     * they are still found afterwards
+     */
+    @Test
+    public void compactRefsFile() throws Exception {
+        String cid = "abcdef123456789";
+        fileHashStore.tagObject("dou.test.3", cid);
+        fileHashStore.tagObject("dou.test.1", cid);
+        fileHashStore.tagObject("dou.test.2", cid);
+        Path cidRefsFilePath =
+            fileHashStore.getHashStoreRefsPath(cid, FileHashStore.HashStoreIdTypes.cid);
+        fileHashStore.updateRefsFile(
+            "dou.test.2", cidRefsFilePath, FileHashStore.HashStoreRefUpdateTypes.remove);
+
+        fileHashStore.compactRefsFile(cidRefsFilePath);
+
+        assertEquals(List.of("dou.test.1", "dou.test.3"), Files.readAllLines(cidRefsFilePath));
+        assertTrue(fileHashStore.isStringInRefsFile("dou.test.3", cidRefsFilePath));
+        assertFalse(fileHashStore.isStringInRefsFile("dou.test.2", cidRefsFilePath));
+    }
+
     /**
      * Confirm that updateRefsFile does not throw any exception if called to remove a value that is
      * not found in a cid refs file.
@@ -2125,7 +2183,7 @@ public class FileHashStoreProtectedTest {
     }
 
     /**
-     * Confirm that syncRenameMetadataDocForDeletion adds '_delete' to the given paths
+     * Confirm that syncRenameMetadataDocForDeletion adds '_delete_' and a UUID to the given paths
      */
     @Test
     public void syncRenameMetadataDocForDeletion_renamesAsExpected() throws Exception {
@@ -2165,9 +2223,11 @@ public class FileHashStoreProtectedTest {
                 for (Path renamedDoc : deleteList) {
                     renamedDocStrings.add(renamedDoc.toString());
                 }
-                assertTrue(renamedDocStrings.contains(pathToMetadata + "_delete"));
-                assertTrue(renamedDocStrings.contains(pathToMetadataTwo + "_delete"));
-                assertTrue(renamedDocStrings.contains(pathToMetadataThree + "_delete"));
+                for (String pathToDoc : List.of(
+                    pathToMetadata, pathToMetadataTwo, pathToMetadataThree)) {
+                    assertTrue(renamedDocStrings.stream().anyMatch(
+                        renamedDoc -> renamedDoc.startsWith(pathToDoc + "_delete_")));
+                }
             }
         }
     }
@@ -2268,6 +2328,40 @@ public class FileHashStoreProtectedTest {
         }
     }
 
+    /**
+     * Confirm getHashStoreDataObjectPath resolves a pid again from the pid to cid cache, and that
+     * the pid is no longer resolved once untagged, deleted or tagged with another cid
+     */
+    @Test
+    public void getHashStoreDataObjectPath_cached() throws Exception {
+        String pid = "dou.test.1";
+        String cid = "abcdef123456789";
+        fileHashStore.tagObject(pid, cid);
+        Path objRealPath = fileHashStore.getHashStoreDataObjectPath(pid);
+        long hitCount = fileHashStore.getPidCidCacheHitCount();
+
+        assertEquals(objRealPath, fileHashStore.getHashStoreDataObjectPath(pid));
+        assertEquals(hitCount + 1, fileHashStore.getPidCidCacheHitCount());
+
+        fileHashStore.synchronizeReferenceLockedPids(pid);
+        fileHashStore.synchronizeObjectLockedCids(cid);
+        fileHashStore.unTagObject(pid, cid);
+        fileHashStore.releaseReferenceLockedPids(pid);
+        fileHashStore.releaseObjectLockedCids(cid);
+        assertThrows(
+            FileNotFoundException.class, () -> fileHashStore.getHashStoreDataObjectPath(pid));
+
+        String otherCid = "0123456789abcdef";
+        fileHashStore.tagObject(pid, otherCid);
+        Path otherObjRealPath = fileHashStore.getHashStoreDataObjectPath(pid);
+        assertTrue(otherObjRealPath.endsWith(FileHashStoreUtility.getHierarchicalPathString(
+            3, 2, otherCid)));
+
+        fileHashStore.deleteObject(pid);
+        assertThrows(
+            FileNotFoundException.class, () -> fileHashStore.getHashStoreDataObjectPath(pid));
+    }
+
     /**
      * Confirm getHashStoreMetadataPath returns correct metadata path
      */
@@ -2448,7 +2542,7 @@ public class FileHashStoreProtectedTest {
     }
 
     /**
-     * Confirm that renamePathForDeletion adds '_delete' to the given path
+     * Confirm that renamePathForDeletion adds '_delete_' and a UUID to the given path
      */
     @Test
     public void fileHashStoreUtility_renamePathForDeletion() throws Exception {
@@ -2462,10 +2556,13 @@ public class FileHashStoreProtectedTest {
                 String pathToMetadata = fileHashStore.putMetadata(metadataStream, pid, null);
 
                 Path metadataPath = Paths.get(pathToMetadata);
-                FileHashStoreUtility.renamePathForDeletion(metadataPath);
+                Path metadataPathRenamed =
+                    FileHashStoreUtility.renamePathForDeletion(metadataPath);
 
-                Path expectedMetadataPathRenamed = Paths.get(pathToMetadata + "_delete");
-                assertTrue(Files.exists(expectedMetadataPathRenamed));
+                assertTrue(metadataPathRenamed.toString().startsWith(pathToMetadata + "_delete_"));
+                assertTrue(Files.exists(metadataPathRenamed));
+                assertEquals(
+                    metadataPath, FileHashStoreUtility.getPathBeforeDeletion(metadataPathRenamed));
             }
         }
     }
@@ -2485,9 +2582,8 @@ public class FileHashStoreProtectedTest {
                 String pathToMetadata = fileHashStore.putMetadata(metadataStream, pid, null);
 
                 Path metadataPath = Paths.get(pathToMetadata);
-                FileHashStoreUtility.renamePathForDeletion(metadataPath);
-
-                Path expectedMetadataPathRenamed = Paths.get(pathToMetadata + "_delete");
+                Path expectedMetadataPathRenamed =
+                    FileHashStoreUtility.renamePathForDeletion(metadataPath);
                 assertFalse(Files.exists(metadataPath));
                 assertTrue(Files.exists(expectedMetadataPathRenamed));
 
@@ -2499,6 +2595,69 @@ public class FileHashStoreProtectedTest {
     }
 
 
+    /**
+     * Confirm that stores opened at the same store path share their identifier locks
+     */
+    @Test
+    public void synchronizeObjectLockedCids_sharedWithinStoreRoot() throws Exception {
+        String cid = "94f9b6c88f1f458e410c30c351c6384ea42ac1b5ee1f8430d3e365e43b78a38a";
+        FileHashStore secondFileHashStore = new FileHashStore(fhsProperties);
+
+        fileHashStore.synchronizeObjectLockedCids(cid);
+        try {
+            Thread waitingThread = new Thread(() -> {
+                try {
+                    secondFileHashStore.synchronizeObjectLockedCids(cid);
+                    secondFileHashStore.releaseObjectLockedCids(cid);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waitingThread.start();
+            waitingThread.join(500);
+            // The second store must wait for the cid to be released by the first store
+            assertTrue(waitingThread.isAlive());
+
+            fileHashStore.releaseObjectLockedCids(cid);
+            waitingThread.join(10000);
+            assertFalse(waitingThread.isAlive());
+
+        } finally {
+            fileHashStore.releaseObjectLockedCids(cid);
+        }
+    }
+
+    /**
+     * Confirm that stores opened at different store paths do not contend for the same identifiers
+     */
+    @Test
+    public void synchronizeObjectLockedCids_isolatedBetweenStoreRoots() throws Exception {
+        String cid = "94f9b6c88f1f458e410c30c351c6384ea42ac1b5ee1f8430d3e365e43b78a38a";
+        Properties otherStoreProperties = new Properties();
+        otherStoreProperties.putAll(fhsProperties);
+        otherStoreProperties.setProperty(
+            "storePath", tempFolder.resolve("otherhashstore").toString());
+        FileHashStore otherFileHashStore = new FileHashStore(otherStoreProperties);
+
+        fileHashStore.synchronizeObjectLockedCids(cid);
+        try {
+            Thread otherStoreThread = new Thread(() -> {
+                try {
+                    otherFileHashStore.synchronizeObjectLockedCids(cid);
+                    otherFileHashStore.releaseObjectLockedCids(cid);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            otherStoreThread.start();
+            otherStoreThread.join(10000);
+            assertFalse(otherStoreThread.isAlive());
+
+        } finally {
+            fileHashStore.releaseObjectLockedCids(cid);
+        }
+    }
+
     /**
      * Confirm that generateTemporaryFile creates tmpFile with expected permissions
      */
@@ -0,0 +1,247 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for LeaseFileIdentifierLockManager. Two lock managers with their own in-memory locks
+ * sharing one lease directory stand in for two processes sharing a store.
+ */
+public class LeaseFileIdentifierLockManagerTest {
+    private Path leaseDirectory;
+    private LeaseFileIdentifierLockManager processOneLocks;
+    private LeaseFileIdentifierLockManager processTwoLocks;
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    @BeforeEach
+    public void initializeLockManagers() throws Exception {
+        leaseDirectory = tempFolder.resolve("locks/object_pids");
+        processOneLocks = new LeaseFileIdentifierLockManager(
+            "testIds", leaseDirectory, new StripedIdentifierLockManager("testIds"),
+            LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS);
+        processTwoLocks = new LeaseFileIdentifierLockManager(
+            "testIds", leaseDirectory, new StripedIdentifierLockManager("testIds"),
+            LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS);
+    }
+
+    /**
+     * Check that locking an identifier creates a lease file, and unlocking deletes it
+     */
+    @Test
+    public void lock_unlock_leaseFile() throws Exception {
+        String pid = "dou.test.1";
+        processOneLocks.lock(pid);
+        assertTrue(processOneLocks.isLocked(pid));
+        assertTrue(Files.exists(getLeasePath(pid)));
+
+        assertTrue(processOneLocks.unlock(pid));
+        assertFalse(processOneLocks.isLocked(pid));
+        try (Stream<Path> leases = Files.list(leaseDirectory)) {
+            assertTrue(leases.findAny().isEmpty());
+        }
+    }
+
+    /**
+     * Check that tryLock refuses an identifier whose lease is held by another process
+     */
+    @Test
+    public void tryLock_leaseHeldByAnotherProcess() throws Exception {
+        String pid = "dou.test.1";
+        assertTrue(processOneLocks.tryLock(pid));
+        assertFalse(processTwoLocks.tryLock(pid));
+        assertFalse(processTwoLocks.isLocked(pid));
+
+        processOneLocks.unlock(pid);
+        assertTrue(processTwoLocks.tryLock(pid));
+        processTwoLocks.unlock(pid);
+    }
+
+    /**
+     * Check that lock waits until another process has released the identifier
+     */
+    @Test
+    public void lock_waitsForAnotherProcess() throws Exception {
+        String pid = "dou.test.1";
+        processOneLocks.lock(pid);
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                processTwoLocks.lock(pid);
+                acquired.countDown();
+                processTwoLocks.unlock(pid);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        processOneLocks.unlock(pid);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+    /**
+     * Check that a lease left behind by a process that is no longer renewing it is broken
+     */
+    @Test
+    public void lock_breaksStaleLease() throws Exception {
+        String pid = "dou.test.1";
+        Path leasePath = getLeasePath(pid);
+        Files.writeString(leasePath, "crashed-process\n" + pid + "\n");
+        long staleMillis =
+            System.currentTimeMillis() - 2 * LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS;
+        Files.setLastModifiedTime(leasePath, FileTime.fromMillis(staleMillis));
+
+        processOneLocks.lock(pid);
+        assertTrue(processOneLocks.isLocked(pid));
+        assertTrue(Files.readString(leasePath).endsWith(pid + "\n"));
+        assertFalse(Files.readString(leasePath).startsWith("crashed-process"));
+
+        processOneLocks.unlock(pid);
+        assertFalse(Files.exists(leasePath));
+    }
+
+    /**
+     * Check that a lease that is still being renewed is not broken
+     */
+    @Test
+    public void tryLock_freshLeaseNotBroken() throws Exception {
+        String pid = "dou.test.1";
+        Path leasePath = getLeasePath(pid);
+        Files.writeString(leasePath, "live-process\n" + pid + "\n");
+
+        assertFalse(processOneLocks.tryLock(pid));
+        assertTrue(Files.readString(leasePath).startsWith("live-process"));
+    }
+
+    /**
+     * Check that a lease that has been replaced by a new one after it was found stale is put back
+     * instead of being broken
+     */
+    @Test
+    public void breakLease_leaseReplacedAfterCheck() throws Exception {
+        String pid = "dou.test.1";
+        Path leasePath = getLeasePath(pid);
+        Files.writeString(leasePath, "new-process\n" + pid + "\n");
+        long staleMillis =
+            System.currentTimeMillis() - 2 * LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS;
+        Files.setLastModifiedTime(leasePath, FileTime.fromMillis(staleMillis));
+
+        // The lease was found stale while it still belonged to a crashed process
+        assertFalse(processOneLocks.breakLease(pid, leasePath, "crashed-process"));
+
+        assertTrue(Files.readString(leasePath).startsWith("new-process"));
+        try (Stream<Path> leases = Files.list(leaseDirectory)) {
+            assertEquals(1, leases.count());
+        }
+    }
+
+    /**
+     * Check that two processes breaking the same stale lease never delete the lease of a process
+     * that claims the identifier at the same time
+     */
+    @Test
+    public void breakLease_breakersRaceFreshAcquirer() throws Exception {
+        LeaseFileIdentifierLockManager processThreeLocks = new LeaseFileIdentifierLockManager(
+            "testIds", leaseDirectory, new StripedIdentifierLockManager("testIds"),
+            LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS);
+        String pid = "dou.test.1";
+        Path leasePath = getLeasePath(pid);
+        long staleMillis =
+            System.currentTimeMillis() - 2 * LeaseFileIdentifierLockManager.DEFAULT_LEASE_MILLIS;
+
+        for (int i = 0; i < 100; i++) {
+            Files.writeString(leasePath, "crashed-process\n" + pid + "\n");
+            Files.setLastModifiedTime(leasePath, FileTime.fromMillis(staleMillis));
+            CyclicBarrier start = new CyclicBarrier(3);
+            AtomicInteger brokenLeases = new AtomicInteger();
+            AtomicInteger failedBreaks = new AtomicInteger();
+            Thread breakerOne = new Thread(() -> breakAfter(
+                start, processOneLocks, pid, leasePath, brokenLeases, failedBreaks));
+            Thread breakerTwo = new Thread(() -> breakAfter(
+                start, processTwoLocks, pid, leasePath, brokenLeases, failedBreaks));
+            breakerOne.start();
+            breakerTwo.start();
+
+            start.await(10, TimeUnit.SECONDS);
+            while (!processThreeLocks.tryLock(pid)) {
+                Thread.onSpinWait();
+            }
+            breakerOne.join();
+            breakerTwo.join();
+
+            assertEquals(0, failedBreaks.get());
+            assertTrue(brokenLeases.get() <= 1);
+            assertTrue(Files.exists(leasePath));
+            assertTrue(Files.readString(leasePath).endsWith(pid + "\n"));
+            assertFalse(Files.readString(leasePath).startsWith("crashed-process"));
+            assertFalse(processOneLocks.tryLock(pid));
+            assertTrue(processThreeLocks.unlock(pid));
+            try (Stream<Path> leases = Files.list(leaseDirectory)) {
+                assertTrue(leases.findAny().isEmpty());
+            }
+        }
+    }
+
+    private static void breakAfter(
+        CyclicBarrier start, LeaseFileIdentifierLockManager locks, String pid, Path leasePath,
+        AtomicInteger brokenLeases, AtomicInteger failedBreaks) {
+        try {
+            start.await(10, TimeUnit.SECONDS);
+            if (locks.breakLease(pid, leasePath, "crashed-process")) {
+                brokenLeases.incrementAndGet();
+            }
+        } catch (NoSuchFileException nsfe) {
+            // The lease was broken by the other process before this one inspected it
+        } catch (Exception e) {
+            failedBreaks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Check that a held lease that has been broken by another process is not renewed
+     */
+    @Test
+    public void renewHeldLeases_leaseBrokenByAnotherProcess() throws Exception {
+        LeaseFileIdentifierLockManager shortLeaseLocks = new LeaseFileIdentifierLockManager(
+            "testIds", leaseDirectory, new StripedIdentifierLockManager("testIds"), 300);
+        String pid = "dou.test.1";
+        Path leasePath = getLeasePath(pid);
+        shortLeaseLocks.lock(pid);
+
+        Files.writeString(leasePath, "other-process\n" + pid + "\n");
+        FileTime otherLeaseTime = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.setLastModifiedTime(leasePath, otherLeaseTime);
+        Thread.sleep(400);
+
+        assertEquals(otherLeaseTime.toMillis(), Files.getLastModifiedTime(leasePath).toMillis());
+        shortLeaseLocks.unlock(pid);
+        assertTrue(Files.readString(leasePath).startsWith("other-process"));
+    }
+
+    private Path getLeasePath(String id) throws Exception {
+        return leaseDirectory.resolve(FileHashStoreUtility.getPidHexDigest(id, "SHA-256"));
+    }
+}
@@ -0,0 +1,61 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for PathResolver
+ */
+public class PathResolverTest {
+    private final Path directory = Path.of("/var/metacat/hashstore/refs/pids");
+
+    /**
+     * Check that pids resolve to the same digests and paths as with FileHashStoreUtility, including
+     * pids whose digest is remembered
+     */
+    @Test
+    public void resolveId() throws Exception {
+        PathResolver pathResolver = new PathResolver(3, 2, "SHA-256");
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 8; i++) {
+                String pid = "doi:10.18739/A2901ZH2M." + i;
+                String hexDigest = FileHashStoreUtility.getPidHexDigest(pid, "SHA-256");
+                assertEquals(hexDigest, pathResolver.getHexDigest(pid));
+                assertEquals(
+                    directory.resolve(
+                        FileHashStoreUtility.getHierarchicalPathString(3, 2, hexDigest)),
+                    pathResolver.resolveId(directory, pid));
+            }
+        }
+    }
+
+    /**
+     * Check that a digest is sharded into depth tokens of width characters followed by the rest of
+     * the digest, including when the digest is shorter than the tokens
+     */
+    @Test
+    public void resolveDigest() throws Exception {
+        PathResolver pathResolver = new PathResolver(3, 2, "SHA-256");
+        assertEquals(
+            directory.resolve("ab/cd/ef/123456789"),
+            pathResolver.resolveDigest(directory, "abcdef123456789"));
+        assertEquals(directory.resolve("ab/cd/e"), pathResolver.resolveDigest(directory, "abcde"));
+        assertEquals("ab/cd/ef/123456789",
+                     FileHashStoreUtility.getHierarchicalPathString(3, 2, "abcdef123456789"));
+    }
+
+    /**
+     * Check that unsupported algorithms and invalid pids are rejected
+     */
+    @Test
+    public void getHexDigest_invalidArguments() throws Exception {
+        assertThrows(NoSuchAlgorithmException.class, () -> new PathResolver(3, 2, "SM3"));
+        PathResolver pathResolver = new PathResolver(3, 2, "SHA-256");
+        assertThrows(IllegalArgumentException.class, () -> pathResolver.getHexDigest("dou test"));
+    }
+}
@@ -0,0 +1,61 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for PidCidCache
+ */
+public class PidCidCacheTest {
+
+    /**
+     * Check that a cached pid is found until it is invalidated, and that hits and misses are
+     * counted
+     */
+    @Test
+    public void get_invalidate() {
+        PidCidCache pidCidCache = new PidCidCache(16);
+        assertNull(pidCidCache.get("dou.test.1"));
+
+        pidCidCache.put("dou.test.1", "abcdef123456789", pidCidCache.getStamp());
+        assertEquals("abcdef123456789", pidCidCache.get("dou.test.1"));
+
+        pidCidCache.invalidate("dou.test.1");
+        assertNull(pidCidCache.get("dou.test.1"));
+        assertEquals(1, pidCidCache.getHitCount());
+        assertEquals(2, pidCidCache.getMissCount());
+    }
+
+    /**
+     * Check that a pid refs file read before an invalidation is not cached
+     */
+    @Test
+    public void put_invalidatedSinceStamp() {
+        PidCidCache pidCidCache = new PidCidCache(16);
+        long stamp = pidCidCache.getStamp();
+        pidCidCache.invalidate("dou.test.1");
+
+        pidCidCache.put("dou.test.1", "abcdef123456789", stamp);
+        assertNull(pidCidCache.get("dou.test.1"));
+    }
+
+    /**
+     * Check that pids are evicted to keep the cache bounded, and that nothing is cached when the
+     * cache is disabled
+     */
+    @Test
+    public void put_bounded() {
+        PidCidCache pidCidCache = new PidCidCache(16);
+        for (int i = 0; i < 64; i++) {
+            pidCidCache.put("dou.test." + i, "abcdef" + i, pidCidCache.getStamp());
+        }
+        assertEquals(16, pidCidCache.size());
+        assertEquals(48, pidCidCache.getEvictionCount());
+
+        PidCidCache disabledPidCidCache = new PidCidCache(0);
+        disabledPidCidCache.put("dou.test.1", "abcdef123456789", disabledPidCidCache.getStamp());
+        assertNull(disabledPidCidCache.get("dou.test.1"));
+    }
+}
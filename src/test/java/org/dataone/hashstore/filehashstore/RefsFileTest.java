@@ -0,0 +1,94 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for RefsFile
+ */
+public class RefsFileTest {
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that refs are appended to a refs file written with a single ref, and that removed refs
+     * are appended as tombstones until the last ref is removed
+     */
+    @Test
+    public void addRemove() throws Exception {
+        Path refsPath = tempFolder.resolve("cidRefs");
+        Files.writeString(refsPath, "dou.test.1", StandardCharsets.UTF_8);
+
+        try (FileChannel channel = FileChannel.open(
+            refsPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            assertEquals(2, RefsFile.add(channel, "dou.test.2").liveRefs());
+            assertNull(RefsFile.add(channel, "dou.test.1"));
+            assertEquals(1, RefsFile.remove(channel, "dou.test.1").tombstones());
+            assertNull(RefsFile.remove(channel, "dou.test.1"));
+            assertEquals(List.of("dou.test.2"), RefsFile.readRefs(channel));
+        }
+        assertEquals(
+            List.of("dou.test.1", "dou.test.2", "- dou.test.1"), Files.readAllLines(refsPath));
+        assertFalse(RefsFile.contains(refsPath, "dou.test.1"));
+        assertTrue(RefsFile.contains(refsPath, "dou.test.2"));
+
+        try (FileChannel channel = FileChannel.open(
+            refsPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            assertEquals(0, RefsFile.remove(channel, "dou.test.2").liveRefs());
+        }
+        assertEquals(0, Files.size(refsPath));
+    }
+
+    /**
+     * Check that refs are found in a compacted refs file with an index header, along with the
+     * updates appended after it
+     */
+    @Test
+    public void writeCompacted_indexed() throws Exception {
+        List<String> refs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            refs.add(String.format("dou.test.%03d", i));
+        }
+        Path refsPath = tempFolder.resolve("cidRefs");
+        RefsFile.writeCompacted(refsPath, refs);
+        assertTrue(Files.readAllLines(refsPath).get(0).startsWith(RefsFile.HEADER_PREFIX));
+
+        try (FileChannel channel = FileChannel.open(
+            refsPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (String ref : refs) {
+                assertTrue(RefsFile.contains(channel, ref));
+            }
+            assertFalse(RefsFile.contains(channel, "dou.test.0"));
+            assertFalse(RefsFile.contains(channel, "dou.test.999"));
+
+            RefsFile.add(channel, "dou.test.999");
+            RefsFile.Summary summary = null;
+            for (int i = 0; i < 120; i++) {
+                summary = RefsFile.remove(channel, refs.get(i));
+            }
+            assertEquals(81, summary.liveRefs());
+            assertTrue(summary.hasManyTombstones());
+            assertFalse(summary.hasManyAppendedLines());
+            assertTrue(RefsFile.contains(channel, "dou.test.999"));
+            assertFalse(RefsFile.contains(channel, "dou.test.000"));
+            assertTrue(RefsFile.contains(channel, "dou.test.199"));
+            assertEquals(81, RefsFile.readRefs(channel).size());
+        }
+    }
+}
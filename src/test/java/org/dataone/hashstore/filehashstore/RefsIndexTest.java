@@ -0,0 +1,91 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreDurabilityModes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for RefsIndex
+ */
+public class RefsIndexTest {
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that batches of updates are found through lookups and prefix scans, before and after
+     * the memtable is flushed to tables and the tables are merged
+     */
+    @Test
+    public void write_flushAndMerge() throws Exception {
+        RefsIndex refsIndex = new RefsIndex(
+            tempFolder, new DurabilityCommitter(HashStoreDurabilityModes.none), 4);
+
+        for (int i = 0; i < 20; i++) {
+            refsIndex.write(Map.of("pid\ndou.test." + i, "cid" + (i % 2),
+                                   "cid\ncid" + (i % 2) + "\ndou.test." + i, ""));
+        }
+        Map<String, String> deletes = new HashMap<>();
+        deletes.put("pid\ndou.test.0", null);
+        deletes.put("cid\ncid0\ndou.test.0", null);
+        refsIndex.write(deletes);
+
+        assertTrue(refsIndex.getTableCount() > 0);
+        assertNull(refsIndex.get("pid\ndou.test.0"));
+        assertEquals("cid1", refsIndex.get("pid\ndou.test.1"));
+        assertEquals(9, refsIndex.scan("cid\ncid0\n").size());
+        assertEquals(10, refsIndex.scan("cid\ncid1\n").size());
+
+        refsIndex.merge();
+        assertEquals(1, refsIndex.getTableCount());
+        assertNull(refsIndex.get("pid\ndou.test.0"));
+        assertEquals("cid0", refsIndex.get("pid\ndou.test.18"));
+        assertEquals(9, refsIndex.scan("cid\ncid0\n").size());
+        assertEquals(19, refsIndex.scan("pid\n").size());
+    }
+
+    /**
+     * Check that a reopened index replays the batches of its log, and ignores a batch that was
+     * only partially written
+     */
+    @Test
+    public void replayWal() throws Exception {
+        DurabilityCommitter durabilityCommitter =
+            new DurabilityCommitter(HashStoreDurabilityModes.none);
+        RefsIndex refsIndex = new RefsIndex(tempFolder, durabilityCommitter, 1000);
+        refsIndex.write(Map.of("pid\ndou.test.1", "cid1", "cid\ncid1\ndou.test.1", ""));
+        refsIndex.write(Map.of("pid\ndou.test.2", "cid1", "cid\ncid1\ndou.test.2", ""));
+        assertEquals(0, refsIndex.getTableCount());
+
+        // Cut the last batch short, as a crash while appending it would
+        Path walPath = tempFolder.resolve(RefsIndex.WAL_NAME);
+        try (FileChannel wal = FileChannel.open(walPath, StandardOpenOption.WRITE)) {
+            wal.truncate(wal.size() - 3);
+        }
+
+        RefsIndex reopenedIndex = new RefsIndex(tempFolder, durabilityCommitter, 1000);
+        assertEquals("cid1", reopenedIndex.get("pid\ndou.test.1"));
+        assertNull(reopenedIndex.get("pid\ndou.test.2"));
+        assertEquals(List.of("cid\ncid1\ndou.test.1"),
+                     List.copyOf(reopenedIndex.scan("cid\ncid1\n").keySet()));
+
+        reopenedIndex.write(Map.of("pid\ndou.test.3", "cid3", "cid\ncid3\ndou.test.3", ""));
+        RefsIndex lastIndex = new RefsIndex(tempFolder, durabilityCommitter, 1000);
+        assertEquals("cid3", lastIndex.get("pid\ndou.test.3"));
+        assertTrue(Files.exists(walPath));
+    }
+}
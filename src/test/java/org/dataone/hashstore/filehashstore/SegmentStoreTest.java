@@ -0,0 +1,193 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreDurabilityModes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for SegmentStore
+ */
+public class SegmentStoreTest {
+    private final DurabilityCommitter durabilityCommitter =
+        new DurabilityCommitter(HashStoreDurabilityModes.none);
+    private Path objectDirectory;
+    private Path segmentDirectory;
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Initialize the directories of the segment store
+     */
+    @BeforeEach
+    public void initializeDirectories() throws Exception {
+        objectDirectory = tempFolder.resolve("objects");
+        segmentDirectory = objectDirectory.resolve("segments");
+        Files.createDirectories(objectDirectory.resolve("tmp"));
+    }
+
+    /**
+     * Check that a packed data object is read back, and is no longer found once deleted
+     */
+    @Test
+    public void append_openAndDelete() throws Exception {
+        SegmentStore segmentStore = openSegmentStore(SegmentStore.DEFAULT_SEGMENT_SIZE);
+        Path address = objectDirectory.resolve("ab/cd/ef/0123");
+        byte[] content = "site,date,temperature\nBRW,2024-01-01,-27.5\n".getBytes();
+
+        segmentStore.append(address, writeTmpFile(content));
+
+        assertTrue(segmentStore.contains(address));
+        assertEquals(content.length, segmentStore.size(address));
+        assertTrue(Arrays.equals(content, read(segmentStore, address)));
+        assertFalse(Files.exists(address));
+
+        segmentStore.delete(address);
+        assertFalse(segmentStore.contains(address));
+        assertThrows(FileNotFoundException.class, () -> segmentStore.open(address));
+    }
+
+    /**
+     * Check that the index is rebuilt from the segments, including deletes, and that a record
+     * partially written at the end of the last segment is truncated
+     */
+    @Test
+    public void constructor_replaysSegments() throws Exception {
+        SegmentStore segmentStore = openSegmentStore(SegmentStore.DEFAULT_SEGMENT_SIZE);
+        Path keptAddress = objectDirectory.resolve("ab/cd/ef/0123");
+        Path deletedAddress = objectDirectory.resolve("ab/cd/ef/4567");
+        segmentStore.append(keptAddress, writeTmpFile("kept".getBytes()));
+        segmentStore.append(deletedAddress, writeTmpFile("deleted".getBytes()));
+        segmentStore.delete(deletedAddress);
+
+        Path segmentPath = segmentDirectory.resolve("000000000000" + SegmentStore.SEGMENT_SUFFIX);
+        long segmentSize = Files.size(segmentPath);
+        Files.write(segmentPath, new byte[] {1, 0, 14, 0}, StandardOpenOption.APPEND);
+
+        SegmentStore reopenedSegmentStore = openSegmentStore(SegmentStore.DEFAULT_SEGMENT_SIZE);
+        assertEquals(1, reopenedSegmentStore.getPackedObjectCount());
+        assertTrue(Arrays.equals("kept".getBytes(), read(reopenedSegmentStore, keptAddress)));
+        assertFalse(reopenedSegmentStore.contains(deletedAddress));
+        assertEquals(segmentSize, Files.size(segmentPath));
+    }
+
+    /**
+     * Check that a segment mostly taken by deleted data objects is compacted, keeping its live
+     * data objects
+     */
+    @Test
+    public void compact() throws Exception {
+        SegmentStore segmentStore = openSegmentStore(16 * 1024);
+        byte[] content = new byte[4 * 1024];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(content, (byte) i);
+            segmentStore.append(objectDirectory.resolve("ab/cd/ef/" + i), writeTmpFile(content));
+        }
+        assertEquals(3, segmentStore.getSegmentCount());
+        for (int i = 1; i < 4; i++) {
+            segmentStore.delete(objectDirectory.resolve("ab/cd/ef/" + i));
+        }
+
+        segmentStore.compact();
+
+        assertEquals(5, segmentStore.getPackedObjectCount());
+        assertFalse(Files.exists(
+            segmentDirectory.resolve("000000000000" + SegmentStore.SEGMENT_SUFFIX)));
+        Arrays.fill(content, (byte) 0);
+        assertTrue(Arrays.equals(
+            content, read(segmentStore, objectDirectory.resolve("ab/cd/ef/0"))));
+
+        SegmentStore reopenedSegmentStore = openSegmentStore(16 * 1024);
+        assertEquals(5, reopenedSegmentStore.getPackedObjectCount());
+        assertFalse(reopenedSegmentStore.contains(objectDirectory.resolve("ab/cd/ef/1")));
+    }
+
+    /**
+     * Check that a corrupt record in a segment other than the last one does not truncate it, and
+     * that the segment is not compacted
+     */
+    @Test
+    public void constructor_corruptOlderSegment() throws Exception {
+        SegmentStore segmentStore = openSegmentStore(16 * 1024);
+        byte[] content = new byte[4 * 1024];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(content, (byte) i);
+            segmentStore.append(objectDirectory.resolve("ab/cd/ef/" + i), writeTmpFile(content));
+        }
+        segmentStore.delete(objectDirectory.resolve("ab/cd/ef/0"));
+        segmentStore.delete(objectDirectory.resolve("ab/cd/ef/1"));
+
+        // Corrupt the content of the second data object of the first segment
+        Path segmentPath = segmentDirectory.resolve("000000000000" + SegmentStore.SEGMENT_SUFFIX);
+        long segmentSize = Files.size(segmentPath);
+        byte[] segmentBytes = Files.readAllBytes(segmentPath);
+        segmentBytes[segmentBytes.length / 2] ^= 0x7f;
+        Files.write(segmentPath, segmentBytes);
+
+        SegmentStore reopenedSegmentStore = openSegmentStore(16 * 1024);
+        reopenedSegmentStore.compact();
+
+        assertEquals(segmentSize, Files.size(segmentPath));
+        Arrays.fill(content, (byte) 7);
+        assertTrue(Arrays.equals(
+            content, read(reopenedSegmentStore, objectDirectory.resolve("ab/cd/ef/7"))));
+    }
+
+    /**
+     * Check that a segment whose channel was closed by an interrupted reader can still be read
+     * and appended to
+     */
+    @Test
+    public void open_afterInterruptedRead() throws Exception {
+        SegmentStore segmentStore = openSegmentStore(SegmentStore.DEFAULT_SEGMENT_SIZE);
+        Path address = objectDirectory.resolve("ab/cd/ef/0123");
+        segmentStore.append(address, writeTmpFile("packed".getBytes()));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(ClosedByInterruptException.class, () -> read(segmentStore, address));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertTrue(Arrays.equals("packed".getBytes(), read(segmentStore, address)));
+        Path otherAddress = objectDirectory.resolve("ab/cd/ef/4567");
+        segmentStore.append(otherAddress, writeTmpFile("appended".getBytes()));
+        assertTrue(Arrays.equals("appended".getBytes(), read(segmentStore, otherAddress)));
+    }
+
+    private SegmentStore openSegmentStore(long segmentSize) throws Exception {
+        return new SegmentStore(
+            segmentDirectory, objectDirectory, durabilityCommitter, segmentSize);
+    }
+
+    private File writeTmpFile(byte[] content) throws Exception {
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", objectDirectory.resolve("tmp"));
+        Files.write(tmpFile.toPath(), content);
+        return tmpFile;
+    }
+
+    private static byte[] read(SegmentStore segmentStore, Path address) throws Exception {
+        try (InputStream objectStream = segmentStore.open(address)) {
+            return objectStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.dataone.hashstore.filehashstore.FileHashStore.HashStoreCompressionModes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for StoredFileCodec
+ */
+public class StoredFileCodecTest {
+    private final StoredFileCodec deflateCodec =
+        new StoredFileCodec(HashStoreCompressionModes.deflate, null);
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that a file that compresses well is replaced by a smaller compressed file, which is
+     * read back as the original content
+     */
+    @Test
+    public void encode_compressible() throws Exception {
+        byte[] content = "site,date,temperature\nBRW,2024-01-01,-27.5\n".repeat(2000).getBytes();
+        File tmpFile = writeTmpFile(content);
+
+        File encodedFile = deflateCodec.encode(tmpFile);
+
+        assertNotEquals(tmpFile, encodedFile);
+        assertFalse(tmpFile.exists());
+        assertTrue(encodedFile.length() < content.length / 10);
+        assertEquals(content.length, deflateCodec.size(encodedFile.toPath()));
+        assertTrue(Arrays.equals(content, readStoredFile(encodedFile)));
+    }
+
+    /**
+     * Check that a file that does not compress well is kept as is
+     */
+    @Test
+    public void encode_incompressible() throws Exception {
+        byte[] content = new byte[1024 * 1024];
+        new Random(42).nextBytes(content);
+        File tmpFile = writeTmpFile(content);
+
+        File encodedFile = deflateCodec.encode(tmpFile);
+
+        assertEquals(tmpFile, encodedFile);
+        assertEquals(content.length, deflateCodec.size(encodedFile.toPath()));
+        assertTrue(Arrays.equals(content, readStoredFile(encodedFile)));
+    }
+
+    /**
+     * Check that a file stored as is that starts with the magic number is given a header, so that
+     * it is not mistaken for a compressed file
+     */
+    @Test
+    public void encode_rawStartingWithMagic() throws Exception {
+        byte[] content = Arrays.copyOf(StoredFileCodec.MAGIC, StoredFileCodec.MAGIC.length + 3);
+        File tmpFile = writeTmpFile(content);
+
+        File encodedFile = deflateCodec.encode(tmpFile);
+
+        assertNotEquals(tmpFile, encodedFile);
+        assertEquals(
+            content.length + StoredFileCodec.HEADER_LENGTH, Files.size(encodedFile.toPath()));
+        assertEquals(content.length, deflateCodec.size(encodedFile.toPath()));
+        assertTrue(Arrays.equals(content, readStoredFile(encodedFile)));
+    }
+
+    /**
+     * Check that a range of a compressed file and of a file stored as is is read back
+     */
+    @Test
+    public void open_range() throws Exception {
+        byte[] compressibleContent =
+            "site,date,temperature\nBRW,2024-01-01,-27.5\n".repeat(2000).getBytes();
+        byte[] rawContent = Arrays.copyOf(StoredFileCodec.MAGIC, 4096);
+        new Random(42).nextBytes(rawContent);
+        System.arraycopy(StoredFileCodec.MAGIC, 0, rawContent, 0, StoredFileCodec.MAGIC.length);
+
+        for (byte[] content : new byte[][] {compressibleContent, rawContent}) {
+            File encodedFile = deflateCodec.encode(writeTmpFile(content));
+            int offset = content.length / 2;
+            try (InputStream rangeStream = deflateCodec.open(encodedFile.toPath(), offset, 50)) {
+                assertTrue(Arrays.equals(
+                    Arrays.copyOfRange(content, offset, offset + 50), rangeStream.readAllBytes()));
+            }
+        }
+    }
+
+    private File writeTmpFile(byte[] content) throws Exception {
+        File tmpFile = FileHashStoreUtility.generateTmpFile("tmp", tempFolder);
+        Files.write(tmpFile.toPath(), content);
+        return tmpFile;
+    }
+
+    private byte[] readStoredFile(File storedFile) throws Exception {
+        try (InputStream storedStream = deflateCodec.open(storedFile.toPath())) {
+            return storedStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for StripedIdentifierLockManager
+ */
+public class StripedIdentifierLockManagerTest {
+    private StripedIdentifierLockManager lockManager;
+
+    @BeforeEach
+    public void initializeLockManager() {
+        // A single stripe forces every identifier to share the same monitor
+        lockManager = new StripedIdentifierLockManager("testIds", 1);
+    }
+
+    /**
+     * Check that an identifier is locked after calling lock and released after unlock
+     */
+    @Test
+    public void lock_unlock() throws Exception {
+        String pid = "dou.test.1";
+        lockManager.lock(pid);
+        assertTrue(lockManager.isLocked(pid));
+
+        assertTrue(lockManager.unlock(pid));
+        assertFalse(lockManager.isLocked(pid));
+    }
+
+    /**
+     * Check that tryLock refuses an identifier that is already locked
+     */
+    @Test
+    public void tryLock_alreadyLocked() throws Exception {
+        String pid = "dou.test.1";
+        assertTrue(lockManager.tryLock(pid));
+        assertFalse(lockManager.tryLock(pid));
+
+        lockManager.unlock(pid);
+        assertTrue(lockManager.tryLock(pid));
+        lockManager.unlock(pid);
+    }
+
+    /**
+     * Check that unlocking an identifier that is not locked does nothing
+     */
+    @Test
+    public void unlock_notLocked() {
+        assertFalse(lockManager.unlock("dou.test.1"));
+        assertFalse(lockManager.isLocked("dou.test.1"));
+    }
+
+    /**
+     * Check that locking one identifier does not block a different identifier on the same stripe
+     */
+    @Test
+    public void lock_differentIdentifiersDoNotBlock() throws Exception {
+        lockManager.lock("dou.test.1");
+        assertTrue(lockManager.tryLock("dou.test.2"));
+
+        lockManager.unlock("dou.test.1");
+        lockManager.unlock("dou.test.2");
+    }
+
+    /**
+     * Check that waiters for the same identifier are granted the lock in the order they arrived
+     */
+    @Test
+    public void lock_waitersGrantedInOrder() throws Exception {
+        String cid = "94f9b6c88f1f458e410c30c351c6384ea42ac1b5ee1f8430d3e365e43b78a38a";
+        lockManager.lock(cid);
+
+        List<Integer> grantOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final int waiterNumber = i;
+            Thread waiter = new Thread(() -> {
+                try {
+                    lockManager.lock(cid);
+                    grantOrder.add(waiterNumber);
+                    lockManager.unlock(cid);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiter.start();
+            waiters.add(waiter);
+            // Wait for the thread to be parked before starting the next one
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+
+        lockManager.unlock(cid);
+        for (Thread waiter : waiters) {
+            waiter.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4), grantOrder);
+        assertFalse(lockManager.isLocked(cid));
+    }
+
+    /**
+     * Check that an interrupted waiter does not strand the waiters queued behind it
+     */
+    @Test
+    public void lock_interruptedWaiterHandsOff() throws Exception {
+        String pid = "dou.test.1";
+        lockManager.lock(pid);
+
+        Thread interruptedWaiter = new Thread(() -> {
+            try {
+                lockManager.lock(pid);
+            } catch (InterruptedException expected) {
+                // Expected
+            }
+        });
+        interruptedWaiter.start();
+        while (interruptedWaiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread nextWaiter = new Thread(() -> {
+            try {
+                lockManager.lock(pid);
+                acquired.countDown();
+                lockManager.unlock(pid);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        nextWaiter.start();
+        while (nextWaiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        interruptedWaiter.interrupt();
+        interruptedWaiter.join();
+        lockManager.unlock(pid);
+
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        nextWaiter.join();
+        assertFalse(lockManager.isLocked(pid));
+    }
+}
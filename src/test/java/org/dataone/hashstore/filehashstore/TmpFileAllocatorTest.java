@@ -0,0 +1,111 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for TmpFileAllocator
+ */
+public class TmpFileAllocatorTest {
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    /**
+     * Check that a sweep only deletes tmp files that are stale and not in use. Staleness is judged
+     * by the ctime, which cannot be set, so the tmp files are left to age briefly instead.
+     */
+    @Test
+    public void sweep_staleTmpFiles() throws Exception {
+        Path staleTmpFile = Files.createFile(tempFolder.resolve("tmp-stale"));
+        Path liveTmpFile = TmpFileAllocator.allocate("tmp", tempFolder).toPath();
+        Thread.sleep(200);
+        Path freshTmpFile = Files.createFile(tempFolder.resolve("tmp-fresh"));
+
+        int deletedTmpFiles = TmpFileAllocator.sweep(List.of(tempFolder), 100);
+
+        assertEquals(1, deletedTmpFiles);
+        assertFalse(Files.exists(staleTmpFile));
+        assertTrue(Files.exists(freshTmpFile));
+        assertTrue(Files.exists(liveTmpFile));
+        TmpFileAllocator.release(liveTmpFile);
+    }
+
+    /**
+     * Check that a tmp file hard linked to a consumed file is not swept, even though it keeps the
+     * consumed file's old last modified time
+     */
+    @Test
+    public void sweep_linkedTmpFile() throws Exception {
+        Path tmpDirectory = Files.createDirectories(tempFolder.resolve("tmp"));
+        Path consumedFile = Files.createFile(tempFolder.resolve("consumed"));
+        Files.setLastModifiedTime(consumedFile, FileTime.fromMillis(
+            System.currentTimeMillis() - 2 * TmpFileAllocator.DEFAULT_STALE_TMP_MILLIS));
+        Path linkedTmpFile = Files.createLink(tmpDirectory.resolve("tmp-linked"), consumedFile);
+
+        assertEquals(0, TmpFileAllocator.sweep(
+            List.of(tmpDirectory), TmpFileAllocator.DEFAULT_STALE_TMP_MILLIS));
+        assertTrue(Files.exists(linkedTmpFile));
+
+        // Once the consumed file is gone, the link is judged by when it was made
+        Files.delete(consumedFile);
+        assertEquals(0, TmpFileAllocator.sweep(
+            List.of(tmpDirectory), TmpFileAllocator.DEFAULT_STALE_TMP_MILLIS));
+        assertTrue(Files.exists(linkedTmpFile));
+    }
+
+    /**
+     * Check that a session sweep only deletes upload sessions whose files are all stale
+     */
+    @Test
+    public void sweepSessions_staleSessions() throws Exception {
+        FileTime staleTime = FileTime.fromMillis(
+            System.currentTimeMillis() - 2 * TmpFileAllocator.DEFAULT_STALE_SESSION_MILLIS);
+        Path staleSession = Files.createDirectories(tempFolder.resolve("stale"));
+        Files.setLastModifiedTime(
+            Files.createFile(staleSession.resolve("data")), staleTime);
+        Files.setLastModifiedTime(
+            Files.createFile(staleSession.resolve("session.properties")), staleTime);
+        Files.setLastModifiedTime(staleSession, staleTime);
+        Path activeSession = Files.createDirectories(tempFolder.resolve("active"));
+        Files.setLastModifiedTime(
+            Files.createFile(activeSession.resolve("data")), staleTime);
+        Files.createFile(activeSession.resolve("session.properties"));
+        Files.setLastModifiedTime(activeSession, staleTime);
+
+        int deletedSessions = TmpFileAllocator.sweepSessions(
+            tempFolder, TmpFileAllocator.DEFAULT_STALE_SESSION_MILLIS);
+
+        assertEquals(1, deletedSessions);
+        assertFalse(Files.exists(staleSession));
+        assertTrue(Files.exists(activeSession.resolve("data")));
+        assertEquals(0, TmpFileAllocator.sweepSessions(
+            tempFolder.resolve("missing"), TmpFileAllocator.DEFAULT_STALE_SESSION_MILLIS));
+    }
+
+    /**
+     * Check that tmp files which are deleted rather than moved do not accumulate in the set of
+     * tmp files in use
+     */
+    @Test
+    public void allocate_trackingIsBounded() throws Exception {
+        for (int i = 0; i < TmpFileAllocator.MAX_TRACKED_TMP_FILES + 10; i++) {
+            File tmpFile = TmpFileAllocator.allocate("tmp", tempFolder);
+            Files.delete(tmpFile.toPath());
+        }
+        assertTrue(TmpFileAllocator.getLiveTmpFileCount() < TmpFileAllocator.MAX_TRACKED_TMP_FILES);
+    }
+}
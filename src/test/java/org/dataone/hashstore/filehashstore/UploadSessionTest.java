@@ -0,0 +1,199 @@
+package org.dataone.hashstore.filehashstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import org.dataone.hashstore.ObjectMetadata;
+import org.dataone.hashstore.exceptions.NonMatchingChecksumException;
+import org.dataone.hashstore.testdata.TestDataHarness;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test class for UploadSession
+ */
+public class UploadSessionTest {
+    private static final TestDataHarness testData = new TestDataHarness();
+    private Properties storeProperties;
+    private FileHashStore fileHashStore;
+    private Path rootDirectory;
+
+    /**
+     * Temporary folder for tests to run in
+     */
+    @TempDir
+    public Path tempFolder;
+
+    @BeforeEach
+    public void initializeFileHashStore() throws Exception {
+        rootDirectory = tempFolder.resolve("hashstore");
+        storeProperties = new Properties();
+        storeProperties.setProperty("storePath", rootDirectory.toString());
+        storeProperties.setProperty("storeDepth", "3");
+        storeProperties.setProperty("storeWidth", "2");
+        storeProperties.setProperty("storeAlgorithm", "SHA-256");
+        storeProperties.setProperty(
+            "storeMetadataNamespace", "https://ns.dataone.org/service/types/v2.0#SystemMetadata");
+        fileHashStore = new FileHashStore(storeProperties);
+    }
+
+    /**
+     * Check that an object uploaded in parts is stored and tagged like storeObject would
+     */
+    @Test
+    public void finish_objectInParts() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] data = Files.readAllBytes(testData.getTestFile(pid));
+        String sha256 = testData.pidData.get(pid).get("sha256");
+
+        ObjectMetadata objInfo;
+        try (UploadSession uploadSession = fileHashStore.openUploadSession(
+            pid, "MD2", sha256, "SHA-256", data.length)) {
+            int partSize = data.length / 3 + 1;
+            for (int offset = 0; offset < data.length; offset += partSize) {
+                uploadSession.appendPart(getPart(data, offset, offset + partSize));
+            }
+            assertEquals(data.length, uploadSession.getCommittedOffset());
+            objInfo = uploadSession.finish();
+        }
+
+        assertEquals(sha256, objInfo.cid());
+        assertEquals(data.length, objInfo.size());
+        assertEquals(testData.pidData.get(pid).get("md2"), objInfo.hexDigests().get("MD2"));
+        assertEquals(sha256, fileHashStore.findObject(pid).cid());
+        assertTrue(isSessionsDirectoryEmpty());
+    }
+
+    /**
+     * Check that a session resumed by another store instance continues from its last committed
+     * offset, discarding a part that was not committed
+     */
+    @Test
+    public void resumeUploadSession_afterRestart() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] data = Files.readAllBytes(testData.getTestFile(pid));
+        int half = data.length / 2;
+
+        UploadSession uploadSession =
+            fileHashStore.openUploadSession(pid, null, null, null, -1);
+        String sessionId = uploadSession.getSessionId();
+        uploadSession.appendPart(getPart(data, 0, half));
+        // The process stops while the next part is being written
+        Path dataFile = rootDirectory.resolve("objects/sessions").resolve(sessionId)
+            .resolve(UploadSession.DATA_FILE);
+        Files.write(dataFile, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+        uploadSession.close();
+
+        FileHashStore restartedHashStore = new FileHashStore(storeProperties);
+        ObjectMetadata objInfo;
+        try (UploadSession resumedSession = restartedHashStore.resumeUploadSession(sessionId)) {
+            assertEquals(pid, resumedSession.getPid());
+            assertEquals(half, resumedSession.getCommittedOffset());
+            resumedSession.appendPart(getPart(data, half, data.length));
+            objInfo = resumedSession.finish();
+        }
+
+        assertEquals(testData.pidData.get(pid).get("sha256"), objInfo.cid());
+        assertEquals(testData.pidData.get(pid).get("md5"), objInfo.hexDigests().get("MD5"));
+        assertEquals(data.length, objInfo.size());
+    }
+
+    /**
+     * Check that a session whose object fails validation is removed without storing the object
+     */
+    @Test
+    public void finish_nonMatchingChecksum() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] data = Files.readAllBytes(testData.getTestFile(pid));
+
+        try (UploadSession uploadSession = fileHashStore.openUploadSession(
+            pid, null, "abc123", "SHA-256", -1)) {
+            uploadSession.appendPart(new ByteArrayInputStream(data));
+            assertThrows(NonMatchingChecksumException.class, uploadSession::finish);
+        }
+
+        assertTrue(isSessionsDirectoryEmpty());
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.findObject(pid));
+    }
+
+    /**
+     * Check that a session that cannot be finished because of a transient failure is kept, and
+     * can be resumed to be finished again
+     */
+    @Test
+    public void finish_transientFailure() throws Exception {
+        String pid = "jtao.1700.1";
+        byte[] data = Files.readAllBytes(testData.getTestFile(pid));
+        String sha256 = testData.pidData.get(pid).get("sha256");
+        FileHashStore failingHashStore = new FileHashStore(storeProperties) {
+            @Override
+            protected ObjectMetadata storeTmpObject(
+                File dataFile, String pid, String additionalAlgorithm, String checksum,
+                String checksumAlgorithm, long objSize, Map<String, String> hexDigests)
+                throws IOException {
+                throw new IOException("Unable to move data object: disk unavailable");
+            }
+        };
+
+        String sessionId;
+        try (UploadSession uploadSession = failingHashStore.openUploadSession(
+            pid, null, sha256, "SHA-256", data.length)) {
+            sessionId = uploadSession.getSessionId();
+            uploadSession.appendPart(new ByteArrayInputStream(data));
+            assertThrows(IOException.class, uploadSession::finish);
+        }
+        assertFalse(isSessionsDirectoryEmpty());
+
+        ObjectMetadata objInfo;
+        try (UploadSession resumedSession = fileHashStore.resumeUploadSession(sessionId)) {
+            assertEquals(data.length, resumedSession.getCommittedOffset());
+            // Parts cannot be appended to a session that has been finished once
+            assertThrows(IllegalStateException.class,
+                         () -> resumedSession.appendPart(new ByteArrayInputStream(data)));
+        }
+        try (UploadSession resumedSession = fileHashStore.resumeUploadSession(sessionId)) {
+            objInfo = resumedSession.finish();
+        }
+
+        assertEquals(sha256, objInfo.cid());
+        assertEquals(sha256, fileHashStore.findObject(pid).cid());
+        assertTrue(isSessionsDirectoryEmpty());
+    }
+
+    /**
+     * Check that a session that does not exist cannot be resumed
+     */
+    @Test
+    public void resumeUploadSession_notFound() {
+        assertThrows(FileNotFoundException.class, () -> fileHashStore.resumeUploadSession(
+            "3f1b2c5e-1d3a-4f6b-9a8c-7e6d5c4b3a21"));
+        assertThrows(IllegalArgumentException.class,
+                     () -> fileHashStore.resumeUploadSession("../../refs"));
+    }
+
+    private static InputStream getPart(byte[] data, int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, from, Math.min(to, data.length)));
+    }
+
+    private boolean isSessionsDirectoryEmpty() throws IOException {
+        try (Stream<Path> sessions = Files.list(rootDirectory.resolve("objects/sessions"))) {
+            return sessions.findAny().isEmpty();
+        }
+    }
+}